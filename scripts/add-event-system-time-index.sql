@@ -0,0 +1,9 @@
+/*
+ * This adds an index on (system_id, event_time_utc) to the event table.  EventService.getMostRecentEvent reads it
+ * backwards to find the newest event for a system without scanning the rest of the time range.  The graph page runs
+ * that query whenever a new session opens it.
+ *
+ * The setup-database-and-users.sql and create-test-database.sql scripts were updated to include it as well.
+ */
+
+ALTER TABLE waveforms.event ADD INDEX i_system_event_time (system_id, event_time_utc);
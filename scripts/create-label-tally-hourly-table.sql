@@ -0,0 +1,47 @@
+/* Create a rollup table that holds the number of events per hour broken out by location and label combination.  Fault
+   rate reports over long time ranges read this table instead of tallying the raw event and label tables.
+
+   Each row is one (system, location, hour, fault-type, cavity, model) bucket.  Unlabeled events, and events missing a
+   label name, use an empty string so that the columns can be part of the primary key.  hour_utc is the event time
+   truncated to the hour.  Buckets are further split on confident, which is 1 when the events have labels and every
+   label has a confidence above zero.  That is the RF fault summary report's default confidence filter.  Events without
+   capture files are not counted, the same as the app's event queries.
+
+   EventService keeps this table up to date by moving an event's count between rows whenever the event or its labels
+   are added or removed.  The INSERT at the bottom backfills existing events.  LabelTallyService.rebuild (POST
+   /admin/ajax/label-tally-rebuild) can be used to rebuild a time range after bulk changes made outside of the app.
+ */
+USE waveforms;
+CREATE TABLE label_tally_hourly
+(
+    system_id   INT(2)       NOT NULL,
+    location    VARCHAR(127) NOT NULL,
+    hour_utc    DATETIME     NOT NULL,
+    fault_type  VARCHAR(127) NOT NULL DEFAULT '',
+    cavity      VARCHAR(127) NOT NULL DEFAULT '',
+    model_name  VARCHAR(127) NOT NULL DEFAULT '',
+    confident   TINYINT(1)   NOT NULL DEFAULT 0,
+    num_events  INT UNSIGNED NOT NULL,
+    PRIMARY KEY (system_id, location, hour_utc, fault_type, cavity, model_name, confident),
+    INDEX i_hour_utc (hour_utc),
+    FOREIGN KEY (system_id)
+        REFERENCES system_type (system_id)
+        ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+INSERT INTO label_tally_hourly (system_id, location, hour_utc, fault_type, cavity, model_name, confident, num_events)
+SELECT system_id, location, hour_utc, fault_type, cavity, model_name, confident, COUNT(*)
+FROM (SELECT event.event_id,
+             event.system_id,
+             event.location,
+             DATE_FORMAT(event.event_time_utc, '%Y-%m-%d %H:00:00')                      AS hour_utc,
+             COALESCE(MAX(CASE WHEN label_name = 'fault-type' THEN label_value END), '') AS fault_type,
+             COALESCE(MAX(CASE WHEN label_name = 'cavity' THEN label_value END), '')     AS cavity,
+             COALESCE(MAX(model_name), '')                                               AS model_name,
+             CASE WHEN COUNT(label.label_id) > 0
+                 AND SUM(label_confidence IS NULL OR label_confidence <= 0) = 0 THEN 1 ELSE 0 END AS confident
+      FROM event
+               LEFT JOIN label ON label.event_id = event.event_id
+      WHERE EXISTS (SELECT 1 FROM capture WHERE capture.event_id = event.event_id)
+      GROUP BY event.event_id) AS t
+GROUP BY system_id, location, hour_utc, fault_type, cavity, model_name, confident;
@@ -65,6 +65,7 @@ CREATE TABLE event (
     UNIQUE KEY `event_time_utc` (`event_time_utc`,`location`,`system_id`, `classification`),
     INDEX i_location(location),
     INDEX i_event_time(event_time_utc),
+    INDEX i_system_event_time(system_id, event_time_utc),
     FOREIGN KEY fk_system_id (system_id) 
       REFERENCES system_type (system_id)
       ON DELETE CASCADE
@@ -270,6 +271,28 @@ CREATE TABLE series_set_contents (
 ) ENGINE=InnoDB;
 
 
+/*
+ Hourly rollup of event counts by location and label combination, read by the fault rate reports over long time
+ ranges.  EventService updates its counts inside every event and label write, so this table must exist.
+ See create-label-tally-hourly-table.sql for adding it to an existing database.
+ */
+CREATE TABLE label_tally_hourly (
+  system_id INT(2) NOT NULL,
+  location VARCHAR(127) NOT NULL,
+  hour_utc DATETIME NOT NULL,
+  fault_type VARCHAR(127) NOT NULL DEFAULT '',
+  cavity VARCHAR(127) NOT NULL DEFAULT '',
+  model_name VARCHAR(127) NOT NULL DEFAULT '',
+  confident TINYINT(1) NOT NULL DEFAULT 0,
+  num_events INT UNSIGNED NOT NULL,
+  PRIMARY KEY (system_id, location, hour_utc, fault_type, cavity, model_name, confident),
+  INDEX i_hour_utc (hour_utc),
+  FOREIGN KEY fk_system_id_4 (system_id)
+    REFERENCES system_type (system_id)
+    ON DELETE CASCADE
+) ENGINE=InnoDB;
+
+
 /*
  * Create the usual three user setup for this app wfb_owner, wfb_writer,
  * wfb_reader, (unlimited, read/write, and read only users)
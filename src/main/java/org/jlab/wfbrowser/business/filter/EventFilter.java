@@ -71,6 +71,30 @@ public class EventFilter {
         return end;
     }
 
+    public List<Long> getEventIdList() {
+        return eventIdList;
+    }
+
+    public List<String> getLocationList() {
+        return locationList;
+    }
+
+    public List<String> getClassificationList() {
+        return classificationList;
+    }
+
+    public Boolean getArchive() {
+        return archive;
+    }
+
+    public Boolean getDelete() {
+        return delete;
+    }
+
+    public Integer getMinCaptureFiles() {
+        return minCaptureFiles;
+    }
+
     /**
      * Generate a WHERE SQL clause based on the supplied filter parameters
      *
@@ -1,8 +1,12 @@
 package org.jlab.wfbrowser.business.filter;
 
 import org.jlab.wfbrowser.model.Event;
+import org.jlab.wfbrowser.model.EventHeader;
 import org.jlab.wfbrowser.model.Label;
+import org.jlab.wfbrowser.business.util.StringDictionary;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.*;
 
 /**
@@ -46,9 +50,16 @@ public class LabelFilter {
      */
     public LabelFilter(List<String> modelNameList, List<Long> idList, Map<String, List<String>> nameValueMap, Double confidence, String confidenceOperator) {
         this.isLabeled = null;
-        this.modelNameList = modelNameList;
+        this.modelNameList = share(modelNameList);
         this.idList = idList;
-        this.nameValueMap = nameValueMap;
+        if (nameValueMap == null) {
+            this.nameValueMap = null;
+        } else {
+            this.nameValueMap = new LinkedHashMap<>();
+            for (Map.Entry<String, List<String>> entry : nameValueMap.entrySet()) {
+                this.nameValueMap.put(StringDictionary.lookup(entry.getKey()), share(entry.getValue()));
+            }
+        }
 
         if (!(confidence == null && confidenceOperator == null) && !(confidenceOperator != null && confidence != null)) {
             throw new IllegalArgumentException("confidence and confidenceOperator must either both be NULL or both be not NULL");
@@ -77,6 +88,21 @@ public class LabelFilter {
     }
 
 
+    /**
+     * Swap in the dictionary's instances of the filter values, so that comparing them to the labels read from the
+     * database is usually an identity check.
+     */
+    private static List<String> share(List<String> values) {
+        if (values == null) {
+            return null;
+        }
+        List<String> out = new ArrayList<>(values.size());
+        for (String value : values) {
+            out.add(StringDictionary.lookup(value));
+        }
+        return out;
+    }
+
     /**
      * A method for filtering out events that do not meet the criteria specified in the LabelFilter.  Does filtering on
      * results after retrieving them from the database.
@@ -89,62 +115,174 @@ public class LabelFilter {
         List<Event> out = new ArrayList<>();
 
         for (Event e : eventList) {
-            // Check which type of filtering we are doing.  If isLabeled != null, then we are just check for label existence
-            if (isLabeled == null) {
+            if (matches(e.getLabelList())) {
+                out.add(e);
+            }
+        }
+        return out;
+    }
 
-                // Check that the event has labels.
-                if (e.getLabelList() == null || e.getLabelList().isEmpty()) {
-                    continue;
-                }
+    /**
+     * Same as filterEvents, for EventHeaders.
+     *
+     * @param headerList The headers to filter
+     * @return The headers that meet the criteria of this filter
+     */
+    public List<EventHeader> filterHeaders(List<EventHeader> headerList) {
 
-                // This section performs a series of checks.  Should a check fail, then we continue on to the next event.
-                // Should all checks pass, we add it to the output list.
-                if (modelNameList != null) {
-                    if (!checkModelNames(e)) {
-                        continue;
-                    }
-                }
-                if (idList != null && !idList.isEmpty()) {
-                    if (!checkIds(e)) {
-                        continue;
-                    }
-                }
-                if (nameValueMap != null) {
-                    if (!checkNameValueMap(e)) {
-                        continue;
-                    }
-                }
-                if (confidence != null) {
-                    if (!checkConfidence(e)) {
-                        continue;
-                    }
-                }
-                out.add(e);
-            } else if (isLabeled) {
-                if (e.getLabelList() != null && !e.getLabelList().isEmpty()) {
-                    out.add(e);
+        List<EventHeader> out = new ArrayList<>();
+
+        for (EventHeader h : headerList) {
+            if (matches(h.getLabelList())) {
+                out.add(h);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Check an event's labels against this filter.
+     *
+     * @param labels The event's labels.  Null or empty if it has none.
+     * @return True if the event passes the filter
+     */
+    private boolean matches(List<Label> labels) {
+        boolean hasLabels = labels != null && !labels.isEmpty();
+
+        // Check which type of filtering we are doing.  If isLabeled != null, then we are just check for label existence
+        if (isLabeled != null) {
+            return isLabeled == hasLabels;
+        }
+
+        // Check that the event has labels.
+        if (!hasLabels) {
+            return false;
+        }
+
+        // This section performs a series of checks.  Should a check fail, then the event does not match.
+        if (modelNameList != null && !checkModelNames(labels)) {
+            return false;
+        }
+        if (idList != null && !idList.isEmpty() && !checkIds(labels)) {
+            return false;
+        }
+        if (nameValueMap != null && !checkNameValueMap(labels)) {
+            return false;
+        }
+        return confidence == null || checkConfidence(labels);
+    }
+
+
+    /**
+     * Generate an SQL condition that applies this filter to a group of label rows belonging to a single event, i.e., a
+     * query that LEFT JOINs event to label and does a GROUP BY event_id.  The result is suitable for a HAVING clause
+     * and mirrors filterEvents with one simplification: a nameValueMap entry is satisfied if ANY of the event's labels
+     * with that name has an acceptable value.
+     *
+     * @return A parenthesized SQL condition over aggregates of the label table columns
+     */
+    public String getHavingClauseContent() {
+        if (isLabeled != null) {
+            return isLabeled ? "(COUNT(label_id) > 0)" : "(COUNT(label_id) = 0)";
+        }
+
+        List<String> conditions = new ArrayList<>();
+        conditions.add("COUNT(label_id) > 0");
+        if (modelNameList != null) {
+            if (modelNameList.isEmpty()) {
+                conditions.add("0 = 1");
+            } else {
+                conditions.add("SUM(model_name IN (" + getPlaceholders(modelNameList.size()) + ")) > 0");
+            }
+        }
+        if (idList != null && !idList.isEmpty()) {
+            conditions.add("SUM(label_id IN (" + getPlaceholders(idList.size()) + ")) > 0");
+        }
+        if (nameValueMap != null) {
+            if (nameValueMap.isEmpty()) {
+                conditions.add("0 = 1");
+            }
+            for (String name : nameValueMap.keySet()) {
+                List<String> values = nameValueMap.get(name);
+                if (values == null) {
+                    conditions.add("SUM(label_name = ?) > 0");
+                } else if (values.isEmpty()) {
+                    conditions.add("0 = 1");
+                } else {
+                    conditions.add("SUM(label_name = ? AND label_value IN (" + getPlaceholders(values.size()) + ")) > 0");
                 }
+            }
+        }
+        if (confidence != null) {
+            if (confidenceOperator.equals("null")) {
+                conditions.add("SUM(label_confidence IS NOT NULL) = 0");
             } else {
-                if (e.getLabelList() == null || e.getLabelList().isEmpty()) {
-                    out.add(e);
+                // A NULL confidence fails every comparison, same as checkConfidence
+                conditions.add("SUM(CASE WHEN label_confidence " + confidenceOperator + " ? THEN 0 ELSE 1 END) = 0");
+            }
+        }
+
+        return "(" + String.join(" AND ", conditions) + ")";
+    }
+
+    /**
+     * Bind the parameters of the condition returned by getHavingClauseContent.
+     *
+     * @param stmt  The statement containing the having clause
+     * @param index The index of the first parameter to bind
+     * @return One more than the last index bound by this method
+     * @throws SQLException If issue binding parameters
+     */
+    public int assignHavingParameterValues(PreparedStatement stmt, int index) throws SQLException {
+        int i = index;
+        if (isLabeled != null) {
+            return i;
+        }
+        if (modelNameList != null) {
+            for (String modelName : modelNameList) {
+                stmt.setString(i++, modelName);
+            }
+        }
+        if (idList != null && !idList.isEmpty()) {
+            for (Long id : idList) {
+                stmt.setLong(i++, id);
+            }
+        }
+        if (nameValueMap != null) {
+            for (String name : nameValueMap.keySet()) {
+                List<String> values = nameValueMap.get(name);
+                if (values == null) {
+                    stmt.setString(i++, name);
+                } else if (!values.isEmpty()) {
+                    stmt.setString(i++, name);
+                    for (String value : values) {
+                        stmt.setString(i++, value);
+                    }
                 }
             }
         }
-        return out;
+        if (confidence != null && !confidenceOperator.equals("null")) {
+            stmt.setDouble(i++, confidence);
+        }
+        return i;
     }
 
+    private static String getPlaceholders(int n) {
+        StringBuilder sb = new StringBuilder("?");
+        for (int i = 1; i < n; i++) {
+            sb.append(",?");
+        }
+        return sb.toString();
+    }
 
     /**
      * Return true if the event has at least one label with a modelName that matches one of the names in modelNameLIst.
      *
-     * @param e Event to check
+     * @param labels The event's labels
      * @return True if the event has a label that matches a model name.  False otherwise.
      */
-    private boolean checkModelNames(Event e) {
-        if (e == null) {
-            return false;
-        }
-        for (Label l : e.getLabelList()) {
+    private boolean checkModelNames(List<Label> labels) {
+        for (Label l : labels) {
             for (String modelName : modelNameList) {
                 if (l.getModelName() != null && l.getModelName().equals(modelName)) {
                     return true;
@@ -157,15 +295,12 @@ public class LabelFilter {
     /**
      * Check if the event has a label with an ID that matches one of the IDs in idList.
      *
-     * @param e Event to check
+     * @param labels The event's labels
      * @return True if the event has a label with a matching ID. False, otherwise.
      */
-    private boolean checkIds(Event e) {
-        if (e == null) {
-            return false;
-        }
+    private boolean checkIds(List<Label> labels) {
         for (Long id : idList) {
-            for (Label l : e.getLabelList()) {
+            for (Label l : labels) {
                 if (l.getId() != null && l.getId().equals(id)) {
                     return true;
                 }
@@ -177,13 +312,10 @@ public class LabelFilter {
     /**
      * Check that the event has labels that match the valid values for each label name.
      *
-     * @param e Event to check
+     * @param labels The event's labels
      * @return Return true if a label exists that matches each of the specified criteria.  False otherwise.
      */
-    private boolean checkNameValueMap(Event e) {
-        if (e == null) {
-            return false;
-        }
+    private boolean checkNameValueMap(List<Label> labels) {
 
         // Setup the checks to be all false
         Map<String, Boolean> hasMatch = new HashMap<>();
@@ -192,7 +324,7 @@ public class LabelFilter {
         }
 
         // Go through the labels and update the hasMatch map as appropriate
-        for (Label l : e.getLabelList()) {
+        for (Label l : labels) {
             List<String> values = nameValueMap.get(l.getName());
             if (hasMatch.containsKey(l.getName())) {
                 if (values == null) {
@@ -224,12 +356,12 @@ public class LabelFilter {
     /**
      * Check that every label associated with the Event has a confidence that matches the specified criteria.
      *
-     * @param e Event to check
+     * @param labels The event's labels
      * @return True if all labels have a confidence
      */
-    private boolean checkConfidence(Event e) {
+    private boolean checkConfidence(List<Label> labels) {
         boolean out = true;
-        for (Label l : e.getLabelList()) {
+        for (Label l : labels) {
             switch (confidenceOperator) {
                 case "null":
                     if (l.getConfidence() != null) {
@@ -9,6 +9,7 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import org.jlab.wfbrowser.model.SeriesSet;
 
 /**
  *
@@ -43,8 +44,13 @@ public class SeriesSetFilter {
             filterList.add("system_name = ?");
         }
 
-        if (nameList != null) {
-            filterList.add("set_name = ?");
+        if (nameList != null && !nameList.isEmpty()) {
+            String nameFilter = "set_name IN (?";
+            for (int i = 1; i < nameList.size(); i++) {
+                nameFilter += ",?";
+            }
+            nameFilter += ")";
+            filterList.add(nameFilter);
         }
 
         if (!filterList.isEmpty()) {
@@ -75,4 +81,29 @@ public class SeriesSetFilter {
             }
         }
     }
+
+    /**
+     * Apply this filter to a list of SeriesSets in memory.  Used when the series sets are already cached so that no
+     * query is needed.  Semantics match the SQL WHERE clause, including MariaDB's case insensitive string comparison.
+     *
+     * @param seriesSets The SeriesSets to filter
+     * @return A new list of the SeriesSets that pass the filter, in their original order
+     */
+    public List<SeriesSet> filterSeriesSets(List<SeriesSet> seriesSets) {
+        List<SeriesSet> out = new ArrayList<>();
+        for (SeriesSet set : seriesSets) {
+            if (idList != null && !idList.isEmpty() && !idList.contains((long) set.getId())) {
+                continue;
+            }
+            if (systemName != null && !systemName.equalsIgnoreCase(set.getSystemName())) {
+                continue;
+            }
+            if (nameList != null && !nameList.isEmpty()
+                    && nameList.stream().noneMatch(name -> name.equalsIgnoreCase(set.getName()))) {
+                continue;
+            }
+            out.add(set);
+        }
+        return out;
+    }
 }
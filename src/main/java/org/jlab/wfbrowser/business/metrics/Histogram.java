@@ -0,0 +1,87 @@
+package org.jlab.wfbrowser.business.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed bucket latency histogram in the style of a Prometheus histogram.  Bucket bounds are in seconds.  Updates are
+ * lock free.
+ *
+ * @author adamc
+ */
+public class Histogram {
+
+    /**
+     * Upper bounds (seconds) of the buckets.  An implicit +Inf bucket follows.
+     */
+    static final double[] BOUNDS = {0.001, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS.length + 1);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    /**
+     * Record an observation.
+     *
+     * @param nanos The observed duration in nanoseconds
+     */
+    public void observe(long nanos) {
+        double seconds = nanos / 1e9;
+        int i = 0;
+        while (i < BOUNDS.length && seconds > BOUNDS[i]) {
+            i++;
+        }
+        buckets.incrementAndGet(i);
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getSumSeconds() {
+        return sumNanos.sum() / 1e9;
+    }
+
+    /**
+     * @return The cumulative count of observations at or below each bound, followed by the total (+Inf)
+     */
+    public long[] getCumulativeCounts() {
+        long[] out = new long[BOUNDS.length + 1];
+        long running = 0;
+        for (int i = 0; i < out.length; i++) {
+            running += buckets.get(i);
+            out[i] = running;
+        }
+        return out;
+    }
+
+    /**
+     * Estimate a quantile by linear interpolation within the bucket that contains it.
+     *
+     * @param q The quantile (0, 1]
+     * @return The estimated value in seconds, or 0 if there are no observations.  Observations above the largest
+     * bound are reported as the largest bound.
+     */
+    public double getQuantileSeconds(double q) {
+        long[] cumulative = getCumulativeCounts();
+        long total = cumulative[cumulative.length - 1];
+        if (total == 0) {
+            return 0;
+        }
+        double rank = q * total;
+        for (int i = 0; i < BOUNDS.length; i++) {
+            if (cumulative[i] >= rank) {
+                double lower = i == 0 ? 0 : BOUNDS[i - 1];
+                long below = i == 0 ? 0 : cumulative[i - 1];
+                long inBucket = cumulative[i] - below;
+                if (inBucket == 0) {
+                    return BOUNDS[i];
+                }
+                return lower + (BOUNDS[i] - lower) * (rank - below) / inBucket;
+            }
+        }
+        return BOUNDS[BOUNDS.length - 1];
+    }
+}
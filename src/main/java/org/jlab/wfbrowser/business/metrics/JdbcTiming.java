@@ -0,0 +1,213 @@
+package org.jlab.wfbrowser.business.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import org.jlab.wfbrowser.business.util.ConfigUtil;
+
+/**
+ * Dynamic proxies around JDBC objects that charge statement execution and result set fetching to the DB phase of the
+ * current request.  Connections are only wrapped while a RequestTimer is bound, so background work pays nothing.
+ * <p>
+ * Each statement is also recorded against its SQL template (the SQL text with whitespace collapsed and IN lists and
+ * LIMIT values folded) in the MetricsRegistry.  The number of executions of each template is tracked per request and
+ * a template executed more than jdbcNPlusOneThreshold times in one request is reported as an N+1 query pattern.
+ * Instrumentation can be turned off with jdbcInstrumentation=false in wfBrowser.properties.
+ *
+ * @author adamc
+ */
+public class JdbcTiming {
+
+    private static final Logger LOGGER = Logger.getLogger(JdbcTiming.class.getName());
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)");
+    private static final Pattern LIMIT = Pattern.compile("(?i)\\bLIMIT\\s+\\d+(\\s*,\\s*\\d+)?");
+
+    private static final boolean ENABLED;
+    private static final int N_PLUS_ONE_THRESHOLD;
+
+    static {
+        ENABLED = ConfigUtil.getBoolean("jdbcInstrumentation", true);
+        N_PLUS_ONE_THRESHOLD = ConfigUtil.getInt("jdbcNPlusOneThreshold", 10);
+    }
+
+    private JdbcTiming() {
+        // not public so these cannot be instantiated
+    }
+
+    /**
+     * Wrap a connection if instrumentation is enabled and the current thread is handling a timed request.
+     *
+     * @param conn The connection to wrap
+     * @return The wrapped connection, or conn itself if it should not be instrumented
+     */
+    public static Connection wrap(Connection conn) {
+        if (conn == null || !ENABLED || RequestTimer.current() == null) {
+            return conn;
+        }
+        return (Connection) Proxy.newProxyInstance(JdbcTiming.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new ConnectionHandler(conn));
+    }
+
+    /**
+     * Reduce a SQL statement to a template so that statements that differ only in formatting, the number of IN list
+     * placeholders, or LIMIT value are grouped together.
+     *
+     * @param sql The SQL text
+     * @return The template
+     */
+    static String getTemplate(String sql) {
+        String template = WHITESPACE.matcher(sql.trim()).replaceAll(" ");
+        template = IN_LIST.matcher(template).replaceAll("(?...)");
+        return LIMIT.matcher(template).replaceAll("LIMIT ?");
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Record one execution of a template against the current request and the registry.
+     */
+    private static void recordExecution(String template, long nanos) {
+        MetricsRegistry.getInstance().recordStatement(template, nanos);
+        RequestTimer.count("statements", 1);
+        RequestTimer timer = RequestTimer.current();
+        if (timer != null && timer.countStatement(template) == N_PLUS_ONE_THRESHOLD + 1) {
+            MetricsRegistry.getInstance().recordNPlusOne(template);
+            RequestTimer.note("nPlusOne", template);
+            LOGGER.log(Level.WARNING, "Possible N+1 query pattern on {0}.  Executed more than {1} times: {2}",
+                    new Object[]{timer.getEndpoint(), N_PLUS_ONE_THRESHOLD, template});
+        }
+    }
+
+    private static class ConnectionHandler implements InvocationHandler {
+
+        private final Connection conn;
+
+        ConnectionHandler(Connection conn) {
+            this.conn = conn;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = JdbcTiming.invoke(conn, method, args);
+            String sql = (args != null && args.length > 0 && args[0] instanceof String) ? (String) args[0] : null;
+            Class<?> type;
+            if (result instanceof CallableStatement) {
+                type = CallableStatement.class;
+            } else if (result instanceof PreparedStatement) {
+                type = PreparedStatement.class;
+            } else if (result instanceof Statement) {
+                type = Statement.class;
+            } else {
+                return result;
+            }
+            return Proxy.newProxyInstance(JdbcTiming.class.getClassLoader(), new Class<?>[]{type},
+                    new StatementHandler((Statement) result, sql == null ? null : getTemplate(sql)));
+        }
+    }
+
+    private static class StatementHandler implements InvocationHandler {
+
+        private final Statement stmt;
+        private final String preparedTemplate;
+        private String lastTemplate;
+
+        StatementHandler(Statement stmt, String preparedTemplate) {
+            this.stmt = stmt;
+            this.preparedTemplate = preparedTemplate;
+            this.lastTemplate = preparedTemplate;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            Object result;
+            if (name.startsWith("execute")) {
+                // Plain Statements pass their SQL to execute, PreparedStatements were given it up front
+                if (args != null && args.length > 0 && args[0] instanceof String) {
+                    lastTemplate = getTemplate((String) args[0]);
+                } else {
+                    lastTemplate = preparedTemplate;
+                }
+                long start = System.nanoTime();
+                try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.DB)) {
+                    result = JdbcTiming.invoke(stmt, method, args);
+                } finally {
+                    if (lastTemplate != null) {
+                        recordExecution(lastTemplate, System.nanoTime() - start);
+                    }
+                }
+            } else if (name.equals("getGeneratedKeys") || name.equals("getResultSet")) {
+                try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.DB)) {
+                    result = JdbcTiming.invoke(stmt, method, args);
+                }
+            } else {
+                result = JdbcTiming.invoke(stmt, method, args);
+            }
+            if (result instanceof ResultSet) {
+                return Proxy.newProxyInstance(JdbcTiming.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                        new ResultSetHandler((ResultSet) result, lastTemplate));
+            }
+            return result;
+        }
+    }
+
+    private static class ResultSetHandler implements InvocationHandler {
+
+        private final ResultSet rs;
+        private final String template;
+        private long fetchNanos = 0;
+        private long rows = 0;
+        private boolean recorded = false;
+
+        ResultSetHandler(ResultSet rs, String template) {
+            this.rs = rs;
+            this.template = template;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            // Drivers may stream rows, so next() can block on the network
+            if (method.getName().equals("next")) {
+                Object result;
+                long start = System.nanoTime();
+                try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.DB)) {
+                    result = JdbcTiming.invoke(rs, method, args);
+                } finally {
+                    fetchNanos += System.nanoTime() - start;
+                }
+                if (Boolean.TRUE.equals(result)) {
+                    rows++;
+                    RequestTimer.count("rows", 1);
+                }
+                return result;
+            } else if (method.getName().equals("close")) {
+                try {
+                    return JdbcTiming.invoke(rs, method, args);
+                } finally {
+                    if (!recorded && template != null) {
+                        recorded = true;
+                        MetricsRegistry.getInstance().recordFetch(template, fetchNanos, rows);
+                    }
+                }
+            }
+            return JdbcTiming.invoke(rs, method, args);
+        }
+    }
+}
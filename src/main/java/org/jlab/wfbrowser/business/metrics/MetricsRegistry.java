@@ -0,0 +1,380 @@
+package org.jlab.wfbrowser.business.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import org.jlab.wfbrowser.business.util.AdmissionController;
+
+/**
+ * Application wide request metrics.  Each finished RequestTimer is folded into a per-endpoint request counter (by
+ * status), a per-endpoint latency histogram, and per-endpoint, per-phase latency histograms.  The registry can be
+ * exported in the Prometheus text exposition format or summarized for the admin metrics page.
+ *
+ * @author adamc
+ */
+public class MetricsRegistry {
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final ConcurrentSkipListMap<String, EndpointMetrics> endpoints = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, SqlTemplateMetrics> sqlTemplates = new ConcurrentSkipListMap<>();
+    private volatile Histogram poolWait = new Histogram();
+
+    private MetricsRegistry() {
+    }
+
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record a finished request.
+     *
+     * @param endpoint The name to record the request under
+     * @param timer The finished timer for the request
+     * @param status The HTTP status code sent to the client
+     */
+    public void record(String endpoint, RequestTimer timer, int status) {
+        EndpointMetrics em = endpoints.computeIfAbsent(endpoint, k -> new EndpointMetrics());
+        em.statusCounts.computeIfAbsent(status, k -> new LongAdder()).increment();
+        em.duration.observe(timer.getElapsedNanos());
+        for (Phase phase : Phase.values()) {
+            long nanos = timer.getPhaseNanos(phase);
+            if (nanos > 0) {
+                em.phases.get(phase).observe(nanos);
+            }
+        }
+    }
+
+    /**
+     * Record one execution of a SQL statement.
+     *
+     * @param template The statement's SQL template
+     * @param nanos Time spent executing the statement
+     */
+    public void recordStatement(String template, long nanos) {
+        SqlTemplateMetrics sm = sqlTemplates.computeIfAbsent(template, k -> new SqlTemplateMetrics());
+        sm.execute.observe(nanos);
+    }
+
+    /**
+     * Record the time spent reading a statement's result set.
+     *
+     * @param template The statement's SQL template
+     * @param nanos Time spent in ResultSet.next
+     * @param rows The number of rows read
+     */
+    public void recordFetch(String template, long nanos, long rows) {
+        SqlTemplateMetrics sm = sqlTemplates.computeIfAbsent(template, k -> new SqlTemplateMetrics());
+        sm.fetch.observe(nanos);
+        sm.rows.add(rows);
+    }
+
+    /**
+     * Record that a SQL template was executed enough times within a single request to look like an N+1 pattern.
+     *
+     * @param template The statement's SQL template
+     */
+    public void recordNPlusOne(String template) {
+        sqlTemplates.computeIfAbsent(template, k -> new SqlTemplateMetrics()).nPlusOne.increment();
+    }
+
+    /**
+     * Record how long it took to get a connection from the pool.
+     *
+     * @param nanos The wait time in nanoseconds
+     */
+    public void recordPoolWait(long nanos) {
+        poolWait.observe(nanos);
+    }
+
+    /**
+     * Write all metrics using the Prometheus text exposition format (version 0.0.4).
+     *
+     * @param w The writer to write to
+     * @throws IOException If the writer fails
+     */
+    public void writePrometheus(Writer w) throws IOException {
+        w.write("# HELP wfb_http_requests_total Number of HTTP requests handled\n");
+        w.write("# TYPE wfb_http_requests_total counter\n");
+        for (Map.Entry<String, EndpointMetrics> e : endpoints.entrySet()) {
+            for (Map.Entry<Integer, LongAdder> s : e.getValue().statusCounts.entrySet()) {
+                w.write("wfb_http_requests_total{endpoint=\"" + escape(e.getKey()) + "\",status=\"" + s.getKey()
+                        + "\"} " + s.getValue().sum() + "\n");
+            }
+        }
+
+        w.write("# HELP wfb_http_request_duration_seconds Total time spent handling HTTP requests\n");
+        w.write("# TYPE wfb_http_request_duration_seconds histogram\n");
+        for (Map.Entry<String, EndpointMetrics> e : endpoints.entrySet()) {
+            writeHistogram(w, "wfb_http_request_duration_seconds", "endpoint=\"" + escape(e.getKey()) + "\"",
+                    e.getValue().duration);
+        }
+
+        w.write("# HELP wfb_phase_duration_seconds Time spent in each phase of an HTTP request\n");
+        w.write("# TYPE wfb_phase_duration_seconds histogram\n");
+        for (Map.Entry<String, EndpointMetrics> e : endpoints.entrySet()) {
+            for (Map.Entry<Phase, Histogram> p : e.getValue().phases.entrySet()) {
+                if (p.getValue().getCount() > 0) {
+                    writeHistogram(w, "wfb_phase_duration_seconds", "endpoint=\"" + escape(e.getKey())
+                            + "\",phase=\"" + p.getKey().getLabel() + "\"", p.getValue());
+                }
+            }
+        }
+
+        w.write("# HELP wfb_jdbc_pool_wait_seconds Time spent waiting for a database connection\n");
+        w.write("# TYPE wfb_jdbc_pool_wait_seconds histogram\n");
+        writeHistogram(w, "wfb_jdbc_pool_wait_seconds", null, poolWait);
+
+        w.write("# HELP wfb_jdbc_execute_seconds Time spent executing statements by SQL template\n");
+        w.write("# TYPE wfb_jdbc_execute_seconds histogram\n");
+        for (Map.Entry<String, SqlTemplateMetrics> e : sqlTemplates.entrySet()) {
+            writeHistogram(w, "wfb_jdbc_execute_seconds", "sql=\"" + escape(e.getKey()) + "\"", e.getValue().execute);
+        }
+        w.write("# HELP wfb_jdbc_fetch_seconds Time spent reading result sets by SQL template\n");
+        w.write("# TYPE wfb_jdbc_fetch_seconds histogram\n");
+        for (Map.Entry<String, SqlTemplateMetrics> e : sqlTemplates.entrySet()) {
+            writeHistogram(w, "wfb_jdbc_fetch_seconds", "sql=\"" + escape(e.getKey()) + "\"", e.getValue().fetch);
+        }
+        w.write("# HELP wfb_jdbc_rows_total Rows read by SQL template\n");
+        w.write("# TYPE wfb_jdbc_rows_total counter\n");
+        for (Map.Entry<String, SqlTemplateMetrics> e : sqlTemplates.entrySet()) {
+            w.write("wfb_jdbc_rows_total{sql=\"" + escape(e.getKey()) + "\"} " + e.getValue().rows.sum() + "\n");
+        }
+        w.write("# HELP wfb_jdbc_n_plus_one_total Requests that executed the SQL template more than the N+1 threshold\n");
+        w.write("# TYPE wfb_jdbc_n_plus_one_total counter\n");
+        for (Map.Entry<String, SqlTemplateMetrics> e : sqlTemplates.entrySet()) {
+            w.write("wfb_jdbc_n_plus_one_total{sql=\"" + escape(e.getKey()) + "\"} " + e.getValue().nPlusOne.sum()
+                    + "\n");
+        }
+
+        AdmissionController admission = AdmissionController.getInstance();
+        w.write("# HELP wfb_admission_bytes_in_use Waveform memory reserved by requests in progress\n");
+        w.write("# TYPE wfb_admission_bytes_in_use gauge\n");
+        w.write("wfb_admission_bytes_in_use " + admission.getBytesInUse() + "\n");
+        w.write("# HELP wfb_admission_waiting Requests waiting for waveform memory\n");
+        w.write("# TYPE wfb_admission_waiting gauge\n");
+        w.write("wfb_admission_waiting " + admission.getWaiting() + "\n");
+        w.write("# HELP wfb_admission_admitted_total Requests admitted by the waveform memory budget\n");
+        w.write("# TYPE wfb_admission_admitted_total counter\n");
+        w.write("wfb_admission_admitted_total " + admission.getAdmitted() + "\n");
+        w.write("# HELP wfb_admission_rejected_total Requests rejected by the waveform memory budget\n");
+        w.write("# TYPE wfb_admission_rejected_total counter\n");
+        w.write("wfb_admission_rejected_total " + admission.getRejected() + "\n");
+    }
+
+    private static void writeHistogram(Writer w, String name, String labels, Histogram h) throws IOException {
+        String prefix = labels == null ? "" : labels + ",";
+        String suffix = labels == null ? "" : "{" + labels + "}";
+        long[] cumulative = h.getCumulativeCounts();
+        for (int i = 0; i < Histogram.BOUNDS.length; i++) {
+            w.write(name + "_bucket{" + prefix + "le=\"" + format(Histogram.BOUNDS[i]) + "\"} " + cumulative[i]
+                    + "\n");
+        }
+        w.write(name + "_bucket{" + prefix + "le=\"+Inf\"} " + cumulative[cumulative.length - 1] + "\n");
+        w.write(name + "_sum" + suffix + " " + format(h.getSumSeconds()) + "\n");
+        w.write(name + "_count" + suffix + " " + h.getCount() + "\n");
+    }
+
+    private static String format(double d) {
+        return String.format(Locale.ROOT, "%s", d);
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Summarize the registry for display.  One row per endpoint and one row per (endpoint, phase) that has been seen.
+     *
+     * @return A list of summary rows ordered by endpoint
+     */
+    public List<Summary> getSummaries() {
+        List<Summary> out = new ArrayList<>();
+        for (Map.Entry<String, EndpointMetrics> e : endpoints.entrySet()) {
+            long errors = 0;
+            for (Map.Entry<Integer, LongAdder> s : e.getValue().statusCounts.entrySet()) {
+                if (s.getKey() >= 500) {
+                    errors += s.getValue().sum();
+                }
+            }
+            out.add(new Summary(e.getKey(), null, e.getValue().duration, errors));
+            for (Map.Entry<Phase, Histogram> p : e.getValue().phases.entrySet()) {
+                if (p.getValue().getCount() > 0) {
+                    out.add(new Summary(e.getKey(), p.getKey().getLabel(), p.getValue(), 0));
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Summarize the SQL template metrics for display.
+     *
+     * @return A list of summary rows ordered by template
+     */
+    public List<SqlSummary> getSqlSummaries() {
+        List<SqlSummary> out = new ArrayList<>();
+        for (Map.Entry<String, SqlTemplateMetrics> e : sqlTemplates.entrySet()) {
+            out.add(new SqlSummary(e.getKey(), e.getValue()));
+        }
+        return out;
+    }
+
+    /**
+     * @return A summary of connection pool wait times
+     */
+    public Summary getPoolWaitSummary() {
+        return new Summary("pool", null, poolWait, 0);
+    }
+
+    /**
+     * Drop all recorded metrics.
+     */
+    public void reset() {
+        endpoints.clear();
+        sqlTemplates.clear();
+        poolWait = new Histogram();
+    }
+
+    private static class EndpointMetrics {
+
+        private final ConcurrentSkipListMap<Integer, LongAdder> statusCounts = new ConcurrentSkipListMap<>();
+        private final Histogram duration = new Histogram();
+        private final Map<Phase, Histogram> phases = new EnumMap<>(Phase.class);
+
+        EndpointMetrics() {
+            for (Phase phase : Phase.values()) {
+                phases.put(phase, new Histogram());
+            }
+        }
+    }
+
+    private static class SqlTemplateMetrics {
+
+        private final Histogram execute = new Histogram();
+        private final Histogram fetch = new Histogram();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder nPlusOne = new LongAdder();
+    }
+
+    /**
+     * A read-only view of one SQL template's metrics for display.
+     */
+    public static class SqlSummary {
+
+        private final String template;
+        private final long executions;
+        private final double meanExecuteMillis;
+        private final double p95ExecuteMillis;
+        private final double meanFetchMillis;
+        private final long rows;
+        private final long nPlusOne;
+
+        private SqlSummary(String template, SqlTemplateMetrics sm) {
+            this.template = template;
+            this.executions = sm.execute.getCount();
+            this.meanExecuteMillis = executions == 0 ? 0 : sm.execute.getSumSeconds() * 1000 / executions;
+            this.p95ExecuteMillis = sm.execute.getQuantileSeconds(0.95) * 1000;
+            long fetches = sm.fetch.getCount();
+            this.meanFetchMillis = fetches == 0 ? 0 : sm.fetch.getSumSeconds() * 1000 / fetches;
+            this.rows = sm.rows.sum();
+            this.nPlusOne = sm.nPlusOne.sum();
+        }
+
+        public String getTemplate() {
+            return template;
+        }
+
+        public long getExecutions() {
+            return executions;
+        }
+
+        public double getMeanExecuteMillis() {
+            return meanExecuteMillis;
+        }
+
+        public double getP95ExecuteMillis() {
+            return p95ExecuteMillis;
+        }
+
+        public double getMeanFetchMillis() {
+            return meanFetchMillis;
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public long getNPlusOne() {
+            return nPlusOne;
+        }
+    }
+
+    /**
+     * A read-only view of one histogram for display.
+     */
+    public static class Summary {
+
+        private final String endpoint;
+        private final String phase;
+        private final long count;
+        private final long errors;
+        private final double meanMillis;
+        private final double p50Millis;
+        private final double p95Millis;
+        private final double p99Millis;
+
+        private Summary(String endpoint, String phase, Histogram h, long errors) {
+            this.endpoint = endpoint;
+            this.phase = phase;
+            this.count = h.getCount();
+            this.errors = errors;
+            this.meanMillis = count == 0 ? 0 : h.getSumSeconds() * 1000 / count;
+            this.p50Millis = h.getQuantileSeconds(0.50) * 1000;
+            this.p95Millis = h.getQuantileSeconds(0.95) * 1000;
+            this.p99Millis = h.getQuantileSeconds(0.99) * 1000;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        /**
+         * @return The phase label or null if this row is for the whole request
+         */
+        public String getPhase() {
+            return phase;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getMeanMillis() {
+            return meanMillis;
+        }
+
+        public double getP50Millis() {
+            return p50Millis;
+        }
+
+        public double getP95Millis() {
+            return p95Millis;
+        }
+
+        public double getP99Millis() {
+            return p99Millis;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package org.jlab.wfbrowser.business.metrics;
+
+/**
+ * The phases of request processing that are timed separately.
+ *
+ * @author adamc
+ */
+public enum Phase {
+    /**
+     * Executing statements and fetching results from the database
+     */
+    DB,
+    /**
+     * Reading raw bytes from capture files or archives
+     */
+    DISK,
+    /**
+     * Decompressing gzip archives
+     */
+    DECOMPRESS,
+    /**
+     * Turning capture file text into waveform data
+     */
+    PARSE,
+    /**
+     * Building response objects (JSON trees, CSV strings) from the loaded events
+     */
+    ASSEMBLE,
+    /**
+     * Writing the response, including JSP rendering
+     */
+    SERIALIZE,
+    /**
+     * Waiting on the per-session lock
+     */
+    LOCK;
+
+    /**
+     * @return The name used as a metric label
+     */
+    public String getLabel() {
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,279 @@
+package org.jlab.wfbrowser.business.metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-request accounting of the time spent in each Phase.  A timer is bound to the request's thread by MetricsFilter,
+ * and code anywhere below the controller marks phases with
+ * <pre>
+ * try (PhaseTimer t = RequestTimer.phase(Phase.DB)) {
+ *     ...
+ * }
+ * </pre>
+ * Phase times are exclusive.  When a phase starts inside another, the outer phase is paused until the inner one ends,
+ * e.g., DISK reads that happen inside PARSE are only counted as DISK.  When no timer is bound (background threads,
+ * standalone tests) marking a phase is a no-op.
+ * <p>
+ * A timer also collects a few facts about the request (counts and notes such as the SQL shape that was used) so that a
+ * slow request can be explained after the fact by SlowRequestLog.
+ *
+ * @author adamc
+ */
+public class RequestTimer {
+
+    private static final ThreadLocal<RequestTimer> CURRENT = new ThreadLocal<>();
+    private static final PhaseTimer NO_OP = new PhaseTimer(null, null);
+    private static final int MAX_NOTE_VALUES = 10;
+
+    private final String endpoint;
+    private final long startNanos;
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final Deque<Phase> stack = new ArrayDeque<>();
+    private final Map<String, Long> counts = new LinkedHashMap<>();
+    private final Map<String, List<String>> notes = new LinkedHashMap<>();
+    private final Map<String, Integer> statementCounts = new HashMap<>();
+    private long lastMark;
+    private long endNanos = -1;
+
+    private RequestTimer(String endpoint) {
+        this.endpoint = endpoint;
+        this.startNanos = System.nanoTime();
+        this.lastMark = startNanos;
+    }
+
+    /**
+     * Start timing a request on the current thread.
+     *
+     * @param endpoint The name the request is recorded under
+     * @return The new timer
+     */
+    public static RequestTimer begin(String endpoint) {
+        RequestTimer timer = new RequestTimer(endpoint);
+        CURRENT.set(timer);
+        return timer;
+    }
+
+    /**
+     * Stop timing the current thread's request and unbind it.
+     *
+     * @return The finished timer or null if none was bound
+     */
+    public static RequestTimer end() {
+        RequestTimer timer = CURRENT.get();
+        CURRENT.remove();
+        if (timer != null) {
+            timer.finish();
+        }
+        return timer;
+    }
+
+    /**
+     * @return The timer bound to the current thread, or null
+     */
+    public static RequestTimer current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Bind an existing timer to the current thread.  Used when a request's work is handed off to another thread.
+     *
+     * @param timer The timer to bind, or null to unbind
+     */
+    public static void bind(RequestTimer timer) {
+        if (timer == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(timer);
+        }
+    }
+
+    /**
+     * Mark the start of a phase for the current thread's request.
+     *
+     * @param phase The phase being entered
+     * @return A PhaseTimer that ends the phase when closed
+     */
+    public static PhaseTimer phase(Phase phase) {
+        RequestTimer timer = CURRENT.get();
+        if (timer == null) {
+            return NO_OP;
+        }
+        return timer.openPhase(phase);
+    }
+
+    /**
+     * Mark the start of a phase for this request, from any thread.  For phases that end on another thread, e.g., a
+     * view rendered by an async dispatch.
+     *
+     * @param phase The phase being entered
+     * @return A PhaseTimer that ends the phase when closed
+     */
+    public PhaseTimer openPhase(Phase phase) {
+        push(phase);
+        return new PhaseTimer(this, phase);
+    }
+
+    /**
+     * Add time that was measured elsewhere to a phase.  Used when the phase can't be bracketed by a try block, e.g.,
+     * waiting to enter a synchronized block.
+     *
+     * @param phase The phase to charge
+     * @param nanos The elapsed time in nanoseconds
+     */
+    public static void addTime(Phase phase, long nanos) {
+        RequestTimer timer = CURRENT.get();
+        if (timer != null) {
+            synchronized (timer) {
+                timer.phaseNanos[phase.ordinal()] += nanos;
+            }
+        }
+    }
+
+    /**
+     * Add to a named count for the current thread's request, e.g., rows fetched or capture files parsed.
+     *
+     * @param name The name of the count
+     * @param delta The amount to add
+     */
+    public static void count(String name, long delta) {
+        RequestTimer timer = CURRENT.get();
+        if (timer != null) {
+            synchronized (timer) {
+                timer.counts.merge(name, delta, Long::sum);
+            }
+        }
+    }
+
+    /**
+     * Attach a note to the current thread's request.  Repeated notes under the same name are kept in order, up to a
+     * small limit, with duplicates dropped.
+     *
+     * @param name The name of the note
+     * @param value The value to record
+     */
+    public static void note(String name, String value) {
+        RequestTimer timer = CURRENT.get();
+        if (timer != null) {
+            synchronized (timer) {
+                List<String> values = timer.notes.computeIfAbsent(name, k -> new ArrayList<>());
+                if (values.size() < MAX_NOTE_VALUES && !values.contains(value)) {
+                    values.add(value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Count an execution of a SQL template during this request.
+     *
+     * @param template The SQL template that was executed
+     * @return The number of times the template has been executed during this request, including this one
+     */
+    public synchronized int countStatement(String template) {
+        return statementCounts.merge(template, 1, Integer::sum);
+    }
+
+    private synchronized void push(Phase phase) {
+        long now = System.nanoTime();
+        chargeTop(now);
+        stack.push(phase);
+    }
+
+    private synchronized void pop(Phase phase) {
+        long now = System.nanoTime();
+        chargeTop(now);
+        // Phases should be closed in order, but don't let a mistake corrupt the rest of the stack
+        if (stack.peek() == phase) {
+            stack.pop();
+        } else {
+            stack.removeFirstOccurrence(phase);
+        }
+    }
+
+    private void chargeTop(long now) {
+        Phase top = stack.peek();
+        if (top != null) {
+            phaseNanos[top.ordinal()] += now - lastMark;
+        }
+        lastMark = now;
+    }
+
+    /**
+     * Stop the clock.  Called by end, or directly when the request finished on a thread the timer is not bound to.
+     * Only the first call has an effect.
+     */
+    public synchronized void finish() {
+        if (endNanos >= 0) {
+            return;
+        }
+        endNanos = System.nanoTime();
+        chargeTop(endNanos);
+        stack.clear();
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return Total elapsed time of the request so far, or of the whole request once ended
+     */
+    public synchronized long getElapsedNanos() {
+        return (endNanos < 0 ? System.nanoTime() : endNanos) - startNanos;
+    }
+
+    /**
+     * @param phase The phase of interest
+     * @return Time charged to the phase so far
+     */
+    public synchronized long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return A copy of the counts collected so far
+     */
+    public synchronized Map<String, Long> getCounts() {
+        return new LinkedHashMap<>(counts);
+    }
+
+    /**
+     * @return A copy of the notes collected so far
+     */
+    public synchronized Map<String, List<String>> getNotes() {
+        Map<String, List<String>> out = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> e : notes.entrySet()) {
+            out.put(e.getKey(), new ArrayList<>(e.getValue()));
+        }
+        return out;
+    }
+
+    /**
+     * Ends a phase when closed.  Does not throw so it can be used in any try-with-resources block.
+     */
+    public static class PhaseTimer implements AutoCloseable {
+
+        private final RequestTimer timer;
+        private final Phase phase;
+        private boolean closed = false;
+
+        private PhaseTimer(RequestTimer timer, Phase phase) {
+            this.timer = timer;
+            this.phase = phase;
+        }
+
+        @Override
+        public void close() {
+            if (timer != null && !closed) {
+                closed = true;
+                timer.pop(phase);
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package org.jlab.wfbrowser.business.metrics;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jlab.wfbrowser.business.util.ConfigUtil;
+
+/**
+ * Keeps the most recent requests that took longer than a configurable threshold.  Each one is also written to the log
+ * as a single line of JSON so that traces survive a restart.
+ * <p>
+ * The threshold and buffer size are read from wfBrowser.properties (slowRequestThresholdMillis and slowRequestLogSize).
+ *
+ * @author adamc
+ */
+public class SlowRequestLog {
+
+    private static final Logger LOGGER = Logger.getLogger(SlowRequestLog.class.getName());
+    private static final SlowRequestLog INSTANCE = new SlowRequestLog();
+
+    private final Deque<SlowRequestTrace> traces = new ArrayDeque<>();
+    private volatile long thresholdNanos;
+    private final int capacity;
+
+    private SlowRequestLog() {
+        thresholdNanos = ConfigUtil.getLong("slowRequestThresholdMillis", 2000) * 1_000_000L;
+        capacity = ConfigUtil.getInt("slowRequestLogSize", 50);
+    }
+
+    public static SlowRequestLog getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record the request if it was slow.
+     *
+     * @param start When the request started
+     * @param endpoint The name the request's metrics were recorded under
+     * @param method The HTTP method
+     * @param queryString The request's query string, may be null
+     * @param status The HTTP status sent to the client
+     * @param timer The finished timer for the request
+     */
+    public void offer(Instant start, String endpoint, String method, String queryString, int status,
+            RequestTimer timer) {
+        if (timer.getElapsedNanos() < thresholdNanos || capacity <= 0) {
+            return;
+        }
+        SlowRequestTrace trace = new SlowRequestTrace(start, endpoint, method, queryString, status, timer);
+        synchronized (traces) {
+            if (traces.size() >= capacity) {
+                traces.removeLast();
+            }
+            traces.addFirst(trace);
+        }
+        LOGGER.log(Level.WARNING, "Slow request: {0}", trace.toJsonObject().toString());
+    }
+
+    /**
+     * @return The retained traces, most recent first
+     */
+    public List<SlowRequestTrace> getTraces() {
+        synchronized (traces) {
+            return new ArrayList<>(traces);
+        }
+    }
+
+    public long getThresholdMillis() {
+        return thresholdNanos / 1_000_000L;
+    }
+
+    /**
+     * Change the threshold until the next restart.
+     *
+     * @param millis The new threshold in milliseconds
+     */
+    public void setThresholdMillis(long millis) {
+        if (millis < 0) {
+            throw new IllegalArgumentException("Threshold must be non-negative");
+        }
+        thresholdNanos = millis * 1_000_000L;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void clear() {
+        synchronized (traces) {
+            traces.clear();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package org.jlab.wfbrowser.business.metrics;
+
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * An immutable record of a single slow request: what was asked for, how long each phase took, and the counts and notes
+ * collected along the way (rows fetched, capture files and bytes read, archives opened, SQL filter shape).
+ *
+ * @author adamc
+ */
+public class SlowRequestTrace {
+
+    private final Instant start;
+    private final String endpoint;
+    private final String method;
+    private final String queryString;
+    private final int status;
+    private final long elapsedNanos;
+    private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+    private final Map<String, Long> counts;
+    private final Map<String, List<String>> notes;
+
+    SlowRequestTrace(Instant start, String endpoint, String method, String queryString, int status, RequestTimer timer) {
+        this.start = start;
+        this.endpoint = endpoint;
+        this.method = method;
+        this.queryString = queryString;
+        this.status = status;
+        this.elapsedNanos = timer.getElapsedNanos();
+        for (Phase phase : Phase.values()) {
+            phaseNanos.put(phase, timer.getPhaseNanos(phase));
+        }
+        this.counts = Collections.unmodifiableMap(timer.getCounts());
+        this.notes = Collections.unmodifiableMap(timer.getNotes());
+    }
+
+    public Instant getStart() {
+        return start;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getQueryString() {
+        return queryString;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public double getElapsedMillis() {
+        return elapsedNanos / 1e6;
+    }
+
+    /**
+     * @return Milliseconds spent in each phase keyed on the phase label.  Phases with no time are omitted.
+     */
+    public Map<String, Double> getPhaseMillis() {
+        Map<String, Double> out = new LinkedHashMap<>();
+        for (Map.Entry<Phase, Long> e : phaseNanos.entrySet()) {
+            if (e.getValue() > 0) {
+                out.put(e.getKey().getLabel(), e.getValue() / 1e6);
+            }
+        }
+        return out;
+    }
+
+    public Map<String, Long> getCounts() {
+        return counts;
+    }
+
+    public Map<String, List<String>> getNotes() {
+        return notes;
+    }
+
+    /**
+     * @return True if any compressed archive was read while handling the request
+     */
+    public boolean isCompressed() {
+        return notes.containsKey("archives");
+    }
+
+    public JsonObject toJsonObject() {
+        JsonObjectBuilder phases = Json.createObjectBuilder();
+        for (Map.Entry<String, Double> e : getPhaseMillis().entrySet()) {
+            phases.add(e.getKey(), e.getValue());
+        }
+        JsonObjectBuilder countJob = Json.createObjectBuilder();
+        for (Map.Entry<String, Long> e : counts.entrySet()) {
+            countJob.add(e.getKey(), e.getValue());
+        }
+        JsonObjectBuilder noteJob = Json.createObjectBuilder();
+        for (Map.Entry<String, List<String>> e : notes.entrySet()) {
+            JsonArrayBuilder jab = Json.createArrayBuilder();
+            for (String value : e.getValue()) {
+                jab.add(value);
+            }
+            noteJob.add(e.getKey(), jab.build());
+        }
+
+        return Json.createObjectBuilder()
+                .add("start", start.toString())
+                .add("endpoint", endpoint)
+                .add("method", method)
+                .add("query", queryString == null ? "" : queryString)
+                .add("status", status)
+                .add("elapsedMillis", getElapsedMillis())
+                .add("compressed", isCompressed())
+                .add("phaseMillis", phases.build())
+                .add("counts", countJob.build())
+                .add("notes", noteJob.build())
+                .build();
+    }
+}
@@ -0,0 +1,72 @@
+package org.jlab.wfbrowser.business.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An InputStream wrapper that charges the time spent reading to a Phase of the current request and counts the bytes
+ * that pass through it.  Wrapping a file stream with DISK and the decompressing stream above it with DECOMPRESS splits
+ * archive reads into the two phases.  The byte count is added to the request's "&lt;phase&gt;Bytes" count on close.
+ *
+ * @author adamc
+ */
+public class TimedInputStream extends FilterInputStream {
+
+    private final Phase phase;
+    private long bytesRead = 0;
+    private boolean closed = false;
+
+    public TimedInputStream(InputStream in, Phase phase) {
+        super(in);
+        this.phase = phase;
+    }
+
+    @Override
+    public int read() throws IOException {
+        try (RequestTimer.PhaseTimer t = RequestTimer.phase(phase)) {
+            int b = super.read();
+            if (b >= 0) {
+                bytesRead++;
+            }
+            return b;
+        }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        try (RequestTimer.PhaseTimer t = RequestTimer.phase(phase)) {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                bytesRead += n;
+            }
+            return n;
+        }
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        try (RequestTimer.PhaseTimer t = RequestTimer.phase(phase)) {
+            return super.skip(n);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (!closed) {
+                closed = true;
+                RequestTimer.count(phase.getLabel() + "Bytes", bytesRead);
+            }
+        }
+    }
+
+    /**
+     * @return The number of bytes read through this stream
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+}
@@ -0,0 +1,177 @@
+package org.jlab.wfbrowser.business.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import org.jlab.wfbrowser.business.filter.EventFilter;
+import org.jlab.wfbrowser.business.metrics.RequestTimer;
+import org.jlab.wfbrowser.business.util.SqlUtil;
+import org.jlab.wfbrowser.business.util.StringDictionary;
+import org.jlab.wfbrowser.business.util.TimeUtil;
+import org.jlab.wfbrowser.model.EventHeader;
+import org.jlab.wfbrowser.model.Label;
+
+/**
+ * Reads EventHeaders from the database and hands them to a consumer one at a time as the rows stream in.  The label
+ * join returns one row per label, ordered so that an event's rows are adjacent, so only the event currently being read
+ * is held while its labels are collected.  The drivers buffer the whole result set by default, so the statement asks
+ * for rows to be streamed instead (see stream).  Strings that repeat across rows (location, system, label names, etc.) go
+ * through StringDictionary so that every header shares the same instances.
+ * <p>
+ * Used by EventService for header-only queries and by EventTimeIndex to load the index.
+ *
+ * @author adamc
+ */
+class EventHeaderReader {
+
+    private static final String SQL = "SELECT event_id, event_time_utc, location, system_name, archive, to_be_deleted,"
+            + " grouped, classification, num_cf,"
+            + " label_id, model_name, label_time_utc, label_name, label_value, label_confidence"
+            + " FROM (SELECT event_id, event_time_utc, location, system_name, archive, to_be_deleted, grouped,"
+            + "     classification, count(*) AS num_cf"
+            + "   FROM event"
+            + "   JOIN system_type USING(system_id)"
+            + "   JOIN capture USING(event_id)";
+    private static final String SQL_GROUP = "   GROUP BY event_id"
+            + " ) AS t"
+            + " LEFT JOIN label USING(event_id)";
+    private static final String SQL_ORDER = " ORDER BY event_time_utc, event_id, label_name, model_name DESC";
+
+    // The event whose rows are currently being read
+    private long eventId;
+    private long eventTimeMicros;
+    private String location, system, classification;
+    private boolean archive, delete, grouped;
+    private int numCaptureFiles;
+    private final List<Label> labels = new ArrayList<>();
+    private boolean pending = false;
+
+    // Rows per round trip when streaming from MariaDB Connector/J
+    private static final int FETCH_SIZE = 1000;
+
+    private EventHeaderReader() {
+    }
+
+    /**
+     * Ask the driver to stream a statement's rows instead of reading the whole result set into memory before the first
+     * row is returned.  MySQL Connector/J only streams with a fetch size of Integer.MIN_VALUE, one row at a time, and
+     * rejects any other fetch size short of useCursorFetch.  MariaDB Connector/J streams with any positive fetch size
+     * and reads that many rows at a time.  Other drivers are left alone.  While rows are streaming the connection can't
+     * run other statements, so consumers must not use it.
+     */
+    private static void stream(Connection conn, PreparedStatement pstmt) throws SQLException {
+        String driver = conn.getMetaData().getDriverName();
+        if (driver == null) {
+            return;
+        }
+        driver = driver.toLowerCase();
+        if (driver.contains("mariadb")) {
+            pstmt.setFetchSize(FETCH_SIZE);
+        } else if (driver.contains("mysql")) {
+            pstmt.setFetchSize(Integer.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Query the headers of the events matching a filter, in event time order.
+     *
+     * @param conn The connection to use.  Not closed.
+     * @param filter The filter to apply.  May be null for every event.
+     * @param consumer Receives each header as soon as its last row has been read.  Must not use conn.
+     * @throws SQLException If problems arise while querying the database
+     */
+    static void read(Connection conn, EventFilter filter, Consumer<EventHeader> consumer) throws SQLException {
+        String sql = SQL;
+
+        // Unless the subquery is filtered too it counts the capture files of the entire database
+        EventFilter subqueryFilter = null;
+        if (filter != null && ((filter.getEventIdList() != null && !filter.getEventIdList().isEmpty())
+                || filter.getBegin() != null || filter.getEnd() != null || filter.getSystem() != null)) {
+            subqueryFilter = new EventFilter(filter.getEventIdList(), filter.getBegin(), filter.getEnd(),
+                    filter.getSystem(), null, null, null, null, null);
+            sql += subqueryFilter.getWhereClause();
+        }
+        sql += SQL_GROUP;
+        if (filter != null) {
+            sql += filter.getWhereClause();
+        }
+        sql += SQL_ORDER;
+
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            pstmt = conn.prepareStatement(sql);
+            stream(conn, pstmt);
+            Integer index = null;
+            if (subqueryFilter != null) {
+                index = subqueryFilter.assignParameterValues(pstmt, index);
+            }
+            if (filter != null) {
+                filter.assignParameterValues(pstmt, index);
+            }
+
+            rs = pstmt.executeQuery();
+            EventHeaderReader reader = new EventHeaderReader();
+            int rows = 0;
+            while (rs.next()) {
+                reader.accept(rs, consumer);
+                rows++;
+            }
+            reader.flush(consumer);
+            RequestTimer.count("headerRows", rows);
+        } finally {
+            SqlUtil.close(rs, pstmt);
+        }
+    }
+
+    /**
+     * Read one row.  If it starts a new event, the previous event is complete and is passed to the consumer.
+     */
+    private void accept(ResultSet rs, Consumer<EventHeader> consumer) throws SQLException {
+        long id = rs.getLong("event_id");
+        if (!pending || id != eventId) {
+            flush(consumer);
+            eventId = id;
+            Instant time = TimeUtil.getInstantFromSQLDateTime(rs, "event_time_utc");
+            eventTimeMicros = Math.addExact(Math.multiplyExact(time.getEpochSecond(), 1_000_000L), time.getNano() / 1000);
+            location = StringDictionary.intern(rs.getString("location"));
+            system = StringDictionary.intern(rs.getString("system_name"));
+            classification = StringDictionary.intern(rs.getString("classification"));
+            archive = rs.getBoolean("archive");
+            delete = rs.getBoolean("to_be_deleted");
+            grouped = rs.getBoolean("grouped");
+            numCaptureFiles = rs.getInt("num_cf");
+            if (location == null || system == null || classification == null) {
+                // All of these should have NOT NULL constraints on them.  Verify that something hasn't gone wrong
+                throw new SQLException("Error querying event information from database");
+            }
+            pending = true;
+        }
+
+        long labelId = rs.getLong("label_id");
+        if (!rs.wasNull()) {
+            labels.add(new Label(labelId, TimeUtil.getInstantFromSQLDateTime(rs, "label_time_utc"),
+                    StringDictionary.intern(rs.getString("model_name")),
+                    StringDictionary.intern(rs.getString("label_name")),
+                    StringDictionary.intern(rs.getString("label_value")), rs.getDouble("label_confidence")));
+        }
+    }
+
+    /**
+     * Pass the event currently being read, if any, to the consumer.
+     */
+    private void flush(Consumer<EventHeader> consumer) {
+        if (!pending) {
+            return;
+        }
+        consumer.accept(new EventHeader(eventId, eventTimeMicros, location, system, classification, archive, delete,
+                grouped, numCaptureFiles, labels.toArray(new Label[0])));
+        labels.clear();
+        pending = false;
+    }
+}
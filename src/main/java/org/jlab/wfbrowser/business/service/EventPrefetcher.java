@@ -0,0 +1,232 @@
+package org.jlab.wfbrowser.business.service;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jlab.wfbrowser.business.filter.EventFilter;
+import org.jlab.wfbrowser.business.util.ConfigUtil;
+import org.jlab.wfbrowser.business.util.WaveformSidecar;
+import org.jlab.wfbrowser.model.Event;
+import org.jlab.wfbrowser.model.EventHeader;
+
+/**
+ * Gets the events next to the one the graph page is showing ready to load before the user steps to them.  After the
+ * graph page loads an event, the previous and next events at the same location (within the page's filter) are loaded
+ * in the background.  The first load of an event parses its capture files and writes binary sidecars, so a later step
+ * to a prefetched event only has to read those.  Decoded data is not kept in memory.  That would compete with the
+ * requests that are being served for heap, and the sidecars are read quickly enough.
+ * <p>
+ * Prefetching runs on a small pool with a short queue.  When the queue is full the oldest queued prefetch is cancelled,
+ * and a new prefetch for a session cancels that session's prefetches that have not started yet, since the user has
+ * moved on.  Events whose sidecars already exist are skipped.  Nothing is prefetched if sidecars are disabled.
+ * <p>
+ * Settings are read from wfBrowser.properties (prefetchThreads, prefetchQueueSize and prefetchNeighbors).  A
+ * prefetchThreads of 0 turns prefetching off.
+ *
+ * @author adamc
+ */
+public class EventPrefetcher {
+
+    private static final Logger LOGGER = Logger.getLogger(EventPrefetcher.class.getName());
+    private static final EventPrefetcher INSTANCE = new EventPrefetcher();
+
+    private final int numThreads;
+    private final int queueSize;
+    private final int numNeighbors;
+
+    // Session ID -> that session's outstanding prefetches
+    private final Map<String, List<Future<?>>> pending = new ConcurrentHashMap<>();
+    // Events currently being prefetched, so that two sessions don't load the same event
+    private final Set<Long> inProgress = ConcurrentHashMap.newKeySet();
+    private ThreadPoolExecutor executor = null;
+
+    private EventPrefetcher() {
+        numThreads = ConfigUtil.getInt("prefetchThreads", 2);
+        queueSize = ConfigUtil.getInt("prefetchQueueSize", 8);
+        numNeighbors = ConfigUtil.getInt("prefetchNeighbors", 1);
+    }
+
+    public static EventPrefetcher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start the prefetch pool.  Called at application startup.
+     */
+    public synchronized void start() {
+        if (executor != null || numThreads <= 0 || !WaveformSidecar.isEnabled()) {
+            return;
+        }
+        AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, queueSize)), r -> {
+                    Thread t = new Thread(r, "event-prefetch-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }, EventPrefetcher::discardOldest);
+    }
+
+    /**
+     * Make room for a new prefetch by dropping the oldest queued one.  The dropped prefetch is cancelled so that it
+     * counts as done, otherwise its session would never be forgotten.  Like DiscardOldestPolicy, except for the cancel.
+     *
+     * @param r The prefetch that was rejected
+     * @param ex The pool that rejected it
+     */
+    private static void discardOldest(Runnable r, ThreadPoolExecutor ex) {
+        if (ex.isShutdown()) {
+            cancel(r);
+            return;
+        }
+        cancel(ex.getQueue().poll());
+        if (!ex.getQueue().offer(r)) {
+            // Another thread took the slot first
+            cancel(r);
+        }
+    }
+
+    private static void cancel(Runnable r) {
+        if (r instanceof Future) {
+            ((Future<?>) r).cancel(false);
+        }
+    }
+
+    /**
+     * Stop the prefetch pool.  Called at application shutdown.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        pending.clear();
+        inProgress.clear();
+    }
+
+    /**
+     * Prefetch the events before and after an event at the same location.  Returns right away.
+     *
+     * @param sessionId The session the event was shown to.  Its earlier prefetches that haven't started are cancelled.
+     * @param eventId The event that was just shown
+     * @param filter The filter the user is stepping through, e.g., the graph page's time range and classifications
+     */
+    public void prefetchNeighbors(String sessionId, long eventId, EventFilter filter) {
+        ThreadPoolExecutor ex;
+        synchronized (this) {
+            ex = executor;
+        }
+        if (ex == null) {
+            return;
+        }
+
+        // Forget sessions whose prefetches are all done, e.g. sessions that have expired
+        pending.values().removeIf(list -> {
+            synchronized (list) {
+                return list.stream().allMatch(Future::isDone);
+            }
+        });
+
+        List<Future<?>> futures = Collections.synchronizedList(new ArrayList<>());
+        List<Future<?>> previous = pending.put(sessionId, futures);
+        if (previous != null) {
+            synchronized (previous) {
+                for (Future<?> f : previous) {
+                    // Let started loads finish so that they leave complete sidecars behind
+                    f.cancel(false);
+                }
+            }
+        }
+
+        futures.add(ex.submit(() -> {
+            try {
+                for (long id : findNeighbors(eventId, filter)) {
+                    if (pending.get(sessionId) != futures) {
+                        // The session has since asked for another event
+                        return;
+                    }
+                    futures.add(ex.submit(() -> prefetch(id)));
+                }
+            } catch (SQLException | RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Unable to find neighbors of event " + eventId + " to prefetch", e);
+            }
+        }));
+    }
+
+    /**
+     * Find the closest events before and after an event at the same location.
+     *
+     * @param eventId The event
+     * @param filter The filter to apply
+     * @return The neighboring event IDs, nearest first
+     */
+    private List<Long> findNeighbors(long eventId, EventFilter filter) throws SQLException {
+        // Answered from the event time index once it is warm
+        List<EventHeader> events = new EventService().getEventHeaderList(filter);
+        int index = -1;
+        for (int i = 0; i < events.size(); i++) {
+            if (events.get(i).getEventId() == eventId) {
+                index = i;
+                break;
+            }
+        }
+        List<Long> neighbors = new ArrayList<>();
+        if (index < 0) {
+            return neighbors;
+        }
+
+        String location = events.get(index).getLocation();
+        int before = 0;
+        int after = 0;
+        int distance = 1;
+        while ((before < numNeighbors && index - distance >= 0) || (after < numNeighbors && index + distance < events.size())) {
+            if (before < numNeighbors && index - distance >= 0 && events.get(index - distance).getLocation().equals(location)) {
+                neighbors.add(events.get(index - distance).getEventId());
+                before++;
+            }
+            if (after < numNeighbors && index + distance < events.size() && events.get(index + distance).getLocation().equals(location)) {
+                neighbors.add(events.get(index + distance).getEventId());
+                after++;
+            }
+            distance++;
+        }
+        return neighbors;
+    }
+
+    /**
+     * Load an event so that its sidecars get written, unless it already has them.
+     *
+     * @param eventId The event to load
+     */
+    private void prefetch(long eventId) {
+        if (!inProgress.add(eventId)) {
+            return;
+        }
+        try {
+            EventService es = new EventService();
+            EventFilter filter = new EventFilter(Collections.singletonList(eventId), null, null, null, null, null, null,
+                    null, null);
+            List<Event> events = es.getEventList(filter, null, false, true);
+            if (events.isEmpty() || events.get(0).hasWaveformSidecars()) {
+                return;
+            }
+            events.get(0).loadWaveformDataFromDisk();
+        } catch (SQLException | IOException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Unable to prefetch event " + eventId, e);
+        } finally {
+            inProgress.remove(eventId);
+        }
+    }
+}
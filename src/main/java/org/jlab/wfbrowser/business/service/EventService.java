@@ -10,12 +10,18 @@ import java.util.logging.Logger;
 
 import org.jlab.wfbrowser.business.filter.EventFilter;
 import org.jlab.wfbrowser.business.filter.LabelFilter;
+import org.jlab.wfbrowser.business.metrics.RequestTimer;
 import org.jlab.wfbrowser.business.util.SqlUtil;
+import org.jlab.wfbrowser.business.util.StringDictionary;
 import org.jlab.wfbrowser.business.util.TimeUtil;
+import org.jlab.wfbrowser.business.util.EventArchiveCache;
+import org.jlab.wfbrowser.business.util.WaveformSidecar;
 import org.jlab.wfbrowser.model.CaptureFile.CaptureFile;
 import org.jlab.wfbrowser.model.CaptureFile.Metadata;
 import org.jlab.wfbrowser.model.CaptureFile.MetadataType;
 import org.jlab.wfbrowser.model.Event;
+import org.jlab.wfbrowser.model.EventFacetCounts;
+import org.jlab.wfbrowser.model.EventHeader;
 import org.jlab.wfbrowser.model.Label;
 import org.jlab.wfbrowser.model.Series;
 import org.jlab.wfbrowser.model.Waveform;
@@ -232,10 +238,16 @@ public class EventService {
                     }
                 }
             }
+            LabelTallyService.moveCount(conn, null, LabelTallyService.getTallyKey(conn, eventId));
             conn.commit();
         } finally {
             SqlUtil.close(rs, pstmt, conn);
         }
+        EventTimeIndex.getInstance().refresh(eventId);
+
+        // If the event was parsed with its data, write the binary copy now while the data is in memory.  Events added
+        // without data get theirs on first read.
+        e.writeWaveformSidecars(eventId);
         return eventId;
     }
 
@@ -250,12 +262,107 @@ public class EventService {
      * @throws IOException  If problems arise accessing waveform data on disk
      */
     public Event getMostRecentEvent(EventFilter filter, boolean includeData) throws SQLException, IOException {
-        List<Event> eventList = getEventList(filter, 1L, includeData, includeData);
-        Event out = null;
-        if (!eventList.isEmpty()) {
-            out = eventList.get(0);
+        return getMostRecentEvent(filter, includeData, null);
+    }
+
+    /**
+     * Get the most recent event in the database given the applied filter.
+     * Optionally includes data for the waveforms in a set of series.
+     * <p>
+     * Only the newest event header is read.  The filter is applied to the
+     * event table directly, with no derived table, so that the ORDER BY
+     * event_time_utc DESC LIMIT 1 can read the (system_id, event_time_utc)
+     * index backwards and stop at the first match.  Capture files are checked
+     * with an EXISTS on capture's (event_id, filename) key, and counted only
+     * when the filter has a minimum number of capture files.  Labels are read
+     * with a second query keyed on the event ID.
+     *
+     * @param filter An event filter for narrowing down the acceptable Event responses
+     * @param includeData Should data be included
+     * @param seriesSet The series whose waveforms should have data.  Null for all.
+     * @return The most recent event passing the filter, or null if there are none
+     * @throws SQLException If problems arise accessing database
+     * @throws IOException  If problems arise accessing waveform data on disk
+     */
+    public Event getMostRecentEvent(EventFilter filter, boolean includeData, Set<String> seriesSet)
+            throws SQLException, IOException {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        Event event = null;
+
+        try {
+            conn = SqlUtil.getConnection();
+
+            // num_cf only exists in the derived tables of the list queries, so minCF is applied separately here
+            EventFilter eventFilter = (filter == null) ? null : new EventFilter(filter.getEventIdList(),
+                    filter.getBegin(), filter.getEnd(), filter.getSystem(), filter.getLocationList(),
+                    filter.getClassificationList(), filter.getArchive(), filter.getDelete(), null);
+            Integer minCaptureFiles = (filter == null) ? null : filter.getMinCaptureFiles();
+
+            // Events without capture files are excluded, same as the capture join in getEventList
+            String where = (eventFilter == null) ? "" : eventFilter.getWhereClause();
+            String sql = "SELECT event_id, event_time_utc, location, system_name, archive, to_be_deleted, grouped,"
+                    + " classification"
+                    + " FROM event"
+                    + " JOIN system_type USING(system_id)"
+                    + where
+                    + (where.isEmpty() ? " WHERE" : " AND")
+                    + " EXISTS (SELECT 1 FROM capture WHERE capture.event_id = event.event_id)"
+                    + (minCaptureFiles == null ? ""
+                    : " AND (SELECT COUNT(*) FROM capture WHERE capture.event_id = event.event_id) >= ?")
+                    + " ORDER BY event_time_utc DESC, event_id DESC"
+                    + " LIMIT 1";
+            pstmt = conn.prepareStatement(sql);
+            int index = 1;
+            if (eventFilter != null) {
+                index = eventFilter.assignParameterValues(pstmt, index);
+            }
+            if (minCaptureFiles != null) {
+                pstmt.setInt(index, minCaptureFiles);
+            }
+            rs = pstmt.executeQuery();
+            if (rs.next()) {
+                long eventId = rs.getLong("event_id");
+                Instant eventTime = TimeUtil.getInstantFromSQLDateTime(rs, "event_time_utc");
+                String location = StringDictionary.intern(rs.getString("location"));
+                String system = StringDictionary.intern(rs.getString("system_name"));
+                boolean archive = rs.getBoolean("archive");
+                boolean delete = rs.getBoolean("to_be_deleted");
+                boolean grouped = rs.getBoolean("grouped");
+                String classification = StringDictionary.intern(rs.getString("classification"));
+                rs.close();
+                pstmt.close();
+
+                String labelSql = "SELECT label_id, model_name, label_time_utc, label_name, label_value, label_confidence"
+                        + " FROM label"
+                        + " WHERE event_id = ?"
+                        + " ORDER BY label_name, model_name DESC";
+                pstmt = conn.prepareStatement(labelSql);
+                pstmt.setLong(1, eventId);
+                rs = pstmt.executeQuery();
+                List<Label> labelList = new ArrayList<>();
+                while (rs.next()) {
+                    labelList.add(new Label(rs.getLong("label_id"), TimeUtil.getInstantFromSQLDateTime(rs, "label_time_utc"),
+                            StringDictionary.intern(rs.getString("model_name")),
+                            StringDictionary.intern(rs.getString("label_name")),
+                            StringDictionary.intern(rs.getString("label_value")), rs.getDouble("label_confidence")));
+                }
+
+                // Events without labels have a null label list, same as getEventList
+                event = new Event(eventId, eventTime, location, system, archive, delete, grouped, classification,
+                        labelList.isEmpty() ? null : labelList);
+
+                if (includeData) {
+                    addCaptureFiles(conn, Collections.singletonList(event));
+                    event.loadWaveformDataFromDisk(seriesSet);
+                }
+            }
+        } finally {
+            SqlUtil.close(rs, pstmt, conn);
         }
-        return out;
+
+        return event;
     }
 
     /**
@@ -267,7 +374,11 @@ public class EventService {
      * @throws SQLException If problems arise accessing data on disk
      */
     public List<String> getLocationNames(List<String> systemList) throws SQLException {
-        List<String> out = new ArrayList<>();
+        List<String> out = EventTimeIndex.getInstance().getLocationNames(systemList);
+        if (out != null) {
+            return out;
+        }
+        out = new ArrayList<>();
         StringBuilder sql = new StringBuilder("SELECT DISTINCT location"
                 + " FROM event"
                 + " JOIN system_type ON event.system_id = system_type.system_id");
@@ -313,7 +424,11 @@ public class EventService {
      * @throws SQLException If problems arise accessing the database
      */
     public List<String> getClassifications(List<String> systemList) throws SQLException {
-        List<String> out = new ArrayList<>();
+        List<String> out = EventTimeIndex.getInstance().getClassifications(systemList);
+        if (out != null) {
+            return out;
+        }
+        out = new ArrayList<>();
         StringBuilder sql = new StringBuilder("SELECT DISTINCT classification"
                 + " FROM event"
                 + " JOIN system_type ON event.system_id = system_type.system_id");
@@ -425,6 +540,50 @@ public class EventService {
     }
 
 
+    /**
+     * Get the headers of the events matching the specified filter, ordered by event time.  This is the cheapest way
+     * to list events when none of their capture files or data are needed (timelines, report tables, etc.).  Headers
+     * are immutable and much smaller than Events.
+     *
+     * @param filter EventFilter for narrowing down the which events are returned
+     * @return A list of event headers
+     * @throws SQLException If problems arise while accessing the database
+     */
+    public List<EventHeader> getEventHeaderList(EventFilter filter) throws SQLException {
+        List<EventHeader> headers = EventTimeIndex.getInstance().getHeaders(filter);
+        if (headers != null) {
+            RequestTimer.note("eventSource", "index");
+            return headers;
+        }
+
+        headers = new ArrayList<>();
+        Connection conn = null;
+        try {
+            conn = SqlUtil.getConnection();
+            EventHeaderReader.read(conn, filter, headers::add);
+        } finally {
+            SqlUtil.close(conn);
+        }
+        return headers;
+    }
+
+    /**
+     * Count the events matching a filter by location, classification and label value, for showing next to the
+     * options of the filter panels.  See EventFacetCounts for what each count means.  The counts are only answered from
+     * the event time index.  While it is not ready there are none, rather than a scan of every matching event's header
+     * for each change a user makes to a filter panel.
+     *
+     * @param filter EventFilter for narrowing down which events are counted
+     * @return The counts, or null if the event time index is not ready
+     */
+    public EventFacetCounts getFacetCounts(EventFilter filter) {
+        EventFacetCounts counts = EventTimeIndex.getInstance().getFacetCounts(filter);
+        if (counts != null) {
+            RequestTimer.note("eventSource", "index");
+        }
+        return counts;
+    }
+
     /**
      * Get a list of events from the database matching the specified filter.
      * Useful for querying what events exist without the overhead of
@@ -438,7 +597,13 @@ public class EventService {
      * @throws IOException  If problems arise while accessing waveform data from disk
      */
     public List<Event> getEventListWithoutCaptureFiles(EventFilter filter) throws SQLException, IOException {
-        return getEventList(filter, null, false, false);
+        // Events may have labels added to them, so each gets its own copy of the header's labels
+        List<EventHeader> headers = getEventHeaderList(filter);
+        List<Event> events = new ArrayList<>(headers.size());
+        for (EventHeader h : headers) {
+            events.add(h.toEvent());
+        }
+        return events;
 //        Map<Long, Event> eventMap = new HashMap<>();
 //        //List<Event> events = new ArrayList<>();
 //        Connection conn = null;
@@ -489,7 +654,7 @@ public class EventService {
 //                if (rs.wasNull()) {
 //                    labelId = null;
 //                }
-//                modelName = rs.getString("model_name");
+//                modelName = StringDictionary.intern(rs.getString("model_name"));
 //                labelTime = TimeUtil.getInstantFromSQLDateTime(rs, "label_time_utc");
 //                labelName = rs.getString("label_name");
 //                labelValue = rs.getString("label_value");
@@ -531,6 +696,26 @@ public class EventService {
      */
     public List<Event> getEventList(EventFilter filter, Long limit, boolean includeData, boolean includeCaptureFiles)
             throws SQLException, IOException {
+        return getEventList(filter, limit, includeData, includeCaptureFiles, null);
+    }
+
+    /**
+     * Returns the event object mapping to the event records with eventId from
+     * the database, with waveform data read only for the waveforms in a set of
+     * series.
+     *
+     * @param filter      EventFilter for narrowing down which Events are returned
+     * @param limit       How many events to return. Null for unlimited
+     * @param includeData Whether the events should include waveform data read
+     *                    from disk
+     * @param includeCaptureFiles Whether the events should include their capture files
+     * @param seriesSet   The series whose waveforms should have data.  Null for all.
+     * @return The list of Events that match the filter criteria ordered by event time.
+     * @throws SQLException If problems arise accessing the database
+     * @throws IOException  If problems arise accessing waveform data on disk
+     */
+    public List<Event> getEventList(EventFilter filter, Long limit, boolean includeData, boolean includeCaptureFiles,
+            Set<String> seriesSet) throws SQLException, IOException {
 
         // Can't get data without capture files.  Make sure someone isn't requesting that.
         // TODO: Check if there is a better way to organize these types of requests
@@ -539,12 +724,103 @@ public class EventService {
         }
 
         Connection conn = null;
+        Map<Long, Event> eventMap;
+        try {
+            conn = SqlUtil.getConnection();
+            eventMap = queryEvents(conn, filter, limit);
+
+            if (includeCaptureFiles) {
+                addCaptureFiles(conn, eventMap.values());
+            }
+        } finally {
+            SqlUtil.close(conn);
+        }
+
+        // Now get the data if requested.  Only the disk is read, so the connection has already been given back.
+        if (includeData) {
+            for (Event e : eventMap.values()) {
+                e.loadWaveformDataFromDisk(seriesSet);
+            }
+        }
+
+        // Convert this map to a list for external consumption.  We only needed to track them by ID when constructing
+        // events from the database
+        return new ArrayList<>(eventMap.values());
+    }
+
+    /**
+     * Receives events one at a time from forEachEvent.
+     */
+    public interface EventConsumer {
+
+        /**
+         * @param e The next event
+         * @return True to keep going, false to stop without loading any more events
+         * @throws IOException If the event could not be handled
+         */
+        boolean accept(Event e) throws IOException;
+    }
+
+    /**
+     * Pass the events matching the filter to a consumer one at a time, in event time order, without ever holding more
+     * than one event's waveform data in memory.  The events, labels and capture file rows are read up front since they
+     * are small, and then the request's unit of work is released so that no connection or transaction is held while the
+     * response streams.  Each event's metadata and (optionally) waveform data are loaded from disk just before it is
+     * handed to the consumer and dropped once the consumer returns.
+     *
+     * @param filter      EventFilter for narrowing down which Events are returned
+     * @param includeData Whether the events should include waveform data read from disk
+     * @param seriesSet   The series whose waveforms should have data.  Null for all.
+     * @param consumer    Called once per event until it returns false
+     * @throws SQLException If problems arise accessing the database
+     * @throws IOException  If problems arise accessing waveform data on disk, or thrown by the consumer
+     */
+    public void forEachEvent(EventFilter filter, boolean includeData, Set<String> seriesSet, EventConsumer consumer)
+            throws SQLException, IOException {
+        Connection conn = null;
+        Map<Long, Event> eventMap;
+        try {
+            conn = SqlUtil.getConnection();
+            eventMap = queryEvents(conn, filter, null);
+            addCaptureFiles(conn, eventMap.values());
+        } finally {
+            SqlUtil.close(conn);
+        }
+        // Nothing below uses the database, and the consumer may take as long as the client does to read the response
+        SqlUtil.releaseUnitOfWork();
+
+        Iterator<Event> it = eventMap.values().iterator();
+        while (it.hasNext()) {
+            Event e = it.next();
+            it.remove();
+            if (includeData) {
+                e.loadWaveformDataFromDisk(seriesSet);
+            }
+            if (!consumer.accept(e)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Query the event and label tables for the events matching a filter.  Capture files are not included.
+     *
+     * @param conn   The connection to query
+     * @param filter EventFilter for narrowing down which Events are returned
+     * @param limit  How many events to return. Null for unlimited
+     * @return The matching events keyed on event ID in event time order
+     * @throws SQLException If problems arise accessing the database
+     * @throws IOException  If problems arise constructing an Event
+     */
+    private Map<Long, Event> queryEvents(Connection conn, EventFilter filter, Long limit)
+            throws SQLException, IOException {
         PreparedStatement pstmt = null;
         ResultSet rs = null;
 
         // We'll use a map to store events as we build them.  Since we need to construct a group of events and it requires
         // a couple of calls to the database, we use a Map to provide fast access to events by their database event_id.
-        Map<Long, Event> eventMap = new HashMap<>();
+        // Linked so that the events stay in the order returned by the query.
+        Map<Long, Event> eventMap = new LinkedHashMap<>();
 
         // declare some of the variables we'll need to construct events.
         long eventId;
@@ -559,8 +835,6 @@ public class EventService {
         EventFilter subqueryFilter = null;
 
         try {
-            conn = SqlUtil.getConnection();
-
             String getEventSql = "SELECT event_id,event_time_utc,location,system_name,archive,to_be_deleted,grouped,classification," +
                     "label_id, model_name, label_time_utc, label_name, label_value, label_confidence"
                     + " FROM (SELECT *, count(*) AS num_cf FROM event"
@@ -579,6 +853,7 @@ public class EventService {
 
             if (filter != null) {
                 getEventSql += filter.getWhereClause();
+                RequestTimer.note("eventFilter", filter.getWhereClause());
             }
             // Sorting on event_time_utc, label_name and model_name makes the query result repeatable.
             getEventSql += " ORDER BY event_time_utc, label_name, model_name DESC";
@@ -599,18 +874,18 @@ public class EventService {
             while (rs.next()) {
                 eventId = rs.getLong("event_id");
                 eventTime = TimeUtil.getInstantFromSQLDateTime(rs, "event_time_utc");
-                location = rs.getString("location");
-                system = rs.getString("system_name");
+                location = StringDictionary.intern(rs.getString("location"));
+                system = StringDictionary.intern(rs.getString("system_name"));
                 archive = rs.getBoolean("archive");
                 delete = rs.getBoolean("to_be_deleted");
                 grouped = rs.getBoolean("grouped");
-                classification = rs.getString("classification");
+                classification = StringDictionary.intern(rs.getString("classification"));
                 labelId = rs.getLong("label_id");
                 labelId = rs.wasNull() ? null : labelId; // labelId will be NULL only if the event has no associated labels
-                modelName = rs.getString("model_name");
+                modelName = StringDictionary.intern(rs.getString("model_name"));
                 labelTime = TimeUtil.getInstantFromSQLDateTime(rs, "label_time_utc");
-                labelName = rs.getString("label_name");
-                labelValue = rs.getString("label_value");
+                labelName = StringDictionary.intern(rs.getString("label_name"));
+                labelValue = StringDictionary.intern(rs.getString("label_value"));
                 labelConfidence = rs.getDouble("label_confidence");
 
                 if (location == null || system == null) {
@@ -635,145 +910,182 @@ public class EventService {
                     }
                 }
             }
-            rs.close();
+        } finally {
+            SqlUtil.close(rs, pstmt);
+        }
+
+        return eventMap;
+    }
+
+    /**
+     * Add capture files, their waveforms (without data), capture file metadata and the waveform to series mapping to
+     * events.
+     *
+     * @param conn   The connection to query
+     * @param events The events to update
+     * @throws SQLException If problems arise accessing the database
+     */
+    private void addCaptureFiles(Connection conn, Collection<Event> events) throws SQLException {
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+
+        try {
+            // For each event, go through the database and load up the capture file information.  We''ll come back and do a
+            // second pass to add the waveform data to the CaptureFiles.
+            String captureSql = "SELECT capture_id, filename, sample_start, sample_end, sample_step "
+                    + " FROM capture"
+                    + " WHERE event_id = ?";
+            pstmt = conn.prepareStatement(captureSql, Statement.RETURN_GENERATED_KEYS);
+            for (Event e : events) {
+                pstmt.setLong(1, e.getEventId());
+                rs = pstmt.executeQuery();
+                long captureId;
+                String filename;
+                double sampleStart, sampleEnd, sampleStep;
+                while (rs.next()) {
+                    captureId = rs.getLong("capture_id");
+                    filename = rs.getString("filename");
+                    sampleStart = rs.getDouble("sample_start");
+                    sampleEnd = rs.getDouble("sample_end");
+                    sampleStep = rs.getDouble("sample_step");
+                    e.addCaptureFile(new CaptureFile(captureId, filename, sampleStart, sampleEnd, sampleStep));
+                }
+                rs.close();
+            }
             pstmt.close();
 
-            if (includeCaptureFiles) {
-                // For each event, go through the database and load up the capture file information.  We''ll come back and do a
-                // second pass to add the waveform data to the CaptureFiles.
-                String captureSql = "SELECT capture_id, filename, sample_start, sample_end, sample_step "
-                        + " FROM capture"
-                        + " WHERE event_id = ?";
-                pstmt = conn.prepareStatement(captureSql, Statement.RETURN_GENERATED_KEYS);
-                for (Event e : eventMap.values()) {
-                    pstmt.setLong(1, e.getEventId());
+            // For each event, get the recently constructed CaptureFiles, then add waveforms without data to them.  We'll add data later if it was requested.
+            String waveformSql = "SELECT cwf_id, waveform_name FROM capture_wf WHERE capture_id = ?";
+            pstmt = conn.prepareStatement(waveformSql);
+            for (Event e : events) {
+                String waveformName;
+                Long cwfId;
+                for (CaptureFile cf : e.getCaptureFileList()) {
+                    pstmt.setLong(1, cf.getCaptureId());
                     rs = pstmt.executeQuery();
-                    long captureId;
-                    String filename;
-                    double sampleStart, sampleEnd, sampleStep;
                     while (rs.next()) {
-                        captureId = rs.getLong("capture_id");
-                        filename = rs.getString("filename");
-                        sampleStart = rs.getDouble("sample_start");
-                        sampleEnd = rs.getDouble("sample_end");
-                        sampleStep = rs.getDouble("sample_step");
-                        e.addCaptureFile(new CaptureFile(captureId, filename, sampleStart, sampleEnd, sampleStep));
+                        cwfId = rs.getLong("cwf_id");
+                        waveformName = StringDictionary.intern(rs.getString("waveform_name"));
+                        e.addWaveform(cf.getFilename(), new Waveform(cwfId, waveformName));
                     }
                     rs.close();
                 }
-                pstmt.close();
+            }
+            pstmt.close();
 
-                // For each event, get the recently constructed CaptureFiles, then add waveforms without data to them.  We'll add data later if it was requested.
-                String waveformSql = "SELECT cwf_id, waveform_name FROM capture_wf WHERE capture_id = ?";
-                pstmt = conn.prepareStatement(waveformSql);
-                for (Event e : eventMap.values()) {
-                    String waveformName;
-                    Long cwfId;
-                    for (CaptureFile cf : e.getCaptureFileList()) {
-                        pstmt.setLong(1, cf.getCaptureId());
-                        rs = pstmt.executeQuery();
-                        while (rs.next()) {
-                            cwfId = rs.getLong("cwf_id");
-                            waveformName = rs.getString("waveform_name");
-                            e.addWaveform(cf.getFilename(), new Waveform(cwfId, waveformName));
+            // Load up the capture file metadata
+            String metaSql = "SELECT meta_id, meta_name, type, value, start, offset FROM capture_meta WHERE capture_id = ?";
+            pstmt = conn.prepareStatement(metaSql);
+            for (Event e : events) {
+                Long metaId;
+                String metaName;
+                Object value;
+                Double start, offset;
+                MetadataType type;
+                for (CaptureFile cf : e.getCaptureFileList()) {
+                    pstmt.setLong(1, cf.getCaptureId());
+                    rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        metaId = rs.getLong("meta_id");
+                        metaName = StringDictionary.intern(rs.getString("meta_name"));
+                        type = MetadataType.valueOf(rs.getString("type").toUpperCase());
+                        switch (type) {
+                            case NUMBER:
+                                value = Double.valueOf(rs.getString("value"));
+                                break;
+                            case STRING:
+                            case UNAVAILABLE:
+                            case UNARCHIVED:
+                                // Should be null
+                                value = rs.getString("value");
+                                break;
+                            default:
+                                throw new SQLException("Error getting capture file metadata from database- unexpected MetadataType");
                         }
-                        rs.close();
+                        start = rs.getDouble("start");
+                        offset = rs.getDouble("offset");
+                        Metadata m = new Metadata(type, metaName, value, offset, start);
+                        m.setId(metaId);
+                        cf.addMetadata(m);
                     }
                 }
-                pstmt.close();
+            }
 
-                // Load up the capture file metadata
-                String metaSql = "SELECT meta_id, meta_name, type, value, start, offset FROM capture_meta WHERE capture_id = ?";
-                pstmt = conn.prepareStatement(metaSql);
-                for (Event e : eventMap.values()) {
-                    Long metaId;
-                    String metaName;
-                    Object value;
-                    Double start, offset;
-                    MetadataType type;
-                    for (CaptureFile cf : e.getCaptureFileList()) {
-                        pstmt.setLong(1, cf.getCaptureId());
-                        rs = pstmt.executeQuery();
-                        while (rs.next()) {
-                            metaId = rs.getLong("meta_id");
-                            metaName = rs.getString("meta_name");
-                            type = MetadataType.valueOf(rs.getString("type").toUpperCase());
-                            switch (type) {
-                                case NUMBER:
-                                    value = Double.valueOf(rs.getString("value"));
-                                    break;
-                                case STRING:
-                                case UNAVAILABLE:
-                                case UNARCHIVED:
-                                    // Should be null
-                                    value = rs.getString("value");
-                                    break;
-                                default:
-                                    throw new SQLException("Error getting capture file metadata from database- unexpected MetadataType");
-                            }
-                            start = rs.getDouble("start");
-                            offset = rs.getDouble("offset");
-                            Metadata m = new Metadata(type, metaName, value, offset, start);
-                            m.setId(metaId);
-                            cf.addMetadata(m);
-                        }
-                    }
+            // Determine the rules for labeling waveform series (GMES vs DETA2, not Cav1, Cav2, ...).  The waveform names
+            // are already in hand, so match them against the system's cached series patterns instead of having the
+            // database join every waveform name against every pattern with LIKE.
+            SeriesService ss = new SeriesService();
+            for (Event e : events) {
+                Set<String> waveformNames = new HashSet<>();
+                for (Waveform w : e.getWaveforms()) {
+                    waveformNames.add(w.getWaveformName());
                 }
+                e.applySeriesMapping(ss.getSeriesMatcher(e.getSystem()).getSeriesMapping(waveformNames));
+            }
+        } finally {
+            SqlUtil.close(rs, pstmt);
+        }
+    }
 
-                // Determine the rules for labeling waveform series (GMES vs DETA2, not Cav1, Cav2, ...)
-                String mapSql = "SELECT series_name, series_id, pattern, system_type.system_name, description, units, waveform_name, ymin, ymax "
-                        + " FROM capture_wf"
-                        + " JOIN series ON waveform_name LIKE series.pattern"
-                        + " JOIN system_type ON series.system_id = system_type.system_id"
-                        + " JOIN capture ON capture.capture_id = capture_wf.capture_id"
-                        + " WHERE event_id = ?"
-                        + " GROUP BY waveform_name"
-                        + " ORDER BY waveform_name";
-                pstmt = conn.prepareStatement(mapSql);
-                // Get the waveform data for each event's CaptureFile, then figure out the waveform to series mapping and apply it.
-                for (Event e : eventMap.values()) {
-                    // Get the mapping
-                    Map<String, List<Series>> waveformToSeries = new HashMap<>();
-                    pstmt.setLong(1, e.getEventId());
-                    rs = pstmt.executeQuery();
-                    while (rs.next()) {
-                        String waveformName = rs.getString("waveform_name");
-                        String seriesName = rs.getString("series_name");
-                        int seriesId = rs.getInt("series_id");
-                        String pattern = rs.getString("pattern");
-                        String systemName = rs.getString("system_name");
-                        String description = rs.getString("description");
-                        String units = rs.getString("units");
-                        Double yMin = rs.getDouble("ymin");
-                        yMin = rs.wasNull() ? null : yMin;
-                        Double yMax = rs.getDouble("ymax");
-                        yMax = rs.wasNull() ? null : yMax;
-                        if (waveformToSeries.get(waveformName) == null) {
-                            waveformToSeries.put(waveformName, new ArrayList<>());
-                        }
-                        waveformToSeries.get(waveformName).add(new Series(seriesName, seriesId, pattern, systemName, description, units, yMin, yMax));
-                    }
-                    rs.close();
+    /**
+     * Estimate the number of waveform samples getEventList would load from disk for this filter.  An event's sample
+     * count is the sum over its capture files of the capture's sample count times the number of waveforms in the
+     * capture.  Only the capture and capture_wf tables are read, so this is cheap compared to loading the data.
+     *
+     * @param filter       The filter that will be passed to getEventList
+     * @param largestEvent If true, return the sample count of the largest matching event (what forEachEvent holds at
+     *                     once).  If false, return the total over all matching events (what getEventList holds).
+     * @return The estimated number of samples.  Zero if no events match.
+     * @throws SQLException If problems arise accessing the database
+     */
+    public long estimateSampleCount(EventFilter filter, boolean largestEvent) throws SQLException {
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
 
-                    // Have the event apply the series mapping
-                    e.applySeriesMapping(waveformToSeries);
-                }
-                pstmt.close();
+        Integer filterStartIndex = null;
+        EventFilter subqueryFilter = null;
+        long numSamples = 0;
 
-                // Now get the data if requested
-                if (includeData) {
-                    for (Event e : eventMap.values()) {
-                        e.loadWaveformDataFromDisk();
-                    }
-                }
+        try {
+            conn = SqlUtil.getConnection();
+
+            // Same shape as getEventList so that the filter, including minCF on num_cf, matches the same events
+            String sql = "SELECT COALESCE(" + (largestEvent ? "MAX" : "SUM") + "(num_samples), 0) AS num_samples"
+                    + " FROM (SELECT event_id, event_time_utc, location, system_name, archive, to_be_deleted, classification,"
+                    + "     count(*) AS num_cf,"
+                    + "     SUM((ROUND((sample_end - sample_start) / sample_step) + 1)"
+                    + "       * (SELECT count(*) FROM capture_wf WHERE capture_wf.capture_id = capture.capture_id)) AS num_samples"
+                    + "   FROM event"
+                    + "   JOIN system_type USING(system_id)"
+                    + "   JOIN capture USING(event_id)";
+            if (filter != null && (filter.getBegin() != null || filter.getEnd() != null || filter.getSystem() != null)) {
+                subqueryFilter = new EventFilter(null, filter.getBegin(), filter.getEnd(), filter.getSystem(), null, null, null, null, null);
+                sql += subqueryFilter.getWhereClause();
+            }
+            sql += "   GROUP BY event_id"
+                    + " ) AS t ";
+            if (filter != null) {
+                sql += filter.getWhereClause();
+            }
+            pstmt = conn.prepareStatement(sql);
+
+            if (subqueryFilter != null) {
+                filterStartIndex = subqueryFilter.assignParameterValues(pstmt, filterStartIndex);
+            }
+            if (filter != null) {
+                filter.assignParameterValues(pstmt, filterStartIndex);
+            }
+
+            rs = pstmt.executeQuery();
+            if (rs.next()) {
+                numSamples = rs.getLong("num_samples");
             }
         } finally {
-            SqlUtil.close(pstmt, conn, rs);
+            SqlUtil.close(rs, pstmt, conn);
         }
 
-        // Convert this map to a list for external consumption.  We only needed to track them by ID when constructing
-        // events from the database
-        return new ArrayList<>(eventMap.values());
+        return numSamples;
     }
 
     /**
@@ -802,6 +1114,9 @@ public class EventService {
         } finally {
             SqlUtil.close(pstmt, conn);
         }
+        if (rowsAffected > 0) {
+            EventTimeIndex.getInstance().refresh(eventId);
+        }
 
         return rowsAffected;
     }
@@ -819,8 +1134,10 @@ public class EventService {
     public int deleteEvent(long eventId, boolean force) throws SQLException {
         Connection conn = null;
         PreparedStatement pstmt = null;
+        ResultSet rs = null;
 
         int rowsAffected;
+        Instant eventTime = null;
         String deleteSql = "DELETE FROM event WHERE to_be_deleted = 1 AND event_id = ?";
         if (force) {
             deleteSql = "DELETE FROM event WHERE event_id = ?";
@@ -828,11 +1145,40 @@ public class EventService {
 
         try {
             conn = SqlUtil.getConnection();
+            conn.setAutoCommit(false);
+
+            // Grab the rollup row before the event is gone
+            LabelTallyService.TallyKey tally = LabelTallyService.getTallyKey(conn, eventId);
+
+            // And its time, which lets the event time index find the event without a scan
+            pstmt = conn.prepareStatement("SELECT event_time_utc FROM event WHERE event_id = ?");
+            pstmt.setLong(1, eventId);
+            rs = pstmt.executeQuery();
+            if (rs.next()) {
+                eventTime = TimeUtil.getInstantFromSQLDateTime(rs, "event_time_utc");
+            }
+            SqlUtil.close(rs, pstmt);
+
             pstmt = conn.prepareStatement(deleteSql);
             pstmt.setLong(1, eventId);
             rowsAffected = pstmt.executeUpdate();
+            if (rowsAffected > 0) {
+                LabelTallyService.moveCount(conn, tally, null);
+            }
+            conn.commit();
+        } catch (SQLException ex) {
+            if (conn != null) {
+                conn.rollback();
+            }
+            throw ex;
         } finally {
-            SqlUtil.close(pstmt, conn);
+            SqlUtil.close(rs, pstmt, conn);
+        }
+
+        if (rowsAffected > 0) {
+            EventTimeIndex.getInstance().remove(eventId, eventTime);
+            WaveformSidecar.delete(eventId);
+            EventArchiveCache.remove(eventId);
         }
 
         return rowsAffected;
@@ -853,10 +1199,10 @@ public class EventService {
         try {
             conn = SqlUtil.getConnection();
 
-            // If we may delete the older data, make sure we can roll back if the new label fails to insert.
-            if (force) {
-                conn.setAutoCommit(false);
-            }
+            // If we may delete the older data, make sure we can roll back if the new label fails to insert.  The label
+            // tally rollup is updated in the same transaction.
+            conn.setAutoCommit(false);
+            LabelTallyService.TallyKey tally = LabelTallyService.getTallyKey(conn, eventId);
 
             // Delete the existing label for the given ID
             if (force) {
@@ -876,22 +1222,20 @@ public class EventService {
                 pstmt.setString(4, label.getValue());
                 pstmt.setDouble(5, label.getConfidence());
                 pstmt.executeUpdate();
+                LabelTallyService.moveCount(conn, tally, LabelTallyService.getTallyKey(conn, eventId));
             } catch (SQLException ex) {
                 // If the insert failed, then rollback.  If nothing was deleted, then there is no harm, and if something
                 // was deleted earlier, we get it back.
-                if (force) {
-                    conn.rollback();
-                }
+                conn.rollback();
                 throw ex;
             }
 
             // Commit the updates since we are not in autocommit mode.
-            if (force) {
-                conn.commit();
-            }
+            conn.commit();
         } finally {
             SqlUtil.close(pstmt, conn);
         }
+        EventTimeIndex.getInstance().refresh(eventId);
     }
 
     /**
@@ -926,6 +1270,9 @@ public class EventService {
         } finally {
             SqlUtil.close(pstmt, conn);
         }
+        if (rowsAffected > 0) {
+            EventTimeIndex.getInstance().refresh(eventId);
+        }
 
         return rowsAffected;
     }
@@ -965,12 +1312,26 @@ public class EventService {
         int n;
         try {
             conn = SqlUtil.getConnection();
+            conn.setAutoCommit(false);
+            LabelTallyService.TallyKey tally = LabelTallyService.getTallyKey(conn, eventId);
             pstmt = conn.prepareStatement(sql);
             pstmt.setLong(1, eventId);
             n = pstmt.executeUpdate();
+            if (n > 0) {
+                LabelTallyService.moveCount(conn, tally, LabelTallyService.getTallyKey(conn, eventId));
+            }
+            conn.commit();
+        } catch (SQLException ex) {
+            if (conn != null) {
+                conn.rollback();
+            }
+            throw ex;
         } finally {
             SqlUtil.close(conn, pstmt);
         }
+        if (n > 0) {
+            EventTimeIndex.getInstance().refresh(eventId);
+        }
 
         return n;
     }
@@ -986,47 +1347,12 @@ public class EventService {
         // Keep this sorted so we have a predictable output ordering.  This is <location, <valueComboString, count>> where
         // value combo string is <fault_value>,<cavity_value>, ... if more label_names exist.
         Map<String, Map<String, Long>> out = new TreeMap<>();
-
-        // Only want to query the database once
-        List<Event> eventList = getEventList(eventFilter, null, false, false);
-        eventList = EventService.applyLabelFilters(eventList, lfList, includeUnlabeled);
-
-        // Now process the events and tally up the label combinations.  As of this writing, there was only RF-related cavity and fault-type
-        // label names, so sorting them puts them in the right order.
-        for (Event e : eventList) {
-            if (!out.containsKey(e.getLocation())) {
-                out.put(e.getLocation(), new TreeMap<>());
-            }
-
-            // Sort the label values by their label name using the TreeMap structure
-            SortedMap<String, String> names = new TreeMap<>(Collections.reverseOrder());
-
-            // If the event doesn't have any labels, give it a name/value pair of "NULL"/"NULL".  Not sure what else
-            // to put here since we can't use actual null key.
-            if (e.getLabelList() == null || e.getLabelList().isEmpty()) {
-                names.put("NULL", "NULL");
-            } else {
-                // Go through the event's labels add their name/value pairs to the tree
-                for (Label l : e.getLabelList()) {
-                    if (l == null) {
-                        continue;
-                    }
-                    names.put(l.getName(), l.getValue());
-                }
-            }
-
-            // Convert them into the CSV strings that make tallying simpler
-            List<String> nList = new ArrayList<>(names.values());  // This should add them in the order that we want (fault-type, cavity)
-            String comboString = String.join(",", nList);
-
-            // Tally the combo strings by location
-            if (out.get(e.getLocation()).containsKey(comboString)) {
-                out.get(e.getLocation()).put(comboString, out.get(e.getLocation()).get(comboString) + 1L);
-            } else {
-                out.get(e.getLocation()).put(comboString, 1L);
+        processLabelTally(eventFilter, lfList, includeUnlabeled, (location, labelCombo, count) -> {
+            if (!out.containsKey(location)) {
+                out.put(location, new TreeMap<>());
             }
-        }
-
+            out.get(location).put(labelCombo, count);
+        });
         return out;
     }
 
@@ -1047,21 +1373,107 @@ public class EventService {
      * @return A JsonArray where each element is an object with location, label-combo, and count parameters
      */
     public JsonArray getLabelTallyAsJson(EventFilter eventFilter, List<LabelFilter> lfList, boolean includeUnlabeled) throws SQLException, IOException {
-        Map<String, Map<String, Long>> tallyMap = getLabelTally(eventFilter, lfList, includeUnlabeled);
-
         JsonArrayBuilder jab = Json.createArrayBuilder();
-        for (String location : tallyMap.keySet()) {
-            for (String labelCombo : tallyMap.get(location).keySet()) {
-
-                Long count = tallyMap.get(location).get(labelCombo);
+        processLabelTally(eventFilter, lfList, includeUnlabeled, (location, labelCombo, count) ->
                 jab.add(Json.createObjectBuilder()
                         .add("location", location)
                         .add("label-combo", labelCombo)
                         .add("count", count)
-                        .build());
+                        .build()));
+        return jab.build();
+    }
+
+    /**
+     * Callback for receiving rows of a label tally.
+     */
+    private interface LabelTallyHandler {
+        void handle(String location, String labelCombo, long count);
+    }
+
+    /**
+     * Have the database tally the label combinations by location and hand each row to the handler in (location,
+     * label-combo) order.  Only the counts leave the database.
+     * <p>
+     * The inner query builds one row per event with its label values concatenated in reverse label_name order (e.g.,
+     * fault-type before cavity), or "NULL" if it has no labels.  LabelFilters are applied per event in the HAVING clause.
+     * The outer query counts the combinations.
+     *
+     * @param eventFilter      An event filter.  May be null.
+     * @param lfList           A list of LabelFilters that are AND'ed together.  May be null.
+     * @param includeUnlabeled Include events that have no labels even if they do not pass the label filters
+     * @param handler          Receives each (location, label-combo, count) row
+     * @throws SQLException If problems arise while querying the database
+     */
+    private void processLabelTally(EventFilter eventFilter, List<LabelFilter> lfList, boolean includeUnlabeled,
+                                   LabelTallyHandler handler) throws SQLException {
+        EventFilter subqueryFilter = null;
+        String sql = "SELECT location, label_combo, COUNT(*) AS num_events"
+                + " FROM (SELECT event_id, location,"
+                + "     COALESCE(GROUP_CONCAT(label_value ORDER BY label_name DESC SEPARATOR ','), 'NULL') AS label_combo"
+                + "   FROM (SELECT event_id, event_time_utc, location, system_name, archive, to_be_deleted, classification,"
+                + "       count(*) AS num_cf"
+                + "     FROM event"
+                + "     JOIN system_type USING(system_id)"
+                + "     JOIN capture USING(event_id)";
+
+        // Same as getEventList, filter the capture file count subquery or we end up counting the entire database
+        if (eventFilter != null && (eventFilter.getBegin() != null || eventFilter.getEnd() != null || eventFilter.getSystem() != null)) {
+            subqueryFilter = new EventFilter(null, eventFilter.getBegin(), eventFilter.getEnd(), eventFilter.getSystem(), null, null, null, null, null);
+            sql += subqueryFilter.getWhereClause();
+        }
+        sql += "     GROUP BY event_id"
+                + "   ) AS t"
+                + "   LEFT JOIN label USING(event_id)";
+        if (eventFilter != null) {
+            sql += eventFilter.getWhereClause();
+            RequestTimer.note("eventFilter", eventFilter.getWhereClause());
+        }
+        sql += "   GROUP BY event_id";
+
+        List<String> having = new ArrayList<>();
+        if (lfList != null) {
+            for (LabelFilter lf : lfList) {
+                having.add(lf.getHavingClauseContent());
             }
         }
-        return jab.build();
+        if (!having.isEmpty()) {
+            sql += " HAVING (" + String.join(" AND ", having) + ")";
+            if (includeUnlabeled) {
+                sql += " OR COUNT(label_id) = 0";
+            }
+        }
+
+        // Binary ordering matches the String ordering the TreeMap based output has always used
+        sql += " ) AS combos"
+                + " GROUP BY location, label_combo"
+                + " ORDER BY CAST(location AS BINARY), CAST(label_combo AS BINARY)";
+
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        ResultSet rs = null;
+        try {
+            conn = SqlUtil.getConnection();
+            pstmt = conn.prepareStatement(sql);
+            int index = 1;
+            if (subqueryFilter != null) {
+                index = subqueryFilter.assignParameterValues(pstmt, index);
+            }
+            if (eventFilter != null) {
+                index = eventFilter.assignParameterValues(pstmt, index);
+            }
+            if (lfList != null) {
+                for (LabelFilter lf : lfList) {
+                    index = lf.assignHavingParameterValues(pstmt, index);
+                }
+            }
+
+            rs = pstmt.executeQuery();
+            while (rs.next()) {
+                handler.handle(rs.getString("location"), rs.getString("label_combo"), rs.getLong("num_events"));
+            }
+        } finally {
+            SqlUtil.close(rs, pstmt, conn);
+        }
     }
 
     /** Simple method for converting a List<Events> to a JSON object
@@ -1081,6 +1493,20 @@ public class EventService {
         return job.build();
     }
 
+    /** Simple method for converting a List<EventHeader> to a JSON object.  Same output as convertEventListToJson
+     * for header-only Events.
+     *
+     * @param headerList A List of EventHeaders to be converted to JSON
+     * @return A JSON object
+     */
+    static public JsonObject convertHeaderListToJson(List<EventHeader> headerList) {
+        JsonArrayBuilder jab = Json.createArrayBuilder();
+        for (EventHeader h : headerList) {
+            jab.add(h.toJsonObject());
+        }
+        return Json.createObjectBuilder().add("events", jab.build()).build();
+    }
+
     /**
      * Simple method for returning a List of Events after a List of LabelFilters have been applied.
      * @param eventList The original, unfiltered list of events
@@ -1105,4 +1531,30 @@ public class EventService {
 
         return events;
     }
-}
\ No newline at end of file
+
+    /**
+     * Same as applyLabelFilters, for EventHeaders.
+     * @param headerList The original, unfiltered list of event headers
+     * @param filterList The list of label filters to be applied in turn
+     * @param includeUnlabeled Whether headers without labels should be added back to the result
+     * @return The filtered headers.  Unlabeled headers, if included, come last.
+     */
+    static public List<EventHeader> applyLabelFiltersToHeaders(List<EventHeader> headerList, List<LabelFilter> filterList,
+                                                               boolean includeUnlabeled) {
+        List<EventHeader> headers = new ArrayList<>(headerList);
+
+        if (filterList != null) {
+            for (LabelFilter filter : filterList) {
+                headers = filter.filterHeaders(headers);
+            }
+        }
+
+        if (includeUnlabeled) {
+            Set<EventHeader> headerSet = new LinkedHashSet<>(headers);
+            headerSet.addAll(new LabelFilter(false).filterHeaders(headerList));
+            headers = new ArrayList<>(headerSet);
+        }
+
+        return headers;
+    }
+}
@@ -0,0 +1,1059 @@
+package org.jlab.wfbrowser.business.service;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jlab.wfbrowser.business.filter.EventFilter;
+import org.jlab.wfbrowser.business.util.SqlUtil;
+import org.jlab.wfbrowser.model.EventFacetCounts;
+import org.jlab.wfbrowser.model.EventHeader;
+import org.jlab.wfbrowser.model.Label;
+
+/**
+ * An in-memory index of EventHeaders (everything getEventHeaderList returns) sorted by event time.  The headers' times
+ * and strings are also held in parallel primitive arrays so that a time range lookup is a pair of binary searches.
+ * Within the range, the other filter fields are applied by combining bitsets over the entries, which also answer the
+ * per-location, classification and label counts shown next to the filter options.
+ * <p>
+ * The index is immutable snapshot based.  Readers grab the current snapshot without locking.  Writers (EventService,
+ * after it commits a change) re-read the affected event from the database, then build a new snapshot with it and
+ * publish it.  Only building and publishing the snapshot is done under the index's lock, not the database query.  The
+ * changed entry is found by a binary search on its time, and the new snapshot shares whatever arrays did not change.
+ * Until the index has been warmed, or after an update fails and until the reload that failure starts completes,
+ * isReady() returns false and callers should go to the database.  The index is also fully reloaded periodically to pick
+ * up any changes made outside of this application.
+ *
+ * @author adamc
+ */
+public class EventTimeIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(EventTimeIndex.class.getName());
+    private static final EventTimeIndex INSTANCE = new EventTimeIndex();
+
+    /**
+     * How often the whole index is reloaded from the database
+     */
+    private static final long RELOAD_INTERVAL_MINUTES = 15;
+
+    /**
+     * How long to wait before retrying a failed reload of a dropped index
+     */
+    private static final long RETRY_INTERVAL_SECONDS = 60;
+
+    private volatile Snapshot snapshot = null;
+
+    // Guarded by this.  Events changed while the index was being (re)loaded.  They are re-read once the load finishes.
+    private Set<Long> changedDuringLoad = null;
+    // Guarded by this.  Event ID -> the sequence number of the latest refresh or remove of that event that has not been
+    // applied yet.  Since queries run outside of the lock, this keeps an older query's result from replacing a newer one.
+    private final Map<Long, Long> latestChange = new HashMap<>();
+    private long changeCount = 0;
+    private ScheduledExecutorService executor = null;
+    private boolean reloadPending = false;
+
+    private EventTimeIndex() {
+    }
+
+    public static EventTimeIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Warm the index in the background and schedule the periodic reload.  Called at application startup.
+     */
+    public synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "event-time-index");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                reload();
+            } catch (SQLException | RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Error loading event time index.  Queries will use the database.", ex);
+            }
+        }, 0, RELOAD_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stop the background reloads and drop the index.  Called at application shutdown.
+     */
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        reloadPending = false;
+        snapshot = null;
+    }
+
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * The number of events currently indexed.  Zero if the index is not ready.
+     *
+     * @return The number of indexed events
+     */
+    public int size() {
+        Snapshot s = snapshot;
+        return s == null ? 0 : s.headers.length;
+    }
+
+    /**
+     * Load every event header from the database and replace the current index.
+     *
+     * @throws SQLException If problems arise while querying the database
+     */
+    public void reload() throws SQLException {
+        synchronized (this) {
+            changedDuringLoad = new HashSet<>();
+        }
+        boolean published = false;
+        try {
+            List<EventHeader> headers = queryHeaders(null);
+            long start = System.currentTimeMillis();
+            Snapshot s = new Snapshot(headers);
+
+            // Catch up on events changed since the load started, until a round of re-reads sees no further changes
+            while (true) {
+                Set<Long> changed;
+                synchronized (this) {
+                    changed = changedDuringLoad;
+                    if (changed.isEmpty()) {
+                        changedDuringLoad = null;
+                        snapshot = s;
+                        published = true;
+                        break;
+                    }
+                    changedDuringLoad = new HashSet<>();
+                }
+                for (Long eventId : changed) {
+                    s = s.update(eventId, queryHeaders(eventId));
+                }
+            }
+            LOGGER.log(Level.FINE, "Loaded {0} events into the event time index in {1} ms",
+                    new Object[]{headers.size(), System.currentTimeMillis() - start});
+        } finally {
+            if (!published) {
+                synchronized (this) {
+                    changedDuringLoad = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-read a single event's header from the database and update the index.  Called after an event is added,
+     * relabeled, or flagged.  If the event no longer exists it is removed.  Failures invalidate the index rather than
+     * fail the caller since the change has already been committed.
+     *
+     * @param eventId The ID of the event that changed
+     */
+    public void refresh(long eventId) {
+        long seq;
+        synchronized (this) {
+            if (changedDuringLoad != null) {
+                changedDuringLoad.add(eventId);
+            }
+            if (snapshot == null) {
+                return;
+            }
+            seq = ++changeCount;
+            latestChange.put(eventId, seq);
+        }
+
+        List<EventHeader> updated;
+        try {
+            updated = queryHeaders(eventId);
+        } catch (SQLException | RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Error updating event time index.  Reloading it.", ex);
+            synchronized (this) {
+                latestChange.remove(eventId, seq);
+                drop();
+            }
+            return;
+        }
+        apply(eventId, seq, null, updated);
+    }
+
+    /**
+     * Remove an event from the index.  Called after an event is deleted.
+     *
+     * @param eventId   The ID of the deleted event
+     * @param eventTime The time of the deleted event.  If null the whole index is scanned for it.
+     */
+    public synchronized void remove(long eventId, Instant eventTime) {
+        if (changedDuringLoad != null) {
+            changedDuringLoad.add(eventId);
+        }
+        long seq = ++changeCount;
+        latestChange.put(eventId, seq);
+        Long micros = eventTime == null ? null
+                : Math.addExact(Math.multiplyExact(eventTime.getEpochSecond(), 1_000_000L), eventTime.getNano() / 1000);
+        apply(eventId, seq, micros, Collections.emptyList());
+    }
+
+    /**
+     * Publish a new snapshot with an event's entry replaced, unless a later refresh or remove of the same event has
+     * started since this one did.  That one read the database after this one, so its result is the one to keep.
+     */
+    private synchronized void apply(long eventId, long seq, Long eventTimeMicros, List<EventHeader> updated) {
+        if (!latestChange.remove(eventId, seq)) {
+            return;
+        }
+        if (snapshot != null) {
+            try {
+                snapshot = snapshot.update(eventId, eventTimeMicros, updated);
+            } catch (RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Error updating event time index.  Reloading it.", ex);
+                drop();
+            }
+        }
+    }
+
+    /**
+     * Drop the index and reload it in the background right away, instead of leaving callers on the database until the
+     * next periodic reload.  A reload already in progress will re-read the changed event itself, so none is started.
+     * A failed reload is retried every RETRY_INTERVAL_SECONDS until one succeeds.
+     */
+    private synchronized void drop() {
+        snapshot = null;
+        if (executor == null || reloadPending || changedDuringLoad != null) {
+            return;
+        }
+        reloadPending = true;
+        executor.execute(this::retryReload);
+    }
+
+    private void retryReload() {
+        try {
+            reload();
+            synchronized (this) {
+                reloadPending = false;
+            }
+        } catch (SQLException | RuntimeException ex) {
+            LOGGER.log(Level.WARNING, "Error reloading event time index.  Retrying in " + RETRY_INTERVAL_SECONDS
+                    + " seconds.", ex);
+            synchronized (this) {
+                if (executor != null) {
+                    executor.schedule(this::retryReload, RETRY_INTERVAL_SECONDS, TimeUnit.SECONDS);
+                } else {
+                    reloadPending = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the headers of the events matching the filter, ordered by event time.  Equivalent to
+     * EventService.getEventHeaderList.  The headers are shared, not copied.
+     *
+     * @param filter The filter to apply.  May be null.
+     * @return The matching headers, or null if the index is not ready
+     */
+    public List<EventHeader> getHeaders(EventFilter filter) {
+        Snapshot s = snapshot;
+        if (s == null) {
+            return null;
+        }
+        return s.getHeaders(filter);
+    }
+
+    /**
+     * Count the events matching a filter by location, classification and label value.  Equivalent to
+     * EventService.getFacetCounts.
+     *
+     * @param filter The filter to apply.  May be null.
+     * @return The counts, or null if the index is not ready
+     */
+    public EventFacetCounts getFacetCounts(EventFilter filter) {
+        Snapshot s = snapshot;
+        if (s == null) {
+            return null;
+        }
+        return s.getFacetCounts(filter);
+    }
+
+    /**
+     * Get the distinct locations of the events of some systems.  Equivalent to EventService.getLocationNames.
+     *
+     * @param systemList The systems.  Null or empty for all.
+     * @return The sorted location names, or null if the index is not ready
+     */
+    public List<String> getLocationNames(List<String> systemList) {
+        Snapshot s = snapshot;
+        if (s == null) {
+            return null;
+        }
+        return s.getValues(systemList, true);
+    }
+
+    /**
+     * Get the distinct classifications of the events of some systems.  Equivalent to EventService.getClassifications.
+     *
+     * @param systemList The systems.  Null or empty for all.
+     * @return The sorted classifications, or null if the index is not ready
+     */
+    public List<String> getClassifications(List<String> systemList) {
+        Snapshot s = snapshot;
+        if (s == null) {
+            return null;
+        }
+        return s.getValues(systemList, false);
+    }
+
+    /**
+     * Query the database for event headers.
+     *
+     * @param eventId A single event to query, or null for every event
+     * @return The headers ordered by event time
+     * @throws SQLException If problems arise while querying the database
+     */
+    private static List<EventHeader> queryHeaders(Long eventId) throws SQLException {
+        EventFilter filter = null;
+        if (eventId != null) {
+            filter = new EventFilter(Collections.singletonList(eventId), null, null, null, null, null, null, null, null);
+        }
+
+        List<EventHeader> headers = new ArrayList<>();
+        Connection conn = null;
+        try {
+            // The index is refreshed right after writes, so it must not read from the request's snapshot or a lagging
+            // replica
+            conn = SqlUtil.getPrimaryConnection();
+            EventHeaderReader.read(conn, filter, headers::add);
+        } finally {
+            SqlUtil.close(conn);
+        }
+        return headers;
+    }
+
+    /**
+     * An immutable view of all indexed events sorted by (time, id).  The headers themselves are handed out to callers
+     * since they are immutable.  Their times and string fields are also kept in parallel primitive arrays, the strings
+     * as codes into a shared dictionary, so that a filtering scan only touches the headers that pass those checks.
+     */
+    static class Snapshot {
+
+        private final EventHeader[] headers;
+        private final long[] times;
+        private final int[] systems;
+        private final int[] locations;
+        private final int[] classifications;
+
+        private final String[] strings;
+        private final Map<String, Integer> codes;
+
+        private final Facets facets;
+
+        /**
+         * Build a snapshot from headers already sorted by time.
+         */
+        Snapshot(List<EventHeader> headerList) {
+            int n = headerList.size();
+            headers = headerList.toArray(new EventHeader[0]);
+            times = new long[n];
+            systems = new int[n];
+            locations = new int[n];
+            classifications = new int[n];
+
+            List<String> stringList = new ArrayList<>();
+            codes = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                EventHeader h = headers[i];
+                times[i] = h.getEventTimeMicros();
+                systems[i] = encode(h.getSystem(), stringList, codes);
+                locations[i] = encode(h.getLocation(), stringList, codes);
+                classifications[i] = encode(h.getClassification(), stringList, codes);
+            }
+            strings = stringList.toArray(new String[0]);
+            facets = new Facets(this);
+        }
+
+        private Snapshot(EventHeader[] headers, long[] times, int[] systems, int[] locations, int[] classifications,
+                         String[] strings, Map<String, Integer> codes, Facets facets) {
+            this.headers = headers;
+            this.times = times;
+            this.systems = systems;
+            this.locations = locations;
+            this.classifications = classifications;
+            this.strings = strings;
+            this.codes = codes;
+            this.facets = facets;
+        }
+
+        private static int encode(String value, List<String> stringList, Map<String, Integer> codes) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = stringList.size();
+                stringList.add(value);
+                codes.put(value, code);
+            }
+            return code;
+        }
+
+        /**
+         * Return a new snapshot with any existing entry for eventId removed and the supplied headers (zero or one)
+         * inserted in time order.  Arrays that don't change are shared with this snapshot, and the rest are copied with
+         * System.arraycopy.
+         */
+        Snapshot update(long eventId, List<EventHeader> updated) {
+            return update(eventId, null, updated);
+        }
+
+        /**
+         * As update(eventId, updated), with the event's time if known when it is being removed.  The application never
+         * changes an event's time, so an event is looked for only at its time, and a header not found there is new.  A
+         * time changed outside of the application is corrected by the next reload.  Only a removal with no known time
+         * has to scan for the event.
+         */
+        Snapshot update(long eventId, Long eventTimeMicros, List<EventHeader> updated) {
+            EventHeader h = updated.isEmpty() ? null : updated.get(0);
+            int old;
+            if (h != null) {
+                old = indexOf(eventId, h.getEventTimeMicros());
+            } else if (eventTimeMicros != null) {
+                old = indexOf(eventId, eventTimeMicros);
+            } else {
+                old = indexOf(eventId);
+            }
+            if (old < 0 && h == null) {
+                return this;
+            }
+
+            // Extend the dictionary if needed.  The existing maps are never modified since readers may be using them.
+            String[] newStrings = strings;
+            Map<String, Integer> newCodes = codes;
+            if (h != null && (!codes.containsKey(h.getSystem()) || !codes.containsKey(h.getLocation())
+                    || !codes.containsKey(h.getClassification()))) {
+                List<String> stringList = new ArrayList<>(Arrays.asList(strings));
+                newCodes = new HashMap<>(codes);
+                encode(h.getSystem(), stringList, newCodes);
+                encode(h.getLocation(), stringList, newCodes);
+                encode(h.getClassification(), stringList, newCodes);
+                newStrings = stringList.toArray(new String[0]);
+            }
+
+            if (h == null) {
+                return new Snapshot(removeAt(headers, old), removeAt(times, old), removeAt(systems, old),
+                        removeAt(locations, old), removeAt(classifications, old), newStrings, newCodes,
+                        facets.update(this, old, null, -1, 0, 0, 0, newStrings.length));
+            }
+
+            int system = newCodes.get(h.getSystem());
+            int location = newCodes.get(h.getLocation());
+            int classification = newCodes.get(h.getClassification());
+            if (old >= 0 && headers[old].compareTo(h) == 0) {
+                // Same place (e.g. a label or flag change).  Only the header and any codes that changed are copied.
+                EventHeader[] nHeaders = headers.clone();
+                nHeaders[old] = h;
+                return new Snapshot(nHeaders, times, setAt(systems, old, system), setAt(locations, old, location),
+                        setAt(classifications, old, classification), newStrings, newCodes,
+                        facets.update(this, old, h, old, system, location, classification, newStrings.length));
+            }
+
+            EventHeader[] nHeaders = old < 0 ? headers : removeAt(headers, old);
+            long[] nTimes = old < 0 ? times : removeAt(times, old);
+            int[] nSystems = old < 0 ? systems : removeAt(systems, old);
+            int[] nLocations = old < 0 ? locations : removeAt(locations, old);
+            int[] nClassifications = old < 0 ? classifications : removeAt(classifications, old);
+
+            // The insertion point among the remaining entries.  New events are usually the newest, i.e. at the end.
+            int pos = nHeaders.length;
+            if (pos > 0 && nHeaders[pos - 1].compareTo(h) > 0) {
+                int lo = 0;
+                int hi = pos;
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (nHeaders[mid].compareTo(h) <= 0) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                pos = lo;
+            }
+
+            return new Snapshot(insertAt(nHeaders, pos, h), insertAt(nTimes, pos, h.getEventTimeMicros()),
+                    insertAt(nSystems, pos, system), insertAt(nLocations, pos, location),
+                    insertAt(nClassifications, pos, classification), newStrings, newCodes,
+                    facets.update(this, old, h, pos, system, location, classification, newStrings.length));
+        }
+
+        /**
+         * Index of the entry for an event at a known time, or -1
+         */
+        private int indexOf(long eventId, long time) {
+            for (int i = lowerBound(time); i < times.length && times[i] == time; i++) {
+                if (headers[i].getEventId() == eventId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Index of the entry for an event, or -1.  A scan, since the index is not keyed by ID.
+         */
+        private int indexOf(long eventId) {
+            for (int i = 0; i < headers.length; i++) {
+                if (headers[i].getEventId() == eventId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static EventHeader[] removeAt(EventHeader[] a, int i) {
+            EventHeader[] out = new EventHeader[a.length - 1];
+            System.arraycopy(a, 0, out, 0, i);
+            System.arraycopy(a, i + 1, out, i, a.length - i - 1);
+            return out;
+        }
+
+        private static long[] removeAt(long[] a, int i) {
+            long[] out = new long[a.length - 1];
+            System.arraycopy(a, 0, out, 0, i);
+            System.arraycopy(a, i + 1, out, i, a.length - i - 1);
+            return out;
+        }
+
+        private static int[] removeAt(int[] a, int i) {
+            int[] out = new int[a.length - 1];
+            System.arraycopy(a, 0, out, 0, i);
+            System.arraycopy(a, i + 1, out, i, a.length - i - 1);
+            return out;
+        }
+
+        private static EventHeader[] insertAt(EventHeader[] a, int i, EventHeader value) {
+            EventHeader[] out = new EventHeader[a.length + 1];
+            System.arraycopy(a, 0, out, 0, i);
+            out[i] = value;
+            System.arraycopy(a, i, out, i + 1, a.length - i);
+            return out;
+        }
+
+        private static long[] insertAt(long[] a, int i, long value) {
+            long[] out = new long[a.length + 1];
+            System.arraycopy(a, 0, out, 0, i);
+            out[i] = value;
+            System.arraycopy(a, i, out, i + 1, a.length - i);
+            return out;
+        }
+
+        private static int[] insertAt(int[] a, int i, int value) {
+            int[] out = new int[a.length + 1];
+            System.arraycopy(a, 0, out, 0, i);
+            out[i] = value;
+            System.arraycopy(a, i, out, i + 1, a.length - i);
+            return out;
+        }
+
+        /**
+         * a with a[i] = value.  a itself if it already has that value.
+         */
+        private static int[] setAt(int[] a, int i, int value) {
+            if (a[i] == value) {
+                return a;
+            }
+            int[] out = a.clone();
+            out[i] = value;
+            return out;
+        }
+
+        /**
+         * Index of the first entry with time >= t
+         */
+        private int lowerBound(long t) {
+            int lo = 0, hi = times.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (times[mid] < t) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Index of the first entry with time > t
+         */
+        private int upperBound(long t) {
+            int lo = 0, hi = times.length;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (times[mid] <= t) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /**
+         * Convert a list of strings to the set of their codes.  Unknown strings can't match anything and are dropped.
+         * Returns null if the list does not constrain the results.
+         */
+        private Set<Integer> toCodes(List<String> values) {
+            if (values == null || values.isEmpty()) {
+                return null;
+            }
+            Set<Integer> out = new HashSet<>();
+            for (String value : values) {
+                Integer code = codes.get(value);
+                if (code != null) {
+                    out.add(code);
+                }
+            }
+            return out;
+        }
+
+        /**
+         * The database compares against a timestamp formatted to a tenth of a second.  Match that here.
+         */
+        private static long toTenthOfSecondMicros(Instant t) {
+            long micros = Math.addExact(Math.multiplyExact(t.getEpochSecond(), 1_000_000L), t.getNano() / 1000);
+            return Math.floorDiv(micros, 100_000L) * 100_000L;
+        }
+
+        /**
+         * The range of entries [from, to) within the filter's time range.  The database compares against a timestamp
+         * formatted to a tenth of a second.  Match that here.
+         */
+        private int[] range(EventFilter filter) {
+            int from = 0;
+            int to = times.length;
+            if (filter != null && filter.getBegin() != null) {
+                from = lowerBound(toTenthOfSecondMicros(filter.getBegin()));
+            }
+            if (filter != null && filter.getEnd() != null) {
+                to = upperBound(toTenthOfSecondMicros(filter.getEnd()));
+            }
+            return new int[]{from, Math.max(from, to)};
+        }
+
+        /**
+         * Find the entries in [from, to) that match the filter.  The bitset is relative to from, i.e., bit i is entry
+         * from + i.  The facet bitsets are sliced to the range before they are combined, so the work is proportional to
+         * the size of the range, not of the index.
+         *
+         * @param filter The filter.  May be null.
+         * @param useLocations Whether to apply the filter's location list
+         * @param useClassifications Whether to apply the filter's classification list
+         */
+        private BitSet select(EventFilter filter, int from, int to, boolean useLocations, boolean useClassifications) {
+            BitSet bits = new BitSet(to - from);
+            bits.set(0, to - from);
+            if (filter == null || from == to) {
+                return bits;
+            }
+
+            Facets f = facets;
+            if (filter.getSystem() != null) {
+                // A code may have no bitset, e.g. a location that matches the system name, or a system with no events left
+                Integer code = codes.get(filter.getSystem());
+                if (code == null || f.bySystem[code] == null) {
+                    return new BitSet();
+                }
+                bits.and(f.bySystem[code].get(from, to));
+            }
+            if (useLocations) {
+                and(bits, f.byLocation, toCodes(filter.getLocationList()), from, to);
+            }
+            if (useClassifications) {
+                and(bits, f.byClassification, toCodes(filter.getClassificationList()), from, to);
+            }
+            if (filter.getArchive() != null) {
+                if (filter.getArchive()) {
+                    bits.and(f.archived.get(from, to));
+                } else {
+                    bits.andNot(f.archived.get(from, to));
+                }
+            }
+            if (filter.getDelete() != null) {
+                if (filter.getDelete()) {
+                    bits.and(f.deleted.get(from, to));
+                } else {
+                    bits.andNot(f.deleted.get(from, to));
+                }
+            }
+
+            // These are rare enough that checking the remaining entries one at a time is fine
+            Set<Long> idSet = null;
+            if (filter.getEventIdList() != null && !filter.getEventIdList().isEmpty()) {
+                idSet = new HashSet<>(filter.getEventIdList());
+            }
+            Integer minCf = filter.getMinCaptureFiles();
+            if (idSet != null || minCf != null) {
+                for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                    EventHeader h = headers[from + i];
+                    if ((idSet != null && !idSet.contains(h.getEventId()))
+                            || (minCf != null && h.getNumCaptureFiles() < minCf)) {
+                        bits.clear(i);
+                    }
+                }
+            }
+            return bits;
+        }
+
+        /**
+         * AND bits with the union of the bitsets of a set of codes.  A null code set does not constrain bits.
+         */
+        private static void and(BitSet bits, BitSet[] byCode, Set<Integer> codeSet, int from, int to) {
+            if (codeSet == null) {
+                return;
+            }
+            BitSet any = new BitSet(to - from);
+            for (int code : codeSet) {
+                if (byCode[code] != null) {
+                    any.or(byCode[code].get(from, to));
+                }
+            }
+            bits.and(any);
+        }
+
+        List<EventHeader> getHeaders(EventFilter filter) {
+            int[] r = range(filter);
+            BitSet bits = select(filter, r[0], r[1], true, true);
+            List<EventHeader> out = new ArrayList<>(bits.cardinality());
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+                out.add(headers[r[0] + i]);
+            }
+            return out;
+        }
+
+        EventFacetCounts getFacetCounts(EventFilter filter) {
+            int[] r = range(filter);
+            int from = r[0];
+            int to = r[1];
+            Facets f = facets;
+
+            BitSet all = select(filter, from, to, true, true);
+            Map<String, Integer> locationCounts = count(f.byLocation, select(filter, from, to, false, true), from, to);
+            Map<String, Integer> classificationCounts = count(f.byClassification, select(filter, from, to, true, false),
+                    from, to);
+
+            Map<String, Map<String, Integer>> labelCounts = new TreeMap<>();
+            for (Map.Entry<String, Map<String, BitSet>> name : f.byLabel.entrySet()) {
+                Map<String, Integer> valueCounts = new TreeMap<>();
+                for (Map.Entry<String, BitSet> value : name.getValue().entrySet()) {
+                    BitSet b = value.getValue().get(from, to);
+                    b.and(all);
+                    int n = b.cardinality();
+                    if (n > 0) {
+                        valueCounts.put(value.getKey(), n);
+                    }
+                }
+                if (!valueCounts.isEmpty()) {
+                    labelCounts.put(name.getKey(), valueCounts);
+                }
+            }
+            return new EventFacetCounts(all.cardinality(), locationCounts, classificationCounts, labelCounts);
+        }
+
+        /**
+         * Count the entries of base (relative to from) that have each code
+         */
+        private Map<String, Integer> count(BitSet[] byCode, BitSet base, int from, int to) {
+            Map<String, Integer> out = new TreeMap<>();
+            for (int code = 0; code < byCode.length; code++) {
+                if (byCode[code] == null) {
+                    continue;
+                }
+                BitSet b = byCode[code].get(from, to);
+                b.and(base);
+                int n = b.cardinality();
+                if (n > 0) {
+                    out.put(strings[code], n);
+                }
+            }
+            return out;
+        }
+
+        /**
+         * The distinct values used by events of the given systems, sorted.
+         *
+         * @param byLocation True for locations, false for classifications
+         */
+        List<String> getValues(List<String> systemList, boolean byLocation) {
+            Facets f = facets;
+            BitSet systemBits = null;
+            if (systemList != null && !systemList.isEmpty()) {
+                systemBits = new BitSet();
+                for (String system : systemList) {
+                    Integer code = codes.get(system);
+                    if (code != null && f.bySystem[code] != null) {
+                        systemBits.or(f.bySystem[code]);
+                    }
+                }
+            }
+
+            BitSet[] byCode = byLocation ? f.byLocation : f.byClassification;
+            Set<String> out = new TreeSet<>();
+            for (int code = 0; code < byCode.length; code++) {
+                if (byCode[code] != null && !byCode[code].isEmpty()
+                        && (systemBits == null || byCode[code].intersects(systemBits))) {
+                    out.add(strings[code]);
+                }
+            }
+            return new ArrayList<>(out);
+        }
+    }
+
+    /**
+     * Bitsets over a snapshot's entries, one per system, location, classification and label value, plus the archive
+     * and delete flags.  Bit i is set if entry i has that value.  Combining them with AND/OR gives the entries that
+     * match a filter, and the cardinality of a combination is a count for the filter panels.  Time ranges need no
+     * bitsets (e.g. per day), since entries are in time order and a time range is a contiguous range of entries.
+     * <p>
+     * Facets are built in full only when the index is loaded.  Each update derives the next snapshot's facets from the
+     * previous ones, copying only the bitsets it has to change and sharing the rest, so readers of the previous
+     * snapshot are not disturbed.  A label or flag change copies the few bitsets of the old and new values.  A new
+     * event, which is normally the newest, is appended and likewise copies only its own values' bitsets.  Only an insert
+     * or delete before other entries has to shift every bitset that extends past it.
+     * <p>
+     * These are plain java.util.BitSets, which take one bit per entry up to each bitset's highest set bit.  At a million
+     * events and about 80 distinct values (RF zones, classifications, cavity and fault-type labels, both flags) that is
+     * at most 10 MB, small next to the headers themselves.  Sparse values such as a single zone would compress well,
+     * but not enough to justify a new dependency at this size.
+     */
+    private static class Facets {
+
+        private final BitSet[] bySystem;
+        private final BitSet[] byLocation;
+        private final BitSet[] byClassification;
+        // Label name -> label value -> entries with such a label
+        private final Map<String, Map<String, BitSet>> byLabel;
+        private final BitSet archived;
+        private final BitSet deleted;
+
+        Facets(Snapshot s) {
+            int numCodes = s.strings.length;
+            bySystem = new BitSet[numCodes];
+            byLocation = new BitSet[numCodes];
+            byClassification = new BitSet[numCodes];
+            byLabel = new TreeMap<>();
+            archived = new BitSet();
+            deleted = new BitSet();
+            for (int i = 0; i < s.headers.length; i++) {
+                set(bySystem, s.systems[i], i);
+                set(byLocation, s.locations[i], i);
+                set(byClassification, s.classifications[i], i);
+
+                EventHeader h = s.headers[i];
+                if (h.isArchive()) {
+                    archived.set(i);
+                }
+                if (h.isDelete()) {
+                    deleted.set(i);
+                }
+                for (Label label : h.getLabelList()) {
+                    if (label.getName() == null || label.getValue() == null) {
+                        continue;
+                    }
+                    byLabel.computeIfAbsent(label.getName(), k -> new TreeMap<>())
+                            .computeIfAbsent(label.getValue(), k -> new BitSet())
+                            .set(i);
+                }
+            }
+        }
+
+        private Facets(BitSet[] bySystem, BitSet[] byLocation, BitSet[] byClassification,
+                       Map<String, Map<String, BitSet>> byLabel, BitSet archived, BitSet deleted) {
+            this.bySystem = bySystem;
+            this.byLocation = byLocation;
+            this.byClassification = byClassification;
+            this.byLabel = byLabel;
+            this.archived = archived;
+            this.deleted = deleted;
+        }
+
+        private static void set(BitSet[] byCode, int code, int i) {
+            if (byCode[code] == null) {
+                byCode[code] = new BitSet();
+            }
+            byCode[code].set(i);
+        }
+
+        /**
+         * The facets of the snapshot that results from taking entry old out of s and putting h in at pos.
+         *
+         * @param s The snapshot these facets belong to
+         * @param old The index of the entry removed from s, or -1
+         * @param h The header inserted, or null
+         * @param pos The index of h in the new snapshot.  Equal to old if h simply replaces the old entry.
+         * @param system The code of h's system in the new snapshot
+         * @param location The code of h's location in the new snapshot
+         * @param classification The code of h's classification in the new snapshot
+         * @param numCodes The size of the new snapshot's dictionary
+         */
+        Facets update(Snapshot s, int old, EventHeader h, int pos, int system, int location, int classification,
+                      int numCodes) {
+            Edit e = new Edit();
+            BitSet[] nSystems = Arrays.copyOf(bySystem, numCodes);
+            BitSet[] nLocations = Arrays.copyOf(byLocation, numCodes);
+            BitSet[] nClassifications = Arrays.copyOf(byClassification, numCodes);
+            Map<String, Map<String, BitSet>> nLabels = new TreeMap<>();
+            for (Map.Entry<String, Map<String, BitSet>> entry : byLabel.entrySet()) {
+                nLabels.put(entry.getKey(), new TreeMap<>(entry.getValue()));
+            }
+            BitSet nArchived = archived;
+            BitSet nDeleted = deleted;
+
+            if (old >= 0 && h != null && old == pos) {
+                // Replaced in place, so no other entry moves.  Clear the old entry's bits.
+                EventHeader oh = s.headers[old];
+                e.clear(nSystems, s.systems[old], old);
+                e.clear(nLocations, s.locations[old], old);
+                e.clear(nClassifications, s.classifications[old], old);
+                nArchived = oh.isArchive() ? e.clear(nArchived, old) : nArchived;
+                nDeleted = oh.isDelete() ? e.clear(nDeleted, old) : nDeleted;
+                for (Label label : oh.getLabelList()) {
+                    Map<String, BitSet> values = label.getName() == null ? null : nLabels.get(label.getName());
+                    if (values != null && label.getValue() != null && values.containsKey(label.getValue())) {
+                        values.put(label.getValue(), e.clear(values.get(label.getValue()), old));
+                    }
+                }
+            } else {
+                // Everything after a removed entry moves down one, and everything from an inserted entry on moves up
+                if (old >= 0) {
+                    e.shiftAll(nSystems, old, false);
+                    e.shiftAll(nLocations, old, false);
+                    e.shiftAll(nClassifications, old, false);
+                    nArchived = e.shift(nArchived, old, false);
+                    nDeleted = e.shift(nDeleted, old, false);
+                    for (Map<String, BitSet> values : nLabels.values()) {
+                        values.replaceAll((value, bits) -> e.shift(bits, old, false));
+                    }
+                }
+                if (h != null) {
+                    e.shiftAll(nSystems, pos, true);
+                    e.shiftAll(nLocations, pos, true);
+                    e.shiftAll(nClassifications, pos, true);
+                    nArchived = e.shift(nArchived, pos, true);
+                    nDeleted = e.shift(nDeleted, pos, true);
+                    for (Map<String, BitSet> values : nLabels.values()) {
+                        values.replaceAll((value, bits) -> e.shift(bits, pos, true));
+                    }
+                }
+            }
+
+            if (h != null) {
+                e.set(nSystems, system, pos);
+                e.set(nLocations, location, pos);
+                e.set(nClassifications, classification, pos);
+                nArchived = h.isArchive() ? e.set(nArchived, pos) : nArchived;
+                nDeleted = h.isDelete() ? e.set(nDeleted, pos) : nDeleted;
+                for (Label label : h.getLabelList()) {
+                    if (label.getName() == null || label.getValue() == null) {
+                        continue;
+                    }
+                    Map<String, BitSet> values = nLabels.computeIfAbsent(label.getName(), k -> new TreeMap<>());
+                    values.put(label.getValue(), e.set(values.get(label.getValue()), pos));
+                }
+            }
+            return new Facets(nSystems, nLocations, nClassifications, nLabels, nArchived, nDeleted);
+        }
+    }
+
+    /**
+     * Copy-on-write changes to a Facets' bitsets.  A bitset is copied the first time it is changed, and the copy is
+     * changed in place after that.  Bitsets that are never changed stay shared with the previous Facets.
+     */
+    private static class Edit {
+
+        private final Set<BitSet> owned = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        private BitSet own(BitSet bits) {
+            if (bits == null) {
+                bits = new BitSet();
+            } else if (!owned.contains(bits)) {
+                bits = (BitSet) bits.clone();
+            }
+            owned.add(bits);
+            return bits;
+        }
+
+        BitSet set(BitSet bits, int i) {
+            BitSet out = own(bits);
+            out.set(i);
+            return out;
+        }
+
+        BitSet clear(BitSet bits, int i) {
+            BitSet out = own(bits);
+            out.clear(i);
+            return out;
+        }
+
+        void set(BitSet[] byCode, int code, int i) {
+            byCode[code] = set(byCode[code], i);
+        }
+
+        void clear(BitSet[] byCode, int code, int i) {
+            if (byCode[code] != null) {
+                byCode[code] = clear(byCode[code], i);
+            }
+        }
+
+        void shiftAll(BitSet[] byCode, int i, boolean insert) {
+            for (int code = 0; code < byCode.length; code++) {
+                byCode[code] = shift(byCode[code], i, insert);
+            }
+        }
+
+        /**
+         * Open a clear bit at i, moving bits i and above up one, or remove bit i, moving the bits above it down one.
+         * Bitsets with nothing at or above i are returned as is.
+         */
+        BitSet shift(BitSet bits, int i, boolean insert) {
+            if (bits == null || bits.length() <= i) {
+                return bits;
+            }
+            BitSet out = bits.get(0, i);
+            BitSet high = bits.get(insert ? i : i + 1, bits.length());
+            int offset = insert ? i + 1 : i;
+
+            // out |= high << offset
+            long[] words = high.toLongArray();
+            int wordShift = offset >>> 6;
+            int bitShift = offset & 63;
+            long[] shifted = new long[words.length + wordShift + 1];
+            for (int k = 0; k < words.length; k++) {
+                shifted[k + wordShift] |= words[k] << bitShift;
+                if (bitShift != 0) {
+                    shifted[k + wordShift + 1] |= words[k] >>> (64 - bitShift);
+                }
+            }
+            out.or(BitSet.valueOf(shifted));
+            owned.add(out);
+            return out;
+        }
+    }
+}
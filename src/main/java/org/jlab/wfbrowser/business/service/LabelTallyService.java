@@ -0,0 +1,408 @@
+package org.jlab.wfbrowser.business.service;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonArrayBuilder;
+import org.jlab.wfbrowser.business.util.SqlUtil;
+import org.jlab.wfbrowser.business.util.TimeUtil;
+
+/**
+ * Maintains and queries the label_tally_hourly rollup table.  Each row counts the events of a system at a location
+ * within one hour that share the same fault-type, cavity, and model labels.  Rows are also split on whether every one of
+ * the events' labels has a confidence above zero, which is the fault summary report's default confidence filter.
+ * <p>
+ * The rollup is kept current by moving the changed event's count from its old row to its new one, inside the same
+ * transaction as the change.  Those statements lock only the two rollup rows by primary key.  Recomputing a whole
+ * hour from event and label instead would take shared next-key locks on that hour's events, and harvester inserts into
+ * the same hour would then wait on each other or deadlock during a trip storm.  rebuild recomputes a time range from
+ * the raw tables if the counts are ever off, e.g. after changes made directly in the database.
+ *
+ * @author adamc
+ */
+public class LabelTallyService {
+
+    private static final Logger LOGGER = Logger.getLogger(LabelTallyService.class.getName());
+
+    /**
+     * Tally events from the raw tables into hourly buckets.  Must be completed with a WHERE clause on the event table
+     * followed by TALLY_SQL_END.  Events without capture files are left out, the same as the event queries that the
+     * report reads partial hours with, so that the rollup and raw events count the same events.
+     */
+    private static final String EVENT_TALLY_SQL_START = "SELECT event.event_id, event.system_id, event.location,"
+            + "     DATE_FORMAT(event.event_time_utc, '%Y-%m-%d %H:00:00') AS hour_utc,"
+            + "     COALESCE(MAX(CASE WHEN label_name = 'fault-type' THEN label_value END), '') AS fault_type,"
+            + "     COALESCE(MAX(CASE WHEN label_name = 'cavity' THEN label_value END), '') AS cavity,"
+            + "     COALESCE(MAX(model_name), '') AS model_name,"
+            + "     CASE WHEN COUNT(label.label_id) > 0"
+            + "       AND SUM(label_confidence IS NULL OR label_confidence <= 0) = 0 THEN 1 ELSE 0 END AS confident"
+            + "   FROM event"
+            + "   LEFT JOIN label ON label.event_id = event.event_id";
+    private static final String EVENT_TALLY_SQL_END
+            = "   AND EXISTS (SELECT 1 FROM capture WHERE capture.event_id = event.event_id)"
+            + "   GROUP BY event.event_id";
+    private static final String TALLY_SQL_START = "SELECT system_id, location, hour_utc, fault_type, cavity, model_name,"
+            + " confident, COUNT(*) AS num_events"
+            + " FROM (" + EVENT_TALLY_SQL_START;
+    private static final String TALLY_SQL_END = EVENT_TALLY_SQL_END
+            + " ) AS t"
+            + " GROUP BY system_id, location, hour_utc, fault_type, cavity, model_name, confident";
+
+    private static final String INSERT_SQL = "INSERT INTO label_tally_hourly"
+            + " (system_id, location, hour_utc, fault_type, cavity, model_name, confident, num_events) ";
+
+    /**
+     * The rollup row that an event is counted in.
+     */
+    static class TallyKey {
+
+        private final int systemId;
+        private final String location;
+        private final String hour;
+        private final String faultType;
+        private final String cavity;
+        private final String modelName;
+        private final boolean confident;
+
+        private TallyKey(ResultSet rs) throws SQLException {
+            systemId = rs.getInt("system_id");
+            location = rs.getString("location");
+            hour = rs.getString("hour_utc");
+            faultType = rs.getString("fault_type");
+            cavity = rs.getString("cavity");
+            modelName = rs.getString("model_name");
+            confident = rs.getBoolean("confident");
+        }
+
+        private int setPrimaryKey(PreparedStatement pstmt, int i) throws SQLException {
+            pstmt.setInt(i++, systemId);
+            pstmt.setString(i++, location);
+            pstmt.setString(i++, hour);
+            pstmt.setString(i++, faultType);
+            pstmt.setString(i++, cavity);
+            pstmt.setString(i++, modelName);
+            pstmt.setInt(i++, confident ? 1 : 0);
+            return i;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof TallyKey)) {
+                return false;
+            }
+            TallyKey k = (TallyKey) o;
+            return systemId == k.systemId && location.equals(k.location) && hour.equals(k.hour)
+                    && faultType.equals(k.faultType) && cavity.equals(k.cavity) && modelName.equals(k.modelName)
+                    && confident == k.confident;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(systemId, location, hour, faultType, cavity, modelName, confident);
+        }
+    }
+
+    /**
+     * Look up the rollup row that an event is currently counted in.  The event row is locked first so that concurrent
+     * changes to the same event move its count one at a time.  Call this before anything else in the transaction so
+     * that the read sees the latest committed labels.
+     *
+     * @param conn    The connection to use.  Part of the caller's transaction.
+     * @param eventId The ID of the event
+     * @return The event's rollup row, or null if there is no such event or it has no capture files
+     * @throws SQLException If problems arise while querying the database
+     */
+    static TallyKey getTallyKey(Connection conn, long eventId) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT event_id FROM event WHERE event_id = ? FOR UPDATE")) {
+            pstmt.setLong(1, eventId);
+            pstmt.executeQuery().close();
+        }
+
+        String sql = EVENT_TALLY_SQL_START + " WHERE event.event_id = ?" + EVENT_TALLY_SQL_END;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setLong(1, eventId);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? new TallyKey(rs) : null;
+            }
+        }
+    }
+
+    /**
+     * Move an event's count between rollup rows after a change to the event.  Does not commit so that the rollup
+     * update is part of the caller's transaction.
+     *
+     * @param conn   The connection to use
+     * @param before The row the event was counted in before the change, or null if it was not counted
+     * @param after  The row the event is counted in after the change, or null if it is no longer counted
+     * @throws SQLException If problems arise while updating the database
+     */
+    static void moveCount(Connection conn, TallyKey before, TallyKey after) throws SQLException {
+        if (before != null && before.equals(after)) {
+            return;
+        }
+        String where = " WHERE system_id = ? AND location = ? AND hour_utc = ? AND fault_type = ? AND cavity = ?"
+                + " AND model_name = ? AND confident = ?";
+        if (before != null) {
+            try (PreparedStatement pstmt = conn.prepareStatement("UPDATE label_tally_hourly"
+                    + " SET num_events = num_events - 1" + where)) {
+                before.setPrimaryKey(pstmt, 1);
+                pstmt.executeUpdate();
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM label_tally_hourly" + where
+                    + " AND num_events <= 0")) {
+                before.setPrimaryKey(pstmt, 1);
+                pstmt.executeUpdate();
+            }
+        }
+        if (after != null) {
+            try (PreparedStatement pstmt = conn.prepareStatement(INSERT_SQL + "VALUES (?, ?, ?, ?, ?, ?, ?, 1)"
+                    + " ON DUPLICATE KEY UPDATE num_events = num_events + 1")) {
+                after.setPrimaryKey(pstmt, 1);
+                pstmt.executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Rebuild the rollup for every hour that overlaps the given time range.  Intended for backfills and for repairing
+     * the table after bulk changes made directly in the database.
+     *
+     * @param begin The start of the range.  Rounded down to the hour.
+     * @param end   The end of the range.  Rounded up to the hour.
+     * @return The number of rollup rows written
+     * @throws SQLException If problems arise while updating the database
+     */
+    public int rebuild(Instant begin, Instant end) throws SQLException {
+        if (begin == null || end == null || end.isBefore(begin)) {
+            throw new IllegalArgumentException("begin and end are required and begin must not be after end");
+        }
+        Instant first = begin.truncatedTo(ChronoUnit.HOURS);
+        Instant last = end.truncatedTo(ChronoUnit.HOURS).plus(1, ChronoUnit.HOURS);
+
+        String deleteSql = "DELETE FROM label_tally_hourly WHERE hour_utc >= ? AND hour_utc < ?";
+        String insertSql = INSERT_SQL + TALLY_SQL_START
+                + " WHERE event.event_time_utc >= ? AND event.event_time_utc < ?"
+                + TALLY_SQL_END;
+
+        Connection conn = null;
+        PreparedStatement pstmt = null;
+        int n;
+        try {
+            conn = SqlUtil.getConnection();
+            conn.setAutoCommit(false);
+            pstmt = conn.prepareStatement(deleteSql);
+            pstmt.setString(1, TimeUtil.getDateTimeString(first));
+            pstmt.setString(2, TimeUtil.getDateTimeString(last));
+            pstmt.executeUpdate();
+            pstmt.close();
+
+            pstmt = conn.prepareStatement(insertSql);
+            pstmt.setString(1, TimeUtil.getDateTimeString(first));
+            pstmt.setString(2, TimeUtil.getDateTimeString(last));
+            n = pstmt.executeUpdate();
+            conn.commit();
+        } catch (SQLException ex) {
+            if (conn != null) {
+                conn.rollback();
+            }
+            throw ex;
+        } finally {
+            SqlUtil.close(pstmt, conn);
+        }
+
+        LOGGER.log(Level.INFO, "Rebuilt label tally rollup from {0} to {1}.  {2} rows written.", new Object[]{first, last, n});
+        return n;
+    }
+
+    /**
+     * Get hourly label tallies for a time range.  Whole hours are read from the rollup table.  Partial hours at either
+     * end of the range are tallied from the raw tables so that the result matches a query over raw events exactly.
+     * The format of this output is equivalent to the following structure, ordered by hour then location:
+     * [
+     * {'hour': 'yyyy-MM-dd HH:mm:ss' (UTC),
+     * 'location': <location>,
+     * 'fault-type': <value or ''>,
+     * 'cavity': <value or ''>,
+     * 'model': <model name or ''>,
+     * 'count': <count>
+     * },
+     * ...
+     * ]
+     *
+     * @param system    The name of the system
+     * @param locations Only include these locations.  All locations if null or empty.
+     * @param begin     The start of the range (inclusive)
+     * @param end       The end of the range (inclusive)
+     * @return A JsonArray of tally rows
+     * @throws SQLException If problems arise while querying the database
+     */
+    public JsonArray getHourlyLabelTallyAsJson(String system, List<String> locations, Instant begin, Instant end) throws SQLException {
+        if (system == null || begin == null || end == null) {
+            throw new IllegalArgumentException("system, begin, and end are required");
+        }
+
+        // The hours [firstFull, lastFull) are fully inside the requested range
+        Instant firstFull = getFirstWholeHour(begin);
+        Instant lastFull = getEndOfWholeHours(end);
+
+        JsonArrayBuilder jab = Json.createArrayBuilder();
+        Connection conn = null;
+        try {
+            conn = SqlUtil.getConnection();
+            if (!firstFull.isBefore(lastFull)) {
+                addRawTally(conn, jab, system, locations, begin, end);
+            } else {
+                if (begin.isBefore(firstFull)) {
+                    addRawTally(conn, jab, system, locations, begin, firstFull.minusNanos(1));
+                }
+                addRollupTally(conn, jab, system, locations, firstFull, lastFull, "");
+                addRawTally(conn, jab, system, locations, lastFull, end);
+            }
+        } finally {
+            SqlUtil.close(conn);
+        }
+        return jab.build();
+    }
+
+    /**
+     * Get the rollup rows for whole hours in the same format as getHourlyLabelTallyAsJson, limited to the events that the
+     * fault summary report shows with its default confidence filter, i.e., events whose labels all have a confidence
+     * above zero, plus unlabeled events if requested.  The caller is responsible for any partial hours at the edges of
+     * its range, see getFirstWholeHour and getEndOfWholeHours.
+     *
+     * @param system           The name of the system
+     * @param locations        Only include these locations.  All locations if null or empty.
+     * @param firstHour        The first hour to include
+     * @param lastHour         The end of the hours to include (exclusive)
+     * @param includeUnlabeled Also include the tally of events that have no labels
+     * @return A JsonArray of tally rows
+     * @throws SQLException If problems arise while querying the database
+     */
+    public JsonArray getConfidentHourlyLabelTallyAsJson(String system, List<String> locations, Instant firstHour,
+                                                        Instant lastHour, boolean includeUnlabeled) throws SQLException {
+        if (system == null || firstHour == null || lastHour == null) {
+            throw new IllegalArgumentException("system, firstHour, and lastHour are required");
+        }
+
+        String labeledClause = includeUnlabeled ? " AND (confident = 1 OR model_name = '')" : " AND confident = 1";
+        JsonArrayBuilder jab = Json.createArrayBuilder();
+        Connection conn = null;
+        try {
+            conn = SqlUtil.getConnection();
+            addRollupTally(conn, jab, system, locations, firstHour, lastHour, labeledClause);
+        } finally {
+            SqlUtil.close(conn);
+        }
+        return jab.build();
+    }
+
+    /**
+     * @param begin The start of a time range
+     * @return The start of the first hour that lies entirely within a range starting at begin
+     */
+    public static Instant getFirstWholeHour(Instant begin) {
+        Instant hour = begin.truncatedTo(ChronoUnit.HOURS);
+        return hour.isBefore(begin) ? hour.plus(1, ChronoUnit.HOURS) : hour;
+    }
+
+    /**
+     * @param end The end of a time range
+     * @return The end (exclusive) of the last hour that lies entirely within a range ending at end
+     */
+    public static Instant getEndOfWholeHours(Instant end) {
+        return end.truncatedTo(ChronoUnit.HOURS);
+    }
+
+    /**
+     * Add tally rows for events in the inclusive range [begin, end] computed from the raw tables.
+     */
+    private void addRawTally(Connection conn, JsonArrayBuilder jab, String system, List<String> locations, Instant begin,
+                             Instant end) throws SQLException {
+        // The confident split is only of use to the report, so merge it back here
+        String sql = "SELECT location, hour_utc, fault_type, cavity, model_name, SUM(num_events) AS num_events"
+                + " FROM (" + TALLY_SQL_START
+                + " WHERE event.system_id = (SELECT system_id FROM system_type WHERE system_name = ?)"
+                + " AND event.event_time_utc >= ? AND event.event_time_utc <= ?"
+                + getLocationClause("event.location", locations)
+                + TALLY_SQL_END
+                + " ) AS tally"
+                + " GROUP BY location, hour_utc, fault_type, cavity, model_name"
+                + " ORDER BY hour_utc, location, fault_type, cavity, model_name";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            pstmt.setString(i++, system);
+            pstmt.setString(i++, TimeUtil.getDateTimeString(begin));
+            pstmt.setString(i++, TimeUtil.getDateTimeString(end));
+            assignLocations(pstmt, i, locations);
+            addRows(pstmt, jab);
+        }
+    }
+
+    /**
+     * Add tally rows for the whole hours in [firstHour, lastHour) read from the rollup table.  extraClause further
+     * limits the rows and is ANDed on to the WHERE clause as is.
+     */
+    private void addRollupTally(Connection conn, JsonArrayBuilder jab, String system, List<String> locations,
+                                Instant firstHour, Instant lastHour, String extraClause) throws SQLException {
+        String sql = "SELECT location, DATE_FORMAT(hour_utc, '%Y-%m-%d %H:00:00') AS hour_utc, fault_type, cavity,"
+                + " model_name, SUM(num_events) AS num_events"
+                + " FROM label_tally_hourly"
+                + " JOIN system_type USING(system_id)"
+                + " WHERE system_name = ? AND hour_utc >= ? AND hour_utc < ?"
+                + getLocationClause("location", locations)
+                + extraClause
+                + " GROUP BY location, hour_utc, fault_type, cavity, model_name"
+                + " ORDER BY hour_utc, location, fault_type, cavity, model_name";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            int i = 1;
+            pstmt.setString(i++, system);
+            pstmt.setString(i++, TimeUtil.getDateTimeString(firstHour));
+            pstmt.setString(i++, TimeUtil.getDateTimeString(lastHour));
+            assignLocations(pstmt, i, locations);
+            addRows(pstmt, jab);
+        }
+    }
+
+    private static String getLocationClause(String column, List<String> locations) {
+        if (locations == null || locations.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder(" AND " + column + " IN (?");
+        for (int i = 1; i < locations.size(); i++) {
+            sb.append(",?");
+        }
+        return sb.append(")").toString();
+    }
+
+    private static void assignLocations(PreparedStatement pstmt, int index, List<String> locations) throws SQLException {
+        if (locations != null) {
+            for (String location : locations) {
+                pstmt.setString(index++, location);
+            }
+        }
+    }
+
+    private static void addRows(PreparedStatement pstmt, JsonArrayBuilder jab) throws SQLException {
+        try (ResultSet rs = pstmt.executeQuery()) {
+            while (rs.next()) {
+                jab.add(Json.createObjectBuilder()
+                        .add("hour", rs.getString("hour_utc"))
+                        .add("location", rs.getString("location"))
+                        .add("fault-type", rs.getString("fault_type"))
+                        .add("cavity", rs.getString("cavity"))
+                        .add("model", rs.getString("model_name"))
+                        .add("count", rs.getLong("num_events"))
+                        .build());
+            }
+        }
+    }
+}
@@ -11,13 +11,18 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.jlab.wfbrowser.business.filter.SeriesFilter;
 import org.jlab.wfbrowser.business.filter.SeriesSetFilter;
+import org.jlab.wfbrowser.business.util.SeriesMatcher;
 import org.jlab.wfbrowser.business.util.SqlUtil;
 import org.jlab.wfbrowser.model.Series;
 import org.jlab.wfbrowser.model.SeriesSet;
@@ -30,7 +35,68 @@ public class SeriesService {
 
     private static final Logger LOGGER = Logger.getLogger(EventService.class.getName());
 
+    /**
+     * Compiled series matchers keyed on system name, and the full list of series sets.  Any change to the series or
+     * series set tables clears both and bumps the generation so that a value built from a now stale query is never
+     * published.
+     */
+    private static final ConcurrentMap<String, SeriesMatcher> MATCHER_CACHE = new ConcurrentHashMap<>();
+    private static volatile List<SeriesSet> seriesSetCache = null;
+    private static final AtomicLong CACHE_GENERATION = new AtomicLong(0);
+
+    /**
+     * Get a SeriesMatcher compiled from all of the series patterns defined for a system.  Matchers are cached and
+     * rebuilt on the first request after a series is added, updated, or deleted.
+     *
+     * @param system The name of the system whose series should be matched
+     * @return A SeriesMatcher for the system
+     * @throws SQLException If problems arise while querying the series
+     */
+    public SeriesMatcher getSeriesMatcher(String system) throws SQLException {
+        if (system == null) {
+            throw new IllegalArgumentException("system is required");
+        }
+        SeriesMatcher matcher = MATCHER_CACHE.get(system);
+        if (matcher != null) {
+            return matcher;
+        }
+
+        long generation = CACHE_GENERATION.get();
+        matcher = new SeriesMatcher(querySeries(new SeriesFilter(null, system, null), true));
+        synchronized (MATCHER_CACHE) {
+            if (generation == CACHE_GENERATION.get()) {
+                MATCHER_CACHE.put(system, matcher);
+            }
+        }
+        return matcher;
+    }
+
+    /**
+     * Drop all cached SeriesMatchers and SeriesSets.  Called after any committed change to the series or series set
+     * tables.
+     */
+    private static void invalidateCaches() {
+        synchronized (MATCHER_CACHE) {
+            CACHE_GENERATION.incrementAndGet();
+            MATCHER_CACHE.clear();
+            seriesSetCache = null;
+        }
+    }
+
     public List<Series> getSeries(SeriesFilter filter) throws SQLException {
+        return querySeries(filter, false);
+    }
+
+    /**
+     * Query the series table.
+     *
+     * @param filter The filter to apply
+     * @param primary If true, read the latest committed data on a fresh primary connection.  Used when the result is
+     * cached.
+     * @return The matching series ordered by name
+     * @throws SQLException If problems arise while querying the database
+     */
+    private List<Series> querySeries(SeriesFilter filter, boolean primary) throws SQLException {
         List<Series> seriesList = new ArrayList<>();
 
         String sql = "SELECT series_id, system_name, pattern, series_name, description, units, ymin, ymax"
@@ -45,7 +111,7 @@ public class SeriesService {
         ResultSet rs = null;
 
         try {
-            conn = SqlUtil.getConnection();
+            conn = primary ? SqlUtil.getPrimaryConnection() : SqlUtil.getConnection();
             pstmt = conn.prepareStatement(sql);
             filter.assignParameterValues(pstmt);
             rs = pstmt.executeQuery();
@@ -124,6 +190,7 @@ public class SeriesService {
                 throw new SQLException(msg);
             }
             conn.commit();
+            invalidateCaches();
         } finally {
             SqlUtil.close(pstmt, conn);
         }
@@ -177,6 +244,7 @@ public class SeriesService {
                 throw new SQLException(msg);
             }
             conn.commit();
+            invalidateCaches();
         } finally {
             SqlUtil.close(pstmt, conn);
         }
@@ -239,6 +307,7 @@ public class SeriesService {
                 }
             }
             conn.commit();
+            invalidateCaches();
         } catch (SQLException ex) {
             if (conn != null) {
                 conn.rollback();
@@ -274,6 +343,7 @@ public class SeriesService {
                 throw new SQLException(msg);
             }
             conn.commit();
+            invalidateCaches();
         } finally {
             SqlUtil.close(pstmt, conn);
         }
@@ -305,15 +375,51 @@ public class SeriesService {
                 throw new SQLException(msg);
             }
             conn.commit();
+            invalidateCaches();
         } finally {
             SqlUtil.close(pstmt, conn);
         }
     }
 
+    /**
+     * Get the series sets matching the filter.  All series sets are loaded with a single joined query and cached until
+     * the next change to the series or series set tables, so repeated calls (every graph page load and every
+     * /ajax/event request with a seriesSet parameter) are served from memory.  The returned SeriesSets are shared and
+     * should not be modified.
+     *
+     * @param filter The filter to apply
+     * @return A list of matching SeriesSets ordered by name
+     * @throws SQLException If problems arise while querying the database
+     */
     public List<SeriesSet> getSeriesSets(SeriesSetFilter filter) throws SQLException {
-        String setSql = "SELECT set_id, system_name, set_name, description"
+        List<SeriesSet> all = seriesSetCache;
+        if (all == null) {
+            long generation = CACHE_GENERATION.get();
+            all = querySeriesSets();
+            synchronized (MATCHER_CACHE) {
+                if (generation == CACHE_GENERATION.get()) {
+                    seriesSetCache = all;
+                }
+            }
+        }
+        return filter.filterSeriesSets(all);
+    }
+
+    /**
+     * Query every series set and its contents in one pass.  The rows are ordered so that all rows for a set are
+     * adjacent, letting us build each SeriesSet as soon as its rows are finished.
+     *
+     * @return An unmodifiable list of all SeriesSets ordered by name
+     * @throws SQLException If problems arise while querying the database
+     */
+    private List<SeriesSet> querySeriesSets() throws SQLException {
+        String sql = "SELECT series_sets.set_id, system_name, set_name, series_sets.description AS set_description,"
+                + " series.series_id, series_name, pattern, series.description, units, ymin, ymax"
                 + " FROM series_sets"
-                + " JOIN system_type ON system_type.system_id = series_sets.system_id" + filter.getWhereClause();
+                + " JOIN system_type ON system_type.system_id = series_sets.system_id"
+                + " LEFT JOIN series_set_contents ON series_set_contents.set_id = series_sets.set_id"
+                + " LEFT JOIN series ON series.series_id = series_set_contents.series_id"
+                + " ORDER BY set_name, series_sets.set_id, series_name";
 
         Connection conn = null;
         PreparedStatement pstmt = null;
@@ -321,44 +427,50 @@ public class SeriesService {
 
         List<SeriesSet> ss = new ArrayList<>();
         try {
-            conn = SqlUtil.getConnection();
-            pstmt = conn.prepareStatement(setSql);
-            filter.assignParameterValues(pstmt);
+            // Cached until the next write, so read the latest committed data on a fresh primary connection rather than
+            // the request's snapshot or a lagging replica
+            conn = SqlUtil.getPrimaryConnection();
+            pstmt = conn.prepareStatement(sql);
             rs = pstmt.executeQuery();
+
+            Integer currentId = null;
+            String setName = null, systemName = null, setDescription = null;
+            Set<Series> seriesSet = null;
             while (rs.next()) {
                 int setId = rs.getInt("set_id");
-                String setName = rs.getString("set_name");
-                String systemName = rs.getString("system_name");
-                String description = rs.getString("description");
-                ss.add(new SeriesSet(new HashSet<Series>(), setName, setId, systemName, description));
-            }
+                if (currentId == null || currentId != setId) {
+                    if (currentId != null) {
+                        ss.add(new SeriesSet(Collections.unmodifiableSet(seriesSet), setName, currentId, systemName, setDescription));
+                    }
+                    currentId = setId;
+                    setName = rs.getString("set_name");
+                    systemName = rs.getString("system_name");
+                    setDescription = rs.getString("set_description");
+                    seriesSet = new HashSet<>();
+                }
 
-            pstmt.close();
-            String seriesSql = "SELECT series_name,series.series_id,pattern,description,units, ymin, ymax"
-                    + " FROM series"
-                    + " JOIN series_set_contents ON series_set_contents.series_id = series.series_id"
-                    + " WHERE set_id = ?";
-            pstmt = conn.prepareStatement(seriesSql);
-            for (SeriesSet seriesSet : ss) {
-                pstmt.setInt(1, seriesSet.getId());
-                rs = pstmt.executeQuery();
-                while (rs.next()) {
-                    String seriesName = rs.getString("series_name");
-                    int seriesId = rs.getInt("series_id");
-                    String pattern = rs.getString("pattern");
-                    String seriesDescription = rs.getString("description");
-                    String units = rs.getString("units");
-                    Double yMin =  rs.getDouble("ymin");
-                    yMin = rs.wasNull() ? null : yMin;
-                    Double yMax = rs.getDouble("ymax");
-                    yMax = rs.wasNull() ? null : yMax;
-                    seriesSet.addSeries(new Series(seriesName, seriesId, pattern, seriesSet.getSystemName(), seriesDescription, units, yMin, yMax));
+                // A set with no contents produces a single row of NULL series columns from the LEFT JOIN
+                int seriesId = rs.getInt("series_id");
+                if (rs.wasNull()) {
+                    continue;
                 }
+                String seriesName = rs.getString("series_name");
+                String pattern = rs.getString("pattern");
+                String seriesDescription = rs.getString("description");
+                String units = rs.getString("units");
+                Double yMin = rs.getDouble("ymin");
+                yMin = rs.wasNull() ? null : yMin;
+                Double yMax = rs.getDouble("ymax");
+                yMax = rs.wasNull() ? null : yMax;
+                seriesSet.add(new Series(seriesName, seriesId, pattern, systemName, seriesDescription, units, yMin, yMax));
+            }
+            if (currentId != null) {
+                ss.add(new SeriesSet(Collections.unmodifiableSet(seriesSet), setName, currentId, systemName, setDescription));
             }
         } finally {
-            SqlUtil.close(pstmt, rs, conn);
+            SqlUtil.close(rs, pstmt, conn);
         }
-        return ss;
+        return Collections.unmodifiableList(ss);
     }
 
     public void addSeriesSet(String name, String system, String description, Set<Series> set) throws SQLException {
@@ -400,6 +512,7 @@ public class SeriesService {
                 pstmt.execute();
             }
             conn.commit();
+            invalidateCaches();
         } finally {
             SqlUtil.close(rs, pstmt, conn);
         }
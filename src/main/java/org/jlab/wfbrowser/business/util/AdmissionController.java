@@ -0,0 +1,199 @@
+package org.jlab.wfbrowser.business.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limits how much decoded waveform data can be in memory at once.  Requests that load waveform data first estimate how
+ * many bytes they will decode and reserve that many bytes here.  The reservation is held until the response has been
+ * written and is then released.
+ * <p>
+ * Two budgets are enforced: a global budget shared by every request, and a per-user budget so that a single user
+ * cannot starve everyone else.  A request that does not fit right away waits up to maxWaitSeconds for other requests
+ * to finish.  A request that could never fit (larger than the per-user budget) is rejected immediately.
+ * <p>
+ * Budgets and the wait are read from wfBrowser.properties (admissionGlobalBudgetMB, admissionUserBudgetMB,
+ * admissionMaxWaitSeconds).
+ *
+ * @author adamc
+ */
+public class AdmissionController {
+
+    private static final Logger LOGGER = Logger.getLogger(AdmissionController.class.getName());
+
+    /**
+     * Bytes held in memory per decoded sample.  Every Waveform keeps a double[] of time offsets and a double[] of
+     * values.
+     */
+    public static final long BYTES_PER_SAMPLE = 16;
+
+    private static final AdmissionController INSTANCE;
+
+    static {
+        long global = ConfigUtil.getLong("admissionGlobalBudgetMB", 1024) * 1024L * 1024L;
+        long user = ConfigUtil.getLong("admissionUserBudgetMB", 256) * 1024L * 1024L;
+        long waitMillis = ConfigUtil.getLong("admissionMaxWaitSeconds", 30) * 1000L;
+        INSTANCE = new AdmissionController(global, user, waitMillis);
+    }
+
+    private final long globalBudget;
+    private final long userBudget;
+    private final long maxWaitMillis;
+
+    // Guarded by this
+    private long globalInUse = 0;
+    private final Map<String, Long> userInUse = new HashMap<>();
+    private int waiting = 0;
+    private long admitted = 0;
+    private long rejected = 0;
+
+    AdmissionController(long globalBudget, long userBudget, long maxWaitMillis) {
+        this.globalBudget = globalBudget;
+        this.userBudget = Math.min(userBudget, globalBudget);
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    public static AdmissionController getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Reserve memory for a request, waiting if the budgets are currently used up by other requests.
+     *
+     * @param user The user making the request.  Usually the remote user, or the remote address when not logged in.
+     * @param bytes The estimated number of bytes the request will decode
+     * @return A reservation that must be closed once the request is done with the data
+     * @throws RejectedException If the request is larger than a budget or did not fit before the wait expired
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public Reservation acquire(String user, long bytes) throws RejectedException, InterruptedException {
+        if (bytes > userBudget) {
+            synchronized (this) {
+                rejected++;
+            }
+            throw new RejectedException("Request would load about " + toMB(bytes) + " MB of waveform data, which is more"
+                    + " than the " + toMB(userBudget) + " MB limit.  Request fewer events or a shorter time range.",
+                    true);
+        }
+
+        synchronized (this) {
+            long deadline = System.currentTimeMillis() + maxWaitMillis;
+            waiting++;
+            try {
+                while (!fits(user, bytes)) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        rejected++;
+                        LOGGER.log(Level.INFO, "Rejecting {0} byte request from {1}.  {2} bytes in use.",
+                                new Object[]{bytes, user, globalInUse});
+                        throw new RejectedException("The server is busy loading waveform data for other requests."
+                                + "  Try again shortly.", false);
+                    }
+                    wait(remaining);
+                }
+            } finally {
+                waiting--;
+            }
+            globalInUse += bytes;
+            userInUse.merge(user, bytes, Long::sum);
+            admitted++;
+        }
+        return new Reservation(user, bytes);
+    }
+
+    private boolean fits(String user, long bytes) {
+        long used = userInUse.getOrDefault(user, 0L);
+        return globalInUse + bytes <= globalBudget && used + bytes <= userBudget;
+    }
+
+    private synchronized void release(String user, long bytes) {
+        globalInUse -= bytes;
+        long used = userInUse.getOrDefault(user, 0L) - bytes;
+        if (used <= 0) {
+            userInUse.remove(user);
+        } else {
+            userInUse.put(user, used);
+        }
+        notifyAll();
+    }
+
+    private static long toMB(long bytes) {
+        return (bytes + 1024 * 1024 - 1) / (1024 * 1024);
+    }
+
+    public long getGlobalBudget() {
+        return globalBudget;
+    }
+
+    public long getUserBudget() {
+        return userBudget;
+    }
+
+    public synchronized long getBytesInUse() {
+        return globalInUse;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting;
+    }
+
+    public synchronized long getAdmitted() {
+        return admitted;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /**
+     * Memory reserved for one request.  Closing more than once has no further effect.
+     */
+    public class Reservation implements AutoCloseable {
+
+        private final String user;
+        private final long bytes;
+        private boolean closed = false;
+
+        private Reservation(String user, long bytes) {
+            this.user = user;
+            this.bytes = bytes;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            release(user, bytes);
+        }
+    }
+
+    /**
+     * Thrown when a request is not admitted.
+     */
+    public static class RejectedException extends Exception {
+
+        private final boolean tooLarge;
+
+        public RejectedException(String message, boolean tooLarge) {
+            super(message);
+            this.tooLarge = tooLarge;
+        }
+
+        /**
+         * @return True if the request can never be admitted, false if it may succeed when the server is less busy
+         */
+        public boolean isTooLarge() {
+            return tooLarge;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package org.jlab.wfbrowser.business.util;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A small pool of reusable heap buffers for reading whole capture files into memory.  Capture files are around a
+ * megabyte, so reusing buffers avoids allocating (and zeroing) that much for every file of every request.
+ * <p>
+ * The pool holds at most MAX_POOLED_BYTES (8 MB) in total.  Buffers larger than MAX_POOLED_CAPACITY (4 MB, about twice
+ * a typical capture file after rounding up) are never kept, so an unusually large file is garbage collected as usual.
+ *
+ * @author adamc
+ */
+public class ByteBufferPool {
+
+    private static final long MAX_POOLED_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_POOLED_CAPACITY = 4 * 1024 * 1024;
+    private static final int MIN_CAPACITY = 64 * 1024;
+
+    private static final ConcurrentLinkedDeque<ByteBuffer> POOL = new ConcurrentLinkedDeque<>();
+    // Total capacity of the buffers in POOL
+    private static final AtomicLong POOLED_BYTES = new AtomicLong();
+
+    private ByteBufferPool() {
+        // not public so these cannot be instantiated
+    }
+
+    /**
+     * Get a cleared buffer with at least the requested capacity.  Return it with release when done.
+     *
+     * @param capacity The minimum capacity in bytes
+     * @return A buffer with position 0 and limit set to capacity
+     */
+    public static ByteBuffer acquire(int capacity) {
+        Iterator<ByteBuffer> it = POOL.iterator();
+        while (it.hasNext()) {
+            ByteBuffer buffer = it.next();
+            if (buffer.capacity() >= capacity && POOL.removeFirstOccurrence(buffer)) {
+                POOLED_BYTES.addAndGet(-buffer.capacity());
+                buffer.clear();
+                buffer.limit(capacity);
+                return buffer;
+            }
+        }
+
+        // Round up so that a buffer can be reused for slightly larger files
+        int size = MIN_CAPACITY;
+        while (size < capacity && size > 0) {
+            size <<= 1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size > 0 ? size : capacity);
+        buffer.limit(capacity);
+        return buffer;
+    }
+
+    /**
+     * Return a buffer to the pool.  The caller must not use it afterwards.
+     *
+     * @param buffer A buffer from acquire
+     */
+    public static void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() > MAX_POOLED_CAPACITY) {
+            return;
+        }
+        long pooled;
+        do {
+            pooled = POOLED_BYTES.get();
+            if (pooled + buffer.capacity() > MAX_POOLED_BYTES) {
+                return;
+            }
+        } while (!POOLED_BYTES.compareAndSet(pooled, pooled + buffer.capacity()));
+        POOL.offerFirst(buffer);
+    }
+}
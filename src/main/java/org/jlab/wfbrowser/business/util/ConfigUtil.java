@@ -0,0 +1,95 @@
+package org.jlab.wfbrowser.business.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads the application's settings from wfBrowser.properties on the classpath.  The file is read once, the first time
+ * any setting is asked for.  Values are trimmed, so trailing whitespace in the file does not break a number or a path.
+ * A missing file, a missing setting, or a number that can't be parsed gets the caller's default, with a warning for the
+ * latter two cases that are likely mistakes.  The available settings and their defaults are documented in
+ * wfBrowser.properties itself.
+ *
+ * @author adamc
+ */
+public class ConfigUtil {
+
+    private static final Logger LOGGER = Logger.getLogger(ConfigUtil.class.getName());
+
+    private static final Properties PROPS = new Properties();
+
+    static {
+        try (InputStream is = ConfigUtil.class.getClassLoader().getResourceAsStream("wfBrowser.properties")) {
+            if (is != null) {
+                PROPS.load(is);
+            } else {
+                LOGGER.log(Level.WARNING, "wfBrowser.properties not found.  Using default settings.");
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to read wfBrowser.properties.  Using default settings.", ex);
+        }
+    }
+
+    private ConfigUtil() {
+        // not public so these cannot be instantiated
+    }
+
+    /**
+     * @param name The setting's name
+     * @param defaultValue The value to use if the setting is missing
+     * @return The trimmed value of the setting, or defaultValue
+     */
+    public static String getString(String name, String defaultValue) {
+        String value = PROPS.getProperty(name);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    /**
+     * @param name The setting's name
+     * @param defaultValue The value to use if the setting is missing or not an integer
+     * @return The value of the setting, or defaultValue
+     */
+    public static int getInt(String name, int defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            LOGGER.log(Level.WARNING, "Invalid {0} ''{1}''.  Using {2}.", new Object[]{name, value, defaultValue});
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @param name The setting's name
+     * @param defaultValue The value to use if the setting is missing or not an integer
+     * @return The value of the setting, or defaultValue
+     */
+    public static long getLong(String name, long defaultValue) {
+        String value = getString(name, null);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException ex) {
+            LOGGER.log(Level.WARNING, "Invalid {0} ''{1}''.  Using {2}.", new Object[]{name, value, defaultValue});
+            return defaultValue;
+        }
+    }
+
+    /**
+     * @param name The setting's name
+     * @param defaultValue The value to use if the setting is missing
+     * @return True if the setting is "true", ignoring case, false for any other value, or defaultValue if missing
+     */
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = getString(name, null);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
@@ -0,0 +1,331 @@
+package org.jlab.wfbrowser.business.util;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jlab.wfbrowser.model.Event;
+
+/**
+ * Builds and caches tar.gz downloads of events that the harvester has not archived yet.  Before this, every download
+ * of an unarchived event tarred and gzipped its capture files on the request thread with a single core.
+ * <p>
+ * The tar is compressed with a ParallelGzipOutputStream into a cache file, and every download of the event, the first
+ * included, is then served from that file like any archived event, with Range and conditional GET support.  Building
+ * the file doesn't depend on any client, so a slow download can't hold up other downloads of the same event.
+ * <p>
+ * Each cached file's name records the size and last modified time of every capture file it was built from, the same
+ * way WaveformSidecar.Source is recorded in a sidecar.  A cached file whose capture files have since changed on disk,
+ * e.g. from a reused event ID or files rewritten by the harvester, is removed and built again instead of served.  That
+ * also holds for files left from before a restart.
+ * <p>
+ * The cache is bounded (downloadCacheMB) and least recently used files are removed first.  Settings are read from
+ * wfBrowser.properties.  downloadCacheDir defaults to wfbrowser-downloads under java.io.tmpdir and an empty value turns
+ * the cache off.
+ *
+ * @author adamc
+ */
+public class EventArchiveCache {
+
+    private static final Logger LOGGER = Logger.getLogger(EventArchiveCache.class.getName());
+
+    private static final String SUFFIX = ".tar.gz";
+    private static final Path DIR;
+    private static final long BUDGET_BYTES;
+    private static final int THREADS;
+
+    // Event ID -> the cached file, in access order.  Populated from the directory on first use.
+    private static final LinkedHashMap<Long, Entry> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    private static boolean scanned = false;
+    private static long totalBytes = 0;
+
+    // Builds of the same event wait on each other instead of compressing the event twice
+    private static final Object[] BUILD_LOCKS = new Object[64];
+    private static ExecutorService executor = null;
+
+    static {
+        String dir = ConfigUtil.getString("downloadCacheDir",
+                Paths.get(System.getProperty("java.io.tmpdir"), "wfbrowser-downloads").toString());
+        DIR = dir.isEmpty() ? null : Paths.get(dir);
+        BUDGET_BYTES = ConfigUtil.getLong("downloadCacheMB", 2048) * 1024 * 1024;
+        THREADS = ConfigUtil.getInt("downloadCompressThreads", Runtime.getRuntime().availableProcessors());
+
+        for (int i = 0; i < BUILD_LOCKS.length; i++) {
+            BUILD_LOCKS[i] = new Object();
+        }
+    }
+
+    private EventArchiveCache() {
+        // not public so these cannot be instantiated
+    }
+
+    /**
+     * A cached file, with the key of the capture files it was built from and its size
+     */
+    private static class Entry {
+
+        private final String source;
+        private final long size;
+
+        Entry(String source, long size) {
+            this.source = source;
+            this.size = size;
+        }
+    }
+
+    /**
+     * @return True if built archives are kept on disk
+     */
+    public static boolean isEnabled() {
+        return DIR != null;
+    }
+
+    /**
+     * Get the cached archive of an event.  An archive built from capture files that have since changed is removed.
+     *
+     * @param e The event, with its capture files
+     * @return The cached file, or null if the event is not cached
+     * @throws IOException If the capture files could not be read
+     */
+    public static Path get(Event e) throws IOException {
+        if (DIR == null) {
+            return null;
+        }
+        long eventId = e.getEventId();
+        String source = getSourceKey(e);
+        Entry entry;
+        synchronized (ENTRIES) {
+            scan();
+            entry = ENTRIES.get(eventId);
+        }
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.source.equals(source)) {
+            remove(eventId);
+            return null;
+        }
+        Path file = getPath(eventId, entry.source);
+        if (!Files.exists(file)) {
+            // Removed from under us, e.g. tmp cleaning
+            forget(eventId);
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * Get the cached archive of an event, building it first if it is not cached.  Capture files are compressed with
+     * several threads.  If another request is already building the same event, this waits for it and then returns its
+     * file.  Nothing is written to any client while the build lock is held.
+     *
+     * @param e The event, with its capture files
+     * @return The cached file, or null if the cache is disabled
+     * @throws IOException If the archive could not be built
+     */
+    public static Path getOrBuild(Event e) throws IOException {
+        if (DIR == null) {
+            return null;
+        }
+
+        long eventId = e.getEventId();
+        synchronized (BUILD_LOCKS[(int) Math.floorMod(eventId, (long) BUILD_LOCKS.length)]) {
+            Path cached = get(e);
+            if (cached != null) {
+                return cached;
+            }
+
+            // Read before the build, so that a capture file changed during the build does not match the result
+            String source = getSourceKey(e);
+            Files.createDirectories(DIR);
+            Path file = getPath(eventId, source);
+            Path tmp = Files.createTempFile(DIR, eventId + "-", ".tmp");
+            try {
+                try (OutputStream fos = new BufferedOutputStream(Files.newOutputStream(tmp), 64 * 1024)) {
+                    ParallelGzipOutputStream gz = new ParallelGzipOutputStream(fos, getExecutor(), 2 * THREADS);
+                    e.writeCaptureFilesTar(gz);
+                    gz.finish();
+                }
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(tmp);
+            }
+            add(eventId, new Entry(source, Files.size(file)));
+            return file;
+        }
+    }
+
+    /**
+     * Write an event's capture files as a tar.gz to the OutputStream, compressing with several threads.  For when the
+     * cache is disabled.  Nothing is saved.
+     *
+     * @param e The event, with its capture files
+     * @param os Where to write the archive.  Not closed.
+     * @throws IOException If the archive could not be built or the OutputStream could not be written
+     */
+    public static void write(Event e, OutputStream os) throws IOException {
+        ParallelGzipOutputStream gz = new ParallelGzipOutputStream(os, getExecutor(), 2 * THREADS);
+        e.writeCaptureFilesTar(gz);
+        gz.finish();
+    }
+
+    /**
+     * Remove an event's cached archive, e.g. when the event is deleted.
+     *
+     * @param eventId The event's ID
+     */
+    public static void remove(long eventId) {
+        if (DIR == null) {
+            return;
+        }
+        Entry entry = forget(eventId);
+        if (entry == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(getPath(eventId, entry.source));
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to delete cached archive for event " + eventId, ex);
+        }
+    }
+
+    /**
+     * Stop the compression threads.  Called when the application is undeployed.
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            AtomicInteger count = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.max(1, THREADS), r -> {
+                Thread t = new Thread(r, "wfb-gzip-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return executor;
+    }
+
+    private static Path getPath(long eventId, String source) {
+        return DIR.resolve(eventId + "-" + source + SUFFIX);
+    }
+
+    /**
+     * A key for the capture files an event's archive is built from: a hash of each one's name, size and last modified
+     * time.  A capture file that is missing hashes as size -1, so the key still changes when it reappears.
+     */
+    private static String getSourceKey(Event e) throws IOException {
+        long hash = 17;
+        for (String filename : e.getCaptureFileMap().keySet()) {
+            WaveformSidecar.Source source = WaveformSidecar.Source.of(e.getEventDirectoryPath().resolve(filename));
+            hash = 31 * hash + filename.hashCode();
+            hash = 31 * hash + (source == null ? -1 : source.getSize());
+            hash = 31 * hash + (source == null ? -1 : source.getModified());
+        }
+        return Long.toHexString(hash);
+    }
+
+    /**
+     * Load the entries already on disk, oldest first.  Caller must hold the ENTRIES lock.
+     */
+    private static void scan() {
+        if (scanned) {
+            return;
+        }
+        scanned = true;
+        if (!Files.isDirectory(DIR)) {
+            return;
+        }
+        Map<Long, Entry> found = new LinkedHashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(DIR, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int dash = name.indexOf('-');
+                try {
+                    if (dash < 0) {
+                        // Named by event ID only, from before sources were recorded, so it can't be checked
+                        Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+                        Files.deleteIfExists(file);
+                        continue;
+                    }
+                    long eventId = Long.parseLong(name.substring(0, dash));
+                    Entry entry = new Entry(name.substring(dash + 1, name.length() - SUFFIX.length()), Files.size(file));
+                    Entry other = found.put(eventId, entry);
+                    if (other != null) {
+                        // Left by a build that raced a removal.  The one kept is checked against the source on use.
+                        Files.deleteIfExists(getPath(eventId, other.source));
+                    }
+                } catch (NumberFormatException ex) {
+                    // Not one of ours
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to read download cache directory " + DIR, ex);
+        }
+        found.entrySet().stream()
+                .sorted((a, b) -> Long.compare(getPath(a.getKey(), a.getValue().source).toFile().lastModified(),
+                        getPath(b.getKey(), b.getValue().source).toFile().lastModified()))
+                .forEach(entry -> {
+                    ENTRIES.put(entry.getKey(), entry.getValue());
+                    totalBytes += entry.getValue().size;
+                });
+    }
+
+    private static void add(long eventId, Entry entry) {
+        synchronized (ENTRIES) {
+            scan();
+            Entry old = ENTRIES.put(eventId, entry);
+            totalBytes += entry.size - (old == null ? 0 : old.size);
+            if (old != null && !old.source.equals(entry.source)) {
+                try {
+                    Files.deleteIfExists(getPath(eventId, old.source));
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Unable to delete cached archive for event " + eventId, ex);
+                }
+            }
+
+            Iterator<Map.Entry<Long, Entry>> it = ENTRIES.entrySet().iterator();
+            while (totalBytes > BUDGET_BYTES && it.hasNext()) {
+                Map.Entry<Long, Entry> eldest = it.next();
+                if (eldest.getKey() == eventId) {
+                    continue;
+                }
+                it.remove();
+                totalBytes -= eldest.getValue().size;
+                try {
+                    Files.deleteIfExists(getPath(eldest.getKey(), eldest.getValue().source));
+                } catch (IOException ex) {
+                    LOGGER.log(Level.WARNING, "Unable to evict cached archive for event " + eldest.getKey(), ex);
+                }
+            }
+        }
+    }
+
+    private static Entry forget(long eventId) {
+        synchronized (ENTRIES) {
+            scan();
+            Entry entry = ENTRIES.remove(eventId);
+            if (entry != null) {
+                totalBytes -= entry.size;
+            }
+            return entry;
+        }
+    }
+}
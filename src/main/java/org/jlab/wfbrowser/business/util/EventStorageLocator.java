@@ -0,0 +1,168 @@
+package org.jlab.wfbrowser.business.util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jlab.wfbrowser.business.metrics.RequestTimer;
+
+/**
+ * Works out where an event's data lives and whether it is there, without stat calls for every event and capture file.
+ * The data directory is on NFS, where each stat is a round trip.
+ * <p>
+ * Every path that Event checks is an entry of a directory that holds many of them.  Grouped events are a directory or a
+ * tar.gz in the day directory, and ungrouped events are a capture file or a tar.gz in the day directory.  So rather than
+ * checking each path, the locator lists the parent directory once and answers from the listing.  Listings are kept for
+ * storageCacheSeconds (default 10) and then read again.  A WatchService would go stale silently, since NFS clients do
+ * not get change notifications for files written by other hosts (the harvester).
+ * <p>
+ * Settings are read once from wfBrowser.properties (dataDir and storageCacheSeconds).  A storageCacheSeconds of 0 turns
+ * the cache off.
+ *
+ * @author adamc
+ */
+public class EventStorageLocator {
+
+    private static final Logger LOGGER = Logger.getLogger(EventStorageLocator.class.getName());
+
+    private static final int MAX_LISTINGS = 2048;
+    private static final Path DATA_DIR;
+    private static final long TTL_NANOS;
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.ofPattern("yyyy_MM_dd").withZone(ZoneId.systemDefault());
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("HHmmss.S").withZone(ZoneId.systemDefault());
+
+    // Directory -> its entry names, least recently used first.  A null name set means the directory does not exist.
+    private static final LinkedHashMap<Path, Listing> LISTINGS = new LinkedHashMap<Path, Listing>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Path, Listing> eldest) {
+            return size() > MAX_LISTINGS;
+        }
+    };
+
+    static {
+        DATA_DIR = Paths.get(ConfigUtil.getString("dataDir", "/usr/opsdata/waveforms/data"));
+        TTL_NANOS = ConfigUtil.getLong("storageCacheSeconds", 10) * 1_000_000_000L;
+    }
+
+    private static class Listing {
+
+        private final Set<String> names;
+        private final long readAt;
+
+        Listing(Set<String> names, long readAt) {
+            this.names = names;
+            this.readAt = readAt;
+        }
+    }
+
+    private EventStorageLocator() {
+        // not public so these cannot be instantiated
+    }
+
+    /**
+     * @return The base data directory of all events
+     */
+    public static Path getDataDir() {
+        return DATA_DIR;
+    }
+
+    /**
+     * Determine where the uncompressed event directory would be.  For grouped events this holds only the event's capture
+     * files.  For ungrouped events it is the day directory shared by many events.
+     *
+     * @param system The event's system
+     * @param location The event's location
+     * @param classification The event's classification
+     * @param eventTime The event's time
+     * @param grouped Whether the event is grouped
+     * @return The event directory path
+     */
+    public static Path getEventDirectoryPath(String system, String location, String classification, Instant eventTime,
+            boolean grouped) {
+        Path dayDir = DATA_DIR.resolve(system).resolve(location).resolve(classification)
+                .resolve(DAY_FORMATTER.format(eventTime));
+        return grouped ? dayDir.resolve(TIME_FORMATTER.format(eventTime)) : dayDir;
+    }
+
+    /**
+     * Check whether a file or directory exists, using a cached listing of its parent directory.
+     *
+     * @param path The path to check
+     * @return True if the path exists
+     */
+    public static boolean exists(Path path) {
+        Path parent = path.getParent();
+        if (TTL_NANOS <= 0 || parent == null) {
+            return Files.exists(path);
+        }
+        Set<String> names = list(parent);
+        return names != null && names.contains(path.getFileName().toString());
+    }
+
+    /**
+     * Get the entry names of a directory, from the cache if the cached listing is recent enough.
+     *
+     * @param dir The directory
+     * @return The names of the directory's entries, or null if it does not exist or is not a directory
+     */
+    public static Set<String> list(Path dir) {
+        long now = System.nanoTime();
+        if (TTL_NANOS > 0) {
+            synchronized (LISTINGS) {
+                Listing listing = LISTINGS.get(dir);
+                if (listing != null && now - listing.readAt < TTL_NANOS) {
+                    return listing.names;
+                }
+            }
+        }
+
+        Set<String> names = new HashSet<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for (Path entry : entries) {
+                names.add(entry.getFileName().toString());
+            }
+            names = Collections.unmodifiableSet(names);
+        } catch (NoSuchFileException | NotDirectoryException ex) {
+            names = null;
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to list directory " + dir, ex);
+            names = null;
+        }
+        RequestTimer.count("dirListings", 1);
+
+        if (TTL_NANOS > 0) {
+            synchronized (LISTINGS) {
+                LISTINGS.put(dir, new Listing(names, now));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Forget the cached listings of a path and its parent.  Used when files are known to have changed, e.g. a new event
+     * was written by the harvester.
+     *
+     * @param path A file or directory
+     */
+    public static void invalidate(Path path) {
+        synchronized (LISTINGS) {
+            LISTINGS.remove(path);
+            if (path.getParent() != null) {
+                LISTINGS.remove(path.getParent());
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.jlab.wfbrowser.business.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compresses a stream on several threads, the way pigz does.  Input is cut into fixed size blocks and each block is
+ * compressed on the executor as its own gzip member.  Members are written to the underlying stream in order as they
+ * complete.  Concatenated gzip members are a valid gzip file (RFC 1952) that gzip, tar and most libraries read as one
+ * stream.  Compression is slightly worse than a single member since each block starts with an empty dictionary.
+ * <p>
+ * At most maxPending blocks are held in memory at once.
+ *
+ * @author adamc
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+
+    private static final int BLOCK_SIZE = 1024 * 1024;
+
+    private final OutputStream out;
+    private final ExecutorService executor;
+    private final int maxPending;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int count = 0;
+    private boolean anyBlocks = false;
+    private boolean finished = false;
+
+    /**
+     * @param out Where the compressed data goes
+     * @param executor Runs the block compression
+     * @param maxPending The most blocks to hold in memory at once, waiting to be compressed or written
+     */
+    public ParallelGzipOutputStream(OutputStream out, ExecutorService executor, int maxPending) {
+        this.out = out;
+        this.executor = executor;
+        this.maxPending = Math.max(1, maxPending);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[count++] = (byte) b;
+        if (count == BLOCK_SIZE) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, BLOCK_SIZE - count);
+            System.arraycopy(b, off, block, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == BLOCK_SIZE) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Compress and write everything written so far.  Since each block is a separate member, flushing mid-stream would
+     * just make blocks smaller, so this only flushes the underlying stream.
+     *
+     * @throws IOException If the underlying stream can not be written
+     */
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Compress and write any remaining data without closing the underlying stream.
+     *
+     * @throws IOException If compression failed or the underlying stream can not be written
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        // An empty input still needs one (empty) member to be a valid gzip file
+        if (count > 0 || !anyBlocks) {
+            submit();
+        }
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+        out.flush();
+        finished = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            finish();
+        } finally {
+            for (Future<byte[]> f : pending) {
+                f.cancel(true);
+            }
+            pending.clear();
+            out.close();
+        }
+    }
+
+    private void submit() throws IOException {
+        final byte[] data = block;
+        final int length = count;
+        pending.add(executor.submit(() -> compress(data, length)));
+        anyBlocks = true;
+        block = new byte[BLOCK_SIZE];
+        count = 0;
+
+        // Write out whatever is done, and wait for the oldest block if too many are in flight
+        while (!pending.isEmpty() && (pending.size() >= maxPending || pending.peek().isDone())) {
+            writeNext();
+        }
+    }
+
+    private void writeNext() throws IOException {
+        try {
+            out.write(pending.peek().get());
+            pending.poll();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while compressing");
+        } catch (ExecutionException ex) {
+            throw new IOException("Error compressing block", ex.getCause());
+        }
+    }
+
+    private static byte[] compress(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(length / 2 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(bos, 64 * 1024)) {
+            gz.write(data, 0, length);
+        }
+        return bos.toByteArray();
+    }
+}
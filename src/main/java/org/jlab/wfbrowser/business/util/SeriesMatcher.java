@@ -0,0 +1,208 @@
+package org.jlab.wfbrowser.business.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jlab.wfbrowser.model.Series;
+
+/**
+ * Matches waveform names against a collection of Series patterns in a single pass. The Series patterns use SQL LIKE
+ * semantics ('%' matches any run of characters, '_' matches exactly one character, '\' escapes the next character) and
+ * are compared case-insensitively to mirror the database's _ci collation.
+ * <p>
+ * All of the patterns are compiled into a single trie shaped automaton so that patterns sharing a prefix share states.
+ * Classifying a name walks the automaton once, tracking the set of active states, instead of testing each pattern in
+ * turn.  Instances are immutable once built and are safe to share between threads.
+ *
+ * @author adamc
+ */
+public class SeriesMatcher {
+
+    private static final char ESCAPE = '\\';
+
+    private final Node root = new Node(false);
+    private final List<Series> seriesList;
+    private final int numNodes;
+
+    /**
+     * Compile the patterns of the supplied series into a matcher.
+     *
+     * @param seriesList The series whose patterns are to be matched against
+     */
+    public SeriesMatcher(List<Series> seriesList) {
+        this.seriesList = Collections.unmodifiableList(new ArrayList<>(seriesList));
+        int count = 1;
+        for (int i = 0; i < this.seriesList.size(); i++) {
+            count += addPattern(i);
+        }
+        numNodes = count;
+    }
+
+    /**
+     * Add a single series pattern to the trie.
+     *
+     * @param index The index into seriesList of the series to add
+     * @return The number of new nodes that were created
+     */
+    private int addPattern(int index) {
+        Series series = seriesList.get(index);
+        String pattern = series.getPattern();
+        if (pattern == null) {
+            throw new IllegalArgumentException("Series '" + series.getName() + "' has no pattern");
+        }
+
+        int created = 0;
+        Node current = root;
+        boolean escaped = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            Node next;
+            if (!escaped && c == ESCAPE && i + 1 < pattern.length()) {
+                escaped = true;
+                continue;
+            } else if (!escaped && c == '%') {
+                // Consecutive '%' are equivalent to a single '%'
+                if (current.isWildcard) {
+                    continue;
+                }
+                next = current.wildcard;
+                if (next == null) {
+                    next = new Node(true);
+                    current.wildcard = next;
+                    created++;
+                }
+            } else if (!escaped && c == '_') {
+                next = current.any;
+                if (next == null) {
+                    next = new Node(false);
+                    current.any = next;
+                    created++;
+                }
+            } else {
+                char key = fold(c);
+                next = current.literals.get(key);
+                if (next == null) {
+                    next = new Node(false);
+                    current.literals.put(key, next);
+                    created++;
+                }
+            }
+            escaped = false;
+            current = next;
+        }
+        current.matches.add(index);
+
+        return created;
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+    /**
+     * Return the list of series whose pattern matches the given waveform name.
+     *
+     * @param waveformName The name of the waveform to classify
+     * @return A list of matching series in the order they were supplied to the matcher.  Empty if nothing matched.
+     */
+    public List<Series> match(String waveformName) {
+        // Nodes are tagged with the step on which they were last activated so that the active set never holds
+        // duplicates without needing a separate "seen" set per step.  The tags are local to this call.
+        Map<Node, Integer> visited = new HashMap<>();
+        List<Node> active = new ArrayList<>();
+        activate(root, active, visited, 0);
+
+        for (int i = 0; i < waveformName.length() && !active.isEmpty(); i++) {
+            int step = i + 1;
+            char key = fold(waveformName.charAt(i));
+            List<Node> next = new ArrayList<>();
+            for (Node node : active) {
+                if (node.isWildcard) {
+                    activate(node, next, visited, step);
+                }
+                Node child = node.literals.get(key);
+                if (child != null) {
+                    activate(child, next, visited, step);
+                }
+                if (node.any != null) {
+                    activate(node.any, next, visited, step);
+                }
+            }
+            active = next;
+        }
+
+        List<Integer> indices = new ArrayList<>();
+        for (Node node : active) {
+            indices.addAll(node.matches);
+        }
+        Collections.sort(indices);
+        List<Series> out = new ArrayList<>(indices.size());
+        for (Integer index : indices) {
+            out.add(seriesList.get(index));
+        }
+        return out;
+    }
+
+    /**
+     * Add a node and its epsilon closure ('%' matches the empty string) to the active set for this step.
+     */
+    private static void activate(Node node, List<Node> active, Map<Node, Integer> visited, int step) {
+        while (node != null) {
+            Integer last = visited.put(node, step);
+            if (last != null && last == step) {
+                return;
+            }
+            active.add(node);
+            node = node.wildcard;
+        }
+    }
+
+    /**
+     * Classify a collection of waveform names.  The result is suitable for passing to Event.applySeriesMapping.
+     *
+     * @param waveformNames The waveform names to classify
+     * @return A map of waveform name to matching series.  Names that match no series are not included.
+     */
+    public Map<String, List<Series>> getSeriesMapping(Collection<String> waveformNames) {
+        Map<String, List<Series>> mapping = new HashMap<>();
+        for (String name : waveformNames) {
+            List<Series> matches = match(name);
+            if (!matches.isEmpty()) {
+                mapping.put(name, matches);
+            }
+        }
+        return mapping;
+    }
+
+    public List<Series> getSeriesList() {
+        return seriesList;
+    }
+
+    /**
+     * The number of automaton states.  Useful for seeing how much prefix sharing the patterns get.
+     *
+     * @return The number of nodes in the compiled trie
+     */
+    public int getNumNodes() {
+        return numNodes;
+    }
+
+    /**
+     * A single automaton state.  Wildcard nodes ('%') loop on every character.
+     */
+    private static class Node {
+
+        private final boolean isWildcard;
+        private final Map<Character, Node> literals = new HashMap<>();
+        private final List<Integer> matches = new ArrayList<>();
+        private Node any;
+        private Node wildcard;
+
+        Node(boolean isWildcard) {
+            this.isWildcard = isWildcard;
+        }
+    }
+}
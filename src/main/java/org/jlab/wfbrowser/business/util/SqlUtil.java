@@ -12,6 +12,10 @@ import java.util.logging.Logger;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
 import javax.sql.DataSource;
+import org.jlab.wfbrowser.business.metrics.JdbcTiming;
+import org.jlab.wfbrowser.business.metrics.MetricsRegistry;
+import org.jlab.wfbrowser.business.metrics.Phase;
+import org.jlab.wfbrowser.business.metrics.RequestTimer;
 
 /**
  *
@@ -22,6 +26,8 @@ public class SqlUtil {
     private static final Logger LOGGER = Logger.getLogger(SqlUtil.class.getName());
 
     private static DataSource source;
+    private static DataSource readSource;
+    private static final ThreadLocal<UnitOfWork> UNIT_OF_WORK = new ThreadLocal<>();
 
     private SqlUtil() {
         // not public so these cannot be instantiated
@@ -34,10 +40,139 @@ public class SqlUtil {
             LOGGER.log(Level.WARNING, "JDBC resource lookup failed", e);
             throw new ExceptionInInitializerError(e);
         }
+
+        // The read replica is optional.  Without it everything uses the primary.
+        try {
+            readSource = (DataSource) new InitialContext().lookup("jdbc/waveforms_ro");
+        } catch (NamingException e) {
+            LOGGER.log(Level.INFO, "No read replica (jdbc/waveforms_ro) configured.  All queries will use the primary.");
+            readSource = null;
+        }
     }
 
+    /**
+     * @return True if a read replica DataSource is configured
+     */
+    public static boolean hasReadReplica() {
+        return readSource != null;
+    }
+
+    /**
+     * Get a database connection.  If a unit of work is active on this thread the shared connection is returned,
+     * otherwise a connection is checked out of the pool.  Either way the caller should close it when done.
+     *
+     * @return A database connection
+     * @throws SQLException If a connection could not be obtained
+     */
     public static Connection getConnection() throws SQLException {
-        return source.getConnection();
+        UnitOfWork uow = UNIT_OF_WORK.get();
+        if (uow != null) {
+            return uow.getConnection();
+        }
+        return openConnection(false);
+    }
+
+    /**
+     * Check out a new auto-commit connection to the primary database, never this thread's unit of work connection.
+     * Used by reads that fill caches invalidated by writes.  A unit of work's read-only transaction may hold a snapshot
+     * older than a write that has already invalidated the cache, and the replica may lag behind the primary, so either
+     * one could put stale data in the cache until the next write.
+     *
+     * @return A new connection to the primary database.  The caller must close it.
+     * @throws SQLException If a connection could not be obtained
+     */
+    public static Connection getPrimaryConnection() throws SQLException {
+        return openConnection(false);
+    }
+
+    /**
+     * Check a connection out of the pool.  The time spent waiting on the pool is recorded, and while a request is being
+     * timed the connection is wrapped so that statements are instrumented and database time is charged to the
+     * request's DB phase.
+     *
+     * @param replica If true and a read replica is configured, the connection is to the replica
+     * @return A database connection
+     * @throws SQLException If a connection could not be obtained
+     */
+    static Connection openConnection(boolean replica) throws SQLException {
+        Connection conn;
+        boolean useReplica = replica && readSource != null;
+        long start = System.nanoTime();
+        try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.DB)) {
+            conn = useReplica ? readSource.getConnection() : source.getConnection();
+        }
+        RequestTimer.note("database", useReplica ? "replica" : "primary");
+        MetricsRegistry.getInstance().recordPoolWait(System.nanoTime() - start);
+        RequestTimer.count("connections", 1);
+        return JdbcTiming.wrap(conn);
+    }
+
+    /**
+     * Start a unit of work on this thread.  Until it is ended every call to getConnection on this thread shares a
+     * single connection.
+     *
+     * @param readOnly If true the shared connection is read-only and all queries see a single snapshot
+     * @param replica If true, readOnly is true, and a read replica is configured, the shared connection is to the
+     * replica
+     */
+    public static void beginUnitOfWork(boolean readOnly, boolean replica) {
+        UnitOfWork previous = UNIT_OF_WORK.get();
+        if (previous != null) {
+            LOGGER.log(Level.WARNING, "Unit of work started while another was active.  Ending the previous one.");
+            previous.end();
+        }
+        UNIT_OF_WORK.set(new UnitOfWork(readOnly, readOnly && replica && readSource != null));
+    }
+
+    /**
+     * Remove this thread's unit of work without ending it so that it can be attached to another thread, e.g., when a
+     * request is handed off to a worker thread.
+     *
+     * @return The detached unit of work, or null if none was active
+     */
+    public static UnitOfWork detachUnitOfWork() {
+        UnitOfWork uow = UNIT_OF_WORK.get();
+        UNIT_OF_WORK.remove();
+        return uow;
+    }
+
+    /**
+     * Make a detached unit of work this thread's unit of work.  It should be ended with endUnitOfWork as usual.
+     *
+     * @param uow The unit of work to attach.  Nothing is attached if null.
+     */
+    public static void attachUnitOfWork(UnitOfWork uow) {
+        UnitOfWork previous = UNIT_OF_WORK.get();
+        if (previous != null) {
+            LOGGER.log(Level.WARNING, "Unit of work attached while another was active.  Ending the previous one.");
+            previous.end();
+        }
+        if (uow != null) {
+            UNIT_OF_WORK.set(uow);
+        }
+    }
+
+    /**
+     * End the transaction of this thread's unit of work, if any, and return its connection to the pool, while keeping
+     * the unit of work bound.  A later query checks out a new connection, with a new snapshot if read-only.  For
+     * requests that are done with the database before a long phase that isn't, e.g., streaming events or a download.
+     */
+    public static void releaseUnitOfWork() {
+        UnitOfWork uow = UNIT_OF_WORK.get();
+        if (uow != null) {
+            uow.release();
+        }
+    }
+
+    /**
+     * End this thread's unit of work, if any, and return its connection to the pool.
+     */
+    public static void endUnitOfWork() {
+        UnitOfWork uow = UNIT_OF_WORK.get();
+        UNIT_OF_WORK.remove();
+        if (uow != null) {
+            uow.end();
+        }
     }
 
     public static void close(AutoCloseable... resources) {
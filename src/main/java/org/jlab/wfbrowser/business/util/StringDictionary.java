@@ -0,0 +1,130 @@
+package org.jlab.wfbrowser.business.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A shared dictionary of the short strings that repeat across nearly every event and label read from the database or
+ * from disk: locations, systems, classifications, model names, label names and values, and waveform names.  There are
+ * only a few hundred distinct values, but without this every row of a query or every capture file header gets its own
+ * copy of them.
+ * <p>
+ * intern returns the dictionary's instance of a string, so strings that went through it can be compared by identity
+ * (String.equals checks identity first).  Each entry also has a small int code.  The dictionary only grows.  It is
+ * bounded by stringDictionarySize (wfBrowser.properties, default 16384) and strings longer than 128 characters are not
+ * added, so that unexpected values can not fill the heap.  Once it is full, new strings are returned as is.
+ *
+ * @author adamc
+ */
+public class StringDictionary {
+
+    private static final Logger LOGGER = Logger.getLogger(StringDictionary.class.getName());
+
+    private static final int MAX_LENGTH = 128;
+    private static final int MAX_ENTRIES;
+
+    private static final ConcurrentHashMap<String, Integer> CODES = new ConcurrentHashMap<>();
+    private static final Object LOCK = new Object();
+    // Code -> string.  Replaced by a larger copy when full, under LOCK.
+    private static volatile String[] strings = new String[256];
+    private static int size = 0;
+    private static boolean warned = false;
+
+    static {
+        MAX_ENTRIES = ConfigUtil.getInt("stringDictionarySize", 16384);
+    }
+
+    private StringDictionary() {
+        // not public so these cannot be instantiated
+    }
+
+    /**
+     * Get the dictionary's instance of a string, adding it if there is room.
+     *
+     * @param value The string.  May be null.
+     * @return The shared instance, or value itself if it was not added.  Null if value is null.
+     */
+    public static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        Integer code = CODES.get(value);
+        if (code != null) {
+            return strings[code];
+        }
+        if (value.length() > MAX_LENGTH) {
+            return value;
+        }
+
+        synchronized (LOCK) {
+            code = CODES.get(value);
+            if (code != null) {
+                return strings[code];
+            }
+            if (size >= MAX_ENTRIES) {
+                if (!warned) {
+                    LOGGER.log(Level.WARNING, "String dictionary is full at {0} entries.  New strings will not be shared.",
+                            MAX_ENTRIES);
+                    warned = true;
+                }
+                return value;
+            }
+            if (size == strings.length) {
+                strings = Arrays.copyOf(strings, size * 2);
+            }
+            // The string is stored before its code is published so that readers that find the code find the string
+            strings[size] = value;
+            CODES.put(value, size);
+            size++;
+            return value;
+        }
+    }
+
+    /**
+     * Get the dictionary's instance of a string without adding it.  For values that come from users, which should not
+     * fill up the dictionary.
+     *
+     * @param value The string.  May be null.
+     * @return The shared instance if there is one, otherwise value itself
+     */
+    public static String lookup(String value) {
+        Integer code = value == null ? null : CODES.get(value);
+        return code == null ? value : strings[code];
+    }
+
+    /**
+     * Get the code of a string without adding it.
+     *
+     * @param value The string
+     * @return The string's code, or -1 if it is not in the dictionary
+     */
+    public static int code(String value) {
+        Integer code = value == null ? null : CODES.get(value);
+        return code == null ? -1 : code;
+    }
+
+    /**
+     * Get the string with a code.
+     *
+     * @param code A code returned by code(String)
+     * @return The string
+     */
+    public static String get(int code) {
+        String[] s = strings;
+        if (code < 0 || code >= s.length || s[code] == null) {
+            throw new IllegalArgumentException("Unknown string code " + code);
+        }
+        return s[code];
+    }
+
+    /**
+     * @return The number of strings in the dictionary
+     */
+    public static int size() {
+        synchronized (LOCK) {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.jlab.wfbrowser.business.util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A single database connection shared by every service call made while handling one request.  The connection is not
+ * checked out until the first service asks for one.  Services keep their usual open/use/close pattern; closing the
+ * shared handle does not return it to the pool.
+ * <p>
+ * A read-only unit of work runs in a single read-only transaction so that all of the request's queries see the same
+ * snapshot.  Transaction control from services is ignored in that mode.  A read-write unit of work lets services run
+ * their own transactions, and closing the last open handle rolls back anything left uncommitted and restores
+ * auto-commit, the same cleanup that returning the connection to the pool would have done.
+ * <p>
+ * Requests that go on to stream a large response can release the connection once they are done with the database, so
+ * that it is not held, with a read-only transaction open, for as long as the client takes to read the response.
+ * <p>
+ * Read-only units of work may be served by the read replica.  Outside of this package a UnitOfWork is only an
+ * opaque token that can be moved between threads with SqlUtil.detachUnitOfWork and attachUnitOfWork.
+ *
+ * @author adamc
+ */
+public final class UnitOfWork {
+
+    private static final Logger LOGGER = Logger.getLogger(UnitOfWork.class.getName());
+
+    private final boolean readOnly;
+    private final boolean replica;
+    private Connection conn = null;
+    private int openHandles = 0;
+
+    UnitOfWork(boolean readOnly, boolean replica) {
+        this.readOnly = readOnly;
+        this.replica = replica;
+    }
+
+    boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * @return True if the shared connection is to the read replica
+     */
+    boolean isReplica() {
+        return replica;
+    }
+
+    /**
+     * Get the shared connection, checking it out on first use.
+     *
+     * @return A new handle to the shared connection
+     * @throws SQLException If a connection could not be obtained or configured
+     */
+    Connection getConnection() throws SQLException {
+        if (conn == null) {
+            conn = SqlUtil.openConnection(replica);
+            if (readOnly) {
+                try {
+                    conn.setReadOnly(true);
+                    conn.setAutoCommit(false);
+                } catch (SQLException ex) {
+                    SqlUtil.close(conn);
+                    conn = null;
+                    throw ex;
+                }
+            }
+        }
+        openHandles++;
+        return (Connection) Proxy.newProxyInstance(UnitOfWork.class.getClassLoader(), new Class<?>[]{Connection.class},
+                new SharedHandler());
+    }
+
+    /**
+     * End the transaction and return the connection to the pool, but keep the unit of work so that a later query checks
+     * out a new connection.  Does nothing while a service still holds a handle.
+     */
+    void release() {
+        if (openHandles > 0) {
+            LOGGER.log(Level.WARNING, "Unit of work released while a connection handle is open.  Keeping it.");
+            return;
+        }
+        end();
+    }
+
+    /**
+     * End the unit of work and return the connection to the pool.
+     */
+    void end() {
+        if (conn == null) {
+            return;
+        }
+        try {
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+            if (readOnly) {
+                conn.setReadOnly(false);
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.WARNING, "Unable to reset shared connection", ex);
+        } finally {
+            SqlUtil.close(conn);
+            conn = null;
+            openHandles = 0;
+        }
+    }
+
+    /**
+     * One service's handle on the shared connection.  Services may nest, e.g., a service method that calls another
+     * service in the middle of its transaction, so the connection is only cleaned up when the outermost handle closes.
+     */
+    private class SharedHandler implements InvocationHandler {
+
+        private boolean closed = false;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed && conn != null) {
+                        closed = true;
+                        openHandles--;
+                        if (openHandles == 0 && !readOnly && !conn.getAutoCommit()) {
+                            conn.rollback();
+                            conn.setAutoCommit(true);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || conn == null || conn.isClosed();
+                case "setAutoCommit":
+                case "setReadOnly":
+                case "commit":
+                    if (readOnly) {
+                        return null;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (closed || conn == null) {
+                throw new SQLException("Connection handle is closed");
+            }
+            try {
+                return method.invoke(conn, args);
+            } catch (InvocationTargetException ex) {
+                throw ex.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package org.jlab.wfbrowser.business.util;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Reads and writes binary copies of capture file data ("sidecars") so that events can be re-read without parsing
+ * decimal text or decompressing archives.  Sidecars are a cache.  They live outside of the harvester's data directory,
+ * one directory per event, and can be deleted at any time.
+ * <p>
+ * Layout (big endian):
+ * <pre>
+ * int    magic "WFBS"
+ * int    format version
+ * int    number of rows
+ * int    number of columns, including the time column
+ * int    header length in bytes.  Column data starts here and is 8 byte aligned.
+ * long   size of the source file in bytes
+ * long   last modified time of the source file in milliseconds
+ * per column: short name length, then the UTF-8 name bytes
+ * padding to the header length
+ * per column: number of rows doubles
+ * </pre>
+ * Column 0 is the sample time axis and the remaining columns are waveform values.  Values are stored as doubles so that
+ * data read from a sidecar is identical to data parsed from the text file.  Since the columns are fixed width and
+ * aligned, they are read straight out of a memory mapped file.
+ * <p>
+ * The source file is the capture file, or the archive it was read from.  Its size and last modified time are kept in
+ * the header, and a sidecar whose source no longer matches is not used.  That way a reused event ID, rewritten data
+ * or an archived event directory gets parsed again instead of served from an old sidecar.
+ * <p>
+ * Settings are read from wfBrowser.properties.  sidecarDir defaults to wfbrowser-sidecars under java.io.tmpdir, and an
+ * empty value turns sidecars off.  The directory is bounded (sidecarCacheMB) and the sidecars of the least recently
+ * used events are removed first.
+ *
+ * @author adamc
+ */
+public class WaveformSidecar {
+
+    private static final Logger LOGGER = Logger.getLogger(WaveformSidecar.class.getName());
+
+    private static final int MAGIC = 0x57464253; // "WFBS"
+    private static final int VERSION = 2;
+    private static final int FIXED_HEADER_LENGTH = 5 * 4 + 2 * 8;
+    private static final String SUFFIX = ".wfb";
+    private static final Path DIR;
+    private static final long BUDGET_BYTES;
+
+    // Event ID -> size of that event's sidecars, in access order.  Populated from the directory on first use.
+    private static final LinkedHashMap<Long, Long> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    private static boolean scanned = false;
+    private static long totalBytes = 0;
+
+    static {
+        String dir = ConfigUtil.getString("sidecarDir",
+                Paths.get(System.getProperty("java.io.tmpdir"), "wfbrowser-sidecars").toString());
+        DIR = dir.isEmpty() ? null : Paths.get(dir);
+        BUDGET_BYTES = ConfigUtil.getLong("sidecarCacheMB", 4096) * 1024 * 1024;
+    }
+
+    private WaveformSidecar() {
+        // not public so these cannot be instantiated
+    }
+
+    /**
+     * The contents of a sidecar.
+     */
+    public static class Columns {
+
+        private final String[] names;
+        private final double[][] data;
+
+        public Columns(String[] names, double[][] data) {
+            this.names = names;
+            this.data = data;
+        }
+
+        /**
+         * @return The column names.  The first is the time column.
+         */
+        public String[] getNames() {
+            return names;
+        }
+
+        /**
+         * @return The column data indexed by column, then row.  The first is the time column.
+         */
+        public double[][] getData() {
+            return data;
+        }
+    }
+
+    /**
+     * The size and last modified time of the file a sidecar was made from.
+     */
+    public static class Source {
+
+        private final long size;
+        private final long modified;
+
+        public Source(long size, long modified) {
+            this.size = size;
+            this.modified = modified;
+        }
+
+        /**
+         * Look up a source file on disk.
+         *
+         * @param path The capture file or archive
+         * @return Its size and last modified time, or null if it does not exist
+         * @throws IOException If the file could not be read
+         */
+        public static Source of(Path path) throws IOException {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                return new Source(attrs.size(), attrs.lastModifiedTime().toMillis());
+            } catch (NoSuchFileException ex) {
+                return null;
+            }
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+    }
+
+    public static boolean isEnabled() {
+        return DIR != null;
+    }
+
+    /**
+     * Where the sidecar for a capture file of an event lives.
+     *
+     * @param eventId The database ID of the event
+     * @param captureFile The capture file name
+     * @return The sidecar path, or null if sidecars are disabled
+     */
+    public static Path getPath(long eventId, String captureFile) {
+        return DIR == null ? null : DIR.resolve(Long.toString(eventId)).resolve(captureFile + SUFFIX);
+    }
+
+    /**
+     * Write the sidecar for a capture file of an event.  The least recently used events' sidecars are removed if this
+     * puts the directory over its budget.
+     *
+     * @param eventId The database ID of the event
+     * @param captureFile The capture file name
+     * @param source The file the data was read from
+     * @param columns The data to write.  Every column must have the same number of rows.
+     * @throws IOException If the file could not be written
+     */
+    public static void write(long eventId, String captureFile, Source source, Columns columns) throws IOException {
+        if (DIR == null) {
+            return;
+        }
+        Path path = getPath(eventId, captureFile);
+        long oldSize = Files.exists(path) ? Files.size(path) : 0;
+        write(path, source, columns);
+        add(eventId, Files.size(path) - oldSize);
+    }
+
+    /**
+     * Read some of the columns of the sidecar for a capture file of an event.  The time column is always read.
+     *
+     * @param eventId The database ID of the event
+     * @param captureFile The capture file name
+     * @param source The file the data would otherwise be read from
+     * @param columnNames The names of the data columns to read, or null for all of them
+     * @return The sidecar contents, or null if there is no sidecar or it was made from a different source file.
+     * Columns that were not read have all of their names but null data.
+     * @throws IOException If the file could not be read or is not a valid sidecar
+     */
+    public static Columns read(long eventId, String captureFile, Source source, Set<String> columnNames)
+            throws IOException {
+        if (DIR == null) {
+            return null;
+        }
+        Columns columns = read(getPath(eventId, captureFile), source, columnNames);
+        if (columns != null) {
+            touch(eventId);
+        }
+        return columns;
+    }
+
+    /**
+     * Check whether a capture file of an event has a sidecar that was made from its current source file.  Only the
+     * header is read.
+     *
+     * @param eventId The database ID of the event
+     * @param captureFile The capture file name
+     * @param source The file the data would otherwise be read from
+     * @return True if the sidecar exists and matches the source
+     */
+    public static boolean isCurrent(long eventId, String captureFile, Source source) {
+        if (DIR == null || source == null) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(getPath(eventId, captureFile), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_LENGTH);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading
+            }
+            header.flip();
+            return isCurrent(header, source);
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Write a sidecar.  The file is written under a temporary name and then moved into place, so readers never see a
+     * partial file.
+     *
+     * @param path Where to write the sidecar
+     * @param source The file the data was read from
+     * @param columns The data to write.  Every column must have the same number of rows.
+     * @throws IOException If the file could not be written
+     */
+    static void write(Path path, Source source, Columns columns) throws IOException {
+        String[] names = columns.getNames();
+        double[][] data = columns.getData();
+        int numRows = data.length == 0 ? 0 : data[0].length;
+
+        byte[][] nameBytes = new byte[names.length][];
+        int headerLength = FIXED_HEADER_LENGTH;
+        for (int i = 0; i < names.length; i++) {
+            nameBytes[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            headerLength += 2 + nameBytes[i].length;
+        }
+        headerLength = (headerLength + 7) & ~7;
+
+        Files.createDirectories(path.getParent());
+        Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 65536))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(numRows);
+                out.writeInt(names.length);
+                out.writeInt(headerLength);
+                out.writeLong(source.getSize());
+                out.writeLong(source.getModified());
+                for (byte[] name : nameBytes) {
+                    out.writeShort(name.length);
+                    out.write(name);
+                }
+                while (out.size() < headerLength) {
+                    out.writeByte(0);
+                }
+                for (double[] column : data) {
+                    if (column.length != numRows) {
+                        throw new IllegalArgumentException("Sidecar columns must all be the same length");
+                    }
+                    for (double v : column) {
+                        out.writeDouble(v);
+                    }
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Read some of the columns of a sidecar.  The time column is always read.
+     *
+     * @param path The sidecar to read
+     * @param source The file the data would otherwise be read from
+     * @param columnNames The names of the data columns to read, or null for all of them
+     * @return The sidecar contents, or null if the file does not exist, was written by another version or was made from
+     * a different source file.  Columns that were not read have all of their names but null data.
+     * @throws IOException If the file could not be read or is not a valid sidecar
+     */
+    static Columns read(Path path, Source source, Set<String> columnNames) throws IOException {
+        if (source == null) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt(0) != MAGIC) {
+                throw new IOException("Not a waveform sidecar - " + path);
+            }
+            if (!isCurrent(buffer, source)) {
+                return null;
+            }
+            int numRows = buffer.getInt();
+            int numColumns = buffer.getInt();
+            int headerLength = buffer.getInt();
+            if (numRows < 0 || numColumns < 0 || headerLength < FIXED_HEADER_LENGTH
+                    || (long) headerLength + 8L * numRows * numColumns != channel.size()) {
+                throw new IOException("Corrupt waveform sidecar - " + path);
+            }
+
+            String[] names = new String[numColumns];
+            buffer.position(FIXED_HEADER_LENGTH);
+            for (int i = 0; i < numColumns; i++) {
+                byte[] name = new byte[buffer.getShort()];
+                buffer.get(name);
+                names[i] = StringDictionary.intern(new String(name, StandardCharsets.UTF_8));
+            }
+
+            buffer.position(headerLength);
+            ByteBuffer columnData = buffer.slice();
+            double[][] data = new double[numColumns][];
+            for (int i = 0; i < numColumns; i++) {
+                if (i == 0 || columnNames == null || columnNames.contains(names[i])) {
+                    data[i] = new double[numRows];
+                    columnData.asDoubleBuffer().get(data[i]);
+                }
+                columnData.position(columnData.position() + 8 * numRows);
+            }
+            return new Columns(names, data);
+        } catch (NoSuchFileException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Check the fixed part of a sidecar header against a source file.  Leaves the buffer positioned after the version.
+     *
+     * @param header The start of the sidecar, positioned at the magic number
+     * @param source The source file
+     * @return True if the header is from this version and matches the source
+     */
+    private static boolean isCurrent(ByteBuffer header, Source source) {
+        if (header.remaining() < FIXED_HEADER_LENGTH || header.getInt() != MAGIC || header.getInt() != VERSION) {
+            return false;
+        }
+        int start = header.position() - 8;
+        return header.getLong(start + 20) == source.getSize() && header.getLong(start + 28) == source.getModified();
+    }
+
+    /**
+     * Delete all of an event's sidecars.  Failures are logged, since the sidecars are only a cache.
+     *
+     * @param eventId The database ID of the event
+     */
+    public static void delete(long eventId) {
+        if (DIR == null) {
+            return;
+        }
+        forget(eventId);
+        deleteFiles(eventId);
+    }
+
+    private static void deleteFiles(long eventId) {
+        Path eventDir = DIR.resolve(Long.toString(eventId));
+        if (!Files.isDirectory(eventDir)) {
+            return;
+        }
+        try {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(eventDir)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(eventDir);
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to delete waveform sidecars for event " + eventId, ex);
+        }
+    }
+
+    /**
+     * Load the events already on disk, oldest first.  Caller must hold the ENTRIES lock.
+     */
+    private static void scan() {
+        if (scanned) {
+            return;
+        }
+        scanned = true;
+        if (!Files.isDirectory(DIR)) {
+            return;
+        }
+        Map<Long, Long> found = new LinkedHashMap<>();
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(DIR, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                long eventId;
+                try {
+                    eventId = Long.parseLong(dir.getFileName().toString());
+                } catch (NumberFormatException ex) {
+                    // Not one of ours
+                    continue;
+                }
+                long size = 0;
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+                    for (Path file : files) {
+                        size += Files.size(file);
+                    }
+                }
+                found.put(eventId, size);
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to read sidecar directory " + DIR, ex);
+        }
+        found.entrySet().stream()
+                .sorted((a, b) -> Long.compare(DIR.resolve(a.getKey().toString()).toFile().lastModified(),
+                        DIR.resolve(b.getKey().toString()).toFile().lastModified()))
+                .forEach(entry -> {
+                    ENTRIES.put(entry.getKey(), entry.getValue());
+                    totalBytes += entry.getValue();
+                });
+    }
+
+    private static void add(long eventId, long bytes) {
+        synchronized (ENTRIES) {
+            scan();
+            ENTRIES.merge(eventId, bytes, Long::sum);
+            totalBytes += bytes;
+
+            Iterator<Map.Entry<Long, Long>> it = ENTRIES.entrySet().iterator();
+            while (totalBytes > BUDGET_BYTES && it.hasNext()) {
+                Map.Entry<Long, Long> eldest = it.next();
+                if (eldest.getKey() == eventId) {
+                    continue;
+                }
+                it.remove();
+                totalBytes -= eldest.getValue();
+                deleteFiles(eldest.getKey());
+            }
+        }
+    }
+
+    private static void touch(long eventId) {
+        synchronized (ENTRIES) {
+            scan();
+            ENTRIES.get(eventId);
+        }
+    }
+
+    private static void forget(long eventId) {
+        synchronized (ENTRIES) {
+            scan();
+            Long size = ENTRIES.remove(eventId);
+            if (size != null) {
+                totalBytes -= size;
+            }
+        }
+    }
+}
@@ -0,0 +1,422 @@
+package org.jlab.wfbrowser.model.CaptureFile;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import org.jlab.wfbrowser.business.util.StringDictionary;
+
+/**
+ * Parses a harvester capture file directly from its ASCII bytes.  Capture files are made of '#' metadata lines, a
+ * header line of column names, then whitespace separated rows of numbers with the time offset in the first column.
+ * <p>
+ * Working on bytes skips charset decoding and the per-line Strings of a BufferedReader, so the buffer can be a memory
+ * mapped file or a pooled buffer holding a decompressed archive entry.  Numbers with up to 15 significant digits and
+ * small exponents are converted with a single exact multiply or divide, which gives the same correctly rounded result
+ * as Double.parseDouble.  Anything else (more digits, NaN, Infinity, ...) falls back to Double.parseDouble.
+ * <p>
+ * The results match splitting each line on "\\s+": a line starting with whitespace has an empty first value, which
+ * is read as NaN, and values past the number of headers are ignored.  Blank data lines are skipped.
+ * <p>
+ * Without data, only the time column of the first two rows and the last row is parsed, which is all that is needed for
+ * the sample start, step and end.  Those three rows are still checked for a value per header.  The last row is found by scanning back from the end of the buffer, so for a memory
+ * mapped file only the first and last pages are touched.
+ * <p>
+ * The caller can also name the columns it needs.  Other columns are stepped over without being converted and get no
+ * array.  The time column is always read.
+ *
+ * @author adamc
+ */
+public class CaptureFileParser {
+
+    private static final double[] POW10 = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14,
+        1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final long MAX_EXACT = 1L << 53;
+
+    private final ByteBuffer buffer;
+    private final List<String> metadataLines = new ArrayList<>();
+    private String[] headers = null;
+    private double[][] columns = null;
+    private Double sampleStart = null;
+    private Double sampleEnd = null;
+    private Double sampleStep = null;
+
+    // Bounds of the current line, set by nextLine
+    private int pos;
+    private int lineStart;
+    private int lineEnd;
+
+    /**
+     * Parse a capture file.
+     *
+     * @param buffer The file contents between position and limit.  The buffer's position is not changed.
+     * @param includeData Whether to parse the data rows or only the sample range
+     * @throws IOException If a data row has fewer values than there are headers
+     * @throws NumberFormatException If a value is not a number
+     */
+    public CaptureFileParser(ByteBuffer buffer, boolean includeData) throws IOException {
+        this(buffer, includeData, null);
+    }
+
+    /**
+     * Parse a capture file, reading only some of the data columns.
+     *
+     * @param buffer The file contents between position and limit.  The buffer's position is not changed.
+     * @param includeData Whether to parse the data rows or only the sample range
+     * @param columnNames The names of the data columns to read, or null for all of them
+     * @throws IOException If a data row has fewer values than there are headers
+     * @throws NumberFormatException If a value is not a number
+     */
+    public CaptureFileParser(ByteBuffer buffer, boolean includeData, Set<String> columnNames) throws IOException {
+        this.buffer = buffer;
+        this.pos = buffer.position();
+
+        while (nextLine()) {
+            String line = ascii(lineStart, lineEnd);
+            if (line.startsWith("#")) {
+                metadataLines.add(line);
+            } else {
+                headers = line.split("\\s+");
+                // Waveform names repeat in every capture file of a cavity, so share them
+                for (int i = 0; i < headers.length; i++) {
+                    headers[i] = StringDictionary.intern(headers[i]);
+                }
+                break;
+            }
+        }
+
+        // No header means there is no data to process
+        if (headers == null) {
+            return;
+        }
+
+        if (includeData) {
+            parseData(columnNames);
+            double[] time = columns[0];
+            if (time.length > 1) {
+                sampleStart = time[0];
+                sampleEnd = time[time.length - 1];
+                sampleStep = time[1] - time[0];
+            }
+        } else {
+            columns = new double[headers.length][0];
+            parseSampleRange();
+        }
+    }
+
+    /**
+     * @return The '#' metadata lines in file order
+     */
+    public List<String> getMetadataLines() {
+        return metadataLines;
+    }
+
+    /**
+     * @return The column names from the header line, or null if the file has no header line
+     */
+    public String[] getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return The data indexed by column, then row.  Columns are empty if data was not included, and null if they were
+     * not among the requested columns.  Null if the file has no header line.
+     */
+    public double[][] getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return The time offset of the first data row, or null if there are fewer than two data rows
+     */
+    public Double getSampleStart() {
+        return sampleStart;
+    }
+
+    /**
+     * @return The time offset of the last data row, or null if there are fewer than two data rows
+     */
+    public Double getSampleEnd() {
+        return sampleEnd;
+    }
+
+    /**
+     * @return The difference between the time offsets of the first two data rows, or null if there are fewer than two
+     * data rows
+     */
+    public Double getSampleStep() {
+        return sampleStep;
+    }
+
+    /**
+     * Read the time offsets of the first two data rows and of the last data row.  Those rows are also checked for the
+     * number of values, so a truncated or malformed file is still rejected at ingest.  Rows in between are not read.
+     */
+    private void parseSampleRange() throws IOException {
+        int dataStart = pos;
+        double first = Double.NaN;
+        double second = Double.NaN;
+        int rows = 0;
+        while (rows < 2 && nextLine()) {
+            if (isBlank(lineStart, lineEnd)) {
+                continue;
+            }
+            checkValueCount(lineStart, lineEnd, "row " + (rows + 1));
+            if (rows == 0) {
+                first = firstValue(lineStart, lineEnd);
+            } else {
+                second = firstValue(lineStart, lineEnd);
+            }
+            rows++;
+        }
+        if (rows < 2) {
+            return;
+        }
+
+        // Scan back from the end for the last line that is not blank
+        int end = buffer.limit();
+        while (end > dataStart) {
+            int start = end;
+            while (start > dataStart && buffer.get(start - 1) != '\n' && buffer.get(start - 1) != '\r') {
+                start--;
+            }
+            if (!isBlank(start, end)) {
+                checkValueCount(start, end, "last row");
+                sampleStart = first;
+                sampleStep = second - first;
+                sampleEnd = firstValue(start, end);
+                return;
+            }
+            end = start - 1;
+        }
+    }
+
+    /**
+     * Check that a data line has at least as many values as there are headers, counted the same as in parseData.
+     */
+    private void checkValueCount(int start, int end, String row) throws IOException {
+        // Leading whitespace splits off an empty first value
+        int count = isSpace(buffer.get(start)) ? 1 : 0;
+        int i = start;
+        while (i < end && count < headers.length) {
+            while (i < end && isSpace(buffer.get(i))) {
+                i++;
+            }
+            if (i == end) {
+                break;
+            }
+            count++;
+            while (i < end && !isSpace(buffer.get(i))) {
+                i++;
+            }
+        }
+        if (count < headers.length) {
+            throw new IOException("Capture file data " + row + " has fewer values than headers");
+        }
+    }
+
+    private boolean isBlank(int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isSpace(buffer.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse the time column of a data line, same as the first value in parseData.
+     */
+    private double firstValue(int start, int end) {
+        if (isSpace(buffer.get(start))) {
+            return Double.NaN;
+        }
+        int i = start;
+        while (i < end && !isSpace(buffer.get(i))) {
+            i++;
+        }
+        return parseDouble(start, i);
+    }
+
+    private void parseData(Set<String> columnNames) throws IOException {
+        int numColumns = headers.length;
+        double[][] data = new double[numColumns][];
+        for (int j = 0; j < numColumns; j++) {
+            if (j == 0 || columnNames == null || columnNames.contains(headers[j])) {
+                data[j] = new double[8192];
+            }
+        }
+        int row = 0;
+        while (nextLine()) {
+            int i = lineStart;
+            while (i < lineEnd && isSpace(buffer.get(i))) {
+                i++;
+            }
+            if (i == lineEnd) {
+                continue;
+            }
+
+            if (row >= data[0].length) {
+                for (int j = 0; j < numColumns; j++) {
+                    if (data[j] != null) {
+                        data[j] = Arrays.copyOf(data[j], 2 * data[j].length);
+                    }
+                }
+            }
+
+            int j = 0;
+            if (i > lineStart) {
+                // Leading whitespace splits off an empty first value
+                data[0][row] = Double.NaN;
+                j = 1;
+            }
+            for (; j < numColumns; j++) {
+                while (i < lineEnd && isSpace(buffer.get(i))) {
+                    i++;
+                }
+                if (i == lineEnd) {
+                    throw new IOException("Capture file data row " + (row + 1) + " has fewer values than headers");
+                }
+                int start = i;
+                while (i < lineEnd && !isSpace(buffer.get(i))) {
+                    i++;
+                }
+                if (data[j] != null) {
+                    data[j][row] = parseDouble(start, i);
+                }
+            }
+            row++;
+        }
+
+        columns = new double[numColumns][];
+        for (int j = 0; j < numColumns; j++) {
+            if (data[j] != null) {
+                columns[j] = Arrays.copyOf(data[j], row);
+            }
+        }
+    }
+
+    /**
+     * Advance to the next line.  Lines end with \n, \r or \r\n, same as BufferedReader.readLine.
+     *
+     * @return False if there are no more lines
+     */
+    private boolean nextLine() {
+        int limit = buffer.limit();
+        if (pos >= limit) {
+            return false;
+        }
+        int i = pos;
+        byte b = 0;
+        while (i < limit && (b = buffer.get(i)) != '\n' && b != '\r') {
+            i++;
+        }
+        lineStart = pos;
+        lineEnd = i;
+        if (i < limit && b == '\r' && i + 1 < limit && buffer.get(i + 1) == '\n') {
+            i++;
+        }
+        pos = i + 1;
+        return true;
+    }
+
+    private double parseDouble(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        byte b = buffer.get(i);
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int numDigits = 0;
+        int exponent = 0;
+        boolean anyDigits = false;
+        for (; i < end && isDigit(b = buffer.get(i)); i++) {
+            anyDigits = true;
+            if (mantissa != 0 || b != '0') {
+                if (numDigits == 18) {
+                    return slowParseDouble(start, end);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                numDigits++;
+            }
+        }
+        if (i < end && buffer.get(i) == '.') {
+            for (i++; i < end && isDigit(b = buffer.get(i)); i++) {
+                anyDigits = true;
+                if (mantissa != 0 || b != '0') {
+                    if (numDigits == 18) {
+                        return slowParseDouble(start, end);
+                    }
+                    mantissa = mantissa * 10 + (b - '0');
+                    numDigits++;
+                }
+                exponent--;
+            }
+        }
+        if (!anyDigits) {
+            return slowParseDouble(start, end);
+        }
+        if (i < end && ((b = buffer.get(i)) == 'e' || b == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && ((b = buffer.get(i)) == '-' || b == '+')) {
+                negativeExponent = b == '-';
+                i++;
+            }
+            int e = 0;
+            boolean anyExponentDigits = false;
+            for (; i < end && isDigit(b = buffer.get(i)); i++) {
+                anyExponentDigits = true;
+                if (e < 100000) {
+                    e = e * 10 + (b - '0');
+                }
+            }
+            if (!anyExponentDigits) {
+                return slowParseDouble(start, end);
+            }
+            exponent += negativeExponent ? -e : e;
+        }
+        if (i != end) {
+            return slowParseDouble(start, end);
+        }
+
+        if (mantissa == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (mantissa < MAX_EXACT && exponent >= -22 && exponent <= 22) {
+            // Both operands are exact doubles, so IEEE rounding of the one operation gives the correctly rounded value
+            double value = exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+            return negative ? -value : value;
+        }
+        return slowParseDouble(start, end);
+    }
+
+    private double slowParseDouble(int start, int end) {
+        return Double.parseDouble(ascii(start, end));
+    }
+
+    private String ascii(int start, int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    /**
+     * Same characters as \s in a regular expression, less the line terminators
+     */
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == 0x0B || b == '\f';
+    }
+}
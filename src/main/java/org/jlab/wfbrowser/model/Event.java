@@ -2,14 +2,15 @@ package org.jlab.wfbrowser.model;
 
 import org.jlab.wfbrowser.model.CaptureFile.CaptureFile;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.time.Instant;
@@ -26,8 +27,8 @@ import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
-import java.util.Properties;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
@@ -44,7 +45,14 @@ import java.util.logging.Logger;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.apache.commons.compress.utils.IOUtils;
+import org.jlab.wfbrowser.business.metrics.Phase;
+import org.jlab.wfbrowser.business.metrics.RequestTimer;
+import org.jlab.wfbrowser.business.metrics.TimedInputStream;
+import org.jlab.wfbrowser.business.util.ByteBufferPool;
 import org.jlab.wfbrowser.business.util.TimeUtil;
+import org.jlab.wfbrowser.business.util.EventStorageLocator;
+import org.jlab.wfbrowser.business.util.WaveformSidecar;
+import org.jlab.wfbrowser.model.CaptureFile.CaptureFileParser;
 import org.jlab.wfbrowser.model.CaptureFile.Metadata;
 
 /**
@@ -71,7 +79,6 @@ public class Event implements Comparable<Event> {
 
     private static final Logger LOGGER = Logger.getLogger(Event.class.getName());
 
-    private final Path dataDir;         // Where does the data live on the filesystem.  This is the base data dir of all events, not the directory containing capture files for this event.
     private Long eventId = null;        // The event id assigned by the database
     private final SortedMap<String, CaptureFile> captureFileMap = new TreeMap<>();
     private final String system;        // The accelerator system from which the event is triggered
@@ -84,16 +91,6 @@ public class Event implements Comparable<Event> {
     private List<Label> labelList;      // List of Label object associated with the Event  - likely estimating things like fault type or location
     private boolean areWaveformsConsistent = true;  // If all waveforms have the same set of time offsets.  Simplifies certain data operations.
 
-    private static Path setDataDir() throws IOException {
-        Properties props = new Properties();
-        try (InputStream is = Event.class.getClassLoader().getResourceAsStream("wfBrowser.properties")) {
-            if (is != null) {
-                props.load(is);
-            }
-        }
-        return Paths.get(props.getProperty("dataDir", "/usr/opsdata/waveforms/data"));
-    }
-
     /**
      * Add a CaptureFile object to this Event's collection of capture files.
      *
@@ -164,9 +161,6 @@ public class Event implements Comparable<Event> {
         this.grouped = grouped;
         this.classification = classification;
         this.labelList = labelList;
-
-        // Set the waveform data directory based optionally on the value in the config file
-        this.dataDir = setDataDir();
     }
 
     public void addLabel(Label label) {
@@ -202,6 +196,31 @@ public class Event implements Comparable<Event> {
      */
     public Event(Instant eventTime, String location, String system, boolean archive, boolean delete, boolean grouped,
                  String classification, String captureFile, List<Label> labelList) throws IOException {
+        this(eventTime, location, system, archive, delete, grouped, classification, captureFile, labelList, true);
+    }
+
+    /**
+     * Event constructor for creating an event object that has not been added to
+     * the database, optionally without reading the waveform data.  Adding an
+     * event to the database only needs the waveform names, the metadata and
+     * the sample range of each capture file.  Without data, only the header and
+     * the first two and last data rows of each capture file are parsed.
+     *
+     * @param eventTime      The time which the event occurred
+     * @param location       The location (likely zone) where the event occurred
+     * @param system         The harvester system with which this event is associated
+     * @param archive        Archive flag.  Denotes whether the event should be permanently kep
+     * @param delete         The delete flag.  Denotes whether this event should be deleted during the next purge
+     * @param grouped        Whether or not multiple capture files are grouped together to represent this event
+     * @param classification capture files
+     * @param captureFile    The capture file of an ungrouped event.  Ignored for grouped events.
+     * @param labelList      A List of Label objects associated with the Event
+     * @param includeData    Whether the waveforms should include their data
+     * @throws IOException If problem arises reading waveform data from disk
+     */
+    public Event(Instant eventTime, String location, String system, boolean archive, boolean delete, boolean grouped,
+                 String classification, String captureFile, List<Label> labelList, boolean includeData)
+            throws IOException {
         if (eventTime == null) {
             throw new IllegalArgumentException("eventTime is required non-null");
         }
@@ -224,8 +243,8 @@ public class Event implements Comparable<Event> {
         this.classification = classification;
         this.labelList = labelList;
 
-        // This sets the base data dir based on the an optional config parameter.
-        this.dataDir = setDataDir();
+        // The harvester just wrote this event, so any cached listing of its directory is out of date
+        EventStorageLocator.invalidate(getEventDirectoryPath());
 
         List<String> filesToProcess = new ArrayList<>();
         if (!grouped) {
@@ -243,8 +262,11 @@ public class Event implements Comparable<Event> {
                 throw new IllegalArgumentException("Could not find any capture files on disk associated with event");
             }
         }
-        // Process the capture files to get waveforms, data, etc.
-        loadCaptureFilesFromDisk(filesToProcess, true);  // includeData = true
+        // Process the capture files to get waveforms, data, etc.  Reads are charged to DISK and DECOMPRESS by the
+        // wrapped streams, leaving PARSE with just the parsing time.
+        try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.PARSE)) {
+            loadCaptureFilesFromDisk(filesToProcess, includeData, null);
+        }
 
         updateWaveformsConsistency();
     }
@@ -264,7 +286,7 @@ public class Event implements Comparable<Event> {
         SortedSet<String> fileSet = new TreeSet<>();
         Path eventDir = getEventDirectoryPath();
         Path archivePath = getArchivePath();
-        if (Files.exists(eventDir)) {
+        if (EventStorageLocator.exists(eventDir)) {
             try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(getEventDirectoryPath())) {
                 for (Path path : directoryStream) {
                     // Actual harvester files end with .txt extension.  Do some basic filtering
@@ -273,7 +295,7 @@ public class Event implements Comparable<Event> {
                     }
                 }
             }
-        } else if (Files.exists(archivePath)) {
+        } else if (EventStorageLocator.exists(archivePath)) {
             // We have to uncompress these tar.gz file and look at what's inside it.  For grouped events, there will be a directory
             // contain capture files.  For ungrouped files, there will be only a single file in the tar.gz.
             boolean foundParentDir = false;
@@ -431,20 +453,7 @@ public class Event implements Comparable<Event> {
      * @return A Path representing the location of the EventDirectory
      */
     public Path getEventDirectoryPath() {
-        DateTimeFormatter dFormatter = DateTimeFormatter.ofPattern("yyyy_MM_dd").withZone(ZoneId.systemDefault());
-        DateTimeFormatter tFormatter = DateTimeFormatter.ofPattern("HHmmss.S").withZone(ZoneId.systemDefault());
-        Path dir;
-
-        String day = dFormatter.format(eventTime);
-        String time = tFormatter.format(eventTime);
-
-        if (grouped) {
-            dir = dataDir.resolve(Paths.get(system, location, classification, day, time));
-        } else {
-            dir = dataDir.resolve(Paths.get(system, location, classification, day));
-        }
-
-        return dir;
+        return EventStorageLocator.getEventDirectoryPath(system, location, classification, eventTime, grouped);
     }
 
     /**
@@ -502,13 +511,13 @@ public class Event implements Comparable<Event> {
 
         // For ungrouped events, the event directory is the parent directory of the capture file, which may exist even if the 
         // capture file has been compressed.  Check for the compressed version first to avoid a short circuit.
-        if (Files.exists(archiveFile)) {
+        if (EventStorageLocator.exists(archiveFile)) {
             exists = true;
-        } else if (Files.exists(eventDir)) {
+        } else if (EventStorageLocator.exists(eventDir)) {
             exists = true;
             for (String file : captureFiles) {
 
-                if (!Files.exists(eventDir.resolve(file))) {
+                if (!EventStorageLocator.exists(eventDir.resolve(file))) {
                     LOGGER.log(Level.WARNING, "Could not find file on disk - {0}", eventDir.resolve(file));
                     exists = false;
                     break;
@@ -521,11 +530,184 @@ public class Event implements Comparable<Event> {
         return exists;
     }
 
-    // TODO: add javadocs and make sure this is needed.
+    /**
+     * Load the waveform data for all of the event's capture files.  Binary sidecars are used when every capture file
+     * has one.  Otherwise the capture files are parsed and sidecars are written so that the next read is fast.
+     *
+     * @throws IOException If problem arises reading capture file data from disk
+     */
     public void loadWaveformDataFromDisk() throws IOException {
+        loadWaveformDataFromDisk(null);
+    }
+
+    /**
+     * Load the waveform data for only the waveforms that belong to a set of series.  The series mapping must already be
+     * applied.  Other waveforms are left without data and capture files with none of the waveforms are not read at all.
+     * <p>
+     * The first load of an event without sidecars parses everything anyway so that complete sidecars can be written.
+     * Later loads only copy the requested columns out of the sidecars.  With sidecars disabled, the parser skips the
+     * columns that were not requested.
+     *
+     * @param seriesSet The names of the series to load, or null for all waveforms
+     * @throws IOException If problem arises reading capture file data from disk
+     */
+    public void loadWaveformDataFromDisk(Set<String> seriesSet) throws IOException {
+        Set<String> waveformNames = null;
         List<String> filenames = new ArrayList<>();
-        filenames.addAll(captureFileMap.keySet());
-        loadCaptureFilesFromDisk(filenames, true); // includeData = true
+        if (seriesSet == null) {
+            filenames.addAll(captureFileMap.keySet());
+        } else {
+            waveformNames = new HashSet<>();
+            for (Waveform w : getWaveforms(seriesSet)) {
+                waveformNames.add(w.getWaveformName());
+            }
+            for (CaptureFile cf : captureFileMap.values()) {
+                for (Waveform w : cf.getWaveforms()) {
+                    if (waveformNames.contains(w.getWaveformName())) {
+                        filenames.add(cf.getFilename());
+                        break;
+                    }
+                }
+            }
+            if (filenames.isEmpty()) {
+                return;
+            }
+        }
+
+        if (loadCaptureFilesFromSidecars(filenames, waveformNames)) {
+            return;
+        }
+        if (WaveformSidecar.isEnabled() && eventId != null) {
+            // Parse everything once so that every later load can come from the sidecars
+            filenames.clear();
+            filenames.addAll(captureFileMap.keySet());
+            waveformNames = null;
+        }
+        try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.PARSE)) {
+            loadCaptureFilesFromDisk(filenames, true, waveformNames); // includeData = true
+        }
+        if (eventId != null) {
+            writeWaveformSidecars(eventId);
+        }
+    }
+
+    /**
+     * Load waveform data from the binary sidecars written by writeWaveformSidecars.
+     *
+     * @param captureFiles The capture files to load
+     * @param waveformNames The waveforms to load, or null for all of them
+     * @return True if every capture file was loaded from a sidecar.  False if the event has no ID, sidecars are disabled,
+     * or any sidecar is missing, unreadable or older than its capture file, in which case nothing was loaded.
+     */
+    private boolean loadCaptureFilesFromSidecars(List<String> captureFiles, Set<String> waveformNames) {
+        if (eventId == null || !WaveformSidecar.isEnabled() || captureFiles.isEmpty()) {
+            return false;
+        }
+
+        // Read everything before touching the waveforms so that a bad sidecar can't leave the event half loaded
+        Map<String, WaveformSidecar.Columns> sidecars = new HashMap<>();
+        try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.DISK)) {
+            for (String filename : captureFiles) {
+                WaveformSidecar.Columns columns = WaveformSidecar.read(eventId, filename, getCaptureFileSource(filename),
+                        waveformNames);
+                if (columns == null) {
+                    return false;
+                }
+                sidecars.put(filename, columns);
+            }
+        } catch (IOException ex) {
+            LOGGER.log(Level.WARNING, "Unable to read waveform sidecar for event " + eventId + ".  Parsing capture files.", ex);
+            return false;
+        }
+
+        for (Map.Entry<String, WaveformSidecar.Columns> e : sidecars.entrySet()) {
+            setWaveformData(e.getKey(), e.getValue().getNames(), e.getValue().getData());
+        }
+        RequestTimer.count("sidecars", sidecars.size());
+        return true;
+    }
+
+    /**
+     * Check whether every capture file of this event has a binary sidecar, i.e., whether its data can be loaded without
+     * parsing.
+     *
+     * @return True if the event has an ID, capture files and a current sidecar for each of them
+     */
+    public boolean hasWaveformSidecars() {
+        if (eventId == null || !WaveformSidecar.isEnabled() || captureFileMap.isEmpty()) {
+            return false;
+        }
+        try {
+            for (String filename : captureFileMap.keySet()) {
+                if (!WaveformSidecar.isCurrent(eventId, filename, getCaptureFileSource(filename))) {
+                    return false;
+                }
+            }
+        } catch (IOException ex) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Look up the file a capture file's data is read from, i.e., the capture file itself or the archive holding it.
+     * Sidecars record its size and last modified time so that they are not used once the data on disk changes.
+     *
+     * @param filename The capture file name
+     * @return The source file's size and last modified time, or null if neither exists
+     * @throws IOException If the file could not be read
+     */
+    private WaveformSidecar.Source getCaptureFileSource(String filename) throws IOException {
+        WaveformSidecar.Source source = WaveformSidecar.Source.of(getEventDirectoryPath().resolve(filename));
+        if (source == null) {
+            source = WaveformSidecar.Source.of(grouped ? getArchivePath() : getArchivePath(filename));
+        }
+        return source;
+    }
+
+    /**
+     * Write a binary sidecar for each capture file with loaded waveform data so that later reads can skip parsing the
+     * text capture files.  Failures are logged and otherwise ignored since sidecars are only a cache.
+     *
+     * @param eventId The database ID of this event.  Passed in since events being added do not have theirs set.
+     */
+    public void writeWaveformSidecars(long eventId) {
+        if (!WaveformSidecar.isEnabled()) {
+            return;
+        }
+        for (CaptureFile cf : captureFileMap.values()) {
+            List<Waveform> waveforms = cf.getWaveforms();
+            if (waveforms.isEmpty() || waveforms.get(0).getTimeOffsets() == null
+                    || waveforms.get(0).getTimeOffsets().length == 0) {
+                continue;
+            }
+            String[] names = new String[waveforms.size() + 1];
+            double[][] data = new double[waveforms.size() + 1][];
+            names[0] = "time";
+            data[0] = waveforms.get(0).getTimeOffsets();
+            boolean complete = true;
+            for (int i = 0; i < waveforms.size(); i++) {
+                Waveform w = waveforms.get(i);
+                if (w.getValues() == null
+                        || (w.getTimeOffsets() != data[0] && !Arrays.equals(w.getTimeOffsets(), data[0]))) {
+                    complete = false;
+                    break;
+                }
+                names[i + 1] = w.getWaveformName();
+                data[i + 1] = w.getValues();
+            }
+            if (!complete) {
+                continue;
+            }
+            try {
+                WaveformSidecar.Source source = getCaptureFileSource(cf.getFilename());
+                if (source != null) {
+                    WaveformSidecar.write(eventId, cf.getFilename(), source, new WaveformSidecar.Columns(names, data));
+                }
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.log(Level.WARNING, "Unable to write waveform sidecar for event " + eventId, ex);
+            }
+        }
     }
 
     /**
@@ -537,9 +719,11 @@ public class Event implements Comparable<Event> {
      *                     directory or compressed archive file.
      * @param includeData  Whether or not to include the waveform data or just
      *                     header information
+     * @param waveformNames The waveforms to include data for, or null for all
      * @throws IOException If problem arises reading capture file data from disk
      */
-    private void loadCaptureFilesFromDisk(List<String> captureFiles, boolean includeData) throws IOException {
+    private void loadCaptureFilesFromDisk(List<String> captureFiles, boolean includeData, Set<String> waveformNames)
+            throws IOException {
         if (!isDataOnDisk(captureFiles)) {
             LOGGER.log(Level.SEVERE, "Could not locate data on disk");
             throw new FileNotFoundException("Could not locate data on disk");
@@ -555,23 +739,23 @@ public class Event implements Comparable<Event> {
         if (grouped) {
             // For grouped, event directory is the directory containing the capture files for the event
             eventArchive = getArchivePath();
-            if (Files.exists(eventDir)) {
+            if (EventStorageLocator.exists(eventDir)) {
                 LOGGER.log(Level.FINEST, "Looking for data in {0} for event {1}", new Object[]{eventDir.toString(), eventName});
-                parseWaveformData(captureFiles, includeData);
-            } else if (Files.exists(eventArchive)) {
+                parseWaveformData(captureFiles, includeData, waveformNames);
+            } else if (EventStorageLocator.exists(eventArchive)) {
                 LOGGER.log(Level.FINEST, "Looking for data in {0} for event {1}", new Object[]{eventArchive.toString(), eventName});
-                parseCompressedWaveformData(captureFiles, includeData);
+                parseCompressedWaveformData(captureFiles, includeData, waveformNames);
             }
         } else {
             // For ungrouped, event directory is the directory contain the capture file or the compressed capture file.
             String filename = captureFiles.get(0);
             eventArchive = getArchivePath(filename);
-            if (Files.exists(Paths.get(eventDir.toString(), filename))) {
+            if (EventStorageLocator.exists(eventDir.resolve(filename))) {
                 LOGGER.log(Level.FINEST, "Looking for data in {0} for event {1}", new Object[]{Paths.get(eventDir.toString(), filename).toString(), eventName});
-                parseWaveformData(captureFiles, includeData);
-            } else if (Files.exists(eventArchive)) {
+                parseWaveformData(captureFiles, includeData, waveformNames);
+            } else if (EventStorageLocator.exists(eventArchive)) {
                 LOGGER.log(Level.FINEST, "Looking for data in {0} for event {1}", new Object[]{eventArchive.toString(), eventName});
-                parseCompressedWaveformData(captureFiles, includeData);
+                parseCompressedWaveformData(captureFiles, includeData, waveformNames);
             }
         }
     }
@@ -1103,16 +1287,19 @@ public class Event implements Comparable<Event> {
 
     /**
      * This method uncompresses a compressed waveform event directory and parses
-     * it using the same parseWaveformInputStream method as parseWaveformData.
+     * it using the same parseCaptureFile method as parseWaveformData.
      * The compressed archives should contain a single parent directory with a
      * set of txt files. This method uses the Event's List of CaptureFile
-     * objects to know which files to parse.
+     * objects to know which files to parse.  Each entry is read into a pooled
+     * buffer and parsed from there.
      *
      * @param includeData boolean for whether or not the waveforms should
      *                    include their data
+     * @param waveformNames The waveforms to include data for, or null for all
      * @throws IOException If problem arises while reading waveform data from disk
      */
-    private void parseCompressedWaveformData(List<String> captureFiles, boolean includeData) throws IOException {
+    private void parseCompressedWaveformData(List<String> captureFiles, boolean includeData, Set<String> waveformNames)
+            throws IOException {
         boolean foundParentDir = false;
         String captureFile = null; // If grouped event, this is unnecessary.
         if (!grouped) {
@@ -1128,9 +1315,10 @@ public class Event implements Comparable<Event> {
             fileFound.put(file, false);
         }
 
-        try (TarArchiveInputStream ais = new TarArchiveInputStream(
-                new GzipCompressorInputStream(Files.newInputStream(getArchivePath(captureFile), StandardOpenOption.READ)));
-             BufferedReader br = new BufferedReader(new InputStreamReader(ais))) {
+        RequestTimer.note("archives", getArchivePath(captureFile).toString());
+        try (TarArchiveInputStream ais = new TarArchiveInputStream(new TimedInputStream(new GzipCompressorInputStream(
+                new TimedInputStream(Files.newInputStream(getArchivePath(captureFile), StandardOpenOption.READ), Phase.DISK)),
+                Phase.DECOMPRESS))) {
             TarArchiveEntry entry;
             while ((entry = ais.getNextTarEntry()) != null) {
                 if (entry != null) {
@@ -1149,7 +1337,19 @@ public class Event implements Comparable<Event> {
                         if (captureFiles.contains(filename)) {
                             fileFound.put(filename, true);
                             // If this is a grouped event, the entry name will contain the parent directory.  We need only the filename.
-                            parseWaveformInputStream(br, filename, includeData);
+                            if (entry.getSize() > Integer.MAX_VALUE) {
+                                throw new IOException("Capture file too large - " + filename);
+                            }
+                            int size = (int) entry.getSize();
+                            ByteBuffer buffer = ByteBufferPool.acquire(size);
+                            try {
+                                if (IOUtils.readFully(ais, buffer.array(), 0, size) != size) {
+                                    throw new IOException("Truncated archive entry - " + entry.getName());
+                                }
+                                parseCaptureFile(buffer, filename, includeData, waveformNames);
+                            } finally {
+                                ByteBufferPool.release(buffer);
+                            }
                         }
                     }
                 }
@@ -1172,89 +1372,63 @@ public class Event implements Comparable<Event> {
     }
 
     /**
-     * The method parses an InputStream representing one of the waveform
-     * datafiles. These files are formatted as TSVs, with the first column being
-     * the time offset and every other column representing a series of waveform
-     * data. This process leads to the time column being stored multiple times
-     * as each Waveform object stores its own time/value data.
+     * The method parses the contents of one of the waveform datafiles. These
+     * files are formatted as TSVs, with the first column being the time offset
+     * and every other column representing a series of waveform data. This
+     * process leads to the time column being stored multiple times as each
+     * Waveform object stores its own time/value data.
      *
+     * @param buffer      The capture file contents between position and limit
+     * @param filename    The name of the capture file
      * @param includeData flag for whether or not the data and not just headers
-     *                    should be parsed
+     *                    and the sample range should be parsed
+     * @param waveformNames The waveforms to include data for, or null for all
      */
-    private void parseWaveformInputStream(BufferedReader br, String filename, boolean includeData) throws IOException {
-        String[] headers;
-        double[][] out;
-        Double sampleStart = null;
-        Double sampleStop = null;
-        Double sampleStep = null;
-
-        String line;
+    private void parseCaptureFile(ByteBuffer buffer, String filename, boolean includeData, Set<String> waveformNames)
+            throws IOException {
+        RequestTimer.count("captureFiles", 1);
+        CaptureFileParser parser = new CaptureFileParser(buffer, includeData, waveformNames);
 
         List<Metadata> metadataList = new ArrayList<>();
-        while ((line = br.readLine()) != null) {
-            if (line.matches("#.*")) {
-                metadataList.add(Metadata.getMetadataFromCaptureFileLine(line));
-            } else {
-                break;
-            }
+        for (String line : parser.getMetadataLines()) {
+            metadataList.add(Metadata.getMetadataFromCaptureFileLine(line));
         }
 
         // Check that there is data to process
-        if (line == null) {
+        String[] headers = parser.getHeaders();
+        if (headers == null) {
             return;
         }
-        headers = line.split("\\s+");
-
-        // Define this as an array of empty arrays.  This will get redefined if the includeData flag is set.
-        out = new double[headers.length][0];
-        if (includeData) {
-            // The data array structure is the transpose of the file.  it goes columns, by rows, since we know the number of headers
-            // but not the number of rows of data.  Plus this makes it easier to access each waveform.
-            double[][] data = new double[headers.length][8192];
-            int i = 0;
-            while ((line = br.readLine()) != null) {
-                // If our index is about to move out of bounds, copy the data to a larger 2D array
-                if (i >= data[0].length) {
-                    for (int j = 0; j < data.length; j++) {
-                        data[j] = Arrays.copyOf(data[j], 2 * data[j].length);
-                    }
-                }
-
-                // Split the string on tabs.  The order of the tokens should match the headers
-                String[] nums = line.split("\\s+");
-                for (int j = 0; j < headers.length; j++) {
-                    if (nums[j].isEmpty()) {
-                        data[j][i] = Double.NaN;
-                    } else {
-                        data[j][i] = Double.parseDouble(nums[j]);
-                    }
-                }
-                i++;
-            }
 
-            // Copy the data array structure to one that is properly sized for it.
-            out = new double[headers.length][i];
-            for (int j = 0; j < out.length; j++) {
-                System.arraycopy(data[j], 0, out[j], 0, out[j].length);
-            }
-            sampleStart = out[0][0];
-            sampleStop = out[0][out[0].length - 1];
-            sampleStep = out[0][1] - out[0][0];
-        }
+        double[][] out = parser.getColumns();
 
         // Create the capture file if it doesn't exist.  If it doesn't exist, then this event wasn't made with data from the database,
         // so we don't have a capture ID to put here.  If the capture did exist, we just need to add the waveforms if they don't exist
         // and the waveform data if requested
         if (!captureFileMap.containsKey(filename)) {
-            CaptureFile cf = new CaptureFile(null, filename, sampleStart, sampleStop, sampleStep);
+            if (parser.getSampleStep() == null) {
+                throw new IOException("Capture file has fewer than two data rows - " + filename);
+            }
+            CaptureFile cf = new CaptureFile(null, filename, parser.getSampleStart(), parser.getSampleEnd(),
+                    parser.getSampleStep());
             cf.addMetadata(metadataList);
             captureFileMap.put(filename, cf);
             updateWaveformsConsistency();
         }
 
-        // Add the waveforms to the captureFile or update the waveforms data if they already exist.
+        setWaveformData(filename, headers, out);
+    }
+
+    /**
+     * Add the waveforms to the captureFile or update the waveforms data if they already exist.
+     *
+     * @param filename The capture file the data came from
+     * @param headers  The column names.  The first is the time column.
+     * @param out      The column data.  The first is the time column.  Null columns were not read and are skipped.
+     */
+    private void setWaveformData(String filename, String[] headers, double[][] out) {
         for (int j = 0; j < out.length; j++) {
-            if (j > 0) {
+            if (j > 0 && out[j] != null) {
                 if (captureFileMap.get(filename).hasWaveform(headers[j])) {
                     captureFileMap.get(filename).updateWaveformData(headers[j], out[0], out[j]);
                 } else {
@@ -1270,17 +1444,22 @@ public class Event implements Comparable<Event> {
      *
      * @param includeData Should the waveform objects include the data points or
      *                    only the header information
+     * @param waveformNames The waveforms to include data for, or null for all
      * @throws IOException If problem arises while access waveform data on disk
      */
-    private void parseWaveformData(List<String> captureFiles, boolean includeData) throws IOException {
+    private void parseWaveformData(List<String> captureFiles, boolean includeData, Set<String> waveformNames)
+            throws IOException {
         // NOTE: We don't need to check that all of these files are found since an exception will be generated if the path
         // doesn't exists when we try to open an new FileInputStream
         // Go through the set of Path objects representing valid data files and parse them.
+        // Capture files are memory mapped and parsed in place.  Recent events are usually still in the page cache.
         Path path;
         for (String filename : captureFiles) {
             path = getEventDirectoryPath().resolve(filename);
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(Files.newInputStream(path)))) {
-                parseWaveformInputStream(br, filename, includeData);
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                RequestTimer.count("diskBytes", channel.size());
+                parseCaptureFile(buffer, filename, includeData, waveformNames);
             }
         }
     }
@@ -1316,41 +1495,48 @@ public class Event implements Comparable<Event> {
             throw new FileNotFoundException("Could not locate data on disk");
         }
 
-        if (Files.exists(getArchivePath())) {
+        if (EventStorageLocator.exists(getArchivePath())) {
             // The event is archived.  These are tar.gz files of either the single capture file or of the event directory
-            InputStream is = new FileInputStream(getArchivePath().toString());
-            int numRead;
-            byte[] b = new byte[8192];
-            while ((numRead = is.read(b)) != -1) {
-                os.write(b, 0, numRead);
-            }
+            Files.copy(getArchivePath(), os);
         } else {
             // The event is not archived, i.e., it's not already in a tar.gz format.
-            try (TarArchiveOutputStream taos = new TarArchiveOutputStream(new GzipCompressorOutputStream(os))) {
-                File eventDir = this.getEventDirectoryPath().toFile();
-                String dirName = eventDir.getName();
-
-                // Add the event dir
-                TarArchiveEntry entry = new TarArchiveEntry(eventDir, dirName);
-                taos.putArchiveEntry(entry);
-                taos.closeArchiveEntry();
-
-                // Add the capture files
-                for (CaptureFile cf : captureFileMap.values()) {
-                    File file = Paths.get(eventDir.toString(), cf.getFilename()).toFile();
-
-                    // TarArchiveEntry wants a File object representing the file, plus a name field that is the relative path
-                    // of the entry in the archive.  This means the name field has to include the name of the event dir.
-                    entry = new TarArchiveEntry(file, Paths.get(eventDir.getName(), file.getName()).toString());
-                    taos.putArchiveEntry(entry);
-                    try (InputStream is = new FileInputStream(file)) {
-                        IOUtils.copy(is, taos);
-                    }
-                    taos.closeArchiveEntry();
-                }
-                taos.finish();
+            try (GzipCompressorOutputStream gz = new GzipCompressorOutputStream(os)) {
+                writeCaptureFilesTar(gz);
+            }
+        }
+    }
+
+    /**
+     * Write the event directory and the Event's capture files as an uncompressed tar, laid out the same as the
+     * harvester's archives.  The stream is not closed.
+     *
+     * @param os OutputStream to which the tar should be written
+     * @throws IOException If problem arises while accessing data on disk
+     */
+    public void writeCaptureFilesTar(OutputStream os) throws IOException {
+        TarArchiveOutputStream taos = new TarArchiveOutputStream(os);
+        File eventDir = this.getEventDirectoryPath().toFile();
+        String dirName = eventDir.getName();
+
+        // Add the event dir
+        TarArchiveEntry entry = new TarArchiveEntry(eventDir, dirName);
+        taos.putArchiveEntry(entry);
+        taos.closeArchiveEntry();
+
+        // Add the capture files
+        for (CaptureFile cf : captureFileMap.values()) {
+            File file = Paths.get(eventDir.toString(), cf.getFilename()).toFile();
+
+            // TarArchiveEntry wants a File object representing the file, plus a name field that is the relative path
+            // of the entry in the archive.  This means the name field has to include the name of the event dir.
+            entry = new TarArchiveEntry(file, Paths.get(eventDir.getName(), file.getName()).toString());
+            taos.putArchiveEntry(entry);
+            try (InputStream is = new FileInputStream(file)) {
+                IOUtils.copy(is, taos);
             }
+            taos.closeArchiveEntry();
         }
+        taos.finish();
     }
 
     /**
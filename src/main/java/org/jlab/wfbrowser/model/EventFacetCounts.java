@@ -0,0 +1,76 @@
+package org.jlab.wfbrowser.model;
+
+import java.util.Collections;
+import java.util.Map;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+
+/**
+ * How many events match a filter, broken down the way the filter panels are: by location, by classification and by
+ * label value.  The location counts are what each location would match with the rest of the filter as is, i.e., the
+ * filter's own location list is ignored for them.  The same goes for the classification counts.  The label counts are
+ * among the events matching the whole filter.
+ * <p>
+ * Values with no matching events are left out.
+ *
+ * @author adamc
+ */
+public final class EventFacetCounts {
+
+    private final int total;
+    private final Map<String, Integer> locationCounts;
+    private final Map<String, Integer> classificationCounts;
+    private final Map<String, Map<String, Integer>> labelCounts;
+
+    /**
+     * @param total The number of events matching the whole filter
+     * @param locationCounts Location -> number of events
+     * @param classificationCounts Classification -> number of events
+     * @param labelCounts Label name -> label value -> number of events
+     */
+    public EventFacetCounts(int total, Map<String, Integer> locationCounts, Map<String, Integer> classificationCounts,
+                            Map<String, Map<String, Integer>> labelCounts) {
+        this.total = total;
+        this.locationCounts = Collections.unmodifiableMap(locationCounts);
+        this.classificationCounts = Collections.unmodifiableMap(classificationCounts);
+        this.labelCounts = Collections.unmodifiableMap(labelCounts);
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public Map<String, Integer> getLocationCounts() {
+        return locationCounts;
+    }
+
+    public Map<String, Integer> getClassificationCounts() {
+        return classificationCounts;
+    }
+
+    public Map<String, Map<String, Integer>> getLabelCounts() {
+        return labelCounts;
+    }
+
+    public JsonObject toJsonObject() {
+        JsonObjectBuilder labels = Json.createObjectBuilder();
+        for (Map.Entry<String, Map<String, Integer>> entry : labelCounts.entrySet()) {
+            labels.add(entry.getKey(), toJsonObject(entry.getValue()));
+        }
+        return Json.createObjectBuilder()
+                .add("total", total)
+                .add("location", toJsonObject(locationCounts))
+                .add("classification", toJsonObject(classificationCounts))
+                .add("labels", labels.build())
+                .build();
+    }
+
+    private static JsonObject toJsonObject(Map<String, Integer> counts) {
+        JsonObjectBuilder job = Json.createObjectBuilder();
+        for (Map.Entry<String, Integer> entry : counts.entrySet()) {
+            job.add(entry.getKey(), entry.getValue());
+        }
+        return job.build();
+    }
+}
@@ -0,0 +1,210 @@
+package org.jlab.wfbrowser.model;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonValue;
+import org.jlab.wfbrowser.business.util.TimeUtil;
+
+/**
+ * The database record of an event without any of its capture files or data, i.e., what is needed to list events
+ * (timelines, report tables, etc.).  Event carries a capture file map, mutable label lists and the means of reading its
+ * data from disk, all of which is dead weight when tens of thousands of events are only being listed.
+ * <p>
+ * EventHeaders are immutable.  The time is held as epoch microseconds (the database's resolution is coarser) and the
+ * labels as an array.  The location, system and classification strings are shared between headers by whoever reads
+ * them, since there are only a handful of distinct values.  toJsonObject matches Event.toJsonObject for an event
+ * without capture files, so the two can be used interchangeably by clients.
+ *
+ * @author adamc
+ */
+public final class EventHeader implements Comparable<EventHeader> {
+
+    private static final Label[] NO_LABELS = new Label[0];
+    private static final DateTimeFormatter UTC_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.S").withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter LOCAL_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.S").withZone(ZoneId.systemDefault());
+
+    private static final byte ARCHIVE = 1;
+    private static final byte DELETE = 2;
+    private static final byte GROUPED = 4;
+
+    private final long eventId;
+    private final long eventTimeMicros;
+    private final String location;
+    private final String system;
+    private final String classification;
+    private final byte flags;
+    private final int numCaptureFiles;
+    private final Label[] labels;
+
+    /**
+     * @param eventId         The database ID of the event
+     * @param eventTimeMicros The time of the event in microseconds since the epoch
+     * @param location        The location of the event
+     * @param system          The system of the event
+     * @param classification  The classification of the event
+     * @param archive         The archive flag
+     * @param delete          The delete flag
+     * @param grouped         Whether the event's capture files are grouped
+     * @param numCaptureFiles How many capture files the event has
+     * @param labels          The event's labels.  May be null or empty.  Not copied.
+     */
+    public EventHeader(long eventId, long eventTimeMicros, String location, String system, String classification,
+                       boolean archive, boolean delete, boolean grouped, int numCaptureFiles, Label[] labels) {
+        if (location == null || system == null || classification == null) {
+            throw new IllegalArgumentException("location, system and classification are required non-null");
+        }
+        this.eventId = eventId;
+        this.eventTimeMicros = eventTimeMicros;
+        this.location = location;
+        this.system = system;
+        this.classification = classification;
+        this.flags = (byte) ((archive ? ARCHIVE : 0) | (delete ? DELETE : 0) | (grouped ? GROUPED : 0));
+        this.numCaptureFiles = numCaptureFiles;
+        this.labels = (labels == null || labels.length == 0) ? NO_LABELS : labels;
+    }
+
+    public long getEventId() {
+        return eventId;
+    }
+
+    public long getEventTimeMicros() {
+        return eventTimeMicros;
+    }
+
+    public Instant getEventTime() {
+        return Instant.ofEpochSecond(Math.floorDiv(eventTimeMicros, 1_000_000L),
+                Math.floorMod(eventTimeMicros, 1_000_000L) * 1000);
+    }
+
+    public String getEventTimeString() {
+        return UTC_FORMATTER.format(getEventTime());
+    }
+
+    public String getEventTimeStringLocal() {
+        return LOCAL_FORMATTER.format(getEventTime());
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public String getSystem() {
+        return system;
+    }
+
+    public String getClassification() {
+        return classification;
+    }
+
+    public boolean isArchive() {
+        return (flags & ARCHIVE) != 0;
+    }
+
+    public boolean isDelete() {
+        return (flags & DELETE) != 0;
+    }
+
+    public boolean isGrouped() {
+        return (flags & GROUPED) != 0;
+    }
+
+    public int getNumCaptureFiles() {
+        return numCaptureFiles;
+    }
+
+    public boolean hasLabels() {
+        return labels.length > 0;
+    }
+
+    /**
+     * @return The event's labels as an unmodifiable list.  Empty if the event has no labels.
+     */
+    public List<Label> getLabelList() {
+        return labels.length == 0 ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(labels));
+    }
+
+    /**
+     * Create a header-only Event (no capture files) with the same information.  For callers that need an Event.
+     *
+     * @return A new Event with its own copy of the label list
+     * @throws IOException Declared by the Event constructor
+     */
+    public Event toEvent() throws IOException {
+        return new Event(eventId, getEventTime(), location, system, isArchive(), isDelete(), isGrouped(),
+                classification, labels.length == 0 ? null : new ArrayList<>(Arrays.asList(labels)));
+    }
+
+    /**
+     * Generate a JSON object representing the event.  Same as Event.toJsonObject for an event without capture files.
+     *
+     * @return A JSON representation of this event
+     */
+    public JsonObject toJsonObject() {
+        JsonObjectBuilder job = Json.createObjectBuilder()
+                .add("id", eventId)
+                .add("datetime_utc", TimeUtil.getDateTimeString(getEventTime()))
+                .add("location", location)
+                .add("system", system)
+                .add("archive", isArchive())
+                .add("classification", classification)
+                .add("captureFiles", Json.createArrayBuilder().build());
+        if (labels.length == 0) {
+            job.add("labels", JsonValue.NULL);
+        } else {
+            JsonArrayBuilder jab = Json.createArrayBuilder();
+            for (Label label : labels) {
+                jab.add(label.toJsonObject());
+            }
+            job.add("labels", jab.build());
+        }
+        return job.build();
+    }
+
+    /**
+     * Orders headers by event time, then by event ID.
+     */
+    @Override
+    public int compareTo(EventHeader h) {
+        int c = Long.compare(eventTimeMicros, h.eventTimeMicros);
+        return c != 0 ? c : Long.compare(eventId, h.eventId);
+    }
+
+    /**
+     * Headers are equal if they describe the same database record in the same state.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        }
+        if (!(o instanceof EventHeader)) {
+            return false;
+        }
+        EventHeader h = (EventHeader) o;
+        return eventId == h.eventId && eventTimeMicros == h.eventTimeMicros && flags == h.flags
+                && numCaptureFiles == h.numCaptureFiles && location.equals(h.location) && system.equals(h.system)
+                && classification.equals(h.classification) && Arrays.equals(labels, h.labels);
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(eventId) * 31 + Long.hashCode(eventTimeMicros);
+    }
+
+    @Override
+    public String toString() {
+        return "EventHeader{" + eventId + ", " + getEventTimeString() + ", " + system + "/" + location + "/"
+                + classification + "}";
+    }
+}
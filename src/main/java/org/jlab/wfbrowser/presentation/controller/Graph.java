@@ -20,23 +20,28 @@ import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
 import org.jlab.wfbrowser.business.filter.EventFilter;
+import org.jlab.wfbrowser.business.metrics.Phase;
+import org.jlab.wfbrowser.business.metrics.RequestTimer;
 import org.jlab.wfbrowser.business.service.EventService;
 import org.jlab.wfbrowser.model.Event;
+import org.jlab.wfbrowser.model.EventHeader;
 import org.jlab.wfbrowser.model.Series;
 import org.jlab.wfbrowser.model.SeriesSet;
+import org.jlab.wfbrowser.presentation.util.AsyncDispatcher;
 import org.jlab.wfbrowser.presentation.util.GraphConfig;
 import org.jlab.wfbrowser.presentation.util.SessionUtils;
 
 /**
  * @author adamc
  */
-@WebServlet(name = "Graph", urlPatterns = {"/graph"})
+@WebServlet(name = "Graph", urlPatterns = {"/graph"}, asyncSupported = true)
 public class Graph extends HttpServlet {
 
     private static final Logger LOGGER = Logger.getLogger(Graph.class.getName());
 
     /**
-     * Handles the HTTP <code>GET</code> method.
+     * Handles the HTTP <code>GET</code> method.  The work is done by processGet on the data request worker pool so
+     * that slow database and disk access does not tie up a container request thread.
      *
      * @param request  servlet request
      * @param response servlet response
@@ -46,6 +51,19 @@ public class Graph extends HttpServlet {
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
+        AsyncDispatcher.dispatch(request, response, () -> processGet(request, response));
+    }
+
+    /**
+     * Does the work of doGet.
+     *
+     * @param request  servlet request
+     * @param response servlet response
+     * @throws ServletException if a servlet-specific error occurs
+     * @throws IOException      if an I/O error occurs
+     */
+    private void processGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
         String beginString = request.getParameter("begin");
         String endString = request.getParameter("end");
         String[] locSel = request.getParameterValues("location");
@@ -71,7 +89,9 @@ public class Graph extends HttpServlet {
 
         // Get the config for this system
         GraphConfig defaultGraphConfig = GraphConfig.getDefaultConfig(system);
+        long lockStart = System.nanoTime();
         synchronized (SessionUtils.getSessionLock(request, null)) {
+            RequestTimer.addTime(Phase.LOCK, System.nanoTime() - lockStart);
             // We only want to work with the sessionGraphConfig object within this lock.
             GraphConfig sessionGraphConfig;
 
@@ -157,10 +177,12 @@ public class Graph extends HttpServlet {
         Map<String, Boolean> seriesMap = new TreeMap<>();
         Map<String, Boolean> seriesSetMap = new TreeMap<>();
         Set<String> seriesMasterSet = new HashSet<>();
-        List<Event> eventList;
+        List<EventHeader> eventList;
         Event currentEvent = null;
 
+        lockStart = System.nanoTime();
         synchronized (SessionUtils.getSessionLock(request, null)) {
+            RequestTimer.addTime(Phase.LOCK, System.nanoTime() - lockStart);
             @SuppressWarnings("unchecked")
             Map<String, GraphConfig> gcMap = (Map<String, GraphConfig>) session.getAttribute("graphConfigMap");
             GraphConfig sessionGraphConfig = gcMap.get(system);
@@ -184,6 +206,11 @@ public class Graph extends HttpServlet {
             List<String> locationSelectionsList = new ArrayList<>(locationSelections);
             List<String> classificationSelectionsList = new ArrayList<>(classificationSelections);
 
+            // Only the waveforms of the selected series are displayed, so only their data is loaded
+            for (Series s : sessionGraphConfig.getSeriesMasterSet()) {
+                seriesMasterSet.add(s.getName());
+            }
+
             // Check that the current event is within the requested time.  If it's not, select a new current event
             // from within that time range
             try {
@@ -193,7 +220,7 @@ public class Graph extends HttpServlet {
                 if (eId != null) {
                     EventFilter filter = new EventFilter(Collections.singletonList(eId), begin, end, system,
                             locationSelectionsList, classificationSelectionsList, null, null, minCaptureFiles);
-                    currentEvent = es.getMostRecentEvent(filter, true);
+                    currentEvent = es.getMostRecentEvent(filter, true, seriesMasterSet);
                     eId = (currentEvent == null) ? null : currentEvent.getEventId();
                     sessionGraphConfig.setEventId(eId);
                     if (eId == null) {
@@ -204,7 +231,7 @@ public class Graph extends HttpServlet {
                 if (eId == null) {
                     EventFilter filter = new EventFilter(null, begin, end, system,
                             locationSelectionsList, classificationSelectionsList, null, null, minCaptureFiles);
-                    currentEvent = es.getMostRecentEvent(filter, true);
+                    currentEvent = es.getMostRecentEvent(filter, true, seriesMasterSet);
                     sessionGraphConfig.setEventId((currentEvent == null) ? null : currentEvent.getEventId());
                     if (eId != null) {
                         redirectNeeded = true;
@@ -248,11 +275,6 @@ public class Graph extends HttpServlet {
                 response.sendRedirect(response.encodeRedirectURL(redirectUrl.toString()));
             }
 
-            // Process more configuration info since we know we aren't redirecting and will use it.
-            for (Series s : sessionGraphConfig.getSeriesMasterSet()) {
-                seriesMasterSet.add(s.getName());
-            }
-
             // Process the option maps for convenient use in the UI
             if (locationOptions != null) {
                 for (String location : locationOptions) {
@@ -302,7 +324,7 @@ public class Graph extends HttpServlet {
                 EventFilter eFilter = new EventFilter(null, begin, end, system,
                         new ArrayList<>(locationSelections), new ArrayList<>(classificationSelections),
                         null, null, minCaptureFiles);
-                eventList = es.getEventListWithoutCaptureFiles(eFilter);
+                eventList = es.getEventHeaderList(eFilter);
             } catch (SQLException ex) {
                 LOGGER.log(Level.SEVERE, "Error querying database for event information.", ex);
                 throw new ServletException("Error querying database for event information.");
@@ -312,7 +334,7 @@ public class Graph extends HttpServlet {
 
         JsonArrayBuilder jab = Json.createArrayBuilder();
         JsonObjectBuilder job = Json.createObjectBuilder();
-        for (Event event : eventList) {
+        for (EventHeader event : eventList) {
             jab.add(event.toJsonObject());
         }
         JsonObject eventListJson = job.add("events", jab.build()).build();
@@ -366,7 +388,7 @@ public class Graph extends HttpServlet {
         request.setAttribute("eventListJson", eventListJson.toString());
         request.setAttribute("currentEvent", currentEvent == null ? "null" : currentEvent.toDyGraphJsonObject(seriesMasterSet).toString());
 
-        request.getRequestDispatcher("/WEB-INF/views/graph.jsp").forward(request, response);
+        AsyncDispatcher.forward(request, response, "/WEB-INF/views/graph.jsp");
     }
 
     /**
@@ -0,0 +1,34 @@
+package org.jlab.wfbrowser.presentation.controller;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.jlab.wfbrowser.business.metrics.MetricsRegistry;
+
+/**
+ * Exposes request metrics in the Prometheus text exposition format for scraping.
+ *
+ * @author adamc
+ */
+@WebServlet(name = "Metrics", urlPatterns = {"/metrics"})
+public class Metrics extends HttpServlet {
+
+    /**
+     * Handles the HTTP <code>GET</code> method.
+     *
+     * @param request servlet request
+     * @param response servlet response
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        response.setContentType("text/plain; version=0.0.4");
+        try (PrintWriter pw = response.getWriter()) {
+            MetricsRegistry.getInstance().writePrometheus(pw);
+        }
+    }
+}
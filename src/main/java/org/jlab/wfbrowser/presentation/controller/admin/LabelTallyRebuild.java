@@ -0,0 +1,72 @@
+package org.jlab.wfbrowser.presentation.controller.admin;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.jlab.wfbrowser.business.service.LabelTallyService;
+import org.jlab.wfbrowser.business.util.TimeUtil;
+
+/**
+ * Admin command for rebuilding the label_tally_hourly rollup over a time range, e.g., after a bulk import or after
+ * labels were changed directly in the database.
+ *
+ * @author adamc
+ */
+@WebServlet(name = "LabelTallyRebuild", urlPatterns = {"/admin/ajax/label-tally-rebuild"})
+public class LabelTallyRebuild extends HttpServlet {
+
+    private static final Logger LOGGER = Logger.getLogger(LabelTallyRebuild.class.getName());
+
+    /**
+     * Handles the HTTP <code>POST</code> method.  Requires begin and end parameters ("yyyy-MM-dd HH:mm:ss[.S]").
+     *
+     * @param request  servlet request
+     * @param response servlet response
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        response.setContentType("application/json");
+        Instant begin, end;
+        try {
+            begin = TimeUtil.getInstantFromDateTimeString(request.getParameter("begin"));
+            end = TimeUtil.getInstantFromDateTimeString(request.getParameter("end"));
+        } catch (DateTimeParseException ex) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            try (PrintWriter pw = response.getWriter()) {
+                pw.write("{\"error\": \"Error parsing begin or end - " + ex.getMessage() + "\"}");
+            }
+            return;
+        }
+        if (begin == null || end == null || end.isBefore(begin)) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            try (PrintWriter pw = response.getWriter()) {
+                pw.write("{\"error\": \"begin and end parameters required with begin before end\"}");
+            }
+            return;
+        }
+
+        LabelTallyService lts = new LabelTallyService();
+        try {
+            int n = lts.rebuild(begin, end);
+            try (PrintWriter pw = response.getWriter()) {
+                pw.write("{\"success\": \"Rebuilt label tally rollup\", \"rows\": " + n + "}");
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "Error rebuilding label tally rollup", ex);
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            try (PrintWriter pw = response.getWriter()) {
+                pw.write("{\"error\": \"error rebuilding label tally - " + ex.getMessage() + "\"}");
+            }
+        }
+    }
+}
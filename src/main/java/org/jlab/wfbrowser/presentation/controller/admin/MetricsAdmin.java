@@ -0,0 +1,50 @@
+package org.jlab.wfbrowser.presentation.controller.admin;
+
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.jlab.wfbrowser.business.metrics.MetricsRegistry;
+
+/**
+ * Displays a per-endpoint, per-phase summary of request latencies along with per-SQL template database metrics.
+ *
+ * @author adamc
+ */
+@WebServlet(name = "MetricsAdmin", urlPatterns = {"/admin/metrics"})
+public class MetricsAdmin extends HttpServlet {
+
+    /**
+     * Handles the HTTP <code>GET</code> method.
+     *
+     * @param request servlet request
+     * @param response servlet response
+     * @throws ServletException if a servlet-specific error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        MetricsRegistry registry = MetricsRegistry.getInstance();
+        request.setAttribute("summaries", registry.getSummaries());
+        request.setAttribute("sqlSummaries", registry.getSqlSummaries());
+        request.setAttribute("poolWait", registry.getPoolWaitSummary());
+        request.getRequestDispatcher("/WEB-INF/views/admin/metrics.jsp").forward(request, response);
+    }
+
+    /**
+     * Handles the HTTP <code>POST</code> method.  Clears the recorded metrics.
+     *
+     * @param request servlet request
+     * @param response servlet response
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        MetricsRegistry.getInstance().reset();
+        response.sendRedirect(request.getContextPath() + "/admin/metrics");
+    }
+}
@@ -0,0 +1,65 @@
+package org.jlab.wfbrowser.presentation.controller.admin;
+
+import java.io.IOException;
+import javax.servlet.ServletException;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.jlab.wfbrowser.business.metrics.SlowRequestLog;
+
+/**
+ * Displays the most recent slow request traces and allows the threshold to be adjusted.
+ *
+ * @author adamc
+ */
+@WebServlet(name = "SlowRequestsAdmin", urlPatterns = {"/admin/slow-requests"})
+public class SlowRequestsAdmin extends HttpServlet {
+
+    /**
+     * Handles the HTTP <code>GET</code> method.
+     *
+     * @param request servlet request
+     * @param response servlet response
+     * @throws ServletException if a servlet-specific error occurs
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        SlowRequestLog log = SlowRequestLog.getInstance();
+        request.setAttribute("traces", log.getTraces());
+        request.setAttribute("thresholdMillis", log.getThresholdMillis());
+        request.setAttribute("capacity", log.getCapacity());
+        request.getRequestDispatcher("/WEB-INF/views/admin/slow-requests.jsp").forward(request, response);
+    }
+
+    /**
+     * Handles the HTTP <code>POST</code> method.  Accepts action=clear or action=threshold with a threshold parameter
+     * in milliseconds.
+     *
+     * @param request servlet request
+     * @param response servlet response
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    protected void doPost(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        SlowRequestLog log = SlowRequestLog.getInstance();
+        String action = request.getParameter("action");
+        if ("clear".equals(action)) {
+            log.clear();
+        } else if ("threshold".equals(action)) {
+            try {
+                log.setThresholdMillis(Long.parseLong(request.getParameter("threshold")));
+            } catch (IllegalArgumentException ex) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid threshold - " + ex.getMessage());
+                return;
+            }
+        } else {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unrecognized action");
+            return;
+        }
+        response.sendRedirect(request.getContextPath() + "/admin/slow-requests");
+    }
+}
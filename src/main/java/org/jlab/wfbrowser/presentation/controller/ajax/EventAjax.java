@@ -1,6 +1,8 @@
 package org.jlab.wfbrowser.presentation.controller.ajax;
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.time.Instant;
 import java.time.ZoneId;
@@ -8,6 +10,7 @@ import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.json.*;
+import javax.servlet.ServletException;
 import javax.servlet.annotation.WebServlet;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -16,33 +19,115 @@ import javax.servlet.http.HttpSession;
 
 import org.jlab.wfbrowser.business.filter.EventFilter;
 import org.jlab.wfbrowser.business.filter.SeriesSetFilter;
+import org.jlab.wfbrowser.business.metrics.Phase;
+import org.jlab.wfbrowser.business.metrics.RequestTimer;
+import org.jlab.wfbrowser.business.service.EventPrefetcher;
 import org.jlab.wfbrowser.business.service.EventService;
 import org.jlab.wfbrowser.business.service.SeriesService;
+import org.jlab.wfbrowser.business.util.AdmissionController;
+import org.jlab.wfbrowser.business.util.EventArchiveCache;
+import org.jlab.wfbrowser.business.util.EventStorageLocator;
+import org.jlab.wfbrowser.business.util.SqlUtil;
 import org.jlab.wfbrowser.business.util.TimeUtil;
 import org.jlab.wfbrowser.model.Event;
 import org.jlab.wfbrowser.model.Label;
 import org.jlab.wfbrowser.model.Series;
 import org.jlab.wfbrowser.model.SeriesSet;
+import org.jlab.wfbrowser.presentation.util.AsyncDispatcher;
+import org.jlab.wfbrowser.presentation.util.FileDownload;
 import org.jlab.wfbrowser.presentation.util.GraphConfig;
 import org.jlab.wfbrowser.presentation.util.SessionUtils;
 
 /**
  * @author adamc
  */
-@WebServlet(name = "event", urlPatterns = {"/ajax/event"})
+@WebServlet(name = "event", urlPatterns = {"/ajax/event"}, asyncSupported = true)
 public class EventAjax extends HttpServlet {
 
     private final static Logger LOGGER = Logger.getLogger(EventAjax.class.getName());
+    private final static String RESERVATION_ATTRIBUTE = EventAjax.class.getName() + ".reservation";
 
     /**
-     * Allows users to query for event data
+     * Handles the HTTP <code>GET</code> method.  The work is done by processGet on the data request worker pool so
+     * that slow database and disk access does not tie up a container request thread.
      *
      * @param request  servlet request
      * @param response servlet response
-     * @throws IOException if an I/O error occurs
+     * @throws ServletException if a servlet-specific error occurs
+     * @throws IOException      if an I/O error occurs
      */
     @Override
     protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        AsyncDispatcher.dispatch(request, response, () -> {
+            try {
+                processGet(request, response);
+            } finally {
+                // Release any waveform memory reserved by processGet now that the response has been written
+                AdmissionController.Reservation reservation
+                        = (AdmissionController.Reservation) request.getAttribute(RESERVATION_ATTRIBUTE);
+                if (reservation != null) {
+                    reservation.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Reserve memory for the waveform data a request will load.  The estimate comes from the capture tables, so nothing
+     * is read from disk until the request has been admitted.  The reservation is stored as a request attribute and
+     * released by doGet.  If the request is not admitted, an error response is written.
+     *
+     * @param request   servlet request
+     * @param response  servlet response
+     * @param filter    The filter that will be used to load events
+     * @param streaming True if events will be loaded one at a time with EventService.forEachEvent
+     * @return True if the request was admitted, false if an error response was written
+     * @throws IOException if an I/O error occurs
+     */
+    private boolean admit(HttpServletRequest request, HttpServletResponse response, EventFilter filter,
+            boolean streaming) throws IOException {
+        String user = request.getRemoteUser() != null ? request.getRemoteUser() : request.getRemoteAddr();
+        String error;
+        try {
+            long bytes = new EventService().estimateSampleCount(filter, streaming)
+                    * AdmissionController.BYTES_PER_SAMPLE;
+            RequestTimer.count("admittedBytes", bytes);
+            request.setAttribute(RESERVATION_ATTRIBUTE, AdmissionController.getInstance().acquire(user, bytes));
+            return true;
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "Error estimating request size", ex);
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            error = "error querying database - " + ex.getMessage();
+        } catch (AdmissionController.RejectedException ex) {
+            if (ex.isTooLarge()) {
+                response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            } else {
+                response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                response.setHeader("Retry-After", "10");
+            }
+            error = ex.getMessage();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            error = "Request cancelled while waiting for the server";
+        }
+
+        response.setContentType("application/json");
+        try (PrintWriter pw = response.getWriter()) {
+            pw.print("{\"error\": \"" + error + "\"}");
+        }
+        return false;
+    }
+
+    /**
+     * Allows users to query for event data
+     *
+     * @param request  servlet request
+     * @param response servlet response
+     * @throws IOException if an I/O error occurs
+     */
+    private void processGet(HttpServletRequest request, HttpServletResponse response)
             throws IOException {
         String[] eArray = request.getParameterValues("id");
         List<Long> eventIdList = null;
@@ -122,6 +207,7 @@ public class EventAjax extends HttpServlet {
                 try (PrintWriter pw = response.getWriter()) {
                     pw.print("{\"error\": \"error querying database - " + ex.getMessage() + "\"}");
                 }
+                return;
             }
         }
         if (seriesList != null) {
@@ -134,14 +220,39 @@ public class EventAjax extends HttpServlet {
         // Enforce an rf system filter since this is likely to be an interface for only RF systems for some time
         EventFilter filter = new EventFilter(eventIdList, begin, end, system, locationList, classificationList, archive, delete, minCaptureFiles);
 
+        // Formats that write one event at a time can stream events instead of loading them all up front
+        boolean streaming = includeData && (out.equals("json") || out.equals("dygraph") || out.equals("csv"));
+
+        // Waveform data is decoded into memory in full.  Make sure there is room for it before loading anything.  The
+        // orig format sends the capture files as they are on disk and never decodes them.
+        if (includeData && !out.equals("orig") && !admit(request, response, filter, streaming)) {
+            return;
+        }
+
+        if (streaming) {
+            boolean updateGraph = requester != null && requester.equals("graph") && system != null;
+            if (updateGraph) {
+                // The session can't be created once streaming has committed the response
+                request.getSession();
+            }
+            Long firstEventId = streamEvents(response, filter, out, seriesMasterSet);
+            if (updateGraph) {
+                updateGraphConfig(request, system, eventIdList, firstEventId);
+            }
+            return;
+        }
+
         // Output data in the request format.  CSV probably only makes sense if you wanted the data, but not reason to not support
         // the no data case.
         List<Event> eventList;
         try {
             EventService es = new EventService();
-            if (includeData) {
+            if (out.equals("orig")) {
+                // The original files are sent as they are, so only the capture file names are needed
+                eventList = es.getEventList(filter, null, false, true);
+            } else if (includeData) {
                 // Since we're asking for data, we need to include capture files too.
-                eventList = es.getEventList(filter, null, true, true);
+                eventList = es.getEventList(filter, null, true, true, seriesMasterSet);
             } else {
                 // Don't get capture files or data.  This query is much faster and is useful if only interested in when
                 // and where, etc. events happened, not details about them.
@@ -165,36 +276,17 @@ public class EventAjax extends HttpServlet {
             return;
         }
 
+        // Nothing is read from the database while the response is written, which for downloads and waveform data can
+        // take as long as the client does
+        SqlUtil.releaseUnitOfWork();
+
         // Update the session's graphEventId if the request came from graph page
         if (requester != null && requester.equals("graph")) {
             // The session-based graph configuration is keyed off of system.  We only update the graph configuration
             // if we're sure that the request is relevant to the graph display.
             if (system != null) {
-                // Make sure that only one request is updating the session variable at a time.
-                synchronized (SessionUtils.getSessionLock(request, null)) {
-                    HttpSession session = request.getSession();
-                    // This should almost certainly have a graph config already if the requester is truly the graph page.
-                    @SuppressWarnings("unchecked")
-                    Map<String, GraphConfig> gcMap = (Map<String, GraphConfig>) session.getAttribute("graphConfigMap");
-                    if (gcMap == null) {
-                        gcMap = new HashMap<>();
-                        session.setAttribute("graphConfigMap", gcMap);
-                    }
-                    gcMap.putIfAbsent(system, GraphConfig.getDefaultConfig(system));
-                    GraphConfig sessionGraphConfig = gcMap.get(system);
-
-                    if (!eventList.isEmpty() && eventList.get(0) != null) {
-                        if (sessionGraphConfig.getEventId() == null) {
-                            if (!eventList.isEmpty()) {
-                                // We haven't selected an event to graph yet.  Pick the first one.
-                                sessionGraphConfig.setEventId(eventList.get(0).getEventId());
-                            }
-                        } else if (eventIdList.size() == 1) {
-                            // The user requested information on a single event from the graph page.  Update the eventId.
-                            sessionGraphConfig.setEventId(eventList.get(0).getEventId());
-                        }
-                    }
-                }
+                Long firstEventId = (!eventList.isEmpty() && eventList.get(0) != null) ? eventList.get(0).getEventId() : null;
+                updateGraphConfig(request, system, eventIdList, firstEventId);
             }
         }
 
@@ -207,7 +299,13 @@ public class EventAjax extends HttpServlet {
                     // TODO: Make this faster.  Probably need to make the same modifications as to the dygraph to side
                     // step the JsonObjectBuilder speed limitations.
                     try {
-                        pw.print(EventService.convertEventListToJson(eventList, seriesMasterSet).toString());
+                        JsonObject json;
+                        try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.ASSEMBLE)) {
+                            json = EventService.convertEventListToJson(eventList, seriesMasterSet);
+                        }
+                        try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.SERIALIZE)) {
+                            pw.print(json.toString());
+                        }
                     } catch (Exception exc) {
                         response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
                         pw.print("{\"error\": " + exc.getMessage() + "}");
@@ -218,14 +316,20 @@ public class EventAjax extends HttpServlet {
                 try (PrintWriter pw = response.getWriter()) {
                     response.setContentType("application/json");
                     try {
-                        job = Json.createObjectBuilder();
-                        jab = Json.createArrayBuilder();
-                        for (Event e : eventList) {
-                            jab.add(e.toDyGraphJsonObject(seriesMasterSet));
+                        JsonObject json;
+                        try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.ASSEMBLE)) {
+                            job = Json.createObjectBuilder();
+                            jab = Json.createArrayBuilder();
+                            for (Event e : eventList) {
+                                jab.add(e.toDyGraphJsonObject(seriesMasterSet));
+                            }
+                            job.add("events", jab.build());
+                            json = job.build();
                         }
-                        job.add("events", jab.build());
 
-                        pw.print(job.build().toString());
+                        try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.SERIALIZE)) {
+                            pw.print(json.toString());
+                        }
                     } catch (Exception exc) {
                         response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
                         pw.print("{\"error\": " + exc.getMessage() + "}");
@@ -240,7 +344,13 @@ public class EventAjax extends HttpServlet {
                     if (!eventList.isEmpty()) {
                         Event e = eventList.get(0);
                         if (e.getWaveforms() != null && (!e.getWaveforms().isEmpty())) {
-                            pw.write(e.toCsv(seriesMasterSet));
+                            String csv;
+                            try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.ASSEMBLE)) {
+                                csv = e.toCsv(seriesMasterSet);
+                            }
+                            try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.SERIALIZE)) {
+                                pw.write(csv);
+                            }
                         } else {
                             pw.write("No data requested");
                         }
@@ -271,10 +381,31 @@ public class EventAjax extends HttpServlet {
                         filename += "_" + e.getClassification();
                     }
                     filename += "_" + TimeUtil.getDateTimeString(e.getEventTime(), ZoneId.systemDefault()).replace(":", "").replace(" ", "_") + ".tar.gz";
-                    response.setContentType("application/gzip");
-                    response.setHeader("Content-Disposition", "attachment; filename=" + filename);
-                    try (OutputStream os = response.getOutputStream()) {
-                        e.streamCaptureFiles(os);
+                    if (!e.isDataOnDisk()) {
+                        throw new FileNotFoundException("Could not locate data on disk");
+                    }
+                    // A large event on a slow connection can take longer than the request timeout to send
+                    AsyncDispatcher.exemptFromTimeout(request);
+                    Path archivePath = e.getArchivePath();
+                    if (EventStorageLocator.exists(archivePath)) {
+                        // Archived events are already a tar.gz.  Send the file as is, with Range and conditional GET support.
+                        try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.SERIALIZE)) {
+                            FileDownload.send(request, response, archivePath, "application/gzip", filename);
+                        }
+                    } else if (EventArchiveCache.isEnabled()) {
+                        // Compressed on several threads by the first download and kept for later ones
+                        try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.SERIALIZE)) {
+                            archivePath = EventArchiveCache.getOrBuild(e);
+                            FileDownload.send(request, response, archivePath, "application/gzip", filename);
+                        }
+                    } else {
+                        // Compressed on several threads as it is sent
+                        response.setContentType("application/gzip");
+                        response.setHeader("Content-Disposition", "attachment; filename=" + filename);
+                        try (OutputStream os = response.getOutputStream();
+                             RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.SERIALIZE)) {
+                            EventArchiveCache.write(e, os);
+                        }
                     }
                 } catch (Exception exc) {
                     response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
@@ -292,6 +423,121 @@ public class EventAjax extends HttpServlet {
         }
     }
 
+    /**
+     * Update the session's graph configuration for a system after the graph page requested events.
+     *
+     * @param request      servlet request
+     * @param system       The system the graph page is displaying
+     * @param eventIdList  The event IDs the graph page asked for
+     * @param firstEventId The ID of the first event returned.  Null if no events were returned.
+     * @throws IOException if the default graph configuration could not be loaded
+     */
+    private void updateGraphConfig(HttpServletRequest request, String system, List<Long> eventIdList, Long firstEventId)
+            throws IOException {
+        // Make sure that only one request is updating the session variable at a time.
+        long lockStart = System.nanoTime();
+        synchronized (SessionUtils.getSessionLock(request, null)) {
+            RequestTimer.addTime(Phase.LOCK, System.nanoTime() - lockStart);
+            HttpSession session = request.getSession();
+            // This should almost certainly have a graph config already if the requester is truly the graph page.
+            @SuppressWarnings("unchecked")
+            Map<String, GraphConfig> gcMap = (Map<String, GraphConfig>) session.getAttribute("graphConfigMap");
+            if (gcMap == null) {
+                gcMap = new HashMap<>();
+                session.setAttribute("graphConfigMap", gcMap);
+            }
+            gcMap.putIfAbsent(system, GraphConfig.getDefaultConfig(system));
+            GraphConfig sessionGraphConfig = gcMap.get(system);
+
+            if (firstEventId != null) {
+                if (sessionGraphConfig.getEventId() == null) {
+                    // We haven't selected an event to graph yet.  Pick the first one.
+                    sessionGraphConfig.setEventId(firstEventId);
+                } else if (eventIdList.size() == 1) {
+                    // The user requested information on a single event from the graph page.  Update the eventId.
+                    sessionGraphConfig.setEventId(firstEventId);
+
+                    // The user is likely to step to the events on either side next
+                    EventFilter neighborFilter = new EventFilter(null, sessionGraphConfig.getBegin(),
+                            sessionGraphConfig.getEnd(), system, new ArrayList<>(sessionGraphConfig.getLocations()),
+                            new ArrayList<>(sessionGraphConfig.getClassifications()), null, null,
+                            sessionGraphConfig.getMinCaptureFiles());
+                    EventPrefetcher.getInstance().prefetchNeighbors(session.getId(), firstEventId, neighborFilter);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write events with their waveform data in the json, dygraph or csv format while they are loaded, so that only
+     * one event's data is in memory at a time.  The output is the same as building the whole response up front.  Like
+     * the non-streaming csv output, only the first event is written as csv.
+     *
+     * @param response        servlet response
+     * @param filter          The filter selecting the events
+     * @param out             The output format.  One of json, dygraph or csv.
+     * @param seriesMasterSet The series to include.  Null for all.
+     * @return The ID of the first event written.  Null if no events matched.
+     * @throws IOException if an I/O error occurs
+     */
+    private Long streamEvents(HttpServletResponse response, EventFilter filter, String out,
+            Set<String> seriesMasterSet) throws IOException {
+        boolean csv = out.equals("csv");
+        Long[] firstEventId = {null};
+        response.setContentType(csv ? "text/csv" : "application/json");
+        try (PrintWriter pw = response.getWriter()) {
+            try {
+                if (!csv) {
+                    pw.print("{\"events\":[");
+                }
+                new EventService().forEachEvent(filter, true, seriesMasterSet, e -> {
+                    if (firstEventId[0] == null) {
+                        firstEventId[0] = e.getEventId();
+                    } else {
+                        pw.print(",");
+                    }
+                    String text;
+                    try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.ASSEMBLE)) {
+                        switch (out) {
+                            case "json":
+                                text = e.toJsonObject(seriesMasterSet).toString();
+                                break;
+                            case "dygraph":
+                                text = e.toDyGraphJsonObject(seriesMasterSet).toString();
+                                break;
+                            default:
+                                text = (e.getWaveforms() != null && !e.getWaveforms().isEmpty())
+                                        ? e.toCsv(seriesMasterSet) : "No data requested";
+                        }
+                    }
+                    try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.SERIALIZE)) {
+                        pw.print(text);
+                    }
+                    // csv only ever includes the first event
+                    return !csv;
+                });
+                if (!csv) {
+                    pw.print("]}");
+                }
+            } catch (SQLException | IOException | RuntimeException ex) {
+                LOGGER.log(Level.SEVERE, "Error streaming events", ex);
+                if (response.isCommitted()) {
+                    // Too late for an error response.  The client sees a truncated response.
+                    return firstEventId[0];
+                }
+                response.resetBuffer();
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                if (csv) {
+                    response.setContentType("text/plain");
+                    pw.write("Error: " + ex.getMessage());
+                } else {
+                    pw.print("{\"error\": \"error querying data - " + ex.getMessage() + "\"}");
+                }
+            }
+        }
+        return firstEventId[0];
+    }
+
     /**
      * Handle logic for events to be added to waveform database.
      *
@@ -351,7 +597,8 @@ public class EventAjax extends HttpServlet {
                     (t == null ? "null" : t.toString()) + " grp=" + grp + " arc=" + arch + " del=" + del + " cFile=" +
                     captureFile;
             LOGGER.log(Level.INFO, "User ''{0}'' attempting to add event {1}", new Object[]{userName, kvp});
-            Event event = new Event(t, location, system, arch, del, grp, classification, captureFile, labelList);
+            // Only the waveform names, metadata and sample range are stored, so skip reading the data
+            Event event = new Event(t, location, system, arch, del, grp, classification, captureFile, labelList, false);
             long id = wfs.addEvent(event);
             LOGGER.log(Level.INFO, "Event addition succeeded");
             try (PrintWriter pw = response.getWriter()) {
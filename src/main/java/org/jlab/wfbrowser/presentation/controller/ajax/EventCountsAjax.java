@@ -0,0 +1,83 @@
+package org.jlab.wfbrowser.presentation.controller.ajax;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.jlab.wfbrowser.business.filter.EventFilter;
+import org.jlab.wfbrowser.business.service.EventService;
+import org.jlab.wfbrowser.business.util.TimeUtil;
+import org.jlab.wfbrowser.model.EventFacetCounts;
+
+/**
+ * Serves the number of events matching a filter by location, classification and label value, so that filter panels
+ * can show how many events each option would match before the user submits.  Answered only from the in-memory event
+ * index.  Until it has loaded the response is a 503, which the filter panels treat as no counts.
+ *
+ * @author adamc
+ */
+@WebServlet(name = "EventCountsAjax", urlPatterns = {"/ajax/event-counts"})
+public class EventCountsAjax extends HttpServlet {
+
+    /**
+     * Handles the HTTP <code>GET</code> method.  Takes the same filter parameters as /ajax/event: begin, end
+     * ("yyyy-MM-dd HH:mm:ss[.S]"), system, location, classification, minCF, archive and toDelete.  All are optional.
+     *
+     * @param request  servlet request
+     * @param response servlet response
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        response.setContentType("application/json");
+
+        EventFilter filter;
+        try {
+            String beginString = request.getParameter("begin");
+            Instant begin = (beginString == null || beginString.isEmpty()) ? null : TimeUtil.getInstantFromDateTimeString(beginString);
+            String endString = request.getParameter("end");
+            Instant end = (endString == null || endString.isEmpty()) ? null : TimeUtil.getInstantFromDateTimeString(endString);
+            String system = request.getParameter("system");
+            String[] locArray = request.getParameterValues("location");
+            List<String> locationList = locArray == null ? null : Arrays.asList(locArray);
+            String[] clsArray = request.getParameterValues("classification");
+            List<String> classificationList = clsArray == null ? null : Arrays.asList(clsArray);
+            String arch = request.getParameter("archive");
+            Boolean archive = (arch == null) ? null : arch.equals("true");
+            String del = request.getParameter("toDelete");
+            Boolean delete = (del == null) ? null : del.equals("true");
+            String minCF = request.getParameter("minCF");
+            Integer minCaptureFiles = (minCF == null || minCF.isEmpty()) ? null : Integer.parseInt(minCF);
+
+            filter = new EventFilter(null, begin, end, system, locationList, classificationList, archive, delete,
+                    minCaptureFiles);
+        } catch (DateTimeParseException | NumberFormatException ex) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            try (PrintWriter pw = response.getWriter()) {
+                pw.write("{\"error\": \"Error parsing parameters - " + ex.getMessage() + "\"}");
+            }
+            return;
+        }
+
+        EventFacetCounts counts = new EventService().getFacetCounts(filter);
+        if (counts == null) {
+            // The index is still loading.  Counting from the database instead would scan every matching header.
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", "60");
+            try (PrintWriter pw = response.getWriter()) {
+                pw.write("{\"error\": \"Event counts are not available until the event index has loaded\"}");
+            }
+            return;
+        }
+        try (PrintWriter pw = response.getWriter()) {
+            pw.write(counts.toJsonObject().toString());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.jlab.wfbrowser.presentation.controller.ajax;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.json.Json;
+import javax.servlet.annotation.WebServlet;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.jlab.wfbrowser.business.service.LabelTallyService;
+import org.jlab.wfbrowser.business.util.TimeUtil;
+
+/**
+ * Serves hourly label tallies from the label_tally_hourly rollup.  Meant for fault rate trend plots over long time
+ * ranges where pulling every event would be too slow.
+ *
+ * @author adamc
+ */
+@WebServlet(name = "LabelTallyAjax", urlPatterns = {"/ajax/label-tally"})
+public class LabelTallyAjax extends HttpServlet {
+
+    private static final Logger LOGGER = Logger.getLogger(LabelTallyAjax.class.getName());
+
+    /**
+     * Handles the HTTP <code>GET</code> method.  Requires begin and end parameters ("yyyy-MM-dd HH:mm:ss[.S]").
+     * Optional system (default rf) and one or more location parameters.
+     *
+     * @param request  servlet request
+     * @param response servlet response
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
+        String system = request.getParameter("system");
+        if (system == null || system.isEmpty()) {
+            system = "rf";
+        }
+        String[] locArray = request.getParameterValues("location");
+        List<String> locationList = locArray == null ? null : Arrays.asList(locArray);
+
+        response.setContentType("application/json");
+        Instant begin, end;
+        try {
+            begin = TimeUtil.getInstantFromDateTimeString(request.getParameter("begin"));
+            end = TimeUtil.getInstantFromDateTimeString(request.getParameter("end"));
+        } catch (DateTimeParseException ex) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            try (PrintWriter pw = response.getWriter()) {
+                pw.write("{\"error\": \"Error parsing begin or end - " + ex.getMessage() + "\"}");
+            }
+            return;
+        }
+        if (begin == null || end == null) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            try (PrintWriter pw = response.getWriter()) {
+                pw.write("{\"error\": \"begin and end parameters required\"}");
+            }
+            return;
+        }
+
+        LabelTallyService lts = new LabelTallyService();
+        try {
+            String json = Json.createObjectBuilder()
+                    .add("tally", lts.getHourlyLabelTallyAsJson(system, locationList, begin, end))
+                    .build()
+                    .toString();
+            try (PrintWriter pw = response.getWriter()) {
+                pw.write(json);
+            }
+        } catch (SQLException ex) {
+            LOGGER.log(Level.SEVERE, "Error querying database for label tally", ex);
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            try (PrintWriter pw = response.getWriter()) {
+                pw.write("{\"error\": \"error querying database - " + ex.getMessage() + "\"}");
+            }
+        }
+    }
+}
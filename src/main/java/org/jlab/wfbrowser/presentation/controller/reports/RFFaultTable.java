@@ -2,9 +2,12 @@ package org.jlab.wfbrowser.presentation.controller.reports;
 
 import org.jlab.wfbrowser.business.filter.EventFilter;
 import org.jlab.wfbrowser.business.filter.LabelFilter;
+import org.jlab.wfbrowser.business.metrics.Phase;
+import org.jlab.wfbrowser.business.metrics.RequestTimer;
 import org.jlab.wfbrowser.business.service.EventService;
-import org.jlab.wfbrowser.model.Event;
+import org.jlab.wfbrowser.model.EventHeader;
 import org.jlab.wfbrowser.model.Label;
+import org.jlab.wfbrowser.presentation.util.AsyncDispatcher;
 import org.jlab.wfbrowser.presentation.util.GraphConfig;
 import org.jlab.wfbrowser.presentation.util.SessionUtils;
 
@@ -23,13 +26,27 @@ import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-@WebServlet(name = "RFFaultTable", urlPatterns = {"/reports/rf-fault-table"})
+@WebServlet(name = "RFFaultTable", urlPatterns = {"/reports/rf-fault-table"}, asyncSupported = true)
 public class RFFaultTable extends HttpServlet {
 
     private static final Logger LOGGER = Logger.getLogger(RFFaultTable.class.getName());
 
+    /**
+     * Handles the HTTP <code>GET</code> method.  The work is done by processGet on the data request worker pool so
+     * that slow database and disk access does not tie up a container request thread.
+     *
+     * @param request  servlet request
+     * @param response servlet response
+     * @throws ServletException if a servlet-specific error occurs
+     * @throws IOException      if an I/O error occurs
+     */
     @Override
-    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        AsyncDispatcher.dispatch(request, response, () -> processGet(request, response));
+    }
+
+    private void processGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 
         String beginString = request.getParameter("begin");
         String endString = request.getParameter("end");
@@ -75,7 +92,9 @@ public class RFFaultTable extends HttpServlet {
 
 
         HttpSession session = request.getSession();
+        long lockStart = System.nanoTime();
         synchronized (SessionUtils.getSessionLock(request, null)) {
+            RequestTimer.addTime(Phase.LOCK, System.nanoTime() - lockStart);
             @SuppressWarnings("unchecked")
             Map<String, GraphConfig> gcMap = (Map<String, GraphConfig>) session.getAttribute("graphConfigMap");
             if (gcMap == null) {
@@ -112,7 +131,7 @@ public class RFFaultTable extends HttpServlet {
         }
 
         EventService es = new EventService();
-        List<Event> eventList = new ArrayList<>();
+        List<EventHeader> eventList = new ArrayList<>();
         try {
             // Get the tally of labeled events
             EventFilter ef = new EventFilter(null, begin, end, "rf", locationSelections, null, null, null, null);
@@ -120,13 +139,13 @@ public class RFFaultTable extends HttpServlet {
             // Get the list of events that match both the event filters and the label confidence filter
             // Note: that filtering on label confidence implies that only labeled events will be returned
             LabelFilter lf = new LabelFilter(null, null, null, confidence, confOpString);
-            eventList = es.getEventListWithoutCaptureFiles(ef);
-            List<Event> filteredList = lf.filterEvents(eventList);
+            eventList = es.getEventHeaderList(ef);
+            List<EventHeader> filteredList = lf.filterHeaders(eventList);
 
             // If the user does not want only labeled events, add back the unlabeled events that were filtered out
             if (!isLabeled) {
                 LabelFilter unlabFilter = new LabelFilter(false);
-                filteredList.addAll(unlabFilter.filterEvents(eventList));
+                filteredList.addAll(unlabFilter.filterHeaders(eventList));
             }
             eventList = filteredList;
         } catch (SQLException ex) {
@@ -142,7 +161,7 @@ public class RFFaultTable extends HttpServlet {
             response.setContentType("text/csv");
             try (PrintWriter pw = response.getWriter()) {
                 pw.write("timestamp,location,cavity-label,cavity-confidence,fault-type-label,fault-type-confidence,label-model\n");
-                for (Event e : eventList) {
+                for (EventHeader e : eventList) {
                     List<String> output = new ArrayList<>();
 
                     output.add(e.getEventTime().toString());
@@ -154,7 +173,7 @@ public class RFFaultTable extends HttpServlet {
                     String fLabel = "N/A";
                     String fConf = "N/A";
                     String fModel = "N/A";
-                    if (e.getLabelList() != null) {
+                    if (e.hasLabels()) {
                         for (Label l : e.getLabelList()) {
                             if (l.getName().equals("cavity")) {
                                 cLabel = l.getValue();
@@ -197,6 +216,6 @@ public class RFFaultTable extends HttpServlet {
         request.setAttribute("endString", endString);
         request.setAttribute("isLabeled", isLabeled);
         request.setAttribute("eventList", eventList);
-        request.getRequestDispatcher("/WEB-INF/views/reports/rf-fault-table.jsp").forward(request, response);
+        AsyncDispatcher.forward(request, response, "/WEB-INF/views/reports/rf-fault-table.jsp");
     }
 }
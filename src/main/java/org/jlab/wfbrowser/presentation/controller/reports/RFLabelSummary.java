@@ -2,8 +2,13 @@ package org.jlab.wfbrowser.presentation.controller.reports;
 
 import org.jlab.wfbrowser.business.filter.EventFilter;
 import org.jlab.wfbrowser.business.filter.LabelFilter;
+import org.jlab.wfbrowser.business.metrics.Phase;
+import org.jlab.wfbrowser.business.metrics.RequestTimer;
 import org.jlab.wfbrowser.business.service.EventService;
-import org.jlab.wfbrowser.model.Event;
+import org.jlab.wfbrowser.business.service.LabelTallyService;
+import org.jlab.wfbrowser.business.util.ConfigUtil;
+import org.jlab.wfbrowser.model.EventHeader;
+import org.jlab.wfbrowser.presentation.util.AsyncDispatcher;
 import org.jlab.wfbrowser.presentation.util.GraphConfig;
 import org.jlab.wfbrowser.presentation.util.SessionUtils;
 
@@ -16,17 +21,46 @@ import javax.servlet.http.HttpSession;
 import java.io.IOException;
 import java.net.URLEncoder;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-@WebServlet(name = "Servlet", urlPatterns = "/reports/rf-label-summary")
+/**
+ * The RF fault summary report.  Ranges of at least labelSummaryRollupHours whole hours (wfBrowser.properties, default 24)
+ * are read from the hourly label tally rollup when the confidence filter is the default (> 0), with raw events only for
+ * the partial hours at either end.  The page expands each rollup row into that many events at the start of its hour, so
+ * the heatmaps are exact and the timelines are accurate to the hour.  Other confidence filters and shorter ranges are
+ * read from raw events.
+ *
+ * @author adamc
+ */
+@WebServlet(name = "Servlet", urlPatterns = "/reports/rf-label-summary", asyncSupported = true)
 public class RFLabelSummary extends HttpServlet {
     private static final Logger LOGGER = Logger.getLogger(RFLabelSummary.class.getName());
+    private static final long ROLLUP_MIN_HOURS;
 
+    static {
+        ROLLUP_MIN_HOURS = ConfigUtil.getLong("labelSummaryRollupHours", 24);
+    }
+
+    /**
+     * Handles the HTTP <code>GET</code> method.  The work is done by processGet on the data request worker pool so
+     * that slow database and disk access does not tie up a container request thread.
+     *
+     * @param request  servlet request
+     * @param response servlet response
+     * @throws ServletException if a servlet-specific error occurs
+     * @throws IOException      if an I/O error occurs
+     */
     @Override
-    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        AsyncDispatcher.dispatch(request, response, () -> processGet(request, response));
+    }
+
+    private void processGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 
         String beginString = request.getParameter("begin");
         String endString = request.getParameter("end");
@@ -81,7 +115,9 @@ public class RFLabelSummary extends HttpServlet {
                 null, null, beginString, endString, null, null,
                 null, null, null, null);
 
+        long lockStart = System.nanoTime();
         synchronized (SessionUtils.getSessionLock(request, null)) {
+            RequestTimer.addTime(Phase.LOCK, System.nanoTime() - lockStart);
             HttpSession session = request.getSession();
 
             @SuppressWarnings("unchecked")
@@ -126,23 +162,37 @@ public class RFLabelSummary extends HttpServlet {
             }
         }
 
-        EventService es = new EventService();
-        List<Event> events;
-        try {
-            // Get the tally of labeled events
-            EventFilter ef = new EventFilter(null, begin, end, "rf", locationSelections, null, null, null, null);
-            List<LabelFilter> lfList = new ArrayList<>();
-            lfList.add(new LabelFilter(null, null, null, confidence, confOpString));
+        List<LabelFilter> lfList = new ArrayList<>();
+        lfList.add(new LabelFilter(null, null, null, confidence, confOpString));
+
+        // The rollup only knows whether all of an event's labels have a confidence above zero
+        Instant firstHour = LabelTallyService.getFirstWholeHour(begin);
+        Instant endOfHours = LabelTallyService.getEndOfWholeHours(end);
+        boolean useRollup = ">".equals(confOpString) && confidence == 0.0
+                && Duration.between(firstHour, endOfHours).toHours() >= Math.max(ROLLUP_MIN_HOURS, 1);
 
-            events = es.getEventListWithoutCaptureFiles(ef);
-            events = EventService.applyLabelFilters(events, lfList, !isLabeled);
+        List<EventHeader> events;
+        String tally = "[]";
+        try {
+            if (useRollup) {
+                events = new ArrayList<>();
+                if (begin.isBefore(firstHour)) {
+                    events.addAll(getEventHeaders(begin, firstHour.minusNanos(1), locationSelections, lfList, isLabeled));
+                }
+                tally = new LabelTallyService().getConfidentHourlyLabelTallyAsJson("rf", locationSelections, firstHour,
+                        endOfHours, !isLabeled).toString();
+                events.addAll(getEventHeaders(endOfHours, end, locationSelections, lfList, isLabeled));
+            } else {
+                events = getEventHeaders(begin, end, locationSelections, lfList, isLabeled);
+            }
         } catch (SQLException ex) {
             LOGGER.log(Level.WARNING, "Error querying database for label tally");
             throw new ServletException(ex);
         }
 
 
-        request.setAttribute("events", es.convertEventListToJson(events, null).toString());
+        request.setAttribute("events", EventService.convertHeaderListToJson(events).toString());
+        request.setAttribute("tally", tally);
         request.setAttribute("locationSelectionMap", locationSelectionMap);
         request.setAttribute("locationSelections", locationSelections);
         request.setAttribute("confString", confString);
@@ -152,6 +202,16 @@ public class RFLabelSummary extends HttpServlet {
         request.setAttribute("isLabeled", isLabeled);
         request.setAttribute("heatmap", heatmap);
         request.setAttribute("timeline", timeline);
-        request.getRequestDispatcher("/WEB-INF/views/reports/rf-label-summary.jsp").forward(request, response);
+        AsyncDispatcher.forward(request, response, "/WEB-INF/views/reports/rf-label-summary.jsp");
+    }
+
+    /**
+     * Get the headers of the rf events in the inclusive range [begin, end] that pass the label filters.
+     */
+    private List<EventHeader> getEventHeaders(Instant begin, Instant end, List<String> locations,
+                                              List<LabelFilter> lfList, boolean isLabeled) throws SQLException {
+        EventFilter ef = new EventFilter(null, begin, end, "rf", locations, null, null, null, null);
+        List<EventHeader> events = new EventService().getEventHeaderList(ef);
+        return EventService.applyLabelFiltersToHeaders(events, lfList, !isLabeled);
     }
 }
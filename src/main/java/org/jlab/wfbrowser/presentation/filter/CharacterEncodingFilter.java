@@ -14,7 +14,8 @@ import javax.servlet.annotation.WebFilter;
  *
  * @author ryans
  */
-@WebFilter(filterName = "CharacterEncodingFilter", urlPatterns = {"/*"}, dispatcherTypes = {DispatcherType.REQUEST})
+@WebFilter(filterName = "CharacterEncodingFilter", urlPatterns = {"/*"}, dispatcherTypes = {DispatcherType.REQUEST},
+        asyncSupported = true)
 public class CharacterEncodingFilter implements Filter {
 
     @Override
@@ -0,0 +1,108 @@
+package org.jlab.wfbrowser.presentation.filter;
+
+import java.io.IOException;
+import java.time.Instant;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.jlab.wfbrowser.business.metrics.MetricsRegistry;
+import org.jlab.wfbrowser.business.metrics.RequestTimer;
+import org.jlab.wfbrowser.business.metrics.SlowRequestLog;
+
+/**
+ * Times every request and records the result in the MetricsRegistry.  Requests are recorded under their servlet path so
+ * that the number of distinct endpoints stays bounded.  Static resources are lumped together and requests that did not
+ * match anything (404) are recorded as "unmatched".  Requests over the slow request threshold are also traced to the
+ * SlowRequestLog.
+ *
+ * @author adamc
+ */
+@WebFilter(filterName = "MetricsFilter", urlPatterns = {"/*"}, dispatcherTypes = {DispatcherType.REQUEST},
+        asyncSupported = true)
+public class MetricsFilter implements Filter {
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+
+        String endpoint = getEndpoint(httpRequest);
+        Instant start = Instant.now();
+        RequestTimer timer = RequestTimer.begin(endpoint);
+        boolean completed = false;
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            completed = true;
+            async = request.isAsyncStarted();
+        } finally {
+            if (async) {
+                // The request continues on another thread.  Record it once the async processing completes.
+                RequestTimer.bind(null);
+                request.getAsyncContext().addListener(new AsyncListener() {
+                    @Override
+                    public void onComplete(AsyncEvent event) {
+                        record(httpRequest, endpoint, start, timer, httpResponse.getStatus());
+                    }
+
+                    @Override
+                    public void onTimeout(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onError(AsyncEvent event) {
+                    }
+
+                    @Override
+                    public void onStartAsync(AsyncEvent event) {
+                    }
+                });
+            } else {
+                RequestTimer.end();
+                // An exception escaping the chain will be turned into a 500 by the container
+                record(httpRequest, endpoint, start, timer,
+                        completed ? httpResponse.getStatus() : HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            }
+        }
+    }
+
+    private static void record(HttpServletRequest request, String endpoint, Instant start, RequestTimer timer,
+            int status) {
+        timer.finish();
+        if (status == HttpServletResponse.SC_NOT_FOUND) {
+            endpoint = "unmatched";
+        }
+        MetricsRegistry.getInstance().record(endpoint, timer, status);
+        SlowRequestLog.getInstance().offer(start, endpoint, request.getMethod(), request.getQueryString(), status,
+                timer);
+    }
+
+    private static String getEndpoint(HttpServletRequest request) {
+        String path = request.getServletPath();
+        if (path == null || path.isEmpty()) {
+            return "/";
+        }
+        if (path.startsWith("/resources/")) {
+            return "/resources";
+        }
+        return path;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
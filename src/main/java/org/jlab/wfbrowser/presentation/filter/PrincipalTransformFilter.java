@@ -9,7 +9,8 @@ import java.io.IOException;
  * This filter stores a transformed version of the remoteUser so that JSPs have a nicer version to display.
  * @author adamc
  */
-@WebFilter(filterName = "PrincipalTransformFilter", urlPatterns = {"/*"}, dispatcherTypes = {DispatcherType.REQUEST})
+@WebFilter(filterName = "PrincipalTransformFilter", urlPatterns = {"/*"}, dispatcherTypes = {DispatcherType.REQUEST},
+        asyncSupported = true)
 public class PrincipalTransformFilter implements Filter {
 
     @Override
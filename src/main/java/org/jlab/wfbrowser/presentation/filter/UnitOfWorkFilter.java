@@ -0,0 +1,86 @@
+package org.jlab.wfbrowser.presentation.filter;
+
+import java.io.IOException;
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.annotation.WebFilter;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import org.jlab.wfbrowser.business.util.SqlUtil;
+
+/**
+ * Binds a unit of work to each request so that all of the service calls made while handling it share one database
+ * connection.  GET and HEAD requests get a read-only connection with a consistent snapshot.  Static resources are
+ * skipped.  The connection is only checked out when the first query runs, and handlers that stream events or send
+ * downloads release it with SqlUtil.releaseUnitOfWork once their queries are done, so that neither a slow client nor
+ * async work waiting on the disk holds a connection and an open transaction.
+ * <p>
+ * Read-only requests go to the read replica when one is configured, except for sessions that made a change within
+ * the last minute so that users see their own writes (e.g., a label update followed by a refresh of the graph).
+ *
+ * @author adamc
+ */
+@WebFilter(filterName = "UnitOfWorkFilter", urlPatterns = {"/*"}, dispatcherTypes = {DispatcherType.REQUEST},
+        asyncSupported = true)
+public class UnitOfWorkFilter implements Filter {
+
+    private static final String LAST_WRITE_ATTRIBUTE = "unitOfWorkLastWrite";
+
+    /**
+     * How long a session's reads stay on the primary after it writes.  Comfortably longer than normal replication lag.
+     */
+    private static final long READ_YOUR_WRITES_MILLIS = 60_000L;
+
+    /**
+     * Check whether the requester's session made a change recently enough that the replica may not have it yet.
+     */
+    private static boolean isRecentWriter(HttpServletRequest request) {
+        HttpSession session = request.getSession(false);
+        if (session == null) {
+            return false;
+        }
+        Object lastWrite = session.getAttribute(LAST_WRITE_ATTRIBUTE);
+        return lastWrite instanceof Long && System.currentTimeMillis() - (Long) lastWrite < READ_YOUR_WRITES_MILLIS;
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        String path = httpRequest.getServletPath();
+        if (path != null && path.startsWith("/resources/")) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String method = httpRequest.getMethod();
+        boolean readOnly = "GET".equals(method) || "HEAD".equals(method);
+        SqlUtil.beginUnitOfWork(readOnly, readOnly && !isRecentWriter(httpRequest));
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            SqlUtil.endUnitOfWork();
+        }
+
+        if (!readOnly && ((HttpServletResponse) response).getStatus() < 400) {
+            HttpSession session = httpRequest.getSession(false);
+            if (session != null) {
+                session.setAttribute(LAST_WRITE_ATTRIBUTE, System.currentTimeMillis());
+            }
+        }
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) throws ServletException {
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,34 @@
+package org.jlab.wfbrowser.presentation.listener;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+import org.jlab.wfbrowser.business.service.EventPrefetcher;
+import org.jlab.wfbrowser.business.service.EventTimeIndex;
+import org.jlab.wfbrowser.business.util.EventArchiveCache;
+import org.jlab.wfbrowser.presentation.util.AsyncDispatcher;
+
+/**
+ * Starts and stops the application's background services with the web application.
+ *
+ * @author adamc
+ */
+@WebListener
+public class StartupListener implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent sce) {
+        // Warms in the background.  Requests use the database until it is ready.
+        EventTimeIndex.getInstance().start();
+        AsyncDispatcher.start();
+        EventPrefetcher.getInstance().start();
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent sce) {
+        EventPrefetcher.getInstance().stop();
+        AsyncDispatcher.stop();
+        EventTimeIndex.getInstance().stop();
+        EventArchiveCache.shutdown();
+    }
+}
@@ -0,0 +1,343 @@
+package org.jlab.wfbrowser.presentation.util;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.jlab.wfbrowser.business.metrics.Phase;
+import org.jlab.wfbrowser.business.metrics.RequestTimer;
+import org.jlab.wfbrowser.business.util.ConfigUtil;
+import org.jlab.wfbrowser.business.util.SqlUtil;
+import org.jlab.wfbrowser.business.util.UnitOfWork;
+
+/**
+ * Runs data heavy requests (database queries and waveform loading) on a dedicated, bounded pool of worker threads
+ * using Servlet 3 async processing.  This frees container request threads for cheap requests while bulk requests are
+ * waiting on the database or disk.
+ * <p>
+ * When the worker queue is full the request is refused immediately with a 503 and a Retry-After header.  Requests still
+ * queued when the timeout expires are answered with a 503 and never run.  Requests already running are only flagged
+ * and their worker interrupted.  The worker itself answers with a 503 if nothing has been sent yet, and completes the
+ * request, since it may still be using the response.  The container's own async timeout is turned off for the same
+ * reason.  Long file downloads can opt out of the timeout with exemptFromTimeout.  The request's RequestTimer
+ * and database unit of work follow the request onto the worker thread.  Controllers running on a worker should use
+ * forward instead of RequestDispatcher.forward so that views are rendered through AsyncContext.dispatch.  That render
+ * is charged to the SERIALIZE phase here, since it happens after the worker is done.
+ * <p>
+ * Pool size, queue size, timeout and Retry-After are read from wfBrowser.properties (asyncThreads, asyncQueueSize,
+ * asyncTimeoutSeconds, asyncRetryAfterSeconds).
+ *
+ * @author adamc
+ */
+public class AsyncDispatcher {
+
+    private static final Logger LOGGER = Logger.getLogger(AsyncDispatcher.class.getName());
+    private static final String STATE_ATTRIBUTE = AsyncDispatcher.class.getName() + ".state";
+
+    private static final int THREADS;
+    private static final int QUEUE_SIZE;
+    private static final long TIMEOUT_MILLIS;
+    private static final int RETRY_AFTER_SECONDS;
+
+    private static volatile ThreadPoolExecutor executor = null;
+    private static volatile ScheduledThreadPoolExecutor timer = null;
+
+    static {
+        THREADS = ConfigUtil.getInt("asyncThreads", 16);
+        QUEUE_SIZE = ConfigUtil.getInt("asyncQueueSize", 32);
+        TIMEOUT_MILLIS = ConfigUtil.getLong("asyncTimeoutSeconds", 300) * 1000L;
+        RETRY_AFTER_SECONDS = ConfigUtil.getInt("asyncRetryAfterSeconds", 10);
+    }
+
+    private AsyncDispatcher() {
+        // not public so these cannot be instantiated
+    }
+
+    /**
+     * The work a controller does for a request.  Same contract as HttpServlet.doGet.
+     */
+    public interface AsyncTask {
+
+        void run() throws ServletException, IOException;
+    }
+
+    /**
+     * Create the worker pool.  Until this is called, and after stop, dispatch runs tasks on the calling thread.
+     */
+    public static synchronized void start() {
+        if (executor != null) {
+            return;
+        }
+        AtomicInteger count = new AtomicInteger(0);
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(QUEUE_SIZE),
+                r -> {
+                    Thread t = new Thread(r, "wfb-data-request-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        timer = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "wfb-data-request-timeout");
+            t.setDaemon(true);
+            return t;
+        });
+        // Nearly every request finishes well before its timeout, so don't keep cancelled timeouts around
+        timer.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Shut down the worker pool, interrupting running requests.
+     */
+    public static synchronized void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        if (timer != null) {
+            timer.shutdownNow();
+            timer = null;
+        }
+    }
+
+    /**
+     * Run a controller's work on the worker pool.  Must be called from the servlet's service method before anything
+     * has been written to the response.
+     *
+     * @param request servlet request
+     * @param response servlet response
+     * @param task The controller's work
+     * @throws ServletException If the task ran on the calling thread and threw
+     * @throws IOException If the task ran on the calling thread and threw, or the 503 response could not be written
+     */
+    public static void dispatch(HttpServletRequest request, HttpServletResponse response, AsyncTask task)
+            throws ServletException, IOException {
+        ThreadPoolExecutor pool = executor;
+        ScheduledThreadPoolExecutor timeouts = timer;
+        if (pool == null || timeouts == null || !request.isAsyncSupported()) {
+            task.run();
+            return;
+        }
+
+        AsyncContext ctx = request.startAsync(request, response);
+        // Timeouts are handled by timeout() below.  The container's would complete the request under a running worker.
+        ctx.setTimeout(0);
+        State state = new State();
+        request.setAttribute(STATE_ATTRIBUTE, state);
+        RequestTimer requestTimer = RequestTimer.current();
+        // Added before MetricsFilter's listener, so the render is charged before the request is recorded
+        ctx.addListener(new AsyncListener() {
+            @Override
+            public void onComplete(AsyncEvent event) {
+                endRender(state);
+            }
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                endRender(state);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+        UnitOfWork uow = SqlUtil.detachUnitOfWork();
+        state.uow = uow;
+
+        try {
+            state.future = pool.submit(() -> runTask(request, response, ctx, state, requestTimer, uow, task));
+        } catch (RejectedExecutionException ex) {
+            // Give the unit of work back so the filter that created it can end it
+            SqlUtil.attachUnitOfWork(uow);
+            state.phase.set(State.DONE);
+            LOGGER.log(Level.INFO, "Data request queue full.  Rejecting {0}", request.getRequestURI());
+            sendUnavailable(response, "Server is busy.  Try again in " + RETRY_AFTER_SECONDS + " seconds.");
+            ctx.complete();
+            return;
+        }
+        try {
+            state.timeout = timeouts.schedule(() -> timeout(request, response, ctx, state), TIMEOUT_MILLIS,
+                    TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ex) {
+            // Shutting down.  The worker pool is being shut down too.
+            LOGGER.log(Level.FINE, "Timeout not scheduled for {0}", request.getRequestURI());
+        }
+    }
+
+    /**
+     * Take the current request off the timeout, e.g., once a file download has started, since a large file on a slow
+     * connection can take longer than any timeout that makes sense for a database query.  Does nothing if the request
+     * is not running on the worker pool.
+     *
+     * @param request servlet request
+     */
+    public static void exemptFromTimeout(HttpServletRequest request) {
+        State state = (State) request.getAttribute(STATE_ATTRIBUTE);
+        if (state == null) {
+            return;
+        }
+        state.exempt = true;
+        Future<?> timeout = state.timeout;
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+    }
+
+    /**
+     * Called on the timer thread when a request has run out of time.  A request that has not started yet is answered
+     * here.  A running one is only flagged and interrupted, and runTask answers it.
+     */
+    private static void timeout(HttpServletRequest request, HttpServletResponse response, AsyncContext ctx,
+            State state) {
+        if (state.exempt) {
+            return;
+        }
+        if (state.phase.compareAndSet(State.QUEUED, State.DONE)) {
+            LOGGER.log(Level.WARNING, "Request timed out after {0} ms waiting for a worker: {1}",
+                    new Object[]{TIMEOUT_MILLIS, request.getRequestURI()});
+            state.future.cancel(false);
+            // The worker that would have ended the unit of work never will
+            SqlUtil.attachUnitOfWork(state.uow);
+            SqlUtil.endUnitOfWork();
+            sendUnavailable(response, "Request timed out");
+            ctx.complete();
+        } else if (state.phase.get() == State.RUNNING) {
+            LOGGER.log(Level.WARNING, "Request timed out after {0} ms.  Interrupting {1}",
+                    new Object[]{TIMEOUT_MILLIS, request.getRequestURI()});
+            state.timedOut = true;
+            state.future.cancel(true);
+        }
+    }
+
+    /**
+     * Render a view.  On a worker thread the view is rendered with AsyncContext.dispatch once the task returns,
+     * otherwise this is a normal RequestDispatcher forward.  Either way the render is charged to SERIALIZE.
+     *
+     * @param request servlet request
+     * @param response servlet response
+     * @param path The context relative path of the view
+     * @throws ServletException If the forward fails
+     * @throws IOException If the forward fails
+     */
+    public static void forward(HttpServletRequest request, HttpServletResponse response, String path)
+            throws ServletException, IOException {
+        State state = (State) request.getAttribute(STATE_ATTRIBUTE);
+        if (state != null && state.worker == Thread.currentThread()) {
+            state.view = path;
+        } else {
+            try (RequestTimer.PhaseTimer t = RequestTimer.phase(Phase.SERIALIZE)) {
+                request.getRequestDispatcher(path).forward(request, response);
+            }
+        }
+    }
+
+    private static void runTask(HttpServletRequest request, HttpServletResponse response, AsyncContext ctx,
+            State state, RequestTimer timer, UnitOfWork uow, AsyncTask task) {
+        if (!state.phase.compareAndSet(State.QUEUED, State.RUNNING)) {
+            // Timed out while queued.  timeout() already answered the request.
+            return;
+        }
+        state.worker = Thread.currentThread();
+        RequestTimer.bind(timer);
+        SqlUtil.attachUnitOfWork(uow);
+        Throwable error = null;
+        try {
+            task.run();
+        } catch (ServletException | IOException | RuntimeException ex) {
+            error = (ex instanceof ServletException && ((ServletException) ex).getRootCause() != null)
+                    ? ((ServletException) ex).getRootCause() : ex;
+            LOGGER.log(Level.SEVERE, "Error processing " + request.getRequestURI(), ex);
+        } finally {
+            SqlUtil.endUnitOfWork();
+            RequestTimer.bind(null);
+            state.worker = null;
+            state.phase.set(State.DONE);
+            Future<?> timeout = state.timeout;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+
+        if (state.timedOut) {
+            // Whatever the task left behind is incomplete.  Send the 503 unless part of the response is already out.
+            sendUnavailable(response, "Request timed out");
+            ctx.complete();
+        } else if (error != null && !response.isCommitted()) {
+            // Mirror what the container does for an exception thrown from a servlet
+            request.setAttribute("javax.servlet.error.exception", error);
+            request.setAttribute("javax.servlet.error.status_code", HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            request.setAttribute("javax.servlet.error.request_uri", request.getRequestURI());
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            ctx.dispatch("/error");
+        } else if (error == null && state.view != null) {
+            // The view is rendered by the container in an ASYNC dispatch, which no filter times.  Charge the time from
+            // here until the request completes to SERIALIZE.
+            if (timer != null) {
+                state.render = timer.openPhase(Phase.SERIALIZE);
+            }
+            ctx.dispatch(state.view);
+        } else {
+            ctx.complete();
+        }
+    }
+
+    private static void endRender(State state) {
+        RequestTimer.PhaseTimer render = state.render;
+        if (render != null) {
+            render.close();
+        }
+    }
+
+    private static void sendUnavailable(HttpServletResponse response, String message) {
+        if (response.isCommitted()) {
+            return;
+        }
+        try {
+            response.reset();
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", String.valueOf(RETRY_AFTER_SECONDS));
+            response.setContentType("application/json");
+            try (PrintWriter pw = response.getWriter()) {
+                pw.write("{\"error\": \"" + message + "\"}");
+            }
+        } catch (IOException | IllegalStateException ex) {
+            LOGGER.log(Level.WARNING, "Unable to send 503 response", ex);
+        }
+    }
+
+    /**
+     * Coordinates the worker and the timeout so that exactly one of them finishes the request.  Whichever moves phase
+     * off of QUEUED owns the response.
+     */
+    private static class State {
+
+        static final int QUEUED = 0;
+        static final int RUNNING = 1;
+        static final int DONE = 2;
+
+        private final AtomicInteger phase = new AtomicInteger(QUEUED);
+        private volatile Future<?> future = null;
+        private volatile Future<?> timeout = null;
+        private volatile UnitOfWork uow = null;
+        private volatile Thread worker = null;
+        private volatile String view = null;
+        private volatile RequestTimer.PhaseTimer render = null;
+        private volatile boolean timedOut = false;
+        private volatile boolean exempt = false;
+    }
+}
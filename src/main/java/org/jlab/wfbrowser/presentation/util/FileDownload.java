@@ -0,0 +1,181 @@
+package org.jlab.wfbrowser.presentation.util;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Sends a file on disk as a download with support for conditional GETs (ETag / If-None-Match and Last-Modified /
+ * If-Modified-Since) and single byte range requests (Range / If-Range) so that interrupted downloads can be resumed.
+ * <p>
+ * The file is copied to the response with FileChannel.transferTo rather than through a byte[] loop.  The servlet API
+ * has no portable sendfile, so this is as close to zero-copy as the container allows.
+ * <p>
+ * Only meant for files that do not change once written, like event archives.  The ETag is built from the file's size
+ * and modification time.
+ *
+ * @author adamc
+ */
+public class FileDownload {
+
+    private FileDownload() {
+        // not public so these cannot be instantiated
+    }
+
+    /**
+     * Send a file.  Must be called before anything has been written to the response.
+     *
+     * @param request servlet request
+     * @param response servlet response
+     * @param file The file to send
+     * @param contentType The response content type
+     * @param filename The file name suggested to the client in Content-Disposition
+     * @throws IOException If the file could not be read or the response written
+     */
+    public static void send(HttpServletRequest request, HttpServletResponse response, Path file, String contentType,
+            String filename) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        long size = attrs.size();
+        // HTTP dates have one second resolution
+        long lastModified = attrs.lastModifiedTime().toMillis() / 1000 * 1000;
+        String etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+
+        response.setHeader("ETag", etag);
+        response.setDateHeader("Last-Modified", lastModified);
+        response.setHeader("Accept-Ranges", "bytes");
+
+        if (notModified(request, etag, lastModified)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = size - 1;
+        String range = request.getHeader("Range");
+        if (range != null && ifRangeMatches(request, etag, lastModified)) {
+            long[] bounds = parseRange(range, size);
+            if (bounds == null) {
+                response.setHeader("Content-Range", "bytes */" + size);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + size);
+            }
+        }
+
+        response.setContentType(contentType);
+        response.setHeader("Content-Disposition", "attachment; filename=" + filename);
+        response.setContentLengthLong(end - start + 1);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            long remaining = end - start + 1;
+            while (remaining > 0) {
+                long n = channel.transferTo(position, remaining, out);
+                if (n <= 0) {
+                    throw new IOException("File truncated while sending - " + file);
+                }
+                position += n;
+                remaining -= n;
+            }
+        }
+    }
+
+    private static boolean notModified(HttpServletRequest request, String etag, long lastModified) {
+        String ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            // If-None-Match takes precedence over If-Modified-Since
+            return matches(ifNoneMatch, etag);
+        }
+        long ifModifiedSince = getDateHeader(request, "If-Modified-Since");
+        return ifModifiedSince >= 0 && lastModified <= ifModifiedSince;
+    }
+
+    private static boolean ifRangeMatches(HttpServletRequest request, String etag, long lastModified) {
+        String ifRange = request.getHeader("If-Range");
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.trim().startsWith("\"") || ifRange.trim().startsWith("W/")) {
+            return ifRange.trim().equals(etag);
+        }
+        long date = getDateHeader(request, "If-Range");
+        return date >= 0 && lastModified <= date;
+    }
+
+    private static boolean matches(String header, String etag) {
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long getDateHeader(HttpServletRequest request, String name) {
+        try {
+            return request.getDateHeader(name);
+        } catch (IllegalArgumentException ex) {
+            // Unparseable dates are ignored
+            return -1;
+        }
+    }
+
+    /**
+     * Parse a Range header.  Only a single range is supported.  Multiple ranges, or a unit other than bytes, are
+     * answered with the whole file, which HTTP allows.
+     *
+     * @param range The Range header
+     * @param size The size of the file
+     * @return {start, end} (inclusive) for a satisfiable range, an empty array to send the whole file, or null if the
+     * range can not be satisfied
+     */
+    static long[] parseRange(String range, long size) {
+        range = range.trim();
+        if (!range.startsWith("bytes=") || range.contains(",")) {
+            return new long[0];
+        }
+        String spec = range.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                // Suffix range, the last N bytes
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0) {
+                    return null;
+                }
+                start = Math.max(0, size - suffix);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            }
+            if (start < 0 || start >= size || end < start) {
+                return null;
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException ex) {
+            return new long[0];
+        }
+    }
+}
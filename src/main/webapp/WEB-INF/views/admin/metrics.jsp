@@ -0,0 +1,86 @@
+<%@page contentType="text/html" pageEncoding="UTF-8"%>
+<%@taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core"%>
+<%@taglib prefix="fn" uri="http://java.sun.com/jsp/jstl/functions"%>
+<%@taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt"%>
+<%@taglib prefix="t" tagdir="/WEB-INF/tags"%> 
+<c:set var="title" value="Request Metrics"/>
+<t:admin-page title="${title}">  
+    <jsp:attribute name="stylesheets">
+    </jsp:attribute>
+    <jsp:attribute name="scripts">
+    </jsp:attribute>        
+    <jsp:body>
+        <section>
+            <h2 id="page-header-title"><c:out value="${title}"/></h2>
+            <p>Latencies since the last restart or reset.  Phase rows are exclusive time, e.g., disk reads made while
+                parsing count only as disk.  Percentiles are estimated from histogram buckets.  The same data is
+                available for scraping at <a href="${pageContext.request.contextPath}/metrics">/metrics</a>.</p>
+            <form method="post" action="${pageContext.request.contextPath}/admin/metrics">
+                <button type="submit">Reset</button>
+            </form>
+            <div id="chart-wrap" class="chart-wrap-backdrop">
+                <table class="data-table stripped-table">
+                    <thead>
+                        <tr>
+                            <th>Endpoint</th>
+                            <th>Phase</th>
+                            <th>Count</th>
+                            <th>Errors</th>
+                            <th>Mean (ms)</th>
+                            <th>p50 (ms)</th>
+                            <th>p95 (ms)</th>
+                            <th>p99 (ms)</th>
+                        </tr>
+                    </thead>
+                    <tbody>
+                        <c:forEach items="${summaries}" var="s">
+                            <tr>
+                                <td><c:out value="${s.phase == null ? s.endpoint : ''}"/></td>
+                                <td><c:out value="${s.phase == null ? 'total' : s.phase}"/></td>
+                                <td>${s.count}</td>
+                                <td><c:if test="${s.phase == null}">${s.errors}</c:if></td>
+                                <td><fmt:formatNumber value="${s.meanMillis}" maxFractionDigits="1"/></td>
+                                <td><fmt:formatNumber value="${s.p50Millis}" maxFractionDigits="1"/></td>
+                                <td><fmt:formatNumber value="${s.p95Millis}" maxFractionDigits="1"/></td>
+                                <td><fmt:formatNumber value="${s.p99Millis}" maxFractionDigits="1"/></td>
+                            </tr>
+                        </c:forEach>
+                    </tbody>
+                </table>
+            </div>
+            <h3>Database</h3>
+            <p>Connection pool wait: ${poolWait.count} connections, mean
+                <fmt:formatNumber value="${poolWait.meanMillis}" maxFractionDigits="2"/> ms, p99
+                <fmt:formatNumber value="${poolWait.p99Millis}" maxFractionDigits="2"/> ms.  N+1 counts the requests
+                that executed a template more times than the configured threshold.</p>
+            <div class="chart-wrap-backdrop">
+                <table class="data-table stripped-table">
+                    <thead>
+                        <tr>
+                            <th>SQL Template</th>
+                            <th>Executions</th>
+                            <th>Mean Execute (ms)</th>
+                            <th>p95 Execute (ms)</th>
+                            <th>Mean Fetch (ms)</th>
+                            <th>Rows</th>
+                            <th>N+1</th>
+                        </tr>
+                    </thead>
+                    <tbody>
+                        <c:forEach items="${sqlSummaries}" var="s">
+                            <tr>
+                                <td><c:out value="${s.template}"/></td>
+                                <td>${s.executions}</td>
+                                <td><fmt:formatNumber value="${s.meanExecuteMillis}" maxFractionDigits="1"/></td>
+                                <td><fmt:formatNumber value="${s.p95ExecuteMillis}" maxFractionDigits="1"/></td>
+                                <td><fmt:formatNumber value="${s.meanFetchMillis}" maxFractionDigits="1"/></td>
+                                <td>${s.rows}</td>
+                                <td>${s.NPlusOne}</td>
+                            </tr>
+                        </c:forEach>
+                    </tbody>
+                </table>
+            </div>
+        </section>
+    </jsp:body>  
+</t:admin-page>
@@ -0,0 +1,72 @@
+<%@page contentType="text/html" pageEncoding="UTF-8"%>
+<%@taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core"%>
+<%@taglib prefix="fn" uri="http://java.sun.com/jsp/jstl/functions"%>
+<%@taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt"%>
+<%@taglib prefix="t" tagdir="/WEB-INF/tags"%> 
+<c:set var="title" value="Slow Requests"/>
+<t:admin-page title="${title}">  
+    <jsp:attribute name="stylesheets">
+    </jsp:attribute>
+    <jsp:attribute name="scripts">
+    </jsp:attribute>        
+    <jsp:body>
+        <section>
+            <h2 id="page-header-title"><c:out value="${title}"/></h2>
+            <p>The last ${capacity} requests that took longer than ${thresholdMillis} ms, most recent first.  Phase times
+                are exclusive.  Each trace is also written to the server log.</p>
+            <form method="post" action="${pageContext.request.contextPath}/admin/slow-requests">
+                <input type="hidden" name="action" value="threshold"/>
+                <label for="threshold">Threshold (ms)</label>
+                <input type="text" id="threshold" name="threshold" value="${thresholdMillis}"/>
+                <button type="submit">Update</button>
+            </form>
+            <form method="post" action="${pageContext.request.contextPath}/admin/slow-requests">
+                <input type="hidden" name="action" value="clear"/>
+                <button type="submit">Clear</button>
+            </form>
+            <div id="chart-wrap" class="chart-wrap-backdrop">
+                <table class="data-table stripped-table">
+                    <thead>
+                        <tr>
+                            <th>Start</th>
+                            <th>Request</th>
+                            <th>Status</th>
+                            <th>Total (ms)</th>
+                            <th>Phases (ms)</th>
+                            <th>Counts</th>
+                            <th>Notes</th>
+                        </tr>
+                    </thead>
+                    <tbody>
+                        <c:forEach items="${traces}" var="trace">
+                            <tr>
+                                <td><c:out value="${trace.start}"/></td>
+                                <td><c:out value="${trace.method} ${trace.endpoint}"/><c:if test="${trace.queryString != null}">?<c:out value="${trace.queryString}"/></c:if></td>
+                                <td>${trace.status}</td>
+                                <td><fmt:formatNumber value="${trace.elapsedMillis}" maxFractionDigits="1"/></td>
+                                <td>
+                                    <c:forEach items="${trace.phaseMillis}" var="phase">
+                                        <c:out value="${phase.key}"/>: <fmt:formatNumber value="${phase.value}" maxFractionDigits="1"/><br/>
+                                    </c:forEach>
+                                </td>
+                                <td>
+                                    <c:if test="${trace.compressed}">compressed<br/></c:if>
+                                    <c:forEach items="${trace.counts}" var="count">
+                                        <c:out value="${count.key}"/>: ${count.value}<br/>
+                                    </c:forEach>
+                                </td>
+                                <td>
+                                    <c:forEach items="${trace.notes}" var="note">
+                                        <c:forEach items="${note.value}" var="value">
+                                            <c:out value="${note.key}"/>: <c:out value="${value}"/><br/>
+                                        </c:forEach>
+                                    </c:forEach>
+                                </td>
+                            </tr>
+                        </c:forEach>
+                    </tbody>
+                </table>
+            </div>
+        </section>
+    </jsp:body>  
+</t:admin-page>
@@ -102,7 +102,7 @@
             jlab.wfb.ready_callback = function () {
                 var dp_div = document.getElementById("dotplot-panel");
                 var hm_div = document.getElementById("heatmaps-container");
-                jlab.wfb.create_plots(jlab.wfb.events, dp_div, hm_div, jlab.wfb.isLabeled, jlab.wfb.heatmap,
+                jlab.wfb.create_plots(jlab.wfb.events, jlab.wfb.tally, dp_div, hm_div, jlab.wfb.isLabeled, jlab.wfb.heatmap,
                     jlab.wfb.timeline, jlab.wfb.locationSelections, jlab.wfb.begin, jlab.wfb.end);
                 var done_span = document.createElement("span");
                 done_span.classList.add("done");
@@ -212,6 +212,7 @@
             jlab.wfb = jlab.wfb || {};
 
             jlab.wfb.events = ${requestScope.events};
+            jlab.wfb.tally = ${requestScope.tally};
             jlab.wfb.heatmap = "${requestScope.heatmap}";
             jlab.wfb.timeline = "${requestScope.timeline}";
             jlab.wfb.isLabeled = ${requestScope.isLabeled};
@@ -818,6 +818,79 @@ jlab.wfb.validateForm = function () {
 };
 
 
+/**
+ * Show next to each location and classification option how many events it would match with the rest of the filter
+ * panel as currently set.  The counts come from ajax/event-counts, which answers from the server's event index.
+ * Failures, including the 503 sent while the index is loading, are only logged since the counts are a convenience.
+ */
+jlab.wfb.updateFilterCounts = function () {
+    // A request still in flight is for filter settings that have since changed
+    if (jlab.wfb.filterCountsRequest) {
+        jlab.wfb.filterCountsRequest.abort();
+        jlab.wfb.filterCountsRequest = null;
+    }
+    var begin = jlab.wfb.$startPicker.val();
+    var end = jlab.wfb.$endPicker.val();
+    if (!begin || !end) {
+        return;
+    }
+    var data = {
+        system: jlab.wfb.system,
+        begin: begin,
+        end: end,
+        location: jlab.wfb.$locationSelector.val() || [],
+        minCF: $("input[name='minCF']").val()
+    };
+    if (jlab.wfb.$classificationSelector.length > 0) {
+        data.classification = jlab.wfb.$classificationSelector.val() || [];
+    }
+
+    var promise = jlab.wfb.filterCountsRequest = jQuery.ajax({
+        url: jlab.contextPath + "/ajax/event-counts",
+        type: "GET",
+        dataType: "json",
+        data: data,
+        traditional: true
+    });
+    promise.done(function (json) {
+        var setCounts = function ($selector, counts) {
+            $selector.find("option").each(function () {
+                var $option = $(this);
+                if ($option.data("name") === undefined) {
+                    $option.data("name", $option.text());
+                }
+                var name = $option.data("name");
+                var text = name + " (" + (counts[$option.val()] || 0) + ")";
+                // The options carry a label attribute, which browsers show in place of the text
+                $option.text(text).attr("label", text);
+            });
+            $selector.trigger("change.select2");
+        };
+        setCounts(jlab.wfb.$locationSelector, json.location);
+        setCounts(jlab.wfb.$classificationSelector, json.classification);
+    });
+    promise.error(function (xhr, textStatus) {
+        if (textStatus !== "abort") {
+            window.console && console.log("Unable to update filter counts: " + textStatus);
+        }
+    });
+    promise.always(function () {
+        if (jlab.wfb.filterCountsRequest === promise) {
+            jlab.wfb.filterCountsRequest = null;
+        }
+    });
+};
+
+/**
+ * Call updateFilterCounts once the filter panel has stopped changing for a moment, rather than for each click of a
+ * picker or checkbox.
+ */
+jlab.wfb.scheduleFilterCounts = function () {
+    clearTimeout(jlab.wfb.filterCountsTimer);
+    jlab.wfb.filterCountsTimer = setTimeout(jlab.wfb.updateFilterCounts, 400);
+};
+
+
 $(function () {
 
     var select2Options = {
@@ -844,6 +917,11 @@ $(function () {
 
     $("#page-controls-submit").on("click", jlab.wfb.validateForm);
 
+    jlab.wfb.$startPicker.add(jlab.wfb.$endPicker).add(jlab.wfb.$locationSelector)
+        .add(jlab.wfb.$classificationSelector).add($("input[name='minCF']"))
+        .on("change", jlab.wfb.scheduleFilterCounts);
+    jlab.wfb.updateFilterCounts();
+
     // Setup the groups for the timeline
     var groupArray = new Array(jlab.wfb.locationSelections.length);
     for (var i = 0; i < jlab.wfb.locationSelections.length; i++) {
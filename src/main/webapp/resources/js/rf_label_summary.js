@@ -200,21 +200,50 @@ jlab.wfb.get_linac = function (zone) {
 };
 
 
-jlab.wfb.process_event_data_to_heatmaps = function (event_data, column_mapper, row_mapper, labeled_only=true,
+// Convert an hourly label tally row to the list of labels that its events have, or null for unlabeled events
+jlab.wfb.tally_labels = function (row) {
+    // Only unlabeled events have no model
+    if (row.model === '') {
+        return null;
+    }
+    var labels = [];
+    if (row['fault-type'] !== '') {
+        labels.push({name: 'fault-type', value: row['fault-type']});
+    }
+    if (row.cavity !== '') {
+        labels.push({name: 'cavity', value: row.cavity});
+    }
+    return labels;
+};
+
+// Call fn(location, labels, datetime_utc, count) once for each event and once for each hourly label tally row, so that
+// whole hours read from the rollup are counted without building an object per event.
+//
+// event_data - A JSON object that is returned by the wfbrowser/ajax/event endpoint
+// tally - An array of tally rows as returned by the wfbrowser/ajax/label-tally endpoint.  Empty labels are ''.
+jlab.wfb.for_each_count = function (event_data, tally, fn) {
+    event_data.events.forEach(function (event) {
+        fn(event.location, event.labels, event.datetime_utc, 1);
+    });
+    (tally || []).forEach(function (row) {
+        fn(row.location, jlab.wfb.tally_labels(row), row.hour, row.count);
+    });
+};
+
+jlab.wfb.process_event_data_to_heatmaps = function (event_data, tally, column_mapper, row_mapper, labeled_only=true,
                                                     facet_on=null, locations) {
-    var events = event_data.events;
     var n_cols = column_mapper.levels.length; // columns
     var n_rows = row_mapper.levels.length; // rows
 
     var heatmaps = {}; // Object containing heatmaps, keyed on facet names
 
-    events.forEach(function (event) {
+    jlab.wfb.for_each_count(event_data, tally, function (location, labels, datetime_utc, count) {
         // Determine the "raw" column name
         var column = null;
         var row = null;
 
-        if (event.labels != null) {
-            event.labels.forEach(function (label) {
+        if (labels != null) {
+            labels.forEach(function (label) {
                 if (label.name === 'cavity') {
                     column = label.value;
                 }
@@ -234,9 +263,9 @@ jlab.wfb.process_event_data_to_heatmaps = function (event_data, column_mapper, r
         // Update the heatmap count for the column/value pair
         var facet = "All";
         if (facet_on == "linac") {
-            facet = jlab.wfb.get_linac(event.location);
+            facet = jlab.wfb.get_linac(location);
         } else if (facet_on == "zone") {
-            facet = event.location;
+            facet = location;
         }
 
         if (!heatmaps.hasOwnProperty(facet)) {
@@ -245,7 +274,7 @@ jlab.wfb.process_event_data_to_heatmaps = function (event_data, column_mapper, r
                 heatmaps[facet][i] = new Array(n_cols).fill(0);
             }
         }
-        heatmaps[facet][row_number][column_number]++;
+        heatmaps[facet][row_number][column_number] += count;
     });
 
     // Make sure that every facet level has a heatmap matrix, even if it's all zeros.
@@ -299,6 +328,8 @@ jlab.wfb.process_event_data_to_heatmaps = function (event_data, column_mapper, r
 //               ]
 //     }
 //     NOTE: labels array will be null if the event was unlabeled
+// tally - An array of hourly label tally rows for the whole hours of the range.  Each row is one point at the start of
+//         its hour, and the point's count property holds the number of events it stands for.
 // columns: A string that should be of the value cavity, fault, or zone.  Controls what part of data is used as column headers.
 //          This value is what is treated as a series in Dygraphs and what determines the color coding of points
 // values: A string that should be of the value cavity, fault, or zone.  Controls what part of data is used as value levels
@@ -308,29 +339,29 @@ jlab.wfb.process_event_data_to_heatmaps = function (event_data, column_mapper, r
 // facet_on: A string or null.  What should the heat map data be faceted on.  Valid values are null, linac, or zone
 //
 // returns {dotplot: <2D array based on function selections>, heatmaps: {'facet1': <2D count array> , 'facet2': ...}}
-jlab.wfb.process_event_data = function (event_data, columns, values, column_mapper, value_mapper, labeled_only=true) {
-    var events = event_data.events;
+jlab.wfb.process_event_data = function (event_data, tally, columns, values, column_mapper, value_mapper,
+                                        labeled_only=true) {
     var n_columns = column_mapper.levels.length;
 
     var value_by_column = [];
-    events.forEach(function (event) {
+    jlab.wfb.for_each_count(event_data, tally, function (location, labels, datetime_utc, count) {
         // Timestamp, Level 1, Level_2, ..., Level_n.  +1 is for Timestamp.  One for each of the groupings
         var point = new Array(n_columns + 1).fill(null);
 
         // Determine the "raw" column name
         var column;
         if (columns == 'zone') {
-            column = event.location;
+            column = location;
         } else {
             // This effectively causes fault-type to be the default column selection
             var label_name = (columns == "cavity" ? "cavity" : "fault-type");
-            if (event.labels === null) {
+            if (labels === null) {
                 if (labeled_only) {
                     return;
                 }
                 column = null;
             } else {
-                event.labels.forEach(function (label) {
+                labels.forEach(function (label) {
                     if (label.name == label_name) {
                         column = label.value;
                     }
@@ -341,15 +372,15 @@ jlab.wfb.process_event_data = function (event_data, columns, values, column_mapp
         // Determine the 'raw' value level name
         var value;
         if (values == 'zone') {
-            value = event.location;
+            value = location;
         } else {
             // This effectively causes cavity to be the default value selection.  Should probably be different than
             // default column type.
             var label_name = (values == "fault" ? "fault-type" : "cavity");
-            if (event.labels === null) {
+            if (labels === null) {
                 value = null;
             } else {
-                event.labels.forEach(function (label) {
+                labels.forEach(function (label) {
                     if (label.name == label_name) {
                         value = label.value;
                     }
@@ -363,8 +394,9 @@ jlab.wfb.process_event_data = function (event_data, columns, values, column_mapp
         var value_number = value_mapper.get_numeric_value(value);
 
         // Construct the point and add it to the output dotplot data.
-        point[0] = new Date(event.datetime_utc + "Z");
+        point[0] = new Date(datetime_utc + "Z");
         point[column_number + 1] = value_number + jlab.wfb.rand(-0.05, 0.05);
+        point.count = count;
         value_by_column.push(point);
     });
 
@@ -379,7 +411,9 @@ jlab.wfb.process_event_data = function (event_data, columns, values, column_mapp
 // title - The chart title to display
 // begin - A date time string for the beginning of the plot time range
 // end - A date time string for the end of the plot time range
+// Points with a count property (hourly tally rows) are drawn larger, by the square root of the count up to 4x.
 jlab.wfb.plot_dotplot = function (div, data, column_mapper, value_mapper, title, begin, end) {
+    var points = data;
 
     // Setup the HTML divs to contain the plot structure
     var wrapper_div = document.createElement("div");
@@ -420,6 +454,10 @@ jlab.wfb.plot_dotplot = function (div, data, column_mapper, value_mapper, title,
             highlightCircleSize: 6
         },
         highlightCircleSize: 6,
+        drawPointCallback: function (g, seriesName, ctx, cx, cy, color, pointSize, idx) {
+            var count = points[idx] ? points[idx].count : 1;
+            Dygraph.Circles.DEFAULT(g, seriesName, ctx, cx, cy, color, pointSize * Math.min(Math.sqrt(count), 4));
+        },
         labels: labels,
         colors: colors,
         legend: "always",
@@ -437,7 +475,9 @@ jlab.wfb.plot_dotplot = function (div, data, column_mapper, value_mapper, title,
                 if (!series.isVisible) return;
                 var labeledData = series.labelHTML + ': ' + series.yHTML;
                 if (series.isHighlighted) {
-                    labeledData = '<span style="font-weight: bold; color: ' + series.color + '">' + series.labelHTML + "(" + value_mapper.levels[Math.round(series.yHTML)] + ')</span>';
+                    var point = points[this.getSelection()];
+                    var count = (point && point.count > 1) ? ", " + point.count + " events" : "";
+                    labeledData = '<span style="font-weight: bold; color: ' + series.color + '">' + series.labelHTML + "(" + value_mapper.levels[Math.round(series.yHTML)] + count + ')</span>';
                 }
                 html += '<br>' + series.dashHTML + ' ' + labeledData;
             });
@@ -570,21 +610,22 @@ jlab.wfb.plot_heatmaps = function (div, data, cavity_mapper, fault_mapper) {
     });
 };
 
-jlab.wfb.create_plots = function (event_data, dp_div, heatmap_div, labeled_only, facet_on, timeline_mode, locations,
-                                  begin, end) {
-    var heatmaps = jlab.wfb.process_event_data_to_heatmaps(event_data, cavity_mapper, fault_mapper, labeled_only, facet_on, locations);
+jlab.wfb.create_plots = function (event_data, tally, dp_div, heatmap_div, labeled_only, facet_on, timeline_mode,
+                                  locations, begin, end) {
+    var heatmaps = jlab.wfb.process_event_data_to_heatmaps(event_data, tally, cavity_mapper, fault_mapper, labeled_only,
+        facet_on, locations);
     jlab.wfb.plot_heatmaps(heatmap_div, heatmaps, cavity_mapper, fault_mapper);
 
     console.log("HERE")
 
     if (timeline_mode == "single") {
-        var cf_data = jlab.wfb.process_event_data(event_data, "fault", 'cavity', fault_mapper, cavity_mapper, labeled_only);
+        var cf_data = jlab.wfb.process_event_data(event_data, tally, "fault", 'cavity', fault_mapper, cavity_mapper, labeled_only);
         jlab.wfb.plot_dotplot(dp_div, cf_data, fault_mapper, cavity_mapper, "Fault Timeline", begin, end);
     } else {
-        var fault_data = jlab.wfb.process_event_data(event_data, "fault", 'zone', fault_mapper, zone_mapper, labeled_only);
+        var fault_data = jlab.wfb.process_event_data(event_data, tally, "fault", 'zone', fault_mapper, zone_mapper, labeled_only);
         var g1 = jlab.wfb.plot_dotplot(dp_div, fault_data, fault_mapper, zone_mapper, "Fault Types By Zone", begin, end);
 
-        var cavity_data = jlab.wfb.process_event_data(event_data, "cavity", 'zone', cavity_mapper, zone_mapper, labeled_only);
+        var cavity_data = jlab.wfb.process_event_data(event_data, tally, "cavity", 'zone', cavity_mapper, zone_mapper, labeled_only);
         var g2 = jlab.wfb.plot_dotplot(dp_div, cavity_data, cavity_mapper, zone_mapper, "Cavity By Zone", begin, end);
 
         Dygraph.synchronize([g1, g2], {selection: false});
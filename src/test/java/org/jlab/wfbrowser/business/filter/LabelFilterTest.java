@@ -1,6 +1,7 @@
 package org.jlab.wfbrowser.business.filter;
 
 import org.jlab.wfbrowser.model.Event;
+import org.jlab.wfbrowser.model.EventHeader;
 import org.jlab.wfbrowser.model.Label;
 import org.junit.Test;
 
@@ -87,4 +88,40 @@ public class LabelFilterTest {
         assertEquals(events.subList(2, 3), lf.filterEvents(events));
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testFilterHeaders() {
+        Label[] labels1 = {new Label(1L, null, "testModel", "cavity", "1", 0.99),
+                new Label(1L, null, "testModel", "fault-type", "E_Quench", 0.99)};
+        Label[] labels2 = {new Label(2L, null, "testModel", "cavity", "3", 0.09),
+                new Label(2L, null, "testModel", "fault-type", "Quench", 0.09)};
+
+        List<EventHeader> headers = new ArrayList<>();
+        headers.add(new EventHeader(1L, 1_000_000L, "loc1", "testSystem", "", false, false, false, 1, labels1));
+        headers.add(new EventHeader(2L, 2_000_000L, "loc1", "testSystem", "", false, false, false, 1, labels2));
+        headers.add(new EventHeader(3L, 3_000_000L, "loc2", "testSystem", "", false, false, false, 1, null));
+
+        assertEquals(headers.subList(0, 2), new LabelFilter(true).filterHeaders(headers));
+        assertEquals(headers.subList(2, 3), new LabelFilter(false).filterHeaders(headers));
+        assertEquals(headers.subList(0, 1), new LabelFilter(null, null, null, 0.5, ">").filterHeaders(headers));
+
+        Map<String, List<String>> nvMap = new HashMap<>();
+        nvMap.put("fault-type", Collections.singletonList("Quench"));
+        assertEquals(headers.subList(1, 2), new LabelFilter(null, null, nvMap, null, null).filterHeaders(headers));
+    }
+
+    @Test
+    public void testGetHavingClauseContent() {
+        assertEquals("(COUNT(label_id) = 0)", new LabelFilter(false).getHavingClauseContent());
+
+        LabelFilter lf = new LabelFilter(Arrays.asList("m1", "m2"), null, null, 0.5, ">=");
+        assertEquals("(COUNT(label_id) > 0 AND SUM(model_name IN (?,?)) > 0"
+                + " AND SUM(CASE WHEN label_confidence >= ? THEN 0 ELSE 1 END) = 0)", lf.getHavingClauseContent());
+
+        Map<String, List<String>> nvMap = new HashMap<>();
+        nvMap.put("cavity", Arrays.asList("1", "2"));
+        lf = new LabelFilter(null, null, nvMap, null, null);
+        assertEquals("(COUNT(label_id) > 0 AND SUM(label_name = ? AND label_value IN (?,?)) > 0)",
+                lf.getHavingClauseContent());
+    }
+}
@@ -0,0 +1,26 @@
+package org.jlab.wfbrowser.business.metrics;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author adamc
+ */
+public class JdbcTimingTest {
+
+    /**
+     * Test of getTemplate method, of class JdbcTiming.
+     */
+    @Test
+    public void testGetTemplate() {
+        System.out.println("getTemplate");
+        String exp = "SELECT * FROM event WHERE event_id IN (?...) AND location = ? ORDER BY event_time_utc LIMIT ?";
+        assertEquals(exp, JdbcTiming.getTemplate("SELECT * FROM event\n  WHERE event_id IN (?,?, ?)  AND location = ?"
+                + " ORDER BY event_time_utc LIMIT 100"));
+        assertEquals(exp, JdbcTiming.getTemplate(" SELECT * FROM event WHERE event_id IN ( ? ) AND location = ?"
+                + " ORDER BY event_time_utc limit 5"));
+        assertEquals("INSERT INTO label (event_id, label_name) VALUES (?...)",
+                JdbcTiming.getTemplate("INSERT INTO label (event_id, label_name) VALUES (?,?)"));
+    }
+}
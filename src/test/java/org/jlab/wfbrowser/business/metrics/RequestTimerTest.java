@@ -0,0 +1,64 @@
+package org.jlab.wfbrowser.business.metrics;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author adamc
+ */
+public class RequestTimerTest {
+
+    private static void spin(long millis) {
+        long end = System.nanoTime() + millis * 1_000_000L;
+        while (System.nanoTime() < end) {
+            // busy wait so the elapsed time is predictable
+        }
+    }
+
+    /**
+     * Test of phase method, of class RequestTimer.  Nested phases should pause the enclosing phase.
+     */
+    @Test
+    public void testPhase() {
+        System.out.println("phase");
+        RequestTimer.begin("/test");
+        try (RequestTimer.PhaseTimer parse = RequestTimer.phase(Phase.PARSE)) {
+            spin(20);
+            try (RequestTimer.PhaseTimer disk = RequestTimer.phase(Phase.DISK)) {
+                spin(40);
+            }
+            spin(20);
+        }
+        RequestTimer timer = RequestTimer.end();
+
+        assertNull(RequestTimer.current());
+        long parseMillis = timer.getPhaseNanos(Phase.PARSE) / 1_000_000L;
+        long diskMillis = timer.getPhaseNanos(Phase.DISK) / 1_000_000L;
+        assertTrue("parse was " + parseMillis, parseMillis >= 40 && parseMillis < 60);
+        assertTrue("disk was " + diskMillis, diskMillis >= 40 && diskMillis < 60);
+        assertTrue(timer.getElapsedNanos() >= timer.getPhaseNanos(Phase.PARSE) + timer.getPhaseNanos(Phase.DISK));
+        assertEquals(0, timer.getPhaseNanos(Phase.DB));
+
+        // No timer bound, so phases are no-ops
+        try (RequestTimer.PhaseTimer db = RequestTimer.phase(Phase.DB)) {
+            assertNull(RequestTimer.current());
+        }
+    }
+
+    /**
+     * Test of getQuantileSeconds method, of class Histogram.
+     */
+    @Test
+    public void testHistogramQuantile() {
+        System.out.println("getQuantileSeconds");
+        Histogram h = new Histogram();
+        assertEquals(0, h.getQuantileSeconds(0.5), 0);
+        for (int i = 0; i < 100; i++) {
+            h.observe(i < 90 ? 3_000_000L : 200_000_000L);  // 3 ms and 200 ms
+        }
+        assertEquals(100, h.getCount());
+        assertTrue(h.getQuantileSeconds(0.5) > 0.001 && h.getQuantileSeconds(0.5) <= 0.005);
+        assertTrue(h.getQuantileSeconds(0.95) > 0.1 && h.getQuantileSeconds(0.95) <= 0.25);
+    }
+}
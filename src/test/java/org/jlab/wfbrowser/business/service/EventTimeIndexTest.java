@@ -0,0 +1,306 @@
+package org.jlab.wfbrowser.business.service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import org.jlab.wfbrowser.business.filter.EventFilter;
+import org.jlab.wfbrowser.business.util.TimeUtil;
+import org.jlab.wfbrowser.model.EventFacetCounts;
+import org.jlab.wfbrowser.model.EventHeader;
+import org.jlab.wfbrowser.model.Label;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the event time index's snapshots against a brute-force filter over the same headers.  The brute force follows
+ * the database path: the filter's time bounds are compared as the formatted strings the database gets, and the facet
+ * counts are tallied one header at a time.
+ *
+ * @author adamc
+ */
+public class EventTimeIndexTest {
+
+    private static final String[] SYSTEMS = {"rf", "acclrm"};
+    private static final String[] LOCATIONS = {"0L04", "1L22", "1L23", "2L24", "rf"};
+    private static final String[] CLASSIFICATIONS = {"", "periodic", "trip"};
+    private static final String[] CAVITIES = {"0", "1", "2", "3"};
+    private static final String[] FAULT_TYPES = {"E_Quench", "Quench_3ms", "Microphonics"};
+
+    // Event times fall within this many microseconds of BASE, so that random filters hit a mix of inside, outside and
+    // tenth-of-a-second boundary cases
+    private static final long BASE = 1_524_759_664_000_000L;
+    private static final long SPAN = 20_000_000L;
+
+    private final Random random = new Random(20181019);
+
+    /**
+     * Test of update, getHeaders, getFacetCounts and getValues, of class EventTimeIndex.Snapshot, after random inserts,
+     * removes and relabels.
+     */
+    @Test
+    public void testUpdateMatchesBruteForce() {
+        System.out.println("update");
+        Map<Long, EventHeader> expected = new HashMap<>();
+        List<EventHeader> initial = new ArrayList<>();
+        long nextId = 1;
+        for (; nextId <= 300; nextId++) {
+            EventHeader h = randomHeader(nextId, randomTime());
+            expected.put(nextId, h);
+            initial.add(h);
+        }
+        Collections.sort(initial);
+        EventTimeIndex.Snapshot s = new EventTimeIndex.Snapshot(initial);
+
+        for (int step = 0; step < 3000; step++) {
+            List<Long> ids = new ArrayList<>(expected.keySet());
+            long id = ids.isEmpty() ? 0 : ids.get(random.nextInt(ids.size()));
+            switch (ids.isEmpty() ? 0 : random.nextInt(6)) {
+                case 0: {
+                    // New events are usually the newest, but harvesters can deliver late
+                    long time = random.nextBoolean() ? BASE + SPAN + step * 1000L : randomTime();
+                    EventHeader h = randomHeader(nextId, time);
+                    expected.put(nextId, h);
+                    s = s.update(nextId++, Collections.singletonList(h));
+                    break;
+                }
+                case 1: {
+                    // Deleted with a known time, as deleteEvent does
+                    EventHeader old = expected.remove(id);
+                    s = s.update(id, old.getEventTimeMicros(), Collections.emptyList());
+                    break;
+                }
+                case 2:
+                    // Deleted without a known time, as a refresh of a deleted event does
+                    expected.remove(id);
+                    s = s.update(id, Collections.emptyList());
+                    break;
+                case 3: {
+                    // Relabeled or flagged, which keeps the event's time
+                    EventHeader h = randomHeader(id, expected.get(id).getEventTimeMicros());
+                    expected.put(id, h);
+                    s = s.update(id, Collections.singletonList(h));
+                    break;
+                }
+                case 4:
+                    // Removing an event that is not in the index changes nothing
+                    assertSame(s, s.update(-id, Collections.emptyList()));
+                    break;
+                default:
+                    // Classified as something no other event uses yet
+                    EventHeader old = expected.get(id);
+                    EventHeader h = new EventHeader(id, old.getEventTimeMicros(), old.getLocation(), old.getSystem(),
+                            "new-" + step, old.isArchive(), old.isDelete(), old.isGrouped(), old.getNumCaptureFiles(),
+                            old.getLabelList().toArray(new Label[0]));
+                    expected.put(id, h);
+                    s = s.update(id, Collections.singletonList(h));
+                    break;
+            }
+
+            for (int i = 0; i < 3; i++) {
+                EventFilter filter = randomFilter(new ArrayList<>(expected.keySet()));
+                List<EventHeader> matches = filter(expected.values(), filter, true, true);
+                assertEquals("headers at step " + step, matches, s.getHeaders(filter));
+                assertCountsEqual("counts at step " + step, facetCounts(expected.values(), filter),
+                        s.getFacetCounts(filter));
+            }
+            List<String> systemList = random.nextBoolean() ? null
+                    : Collections.singletonList(SYSTEMS[random.nextInt(SYSTEMS.length)]);
+            assertEquals(values(expected.values(), systemList, true), s.getValues(systemList, true));
+            assertEquals(values(expected.values(), systemList, false), s.getValues(systemList, false));
+        }
+    }
+
+    /**
+     * Test of the time range of getHeaders, of class EventTimeIndex.Snapshot.  The database compares event times to
+     * filter bounds formatted to a tenth of a second, so the index must round the bounds down the same way.
+     */
+    @Test
+    public void testRangeRoundsToTenthOfSecond() {
+        System.out.println("range");
+        long t = BASE;
+        List<EventHeader> headers = Arrays.asList(
+                randomHeader(1, t + 30_000),
+                randomHeader(2, t + 99_999),
+                randomHeader(3, t + 100_000),
+                randomHeader(4, t + 150_000),
+                randomHeader(5, t + 199_999),
+                randomHeader(6, t + 200_000));
+        EventTimeIndex.Snapshot s = new EventTimeIndex.Snapshot(headers);
+
+        // A begin of x.07 s is sent as x.0 s, and an end of x.17 s as x.1 s
+        Instant begin = Instant.ofEpochSecond(t / 1_000_000, 70_000_000);
+        Instant end = Instant.ofEpochSecond(t / 1_000_000, 170_000_000);
+        EventFilter filter = new EventFilter(null, begin, end, null, null, null, null, null, null);
+        assertEquals(headers.subList(0, 3), s.getHeaders(filter));
+        assertEquals(filter(headers, filter, true, true), s.getHeaders(filter));
+
+        // Bounds on a tenth of a second are inclusive
+        begin = Instant.ofEpochSecond(t / 1_000_000, 100_000_000);
+        end = Instant.ofEpochSecond(t / 1_000_000, 200_000_000);
+        filter = new EventFilter(null, begin, end, null, null, null, null, null, null);
+        assertEquals(headers.subList(2, 6), s.getHeaders(filter));
+        assertEquals(6, s.getFacetCounts(new EventFilter(null, null, end, null, null, null, null, null, null)).getTotal());
+
+        // An end before the begin matches nothing
+        filter = new EventFilter(null, end, begin, null, null, null, null, null, null);
+        assertEquals(Collections.emptyList(), s.getHeaders(filter));
+        assertEquals(0, s.getFacetCounts(filter).getTotal());
+    }
+
+    private long randomTime() {
+        // Mostly on whole tenths of a second, which is where the bounds land, and otherwise anywhere
+        long micros = (long) (random.nextDouble() * SPAN);
+        return BASE + (random.nextBoolean() ? micros / 100_000 * 100_000 : micros);
+    }
+
+    private EventHeader randomHeader(long id, long time) {
+        List<Label> labels = new ArrayList<>();
+        if (random.nextInt(3) > 0) {
+            // Sometimes two models give the same label, which should only count the event once
+            int models = 1 + random.nextInt(2);
+            for (int m = 0; m < models; m++) {
+                Double confidence = random.nextBoolean() ? null : random.nextDouble();
+                labels.add(new Label((long) labels.size(), Instant.ofEpochSecond(0), "model" + m, "cavity",
+                        CAVITIES[random.nextInt(CAVITIES.length)], confidence));
+                labels.add(new Label((long) labels.size(), Instant.ofEpochSecond(0), "model" + m, "fault-type",
+                        FAULT_TYPES[random.nextInt(FAULT_TYPES.length)], confidence));
+            }
+        }
+        return new EventHeader(id, time, LOCATIONS[random.nextInt(LOCATIONS.length)],
+                SYSTEMS[random.nextInt(SYSTEMS.length)], CLASSIFICATIONS[random.nextInt(CLASSIFICATIONS.length)],
+                random.nextBoolean(), random.nextInt(4) == 0, random.nextBoolean(), 1 + random.nextInt(8),
+                labels.toArray(new Label[0]));
+    }
+
+    private EventFilter randomFilter(List<Long> ids) {
+        if (random.nextInt(8) == 0) {
+            return null;
+        }
+        List<Long> eventIdList = null;
+        if (random.nextInt(10) == 0) {
+            eventIdList = new ArrayList<>();
+            for (int i = 0; i < 5 && !ids.isEmpty(); i++) {
+                eventIdList.add(ids.get(random.nextInt(ids.size())));
+            }
+        }
+        Instant begin = random.nextBoolean() ? null : randomInstant();
+        Instant end = random.nextBoolean() ? null : randomInstant();
+        // Locations include one that is also a system name, and values no event has
+        String system = random.nextInt(3) > 0 ? null
+                : random.nextInt(4) == 0 ? "rf-missing" : SYSTEMS[random.nextInt(SYSTEMS.length)];
+        List<String> locationList = random.nextBoolean() ? null : randomList(LOCATIONS, "9L99");
+        List<String> classificationList = random.nextInt(3) > 0 ? null : randomList(CLASSIFICATIONS, "unknown");
+        Boolean archive = random.nextInt(3) == 0 ? null : random.nextBoolean();
+        Boolean delete = random.nextInt(3) == 0 ? null : random.nextBoolean();
+        Integer minCaptureFiles = random.nextInt(3) > 0 ? null : random.nextInt(10);
+        return new EventFilter(eventIdList, begin, end, system, locationList, classificationList, archive, delete,
+                minCaptureFiles);
+    }
+
+    private Instant randomInstant() {
+        long micros = BASE - 1_000_000 + (long) (random.nextDouble() * (SPAN + 2_000_000));
+        return Instant.ofEpochSecond(micros / 1_000_000, (micros % 1_000_000) * 1000 + random.nextInt(1000));
+    }
+
+    private List<String> randomList(String[] values, String missing) {
+        List<String> out = new ArrayList<>();
+        int n = random.nextInt(3);
+        for (int i = 0; i < n; i++) {
+            out.add(values[random.nextInt(values.length)]);
+        }
+        if (random.nextInt(5) == 0) {
+            out.add(missing);
+        }
+        return out;
+    }
+
+    /**
+     * The bound the database actually compares against, i.e., the instant parsed back from the string it is sent
+     */
+    private static Instant databaseBound(Instant t) {
+        String s = TimeUtil.getDateTimeString(t);
+        return LocalDateTime.parse(s, DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.S")).toInstant(ZoneOffset.UTC);
+    }
+
+    private static List<EventHeader> filter(Iterable<EventHeader> headers, EventFilter filter, boolean useLocations,
+                                            boolean useClassifications) {
+        List<EventHeader> out = new ArrayList<>();
+        for (EventHeader h : headers) {
+            if (matches(h, filter, useLocations, useClassifications)) {
+                out.add(h);
+            }
+        }
+        Collections.sort(out);
+        return out;
+    }
+
+    private static boolean matches(EventHeader h, EventFilter f, boolean useLocations, boolean useClassifications) {
+        if (f == null) {
+            return true;
+        }
+        List<Long> ids = f.getEventIdList();
+        List<String> locations = f.getLocationList();
+        List<String> classifications = f.getClassificationList();
+        return (ids == null || ids.isEmpty() || ids.contains(h.getEventId()))
+                && (f.getBegin() == null || !h.getEventTime().isBefore(databaseBound(f.getBegin())))
+                && (f.getEnd() == null || !h.getEventTime().isAfter(databaseBound(f.getEnd())))
+                && (f.getSystem() == null || f.getSystem().equals(h.getSystem()))
+                && (!useLocations || locations == null || locations.isEmpty() || locations.contains(h.getLocation()))
+                && (!useClassifications || classifications == null || classifications.isEmpty()
+                || classifications.contains(h.getClassification()))
+                && (f.getArchive() == null || f.getArchive() == h.isArchive())
+                && (f.getDelete() == null || f.getDelete() == h.isDelete())
+                && (f.getMinCaptureFiles() == null || h.getNumCaptureFiles() >= f.getMinCaptureFiles());
+    }
+
+    private static EventFacetCounts facetCounts(Iterable<EventHeader> headers, EventFilter filter) {
+        Map<String, Integer> locationCounts = new TreeMap<>();
+        for (EventHeader h : filter(headers, filter, false, true)) {
+            locationCounts.merge(h.getLocation(), 1, Integer::sum);
+        }
+        Map<String, Integer> classificationCounts = new TreeMap<>();
+        for (EventHeader h : filter(headers, filter, true, false)) {
+            classificationCounts.merge(h.getClassification(), 1, Integer::sum);
+        }
+        List<EventHeader> all = filter(headers, filter, true, true);
+        Map<String, Map<String, Integer>> labelCounts = new TreeMap<>();
+        for (EventHeader h : all) {
+            Set<List<String>> seen = new HashSet<>();
+            for (Label l : h.getLabelList()) {
+                if (seen.add(Arrays.asList(l.getName(), l.getValue()))) {
+                    labelCounts.computeIfAbsent(l.getName(), k -> new TreeMap<>()).merge(l.getValue(), 1, Integer::sum);
+                }
+            }
+        }
+        return new EventFacetCounts(all.size(), locationCounts, classificationCounts, labelCounts);
+    }
+
+    private static List<String> values(Iterable<EventHeader> headers, List<String> systemList, boolean byLocation) {
+        Set<String> out = new TreeSet<>();
+        for (EventHeader h : headers) {
+            if (systemList == null || systemList.contains(h.getSystem())) {
+                out.add(byLocation ? h.getLocation() : h.getClassification());
+            }
+        }
+        return new ArrayList<>(out);
+    }
+
+    private static void assertCountsEqual(String message, EventFacetCounts expected, EventFacetCounts actual) {
+        assertEquals(message, expected.getTotal(), actual.getTotal());
+        assertEquals(message, expected.getLocationCounts(), actual.getLocationCounts());
+        assertEquals(message, expected.getClassificationCounts(), actual.getClassificationCounts());
+        assertEquals(message, expected.getLabelCounts(), actual.getLabelCounts());
+    }
+}
@@ -0,0 +1,58 @@
+package org.jlab.wfbrowser.business.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author adamc
+ */
+public class AdmissionControllerTest {
+
+    /**
+     * Test of acquire method, of class AdmissionController.
+     */
+    @Test
+    public void testAcquire() throws Exception {
+        System.out.println("acquire");
+        AdmissionController instance = new AdmissionController(100, 60, 0);
+
+        // Larger than the per-user budget can never be admitted
+        try {
+            instance.acquire("a", 61);
+            fail("Expected RejectedException");
+        } catch (AdmissionController.RejectedException ex) {
+            assertTrue(ex.isTooLarge());
+        }
+
+        AdmissionController.Reservation a1 = instance.acquire("a", 50);
+        // Over user a's budget, but user b still has room
+        try {
+            instance.acquire("a", 20);
+            fail("Expected RejectedException");
+        } catch (AdmissionController.RejectedException ex) {
+            assertFalse(ex.isTooLarge());
+        }
+        AdmissionController.Reservation b1 = instance.acquire("b", 50);
+        assertEquals(100, instance.getBytesInUse());
+
+        // Global budget is used up
+        try {
+            instance.acquire("c", 1);
+            fail("Expected RejectedException");
+        } catch (AdmissionController.RejectedException ex) {
+            assertFalse(ex.isTooLarge());
+        }
+
+        a1.close();
+        a1.close();
+        assertEquals(50, instance.getBytesInUse());
+        try (AdmissionController.Reservation c1 = instance.acquire("c", 50)) {
+            assertEquals(100, instance.getBytesInUse());
+        }
+        b1.close();
+        assertEquals(0, instance.getBytesInUse());
+        assertEquals(3, instance.getAdmitted());
+        assertEquals(3, instance.getRejected());
+    }
+}
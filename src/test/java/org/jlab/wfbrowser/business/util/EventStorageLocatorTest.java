@@ -0,0 +1,37 @@
+package org.jlab.wfbrowser.business.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author adamc
+ */
+public class EventStorageLocatorTest {
+
+    /**
+     * Test that presence is answered from the cached listing until it is invalidated.
+     */
+    @Test
+    public void testExists() throws IOException {
+        System.out.println("exists");
+        Path dir = Files.createTempDirectory("wfb-locator");
+        Path file = Files.createFile(dir.resolve("event.tar.gz"));
+        try {
+            assertTrue(EventStorageLocator.exists(file));
+            assertFalse(EventStorageLocator.exists(dir.resolve("event")));
+            assertFalse(EventStorageLocator.exists(dir.resolve("missing").resolve("event")));
+
+            Files.delete(file);
+            assertTrue(EventStorageLocator.exists(file));
+            EventStorageLocator.invalidate(file);
+            assertFalse(EventStorageLocator.exists(file));
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package org.jlab.wfbrowser.business.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.apache.commons.compress.compressors.gzip.GzipCompressorInputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author adamc
+ */
+public class ParallelGzipOutputStreamTest {
+
+    private static ExecutorService executor;
+
+    @BeforeClass
+    public static void setUpClass() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        executor.shutdownNow();
+    }
+
+    private static byte[] roundTrip(byte[] data, int maxPending) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ParallelGzipOutputStream gz = new ParallelGzipOutputStream(bos, executor, maxPending)) {
+            // Odd sized writes so that blocks are split across calls
+            int off = 0;
+            while (off < data.length) {
+                int n = Math.min(data.length - off, 100003);
+                gz.write(data, off, n);
+                off += n;
+            }
+        }
+        try (GzipCompressorInputStream in = new GzipCompressorInputStream(new ByteArrayInputStream(bos.toByteArray()), true)) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+
+    /**
+     * Test that the concatenated members decompress to the input.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        System.out.println("roundTrip");
+        Random r = new Random(7);
+        byte[] data = new byte[5 * 1024 * 1024 + 17];
+        for (int i = 0; i < data.length; i++) {
+            // Compressible, like capture files
+            data[i] = (byte) ('0' + r.nextInt(10));
+        }
+        assertArrayEquals(data, roundTrip(data, 8));
+        assertArrayEquals(data, roundTrip(data, 1));
+        assertArrayEquals(new byte[0], roundTrip(new byte[0], 8));
+    }
+}
@@ -0,0 +1,69 @@
+package org.jlab.wfbrowser.business.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.jlab.wfbrowser.model.Series;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author adamc
+ */
+public class SeriesMatcherTest {
+
+    private static Series series(int id, String pattern) {
+        return new Series("S" + id, id, pattern, "rf", null, null, null, null);
+    }
+
+    /**
+     * Test of match method, of class SeriesMatcher.  Results should agree with SQL LIKE.
+     */
+    @Test
+    public void testMatch() {
+        System.out.println("match");
+        Series gmes = series(1, "R%GMES");
+        Series all = series(2, "t%");
+        Series test1 = series(3, "t1%1");
+        Series single = series(4, "R1_1GMES");
+        Series exact = series(5, "R123PMES");
+        Series escaped = series(6, "a\\_b%");
+        Series everything = series(7, "%%");
+        SeriesMatcher matcher = new SeriesMatcher(Arrays.asList(gmes, all, test1, single, exact, escaped, everything));
+
+        assertEquals(Arrays.asList(gmes, single, everything), matcher.match("R1A1GMES"));
+        assertEquals(Arrays.asList(gmes, everything), matcher.match("R1GMES"));
+        assertEquals(Arrays.asList(gmes, everything), matcher.match("r2l4gmes"));
+        assertEquals(Arrays.asList(exact, everything), matcher.match("R123PMES"));
+        assertEquals(Arrays.asList(all, everything), matcher.match("t1"));
+        assertEquals(Arrays.asList(all, test1, everything), matcher.match("t11"));
+        assertEquals(Arrays.asList(all, everything), matcher.match("t12"));
+        assertEquals(Arrays.asList(escaped, everything), matcher.match("a_bcd"));
+        assertEquals(Arrays.asList(everything), matcher.match("axbcd"));
+        assertEquals(Arrays.asList(everything), matcher.match(""));
+        assertEquals(Arrays.asList(everything), matcher.match("R1GMESX"));
+    }
+
+    /**
+     * Test of getSeriesMapping method, of class SeriesMatcher.
+     */
+    @Test
+    public void testGetSeriesMapping() {
+        System.out.println("getSeriesMapping");
+        Series gmes = series(1, "R%GMES");
+        Series pmes = series(2, "R%PMES");
+        SeriesMatcher matcher = new SeriesMatcher(Arrays.asList(gmes, pmes));
+
+        List<String> names = new ArrayList<>(Arrays.asList("R1M1GMES", "R1M1PMES", "R1M1DETA2"));
+        Map<String, List<Series>> result = matcher.getSeriesMapping(names);
+        assertEquals(2, result.size());
+        assertEquals(Arrays.asList(gmes), result.get("R1M1GMES"));
+        assertEquals(Arrays.asList(pmes), result.get("R1M1PMES"));
+        assertNull(result.get("R1M1DETA2"));
+
+        // The shared "R%" prefix should only be compiled once
+        assertEquals(1 + 2 + 4 + 4, matcher.getNumNodes());
+    }
+}
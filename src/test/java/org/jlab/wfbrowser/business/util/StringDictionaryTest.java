@@ -0,0 +1,59 @@
+package org.jlab.wfbrowser.business.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author adamc
+ */
+public class StringDictionaryTest {
+
+    /**
+     * Test that equal strings are interned to the same instance and keep their code.
+     */
+    @Test
+    public void testIntern() {
+        System.out.println("intern");
+        // Made unique so that no other test has interned it already
+        String name = "R1N1WFSGMES-" + System.nanoTime();
+        String a = new String(name);
+        String b = new String(name);
+        assertSame(a, StringDictionary.intern(a));
+        assertSame(a, StringDictionary.intern(b));
+        assertNull(StringDictionary.intern(null));
+
+        int code = StringDictionary.code(b);
+        assertTrue(code >= 0);
+        assertSame(a, StringDictionary.get(code));
+    }
+
+    /**
+     * Test that lookup shares known strings without adding unknown ones.
+     */
+    @Test
+    public void testLookup() {
+        System.out.println("lookup");
+        String known = StringDictionary.intern(new String("1L22"));
+        assertSame(known, StringDictionary.lookup(new String("1L22")));
+
+        String unknown = new String("not-a-zone-" + System.nanoTime());
+        assertSame(unknown, StringDictionary.lookup(unknown));
+        assertEquals(-1, StringDictionary.code(unknown));
+    }
+
+    /**
+     * Test that long strings are not added.
+     */
+    @Test
+    public void testLongStrings() {
+        System.out.println("longStrings");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append('x');
+        }
+        String s = sb.toString();
+        assertSame(s, StringDictionary.intern(s));
+        assertEquals(-1, StringDictionary.code(s));
+    }
+}
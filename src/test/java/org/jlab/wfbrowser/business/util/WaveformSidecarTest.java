@@ -0,0 +1,66 @@
+package org.jlab.wfbrowser.business.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author adamc
+ */
+public class WaveformSidecarTest {
+
+    /**
+     * Test of write and read methods, of class WaveformSidecar.
+     */
+    @Test
+    public void testWriteRead() throws Exception {
+        System.out.println("write/read");
+        Path dir = Files.createTempDirectory("sidecar-test");
+        Path path = dir.resolve("1").resolve("R1M1WFSHARV.2018_04_26_122104.1.txt.wfb");
+        try {
+            String[] names = {"time", "R1M1WFSGMES", "R1M1WFSPMES"};
+            double[][] data = {{-1.6, -1.4, -1.2, 0}, {1.5, Double.NaN, 0, -2.25}, {1e-300, 2, 3, 4}};
+            WaveformSidecar.Source source = new WaveformSidecar.Source(12345, 1524759664000L);
+            WaveformSidecar.write(path, source, new WaveformSidecar.Columns(names, data));
+
+            WaveformSidecar.Columns result = WaveformSidecar.read(path, source, null);
+            assertArrayEquals(names, result.getNames());
+            assertEquals(data.length, result.getData().length);
+            for (int i = 0; i < data.length; i++) {
+                assertArrayEquals(data[i], result.getData()[i], 0);
+            }
+
+            // Only the time column and the requested columns are read
+            result = WaveformSidecar.read(path, source, Collections.singleton("R1M1WFSPMES"));
+            assertArrayEquals(names, result.getNames());
+            assertArrayEquals(data[0], result.getData()[0], 0);
+            assertNull(result.getData()[1]);
+            assertArrayEquals(data[2], result.getData()[2], 0);
+
+            // Sidecars made from a different copy of the source file, or with no source file left, are not used
+            assertNull(WaveformSidecar.read(path, new WaveformSidecar.Source(12345, 1524759665000L), null));
+            assertNull(WaveformSidecar.read(path, new WaveformSidecar.Source(12346, 1524759664000L), null));
+            assertNull(WaveformSidecar.read(path, null, null));
+            assertNull(WaveformSidecar.read(dir.resolve("missing.wfb"), source, null));
+
+            // Truncated files are rejected rather than returning partial data
+            byte[] bytes = Files.readAllBytes(path);
+            Files.write(path, Arrays.copyOf(bytes, bytes.length - 8));
+            try {
+                WaveformSidecar.read(path, source, null);
+                fail("Expected IOException");
+            } catch (IOException ex) {
+                // expected
+            }
+        } finally {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(path.getParent());
+            Files.deleteIfExists(dir);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.jlab.wfbrowser.model.CaptureFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author adamc
+ */
+public class CaptureFileParserTest {
+
+    /**
+     * Parse the way Event did before CaptureFileParser, with BufferedReader, split and Double.parseDouble
+     */
+    private static double[][] referenceParse(String text, List<String> metadata, List<String[]> headers)
+            throws IOException {
+        BufferedReader br = new BufferedReader(new StringReader(text));
+        String line;
+        while ((line = br.readLine()) != null && line.matches("#.*")) {
+            metadata.add(line);
+        }
+        String[] h = line.split("\\s+");
+        headers.add(h);
+        List<double[]> rows = new ArrayList<>();
+        while ((line = br.readLine()) != null) {
+            String[] nums = line.split("\\s+");
+            double[] row = new double[h.length];
+            for (int j = 0; j < h.length; j++) {
+                row[j] = nums[j].isEmpty() ? Double.NaN : Double.parseDouble(nums[j]);
+            }
+            rows.add(row);
+        }
+        double[][] out = new double[h.length][rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            for (int j = 0; j < h.length; j++) {
+                out[j][i] = rows.get(i)[j];
+            }
+        }
+        return out;
+    }
+
+    private static void assertSameAsReference(String text) throws IOException {
+        List<String> metadata = new ArrayList<>();
+        List<String[]> headers = new ArrayList<>();
+        double[][] expected = referenceParse(text, metadata, headers);
+
+        CaptureFileParser parser = new CaptureFileParser(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)), true);
+        assertEquals(metadata, parser.getMetadataLines());
+        assertArrayEquals(headers.get(0), parser.getHeaders());
+        assertEquals(expected.length, parser.getColumns().length);
+        for (int j = 0; j < expected.length; j++) {
+            // Exact match, including the sign of zero
+            assertArrayEquals(expected[j], parser.getColumns()[j], 0);
+            for (int i = 0; i < expected[j].length; i++) {
+                assertEquals(Double.doubleToRawLongBits(expected[j][i]),
+                        Double.doubleToRawLongBits(parser.getColumns()[j][i]));
+            }
+        }
+    }
+
+    /**
+     * Test parsing the capture files in the test data directory.
+     */
+    @Test
+    public void testCaptureFiles() throws IOException {
+        System.out.println("capture files");
+        Path dataDir = Paths.get("data", "test");
+        if (!Files.isDirectory(dataDir)) {
+            return;
+        }
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(dataDir)) {
+            // Capture files are named <harvester PV>.<yyyy_MM_dd_HHmmss.S>.txt
+            files = paths.filter(p -> p.getFileName().toString().matches(".*\\.\\d{4}_\\d{2}_\\d{2}_\\d{6}\\.\\d\\.txt"))
+                    .collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            assertSameAsReference(new String(Files.readAllBytes(file), StandardCharsets.US_ASCII));
+
+            // The sample range read without data matches the one from the full parse
+            ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+            CaptureFileParser full = new CaptureFileParser(bytes, true);
+            CaptureFileParser range = new CaptureFileParser(bytes, false);
+            assertNotNull(full.getSampleStep());
+            assertEquals(full.getSampleStart(), range.getSampleStart());
+            assertEquals(full.getSampleEnd(), range.getSampleEnd());
+            assertEquals(full.getSampleStep(), range.getSampleStep());
+        }
+    }
+
+    /**
+     * Test number parsing against Double.parseDouble.
+     */
+    @Test
+    public void testNumbers() throws IOException {
+        System.out.println("numbers");
+        StringBuilder sb = new StringBuilder("# PV1=5.6 @ -.5(-45.9)\r\nTime\tA\tB\tC\n");
+        sb.append("-0\t0.000\t.5\t5.\n");
+        sb.append("1e22\t1E-22\t-1.5e+3\t123456789012345678901234567890\n");
+        sb.append("NaN\t-Infinity\t0.1\t9007199254740993\n");
+        sb.append("\t1.25\t2.5\t3.75\r\n");
+        sb.append("1e-400\t1e400\t4.9e-324\t1.7976931348623157e308\n");
+        sb.append("\n");
+        Random r = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            sb.append(r.nextGaussian() * 100).append('\t')
+                    .append(String.format(Locale.ROOT, "%.4f", r.nextDouble() * 1000 - 500)).append(' ')
+                    .append(String.format(Locale.ROOT, "%.6e", r.nextDouble() * 1e-8)).append('\t')
+                    .append(r.nextInt(100000) - 50000).append('\n');
+        }
+        String text = sb.toString();
+
+        // The reference parse can't handle the blank line, which the parser skips
+        assertSameAsReference(text.replace("\n\n", "\n"));
+        CaptureFileParser parser = new CaptureFileParser(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)), true);
+        assertEquals(5005, parser.getColumns()[0].length);
+    }
+
+    /**
+     * Test that only the requested columns are read.
+     */
+    @Test
+    public void testColumnProjection() throws IOException {
+        System.out.println("column projection");
+        String text = "# PV1=5\nTime\tA\tB\tC\n0\t1\tbad\t3\n0.5\t4\tx\t6\n";
+        CaptureFileParser parser = new CaptureFileParser(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)), true,
+                new HashSet<>(Arrays.asList("A", "C")));
+        assertArrayEquals(new double[]{0, 0.5}, parser.getColumns()[0], 0);
+        assertArrayEquals(new double[]{1, 4}, parser.getColumns()[1], 0);
+        assertNull(parser.getColumns()[2]);
+        assertArrayEquals(new double[]{3, 6}, parser.getColumns()[3], 0);
+        assertEquals(0.5, parser.getSampleStep(), 0);
+    }
+
+    /**
+     * Test that only the header is read when data is not included.
+     */
+    @Test
+    public void testHeadersOnly() throws IOException {
+        System.out.println("headers only");
+        String text = "# PV1=not archived\nTime\tA\n0\tnot a number\n";
+        CaptureFileParser parser = new CaptureFileParser(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)), false);
+        assertArrayEquals(new String[]{"Time", "A"}, parser.getHeaders());
+        assertEquals(0, parser.getColumns()[1].length);
+        assertNull(parser.getSampleStep());
+
+        // Only the time column of the first two and the last rows is read.  Blank lines are skipped at both ends.
+        text = "Time\tA\r\n\r\n-0.2\tx\n-0.1\tx\n0.0\tx\n0.5\tx\r\n \t\r\n\n";
+        parser = new CaptureFileParser(ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII)), false);
+        assertEquals(-0.2, parser.getSampleStart(), 0);
+        assertEquals(0.5, parser.getSampleEnd(), 0);
+        assertEquals(-0.1 - -0.2, parser.getSampleStep(), 0);
+
+        // The rows that are read must still have a value per header
+        for (String bad : new String[]{"Time\tA\n0\n0.1\t1\n0.2\t2\n", "Time\tA\n0\t0\n0.1\t1\n0.2\n",
+                "Time\tA\n0\t0\n \t\n0.1\t1\n0.2\n \n\n"}) {
+            try {
+                new CaptureFileParser(ByteBuffer.wrap(bad.getBytes(StandardCharsets.US_ASCII)), false);
+                fail("Expected IOException for " + bad);
+            } catch (IOException ex) {
+                // expected
+            }
+        }
+        parser = new CaptureFileParser(ByteBuffer.wrap("Time\tA\n0\t0\n0.1\t1\n\t2\n".getBytes(StandardCharsets.US_ASCII)),
+                false);
+        assertTrue(Double.isNaN(parser.getSampleEnd()));
+
+        parser = new CaptureFileParser(ByteBuffer.wrap("# only metadata\n".getBytes(StandardCharsets.US_ASCII)), true);
+        assertNull(parser.getHeaders());
+        assertNull(parser.getColumns());
+    }
+}
@@ -0,0 +1,33 @@
+package org.jlab.wfbrowser.presentation.util;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author adamc
+ */
+public class FileDownloadTest {
+
+    /**
+     * Test of parseRange method, of class FileDownload.
+     */
+    @Test
+    public void testParseRange() {
+        System.out.println("parseRange");
+        assertArrayEquals(new long[]{0, 99}, FileDownload.parseRange("bytes=0-99", 1000));
+        assertArrayEquals(new long[]{500, 999}, FileDownload.parseRange("bytes=500-", 1000));
+        assertArrayEquals(new long[]{900, 999}, FileDownload.parseRange("bytes=-100", 1000));
+        assertArrayEquals(new long[]{0, 999}, FileDownload.parseRange("bytes=-5000", 1000));
+        assertArrayEquals(new long[]{990, 999}, FileDownload.parseRange("bytes=990-2000", 1000));
+
+        // Whole file
+        assertEquals(0, FileDownload.parseRange("bytes=0-1,5-9", 1000).length);
+        assertEquals(0, FileDownload.parseRange("items=0-1", 1000).length);
+        assertEquals(0, FileDownload.parseRange("bytes=a-b", 1000).length);
+
+        // Not satisfiable
+        assertNull(FileDownload.parseRange("bytes=1000-", 1000));
+        assertNull(FileDownload.parseRange("bytes=-0", 1000));
+    }
+}